@@ -0,0 +1,218 @@
+package io.undertow.servlet.extension;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * The binary layout of one access log record in an {@link AccessLogRingBuffer} slot, and its formatting.
+ * <p>
+ * Request threads only copy the raw values into the slot - a few fixed width numbers followed by length prefixed
+ * ISO-8859-1 strings - and leave the date formatting and string building to the writer thread. Strings that do not fit
+ * in the slot are truncated, the last fields (user agent, referer) first.
+ */
+final class AccessLogRecord
+{
+    static final int TIMESTAMP = 0;
+
+    static final int DURATION = 8;
+
+    static final int BYTES_SENT = 16;
+
+    static final int STATUS = 24;
+
+    static final int FIELDS = 26;
+
+    // the order of the length prefixed fields
+    static final int REMOTE_HOST = 0;
+
+    static final int REMOTE_USER = 1;
+
+    static final int METHOD = 2;
+
+    static final int PROTOCOL = 3;
+
+    static final int URI = 4;
+
+    static final int QUERY = 5;
+
+    static final int REFERER = 6;
+
+    static final int USER_AGENT = 7;
+
+    static final int FIELD_COUNT = 8;
+
+    /**
+     * The formats the writer can produce: the Apache log formats of the same name, and the combined format followed by
+     * the request processing time in milliseconds.
+     */
+    enum Pattern
+    {
+        COMMON, COMBINED, COMBINED_TIMED;
+
+        static Pattern forName(String name)
+        {
+            return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private AccessLogRecord()
+    {
+    }
+
+    /**
+     * Encodes a record into {@code data} at {@code offset}; {@code fields} are in the order of the field constants and
+     * may be null.
+     */
+    static void encode(byte[] data, int offset, long timestamp, long durationMicros, long bytesSent, int status,
+        CharSequence... fields)
+    {
+        putLong(data, offset + TIMESTAMP, timestamp);
+        putLong(data, offset + DURATION, durationMicros);
+        putLong(data, offset + BYTES_SENT, bytesSent);
+        data[offset + STATUS] = (byte) (status >> 8);
+        data[offset + STATUS + 1] = (byte) status;
+
+        int position = offset + FIELDS;
+        int end = offset + AccessLogRingBuffer.RECORD_SIZE;
+        for (int i = 0; i < FIELD_COUNT; i++)
+        {
+            CharSequence field = i < fields.length ? fields[i] : null;
+            // keep room for the length prefixes of the remaining fields
+            int room = end - position - 2 * (FIELD_COUNT - i);
+            int length = field == null ? 0 : Math.min(field.length(), Math.max(0, room));
+            data[position] = (byte) (length >> 8);
+            data[position + 1] = (byte) length;
+            position += 2;
+            for (int c = 0; c < length; c++)
+            {
+                char ch = field.charAt(c);
+                data[position++] = ch < 0x100 ? (byte) ch : (byte) '?';
+            }
+        }
+    }
+
+    static long timestamp(byte[] data, int offset)
+    {
+        return getLong(data, offset + TIMESTAMP);
+    }
+
+    static long durationMicros(byte[] data, int offset)
+    {
+        return getLong(data, offset + DURATION);
+    }
+
+    static long bytesSent(byte[] data, int offset)
+    {
+        return getLong(data, offset + BYTES_SENT);
+    }
+
+    static int status(byte[] data, int offset)
+    {
+        return ((data[offset + STATUS] & 0xFF) << 8) | (data[offset + STATUS + 1] & 0xFF);
+    }
+
+    /**
+     * Appends the record as one line, without the date, which the caller has already formatted into {@code date}
+     * (including its brackets). The line is dropped, not truncated, if {@code out} does not have room for it.
+     *
+     * @return false if {@code out} did not have room for the line
+     */
+    static boolean format(byte[] data, int offset, Pattern pattern, byte[] date, ByteBuffer out)
+    {
+        int[] starts = new int[FIELD_COUNT];
+        int[] lengths = new int[FIELD_COUNT];
+        int position = offset + FIELDS;
+        int total = 0;
+        for (int i = 0; i < FIELD_COUNT; i++)
+        {
+            lengths[i] = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+            starts[i] = position + 2;
+            position += 2 + lengths[i];
+            total += lengths[i];
+        }
+        // the fields, the date and up to 64 bytes of separators and numbers
+        if (out.remaining() < total + date.length + 64)
+        {
+            return false;
+        }
+
+        // %h %l %u %t "%r" %s %b
+        field(data, starts, lengths, REMOTE_HOST, out);
+        ascii(" - ", out);
+        field(data, starts, lengths, REMOTE_USER, out);
+        out.put((byte) ' ');
+        out.put(date);
+        ascii(" \"", out);
+        field(data, starts, lengths, METHOD, out);
+        out.put((byte) ' ');
+        out.put(data, starts[URI], lengths[URI]);
+        if (lengths[QUERY] > 0)
+        {
+            out.put((byte) '?');
+            out.put(data, starts[QUERY], lengths[QUERY]);
+        }
+        out.put((byte) ' ');
+        out.put(data, starts[PROTOCOL], lengths[PROTOCOL]);
+        ascii("\" ", out);
+        ascii(Integer.toString(status(data, offset)), out);
+        out.put((byte) ' ');
+        long bytesSent = bytesSent(data, offset);
+        ascii(bytesSent > 0 ? Long.toString(bytesSent) : "-", out);
+        if (pattern != Pattern.COMMON)
+        {
+            // "%{i,Referer}" "%{i,User-Agent}"
+            ascii(" \"", out);
+            field(data, starts, lengths, REFERER, out);
+            ascii("\" \"", out);
+            field(data, starts, lengths, USER_AGENT, out);
+            out.put((byte) '"');
+        }
+        if (pattern == Pattern.COMBINED_TIMED)
+        {
+            // %D
+            out.put((byte) ' ');
+            ascii(Long.toString(durationMicros(data, offset) / 1000), out);
+        }
+        out.put((byte) '\n');
+        return true;
+    }
+
+    private static void field(byte[] data, int[] starts, int[] lengths, int field, ByteBuffer out)
+    {
+        if (lengths[field] == 0)
+        {
+            out.put((byte) '-');
+        }
+        else
+        {
+            out.put(data, starts[field], lengths[field]);
+        }
+    }
+
+    private static void ascii(String value, ByteBuffer out)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            out.put((byte) value.charAt(i));
+        }
+    }
+
+    private static void putLong(byte[] data, int offset, long value)
+    {
+        for (int i = 7; i >= 0; i--)
+        {
+            data[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] data, int offset)
+    {
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
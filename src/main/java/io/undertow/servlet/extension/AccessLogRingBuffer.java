@@ -0,0 +1,141 @@
+package io.undertow.servlet.extension;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer ring of fixed size binary records.
+ * <p>
+ * All record storage is one preallocated array divided into {@link #RECORD_SIZE} byte slots, so publishing a record
+ * allocates nothing. Each slot has a sequence number (the scheme of Dmitry Vyukov's bounded queue): a producer claims
+ * the next position with a CAS on the tail, encodes its record straight into the slot and then publishes it by
+ * advancing the slot's sequence; the single consumer reads published slots in order and hands them back by advancing
+ * the sequence one lap further. A producer that finds the slot at the tail not yet handed back knows the ring is full.
+ */
+final class AccessLogRingBuffer
+{
+    static final int RECORD_SIZE = 512;
+
+    /**
+     * Receives each drained record, which is only valid for the duration of the call.
+     */
+    interface RecordHandler
+    {
+        void record(byte[] data, int offset);
+    }
+
+    private final int mask;
+
+    private final byte[] data;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    // only written by the consumer, volatile so that the queue depth can be read from other threads
+    private volatile long head;
+
+    AccessLogRingBuffer(int capacity)
+    {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1)
+        {
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two, was " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.data = new byte[capacity * RECORD_SIZE];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+        {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Claims the next slot.
+     *
+     * @return the claimed position, to encode at {@link #offset(long)} and then {@link #publish(long)}, or -1 if the
+     *         ring is full
+     */
+    long claim()
+    {
+        while (true)
+        {
+            long position = tail.get();
+            long available = sequences.get((int) position & mask) - position;
+            if (available == 0)
+            {
+                if (tail.compareAndSet(position, position + 1))
+                {
+                    return position;
+                }
+            }
+            else if (available < 0)
+            {
+                return -1;
+            }
+            // otherwise another producer claimed this position first, try the next one
+        }
+    }
+
+    byte[] data()
+    {
+        return data;
+    }
+
+    int offset(long position)
+    {
+        return ((int) position & mask) * RECORD_SIZE;
+    }
+
+    void publish(long position)
+    {
+        sequences.lazySet((int) position & mask, position + 1);
+    }
+
+    /**
+     * Hands up to {@code max} published records, in order, to {@code handler}. Must only be called from the consumer
+     * thread.
+     *
+     * @return the number of records drained
+     */
+    int drain(RecordHandler handler, int max)
+    {
+        long position = head;
+        int drained = 0;
+        while (drained < max)
+        {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1)
+            {
+                // empty, or the producer of this slot has not finished encoding it yet
+                break;
+            }
+            try
+            {
+                handler.record(data, index * RECORD_SIZE);
+            }
+            finally
+            {
+                sequences.lazySet(index, position + mask + 1);
+                position++;
+                drained++;
+            }
+        }
+        head = position;
+        return drained;
+    }
+
+    int capacity()
+    {
+        return mask + 1;
+    }
+
+    /**
+     * The number of claimed records not yet drained; approximate while producers are active.
+     */
+    int size()
+    {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+}
@@ -0,0 +1,72 @@
+package io.undertow.servlet.extension;
+
+import java.io.File;
+
+import org.jboss.logging.Logger;
+
+import io.undertow.server.HandlerWrapper;
+import io.undertow.server.HttpHandler;
+
+/**
+ * The asynchronous access log of one host: wraps the root handler of the host in an {@link AsyncAccessLogHandler}, in
+ * place of the host access-log, which formats each line and hands it to its receiver on the request thread.
+ * <p>
+ * The log belongs to whoever created it - the access-log service of the host when the access-log setting has
+ * {@code async="true"} - and lives from {@link #start} to {@link #stop}; nothing is shared between hosts.
+ *
+ * @see AsyncAccessLogWriter
+ */
+public final class AsyncAccessLog implements HandlerWrapper
+{
+    private static final Logger logger = Logger.getLogger(AsyncAccessLog.class);
+
+    private final AsyncAccessLogWriter writer;
+
+    /**
+     * @param pattern {@code common}, {@code combined} or {@code combined-timed}, which adds the processing time in
+     *            milliseconds
+     * @param bufferRecords the ring buffer capacity, a power of two
+     * @throws IllegalArgumentException if the pattern or capacity is not one the log supports
+     */
+    public AsyncAccessLog(String pattern, int bufferRecords, AsyncAccessLogWriter.OverflowPolicy overflowPolicy,
+        File directory, String prefix, String suffix, boolean rotate, boolean compressRotated)
+    {
+        this.writer = new AsyncAccessLogWriter(bufferRecords, AccessLogRecord.Pattern.forName(pattern), overflowPolicy,
+            directory, prefix, suffix, rotate, compressRotated);
+    }
+
+    public void start()
+    {
+        writer.start();
+        logger.debugf("Asynchronous access log writing to %s", writer.getFile());
+    }
+
+    /**
+     * Stops the log once it has written what was already logged; requests still running are no longer logged.
+     */
+    public void stop()
+    {
+        try
+        {
+            writer.stop();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The queue depth and drop counts of the log.
+     */
+    public AsyncAccessLogMXBean getMetrics()
+    {
+        return writer;
+    }
+
+    @Override
+    public HttpHandler wrap(HttpHandler handler)
+    {
+        return new AsyncAccessLogHandler(handler, writer);
+    }
+}
@@ -0,0 +1,147 @@
+package io.undertow.servlet.extension;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.StreamSinkConduit;
+
+import io.undertow.security.api.SecurityContext;
+import io.undertow.security.idm.Account;
+import io.undertow.server.ConduitWrapper;
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.ConduitFactory;
+import io.undertow.util.Headers;
+
+/**
+ * Publishes one {@link AccessLogRecord} per request to an {@link AsyncAccessLogWriter} when the exchange completes.
+ * <p>
+ * Unlike the access-log handler, nothing is formatted on the request thread: the values are read from the exchange and
+ * copied into the writer's ring buffer, and the writer thread does the rest. The number of bytes sent is counted by a
+ * response conduit, so that chunked and compressed responses are logged with their real size.
+ */
+public class AsyncAccessLogHandler implements HttpHandler
+{
+    private final HttpHandler next;
+
+    private final AsyncAccessLogWriter writer;
+
+    AsyncAccessLogHandler(HttpHandler next, AsyncAccessLogWriter writer)
+    {
+        this.next = next;
+        this.writer = writer;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception
+    {
+        final long start = System.nanoTime();
+        final ByteCounter counter = new ByteCounter();
+        exchange.addResponseWrapper(counter);
+        exchange.addExchangeCompleteListener(new ExchangeCompletionListener()
+        {
+            @Override
+            public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener)
+            {
+                try
+                {
+                    log(exchange, start, counter.bytes);
+                }
+                finally
+                {
+                    nextListener.proceed();
+                }
+            }
+        });
+        next.handleRequest(exchange);
+    }
+
+    private void log(HttpServerExchange exchange, long start, long bytesSent)
+    {
+        InetSocketAddress source = exchange.getSourceAddress();
+        writer.log(System.currentTimeMillis(), (System.nanoTime() - start) / 1000, bytesSent, exchange.getResponseCode(),
+            source == null || source.getAddress() == null ? null : source.getAddress().getHostAddress(),
+            remoteUser(exchange), exchange.getRequestMethod().toString(), exchange.getProtocol().toString(),
+            exchange.getRequestURI(), exchange.getQueryString(),
+            exchange.getRequestHeaders().getFirst(Headers.REFERER),
+            exchange.getRequestHeaders().getFirst(Headers.USER_AGENT));
+    }
+
+    private static String remoteUser(HttpServerExchange exchange)
+    {
+        SecurityContext securityContext = exchange.getSecurityContext();
+        Account account = securityContext == null ? null : securityContext.getAuthenticatedAccount();
+        return account == null ? null : account.getPrincipal().getName();
+    }
+
+    private static final class ByteCounter implements ConduitWrapper<StreamSinkConduit>
+    {
+        // only touched by the thread writing the response, and read once it has completed
+        long bytes;
+
+        @Override
+        public StreamSinkConduit wrap(ConduitFactory<StreamSinkConduit> factory, HttpServerExchange exchange)
+        {
+            return new CountingConduit(factory.create());
+        }
+
+        private final class CountingConduit extends AbstractStreamSinkConduit<StreamSinkConduit>
+        {
+            CountingConduit(StreamSinkConduit next)
+            {
+                super(next);
+            }
+
+            private long count(long written)
+            {
+                if (written > 0)
+                {
+                    bytes += written;
+                }
+                return written;
+            }
+
+            @Override
+            public int write(ByteBuffer src) throws IOException
+            {
+                return (int) count(next.write(src));
+            }
+
+            @Override
+            public long write(ByteBuffer[] srcs, int offset, int length) throws IOException
+            {
+                return count(next.write(srcs, offset, length));
+            }
+
+            @Override
+            public int writeFinal(ByteBuffer src) throws IOException
+            {
+                return (int) count(next.writeFinal(src));
+            }
+
+            @Override
+            public long writeFinal(ByteBuffer[] srcs, int offset, int length) throws IOException
+            {
+                return count(next.writeFinal(srcs, offset, length));
+            }
+
+            @Override
+            public long transferFrom(FileChannel src, long position, long count) throws IOException
+            {
+                return count(next.transferFrom(src, position, count));
+            }
+
+            @Override
+            public long transferFrom(StreamSourceChannel source, long count, ByteBuffer throughBuffer)
+                throws IOException
+            {
+                return count(next.transferFrom(source, count, throughBuffer));
+            }
+        }
+    }
+}
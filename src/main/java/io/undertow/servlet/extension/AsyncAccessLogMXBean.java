@@ -0,0 +1,36 @@
+package io.undertow.servlet.extension;
+
+/**
+ * Runtime metrics of the asynchronous access log, registered as
+ * {@code org.wildfly.extension.undertow:type=AsyncAccessLog,name=<server>/<host>}.
+ */
+public interface AsyncAccessLogMXBean
+{
+    /**
+     * The number of records published by request threads and not yet written.
+     */
+    int getQueueDepth();
+
+    int getQueueCapacity();
+
+    String getOverflowPolicy();
+
+    /**
+     * The number of records discarded because the ring buffer was full (drop policy) or the writer had stopped.
+     */
+    long getDroppedRecords();
+
+    long getWrittenRecords();
+
+    long getWrittenBytes();
+
+    /**
+     * The number of file writes, each carrying one or more formatted records.
+     */
+    long getWrites();
+
+    /**
+     * The number of times a request thread had to wait for room in the ring buffer (block policy).
+     */
+    long getBlockedPublishes();
+}
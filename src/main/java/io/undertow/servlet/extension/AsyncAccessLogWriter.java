@@ -0,0 +1,494 @@
+package io.undertow.servlet.extension;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Writes access log records published into an {@link AccessLogRingBuffer} to a file from a single background thread.
+ * <p>
+ * Request threads only claim a slot and copy the raw values of the request into it (see {@link #log}). The writer
+ * thread drains the ring in batches, formats the records into a 64 KiB buffer and writes that buffer to the file in one
+ * call whenever it is full or the ring has been emptied, so a busy server does a few large sequential writes rather
+ * than one small write per request.
+ * <p>
+ * Files are named the way the host access-log names them: records go to {@code <prefix><suffix>} and, when rotation is
+ * on, that file is renamed to {@code <prefix>yyyy-MM-dd.<suffix>} at midnight - and optionally gzipped in the
+ * background - before a new one is started.
+ * <p>
+ * When the ring is full, the {@link OverflowPolicy} decides whether the record is dropped or the request thread waits
+ * for room; either way it is counted in the {@link AsyncAccessLogMXBean} metrics.
+ */
+public final class AsyncAccessLogWriter implements AsyncAccessLogMXBean, Runnable
+{
+    private static final Logger logger = Logger.getLogger(AsyncAccessLog.class);
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    static final int BATCH_RECORDS = 1024;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    public enum OverflowPolicy
+    {
+        /**
+         * Discard the record; request threads never wait for the log.
+         */
+        DROP,
+        /**
+         * Park the request thread until the writer has made room; no record is lost unless the writer has stopped.
+         */
+        BLOCK;
+
+        public static OverflowPolicy forName(String name)
+        {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        }
+
+        @Override
+        public String toString()
+        {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private final AccessLogRingBuffer ring;
+
+    private final AccessLogRecord.Pattern pattern;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final File directory;
+
+    private final String prefix;
+
+    private final String suffix;
+
+    private final boolean rotate;
+
+    private final boolean compressRotated;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final AccessLogRingBuffer.RecordHandler formatter = this::format;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder blocked = new LongAdder();
+
+    // only updated by the writer thread, volatile for the MXBean
+    private volatile long writtenRecords;
+
+    private volatile long writtenBytes;
+
+    private volatile long writes;
+
+    private volatile boolean running = true;
+
+    private Thread thread;
+
+    private FileChannel channel;
+
+    private long nextRotation;
+
+    private String currentDay;
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("[dd/MMM/yyyy:HH:mm:ss Z]", Locale.US);
+
+    private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+
+    private long cachedSecond = -1;
+
+    private byte[] cachedDate;
+
+    private boolean failing;
+
+    AsyncAccessLogWriter(int capacity, AccessLogRecord.Pattern pattern, OverflowPolicy overflowPolicy, File directory,
+        String prefix, String suffix, boolean rotate, boolean compressRotated)
+    {
+        this.ring = new AccessLogRingBuffer(capacity);
+        this.pattern = pattern;
+        this.overflowPolicy = overflowPolicy;
+        this.directory = directory;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.rotate = rotate;
+        this.compressRotated = compressRotated;
+    }
+
+    synchronized void start()
+    {
+        if (thread == null)
+        {
+            thread = new Thread(this, "access-log-writer " + getFileName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the writer thread once it has written everything already published.
+     */
+    void stop() throws InterruptedException
+    {
+        running = false;
+        Thread writerThread;
+        synchronized (this)
+        {
+            writerThread = thread;
+        }
+        if (writerThread != null)
+        {
+            LockSupport.unpark(writerThread);
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    String getFileName()
+    {
+        return prefix + suffix;
+    }
+
+    File getFile()
+    {
+        return new File(directory, getFileName());
+    }
+
+    /**
+     * Publishes one request; {@code fields} are in the order of the {@link AccessLogRecord} field constants. Called by
+     * request threads.
+     *
+     * @return false if the record was dropped
+     */
+    boolean log(long timestamp, long durationMicros, long bytesSent, int status, CharSequence... fields)
+    {
+        long position = ring.claim();
+        if (position < 0)
+        {
+            position = overflow();
+            if (position < 0)
+            {
+                dropped.increment();
+                return false;
+            }
+        }
+        AccessLogRecord.encode(ring.data(), ring.offset(position), timestamp, durationMicros, bytesSent, status, fields);
+        ring.publish(position);
+        return true;
+    }
+
+    private long overflow()
+    {
+        if (overflowPolicy == OverflowPolicy.DROP)
+        {
+            return -1;
+        }
+        blocked.increment();
+        long position;
+        while ((position = ring.claim()) < 0)
+        {
+            if (!running)
+            {
+                return -1;
+            }
+            LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+        }
+        return position;
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            while (running)
+            {
+                int drained = ring.drain(formatter, BATCH_RECORDS);
+                if (drained < BATCH_RECORDS)
+                {
+                    // caught up with the request threads, write what we have
+                    flush();
+                }
+                if (drained == 0)
+                {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+            while (ring.drain(formatter, BATCH_RECORDS) > 0)
+            {
+                // write what was published before stop
+            }
+            flush();
+        }
+        finally
+        {
+            closeChannel();
+        }
+    }
+
+    private void format(byte[] data, int offset)
+    {
+        long timestamp = AccessLogRecord.timestamp(data, offset);
+        if (channel == null || (rotate && timestamp >= nextRotation))
+        {
+            flush();
+            if (!open(timestamp))
+            {
+                dropped.increment();
+                return;
+            }
+        }
+        byte[] date = date(timestamp);
+        if (!AccessLogRecord.format(data, offset, pattern, date, buffer))
+        {
+            flush();
+            AccessLogRecord.format(data, offset, pattern, date, buffer);
+        }
+        writtenRecords++;
+    }
+
+    private byte[] date(long timestamp)
+    {
+        long second = timestamp / 1000;
+        if (second != cachedSecond)
+        {
+            cachedSecond = second;
+            cachedDate = dateFormat.format(new Date(timestamp)).getBytes(StandardCharsets.US_ASCII);
+        }
+        return cachedDate;
+    }
+
+    /*
+     * Opens the file for the day of timestamp, first rotating away the current file if it belongs to an earlier day.
+     */
+    private boolean open(long timestamp)
+    {
+        File file = getFile();
+        long startOfDay = startOfDay(timestamp, 0);
+        try
+        {
+            if (channel != null)
+            {
+                closeChannel();
+                rotate(file, currentDay);
+            }
+            else if (rotate && file.exists() && file.length() > 0 && file.lastModified() < startOfDay)
+            {
+                // left behind by a previous run
+                rotate(file, dayFormat.format(new Date(file.lastModified())));
+            }
+            if (!directory.isDirectory() && !directory.mkdirs())
+            {
+                throw new IOException("Could not create " + directory);
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+            currentDay = dayFormat.format(new Date(timestamp));
+            nextRotation = rotate ? startOfDay(timestamp, 1) : Long.MAX_VALUE;
+            failing = false;
+            return true;
+        }
+        catch (IOException e)
+        {
+            failed(e);
+            return false;
+        }
+    }
+
+    private void rotate(File file, String day)
+    {
+        if (!rotate || !file.exists())
+        {
+            return;
+        }
+        File rotated = new File(directory, prefix + day + "." + suffix);
+        for (int i = 1; rotated.exists() || new File(rotated.getPath() + ".gz").exists(); i++)
+        {
+            rotated = new File(directory, prefix + day + "-" + i + "." + suffix);
+        }
+        if (!file.renameTo(rotated))
+        {
+            logger.warnf("Could not rotate access log %s to %s", file, rotated);
+            return;
+        }
+        if (compressRotated)
+        {
+            final File toCompress = rotated;
+            Thread compressor = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    compress(toCompress);
+                }
+            }, "access-log-compress " + rotated.getName());
+            compressor.setDaemon(true);
+            compressor.start();
+        }
+    }
+
+    static void compress(File file)
+    {
+        File compressed = new File(file.getPath() + ".gz");
+        try (InputStream in = new FileInputStream(file);
+                OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed), BUFFER_SIZE))
+        {
+            byte[] chunk = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(chunk)) > 0)
+            {
+                out.write(chunk, 0, read);
+            }
+        }
+        catch (IOException e)
+        {
+            logger.warnf(e, "Could not compress rotated access log %s", file);
+            compressed.delete();
+            return;
+        }
+        if (!file.delete())
+        {
+            logger.warnf("Could not delete %s after compressing it", file);
+        }
+    }
+
+    private static long startOfDay(long timestamp, int days)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timestamp);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return calendar.getTimeInMillis();
+    }
+
+    private void flush()
+    {
+        if (buffer.position() == 0)
+        {
+            return;
+        }
+        if (channel == null)
+        {
+            // a write failed part way through a batch; those records are lost
+            buffer.clear();
+            return;
+        }
+        buffer.flip();
+        try
+        {
+            int length = buffer.remaining();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            writtenBytes += length;
+            writes++;
+        }
+        catch (IOException e)
+        {
+            failed(e);
+            // the records in the buffer are lost, start again with a fresh file handle
+            closeChannel();
+        }
+        finally
+        {
+            buffer.clear();
+        }
+    }
+
+    private void failed(IOException e)
+    {
+        // log the first failure only, a full disk would otherwise log once per batch
+        if (!failing)
+        {
+            failing = true;
+            logger.errorf(e, "Could not write access log %s", getFile());
+        }
+    }
+
+    private void closeChannel()
+    {
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                logger.debugf(e, "Could not close access log %s", getFileName());
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return ring.size();
+    }
+
+    @Override
+    public int getQueueCapacity()
+    {
+        return ring.capacity();
+    }
+
+    @Override
+    public String getOverflowPolicy()
+    {
+        return overflowPolicy.toString();
+    }
+
+    @Override
+    public long getDroppedRecords()
+    {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getWrittenRecords()
+    {
+        return writtenRecords;
+    }
+
+    @Override
+    public long getWrittenBytes()
+    {
+        return writtenBytes;
+    }
+
+    @Override
+    public long getWrites()
+    {
+        return writes;
+    }
+
+    @Override
+    public long getBlockedPublishes()
+    {
+        return blocked.sum();
+    }
+}
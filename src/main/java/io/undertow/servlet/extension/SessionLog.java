@@ -0,0 +1,699 @@
+package io.undertow.servlet.extension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.jboss.logging.Logger;
+
+/**
+ * An append-only binary log of session snapshots, one per deployment.
+ * <p>
+ * Each record is a type byte, the payload length, a CRC32 of the payload and the payload:
+ * <ul>
+ * <li>{@link #FULL}: session id, expiration time and the attributes, each a name followed by its Java serialized value
+ * <li>{@link #TOUCH}: session id and a new expiration time, for sessions that were used but not changed
+ * <li>{@link #REMOVE}: session id of an invalidated session
+ * </ul>
+ * {@link #open()} memory-maps the newest log file and scans it once to build an in-memory index of the live sessions -
+ * the id, expiration and position of each session's latest full record - without deserializing any attribute;
+ * {@link #read} deserializes one session when it is first needed. A record that fails its CRC check ends the scan and
+ * is truncated away: it can only be the tail of a write that was cut short.
+ * <p>
+ * Since superseded records stay in the file, {@link #compactIfNeeded} copies the live records of the index into a new
+ * generation of the file once the file has grown to a multiple of the live data. Files are never renamed over, so that
+ * compaction also works on Windows while the previous generation is still mapped.
+ */
+final class SessionLog
+{
+    private static final Logger logger = Logger.getLogger(SessionLog.class);
+
+    static final byte FULL = 1;
+
+    static final byte TOUCH = 2;
+
+    static final byte REMOVE = 3;
+
+    private static final int MAGIC = 0x55534C47; // USLG
+
+    private static final int VERSION = 1;
+
+    private static final int FILE_HEADER = 8;
+
+    // type, payload length, crc
+    static final int RECORD_HEADER = 9;
+
+    private static final String EXTENSION = ".slog";
+
+    /**
+     * Where the latest full record of a live session is, and its expiration time, which later touch records may have
+     * moved on from the one in the full record.
+     */
+    static final class Entry
+    {
+        final long position;
+
+        final int length;
+
+        final long recordedExpiration;
+
+        volatile long expiration;
+
+        Entry(long position, int length, long expiration)
+        {
+            this.position = position;
+            this.length = length;
+            this.recordedExpiration = expiration;
+            this.expiration = expiration;
+        }
+    }
+
+    /**
+     * Records encoded ahead of a single {@link SessionLog#write}.
+     */
+    static final class Batch
+    {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+
+        private final Map<String, Object> updates = new LinkedHashMap<>();
+
+        private int records;
+
+        void full(String id, long expiration, Map<String, Object> attributes) throws IOException
+        {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(1024);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeUTF(id);
+            out.writeLong(expiration);
+            Map<String, byte[]> values = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> attribute : attributes.entrySet())
+            {
+                byte[] value = serialize(id, attribute.getKey(), attribute.getValue());
+                if (value != null)
+                {
+                    values.put(attribute.getKey(), value);
+                }
+            }
+            out.writeInt(values.size());
+            for (Map.Entry<String, byte[]> value : values.entrySet())
+            {
+                out.writeUTF(value.getKey());
+                out.writeInt(value.getValue().length);
+                out.write(value.getValue());
+            }
+            out.flush();
+            int position = add(FULL, payload.toByteArray());
+            updates.put(id, new Entry(position, payload.size(), expiration));
+        }
+
+        void touch(String id, long expiration) throws IOException
+        {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeUTF(id);
+            out.writeLong(expiration);
+            out.flush();
+            add(TOUCH, payload.toByteArray());
+            Object previous = updates.get(id);
+            if (previous instanceof Entry)
+            {
+                ((Entry) previous).expiration = expiration;
+            }
+            else
+            {
+                updates.put(id, Long.valueOf(expiration));
+            }
+        }
+
+        void remove(String id) throws IOException
+        {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeUTF(id);
+            out.flush();
+            add(REMOVE, payload.toByteArray());
+            updates.put(id, REMOVED);
+        }
+
+        boolean isEmpty()
+        {
+            return records == 0;
+        }
+
+        int size()
+        {
+            return records;
+        }
+
+        // returns the payload position relative to the start of the batch
+        private int add(byte type, byte[] payload) throws IOException
+        {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            out.writeInt(payload.length);
+            out.writeInt(crc(payload, 0, payload.length));
+            out.flush();
+            int position = bytes.size();
+            bytes.write(payload);
+            records++;
+            return position;
+        }
+
+        private static byte[] serialize(String id, String name, Object value)
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+            {
+                out.writeObject(value);
+            }
+            catch (IOException e)
+            {
+                // only this attribute is lost on restart, the rest of the session is still persisted
+                logger.debugf(e, "Session %s attribute %s is not serializable and is not persisted", id, name);
+                return null;
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final Object REMOVED = new Object();
+
+    private final File directory;
+
+    private final String name;
+
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    private int generation;
+
+    private FileChannel channel;
+
+    // the file as it was at open, null after a compaction
+    private MappedByteBuffer mapped;
+
+    private long size;
+
+    private long liveBytes;
+
+    private volatile long restoreNanos;
+
+    private volatile int compactions;
+
+    SessionLog(File directory, String name)
+    {
+        this.directory = directory;
+        this.name = name;
+    }
+
+    /**
+     * Opens the newest generation of the log, creating it if there is none, and builds the index.
+     */
+    synchronized void open() throws IOException
+    {
+        long start = System.nanoTime();
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create " + directory);
+        }
+        generation = newestGeneration();
+        deleteGenerationsBefore(generation);
+        File file = file(generation);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        long length = channel.size();
+        if (length < FILE_HEADER)
+        {
+            channel.truncate(0);
+            writeFileHeader(channel);
+            size = FILE_HEADER;
+        }
+        else if (length > Integer.MAX_VALUE)
+        {
+            throw new IOException("Session log " + file + " is larger than 2 GiB");
+        }
+        else
+        {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            size = scan(mapped);
+            if (size < length)
+            {
+                logger.warnf("Session log %s has %d bytes of incomplete records at its end, discarding them", file,
+                    length - size);
+                channel.truncate(size);
+            }
+        }
+        restoreNanos = System.nanoTime() - start;
+    }
+
+    private long scan(ByteBuffer buffer) throws IOException
+    {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+        {
+            throw new IOException("Not a session log: " + file(generation));
+        }
+        int position = FILE_HEADER;
+        while (position + RECORD_HEADER <= buffer.limit())
+        {
+            byte type = buffer.get(position);
+            int length = buffer.getInt(position + 1);
+            int crc = buffer.getInt(position + 5);
+            int payload = position + RECORD_HEADER;
+            if (type < FULL || type > REMOVE || length < 0 || payload + length > buffer.limit()
+                || crc(buffer, payload, length) != crc)
+            {
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer, payload, length));
+            String id = in.readUTF();
+            switch (type)
+            {
+                case FULL:
+                    put(id, new Entry(payload, length, in.readLong()));
+                    break;
+                case TOUCH:
+                    touch(id, in.readLong());
+                    break;
+                default:
+                    remove(id);
+            }
+            position = payload + length;
+        }
+        return position;
+    }
+
+    private void put(String id, Entry entry)
+    {
+        Entry previous = index.put(id, entry);
+        if (previous != null)
+        {
+            liveBytes -= RECORD_HEADER + previous.length;
+        }
+        liveBytes += RECORD_HEADER + entry.length;
+    }
+
+    private void touch(String id, long expiration)
+    {
+        Entry entry = index.get(id);
+        if (entry != null)
+        {
+            entry.expiration = expiration;
+        }
+    }
+
+    private void remove(String id)
+    {
+        Entry previous = index.remove(id);
+        if (previous != null)
+        {
+            liveBytes -= RECORD_HEADER + previous.length;
+        }
+    }
+
+    /**
+     * Appends a batch with a single write and applies it to the index.
+     */
+    synchronized void write(Batch batch) throws IOException
+    {
+        if (batch.isEmpty())
+        {
+            return;
+        }
+        long base = size;
+        ByteBuffer buffer = ByteBuffer.wrap(batch.bytes.toByteArray());
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer, size + buffer.position());
+        }
+        size += buffer.limit();
+        for (Map.Entry<String, Object> update : batch.updates.entrySet())
+        {
+            Object value = update.getValue();
+            if (value == REMOVED)
+            {
+                remove(update.getKey());
+            }
+            else if (value instanceof Entry)
+            {
+                Entry entry = (Entry) value;
+                Entry positioned = new Entry(base + entry.position, entry.length, entry.recordedExpiration);
+                positioned.expiration = entry.expiration;
+                put(update.getKey(), positioned);
+            }
+            else
+            {
+                touch(update.getKey(), (Long) value);
+            }
+        }
+    }
+
+    synchronized void sync() throws IOException
+    {
+        channel.force(false);
+    }
+
+    boolean contains(String id)
+    {
+        return index.containsKey(id);
+    }
+
+    Entry entry(String id)
+    {
+        return index.get(id);
+    }
+
+    Map<String, Entry> entries()
+    {
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Deserializes the attributes of the latest full record of a session, or returns null if it is not in the log.
+     */
+    Map<String, Object> read(String id, ClassLoader classLoader) throws IOException, ClassNotFoundException
+    {
+        byte[] payload;
+        synchronized (this)
+        {
+            Entry entry = index.get(id);
+            if (entry == null)
+            {
+                return null;
+            }
+            payload = new byte[entry.length];
+            if (mapped != null && entry.position + entry.length <= mapped.limit())
+            {
+                ByteBuffer view = mapped.duplicate();
+                view.position((int) entry.position);
+                view.get(payload);
+            }
+            else
+            {
+                ByteBuffer buffer = ByteBuffer.wrap(payload);
+                while (buffer.hasRemaining())
+                {
+                    if (channel.read(buffer, entry.position + buffer.position()) < 0)
+                    {
+                        throw new IOException("Session log " + file(generation) + " is truncated");
+                    }
+                }
+            }
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        in.readUTF();
+        in.readLong();
+        int count = in.readInt();
+        Map<String, Object> attributes = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++)
+        {
+            String attribute = in.readUTF();
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            try (ObjectInputStream objects = new ClassLoaderObjectInputStream(new ByteArrayInputStream(value),
+                classLoader))
+            {
+                attributes.put(attribute, objects.readObject());
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Rewrites the live, unexpired records into a new generation of the log if the current file is larger than
+     * {@code ratio} times the live records and at least {@code minimumSize} bytes.
+     *
+     * @return true if the log was compacted
+     */
+    synchronized boolean compactIfNeeded(double ratio, long minimumSize) throws IOException
+    {
+        if (size < minimumSize || size <= ratio * liveBytes)
+        {
+            return false;
+        }
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        File next = file(generation + 1);
+        File temporary = new File(directory, next.getName() + ".tmp");
+        Map<String, Entry> compacted = new HashMap<>();
+        long compactedSize = FILE_HEADER;
+        long compactedLive = 0;
+        try (FileChannel out = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            writeFileHeader(out);
+            Batch touches = new Batch();
+            for (Map.Entry<String, Entry> live : index.entrySet())
+            {
+                Entry entry = live.getValue();
+                if (entry.expiration <= now)
+                {
+                    continue;
+                }
+                long recordStart = entry.position - RECORD_HEADER;
+                long transferred = 0;
+                while (transferred < RECORD_HEADER + entry.length)
+                {
+                    transferred += channel.transferTo(recordStart + transferred,
+                        RECORD_HEADER + entry.length - transferred, out);
+                }
+                Entry copy = new Entry(compactedSize + RECORD_HEADER, entry.length, entry.recordedExpiration);
+                copy.expiration = entry.expiration;
+                compacted.put(live.getKey(), copy);
+                compactedSize += RECORD_HEADER + entry.length;
+                compactedLive += RECORD_HEADER + entry.length;
+                if (entry.expiration != entry.recordedExpiration)
+                {
+                    touches.touch(live.getKey(), entry.expiration);
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(touches.bytes.toByteArray());
+            while (buffer.hasRemaining())
+            {
+                compactedSize += out.write(buffer, compactedSize);
+            }
+            out.force(true);
+        }
+        catch (IOException e)
+        {
+            temporary.delete();
+            throw e;
+        }
+        if (!temporary.renameTo(next))
+        {
+            temporary.delete();
+            throw new IOException("Could not rename " + temporary + " to " + next);
+        }
+        FileChannel previous = channel;
+        File previousFile = file(generation);
+        long previousSize = size;
+        channel = FileChannel.open(next.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        generation++;
+        mapped = null;
+        index.clear();
+        index.putAll(compacted);
+        size = compactedSize;
+        liveBytes = compactedLive;
+        compactions++;
+        previous.close();
+        if (!previousFile.delete())
+        {
+            // still mapped on Windows, open() deletes it next time
+            logger.debugf("Could not delete %s after compaction", previousFile);
+        }
+        logger.debugf("Compacted session log %s from %d to %d bytes in %d ms", name, previousSize, size,
+            (System.nanoTime() - start) / 1000000);
+        return true;
+    }
+
+    synchronized void close() throws IOException
+    {
+        mapped = null;
+        if (channel != null)
+        {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Closes the log and deletes all its files.
+     */
+    synchronized void delete() throws IOException
+    {
+        close();
+        index.clear();
+        liveBytes = 0;
+        size = 0;
+        deleteGenerationsBefore(Integer.MAX_VALUE);
+    }
+
+    synchronized long size()
+    {
+        return size;
+    }
+
+    synchronized long liveBytes()
+    {
+        return liveBytes;
+    }
+
+    long restoreNanos()
+    {
+        return restoreNanos;
+    }
+
+    int compactions()
+    {
+        return compactions;
+    }
+
+    File file(int generation)
+    {
+        return new File(directory, name + "." + generation + EXTENSION);
+    }
+
+    private int newestGeneration()
+    {
+        int newest = 0;
+        for (File file : generationFiles())
+        {
+            newest = Math.max(newest, generationOf(file));
+        }
+        return newest;
+    }
+
+    private void deleteGenerationsBefore(int generation)
+    {
+        for (File file : generationFiles())
+        {
+            if (generationOf(file) < generation && !file.delete())
+            {
+                logger.debugf("Could not delete old session log %s", file);
+            }
+        }
+    }
+
+    private File[] generationFiles()
+    {
+        File[] files = directory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String fileName)
+            {
+                return fileName.startsWith(name + ".") && fileName.endsWith(EXTENSION)
+                    && generationOf(new File(dir, fileName)) >= 0;
+            }
+        });
+        return files == null ? new File[0] : files;
+    }
+
+    private int generationOf(File file)
+    {
+        String fileName = file.getName();
+        try
+        {
+            return Integer.parseInt(fileName.substring(name.length() + 1, fileName.length() - EXTENSION.length()));
+        }
+        catch (NumberFormatException | IndexOutOfBoundsException e)
+        {
+            return -1;
+        }
+    }
+
+    private static void writeFileHeader(FileChannel channel) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        // a relative write, so that compaction's transfers follow the header
+        while (header.hasRemaining())
+        {
+            channel.write(header);
+        }
+    }
+
+    private static int crc(byte[] bytes, int offset, int length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length)
+    {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length).position(offset);
+        CRC32 crc = new CRC32();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private static final class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer, int offset, int length)
+        {
+            this.buffer = buffer.duplicate();
+            this.buffer.limit(offset + length).position(offset);
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if (!buffer.hasRemaining())
+            {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+    }
+
+    private static final class ClassLoaderObjectInputStream extends ObjectInputStream
+    {
+        private final ClassLoader classLoader;
+
+        ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException
+        {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException
+        {
+            try
+            {
+                return Class.forName(description.getName(), false, classLoader);
+            }
+            catch (ClassNotFoundException e)
+            {
+                return super.resolveClass(description);
+            }
+        }
+    }
+}
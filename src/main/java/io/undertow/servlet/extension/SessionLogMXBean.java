@@ -0,0 +1,46 @@
+package io.undertow.servlet.extension;
+
+/**
+ * Runtime metrics of a deployment's session log, registered as
+ * {@code org.wildfly.extension.undertow:type=SessionLog,name=<deployment>}.
+ */
+public interface SessionLogMXBean
+{
+    /**
+     * The size of the log file in bytes, including superseded records not yet compacted away.
+     */
+    long getLogSize();
+
+    /**
+     * The bytes of the latest record of each live session, what the log would be after a compaction.
+     */
+    long getLiveBytes();
+
+    int getLiveSessions();
+
+    /**
+     * How long opening the log and indexing its sessions took at deployment start.
+     */
+    long getRestoreTimeMillis();
+
+    /**
+     * The number of sessions in the log at deployment start that had not expired.
+     */
+    int getRestorableSessions();
+
+    /**
+     * The number of those sessions whose attributes have since been deserialized, on their first request.
+     */
+    long getRestoredSessions();
+
+    int getDirtySessions();
+
+    long getAppendedRecords();
+
+    int getCompactions();
+
+    /**
+     * How long the last background flush of dirty sessions took, including any compaction.
+     */
+    long getLastFlushMillis();
+}
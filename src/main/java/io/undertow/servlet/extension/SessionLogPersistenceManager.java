@@ -0,0 +1,488 @@
+package io.undertow.servlet.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.logging.Logger;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.session.Session;
+import io.undertow.server.session.SessionListener;
+import io.undertow.servlet.api.SessionPersistenceManager;
+
+/**
+ * A {@link SessionPersistenceManager} that keeps a deployment's sessions in a {@link SessionLog} while it runs, rather
+ * than serializing every session when the deployment stops and deserializing every one when it starts.
+ * <p>
+ * A {@link SessionListener} marks sessions dirty when they are created or an attribute is set or removed, and a
+ * background task appends the dirty sessions to the log every flush interval, compacting it when it has grown. When
+ * the deployment stops, {@link #persistSessions} appends a full snapshot of every live session: a change made to an
+ * attribute's value in place is not seen by the listener, and the shutdown is the last chance to record it.
+ * <p>
+ * When the deployment starts, {@link #loadSessionAttributes} only indexes the log. The attributes of each session are
+ * returned as a lazy map that is deserialized when Undertow restores the session, on the first request that carries
+ * its id; sessions that are never used again are never deserialized.
+ * <p>
+ * Between flushes, as with distributable sessions, a change made to an attribute's value in place is only appended once
+ * the attribute is set again, so a crash loses it; a clean shutdown does not.
+ */
+public class SessionLogPersistenceManager implements SessionPersistenceManager, SessionLogMXBean
+{
+    private static final Logger logger = Logger.getLogger(SessionLogPersistenceManager.class);
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "session-log-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private static final long MINIMUM_COMPACTION_SIZE = 1024 * 1024;
+
+    private final File directory;
+
+    private final long flushIntervalMillis;
+
+    private final double compactionRatio;
+
+    private final ConcurrentMap<String, Session> dirty = new ConcurrentHashMap<>();
+
+    private final Set<String> removed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // attribute values just deserialized for a restore, so that setting them on the new session is not a change
+    private final ConcurrentMap<String, Map<String, Object>> restoring = new ConcurrentHashMap<>();
+
+    private final SessionListener sessionListener = new DirtyTracker();
+
+    private final AtomicLong restored = new AtomicLong();
+
+    private final AtomicLong appended = new AtomicLong();
+
+    private volatile SessionLog log;
+
+    private volatile String deploymentName;
+
+    private volatile int restorable;
+
+    private volatile long lastFlushMillis;
+
+    private ScheduledFuture<?> flushTask;
+
+    public SessionLogPersistenceManager(File directory, long flushIntervalMillis, double compactionRatio)
+    {
+        this.directory = directory;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.compactionRatio = compactionRatio;
+    }
+
+    /**
+     * The listener that tracks dirty sessions; it must be added to the deployment's session listeners.
+     */
+    public SessionListener getSessionListener()
+    {
+        return sessionListener;
+    }
+
+    @Override
+    public Map<String, PersistentSession> loadSessionAttributes(final String deploymentName,
+        final ClassLoader classLoader)
+    {
+        this.deploymentName = deploymentName;
+        SessionLog sessionLog = new SessionLog(directory, fileName(deploymentName));
+        try
+        {
+            sessionLog.open();
+        }
+        catch (IOException e)
+        {
+            logger.errorf(e, "Could not open the session log of %s, its sessions are not restored", deploymentName);
+            try
+            {
+                sessionLog.delete();
+                sessionLog.open();
+            }
+            catch (IOException again)
+            {
+                logger.errorf(again, "Could not create a new session log for %s, sessions are not persisted",
+                    deploymentName);
+                return null;
+            }
+        }
+        log = sessionLog;
+
+        Map<String, PersistentSession> sessions = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, SessionLog.Entry> entry : sessionLog.entries().entrySet())
+        {
+            long expiration = entry.getValue().expiration;
+            if (expiration > now)
+            {
+                sessions.put(entry.getKey(),
+                    new PersistentSession(new Date(expiration), new LazyAttributes(entry.getKey(), classLoader)));
+            }
+        }
+        restorable = sessions.size();
+        logger.infof("Indexed %d restorable sessions of %s from a %d KiB session log in %d ms", sessions.size(),
+            deploymentName, sessionLog.size() / 1024, getRestoreTimeMillis());
+
+        UndertowMXBeans.register("SessionLog", deploymentName, this);
+        synchronized (this)
+        {
+            flushTask = FLUSHER.scheduleWithFixedDelay(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    flush();
+                }
+            }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return sessions;
+    }
+
+    @Override
+    public void persistSessions(final String deploymentName, final Map<String, PersistentSession> sessionData)
+    {
+        synchronized (this)
+        {
+            if (flushTask != null)
+            {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+        }
+        SessionLog sessionLog = log;
+        if (sessionLog == null)
+        {
+            return;
+        }
+        long start = System.nanoTime();
+        try
+        {
+            // serialized with the flusher, which may be part way through a run
+            synchronized (sessionLog)
+            {
+                // every session in full, whether or not the listener saw it change
+                SessionLog.Batch batch = new SessionLog.Batch();
+                for (Map.Entry<String, PersistentSession> session : sessionData.entrySet())
+                {
+                    batch.full(session.getKey(), session.getValue().getExpiration().getTime(),
+                        session.getValue().getSessionData());
+                }
+                for (String id : removed)
+                {
+                    if (!sessionData.containsKey(id))
+                    {
+                        batch.remove(id);
+                    }
+                }
+                dirty.clear();
+                removed.clear();
+                sessionLog.write(batch);
+                sessionLog.compactIfNeeded(compactionRatio, MINIMUM_COMPACTION_SIZE);
+                sessionLog.sync();
+                appended.addAndGet(batch.size());
+                logger.infof("Persisted %d sessions of %s in %d ms", sessionData.size(), deploymentName,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+        catch (IOException e)
+        {
+            logger.errorf(e, "Could not persist the sessions of %s", deploymentName);
+        }
+        finally
+        {
+            closeLog(sessionLog);
+            UndertowMXBeans.unregister("SessionLog", deploymentName);
+        }
+    }
+
+    @Override
+    public void clear(final String deploymentName)
+    {
+        SessionLog sessionLog = log;
+        if (sessionLog == null)
+        {
+            sessionLog = new SessionLog(directory, fileName(deploymentName));
+        }
+        try
+        {
+            sessionLog.delete();
+        }
+        catch (IOException e)
+        {
+            logger.warnf(e, "Could not delete the session log of %s", deploymentName);
+        }
+    }
+
+    /**
+     * Appends the sessions changed since the last flush, then compacts the log if it has grown enough.
+     */
+    void flush()
+    {
+        SessionLog sessionLog = log;
+        if (sessionLog == null)
+        {
+            return;
+        }
+        long start = System.nanoTime();
+        restoring.clear();
+        try
+        {
+            synchronized (sessionLog)
+            {
+                SessionLog.Batch batch = new SessionLog.Batch();
+                for (String id : removed)
+                {
+                    removed.remove(id);
+                    batch.remove(id);
+                }
+                for (String id : dirty.keySet())
+                {
+                    Session session = dirty.remove(id);
+                    if (session != null)
+                    {
+                        snapshot(session, batch);
+                    }
+                }
+                sessionLog.write(batch);
+                appended.addAndGet(batch.size());
+                sessionLog.compactIfNeeded(compactionRatio, MINIMUM_COMPACTION_SIZE);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.warnf(e, "Could not append to the session log of %s", deploymentName);
+        }
+        lastFlushMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static void snapshot(Session session, SessionLog.Batch batch) throws IOException
+    {
+        Map<String, Object> attributes = new HashMap<>();
+        long expiration;
+        try
+        {
+            for (String name : session.getAttributeNames())
+            {
+                Object value = session.getAttribute(name);
+                if (value != null)
+                {
+                    attributes.put(name, value);
+                }
+            }
+            int maxInactive = session.getMaxInactiveInterval();
+            expiration = maxInactive > 0 ? session.getLastAccessedTime() + maxInactive * 1000L : Long.MAX_VALUE;
+        }
+        catch (IllegalStateException e)
+        {
+            // invalidated since it was changed, the listener has queued its removal
+            return;
+        }
+        batch.full(session.getId(), expiration, attributes);
+    }
+
+    private static void closeLog(SessionLog sessionLog)
+    {
+        try
+        {
+            sessionLog.close();
+        }
+        catch (IOException e)
+        {
+            logger.debugf(e, "Could not close session log");
+        }
+    }
+
+    private static String fileName(String deploymentName)
+    {
+        return deploymentName.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    @Override
+    public long getLogSize()
+    {
+        SessionLog sessionLog = log;
+        return sessionLog == null ? 0 : sessionLog.size();
+    }
+
+    @Override
+    public long getLiveBytes()
+    {
+        SessionLog sessionLog = log;
+        return sessionLog == null ? 0 : sessionLog.liveBytes();
+    }
+
+    @Override
+    public int getLiveSessions()
+    {
+        SessionLog sessionLog = log;
+        return sessionLog == null ? 0 : sessionLog.entries().size();
+    }
+
+    @Override
+    public long getRestoreTimeMillis()
+    {
+        SessionLog sessionLog = log;
+        return sessionLog == null ? 0 : TimeUnit.NANOSECONDS.toMillis(sessionLog.restoreNanos());
+    }
+
+    @Override
+    public int getRestorableSessions()
+    {
+        return restorable;
+    }
+
+    @Override
+    public long getRestoredSessions()
+    {
+        return restored.get();
+    }
+
+    @Override
+    public int getDirtySessions()
+    {
+        return dirty.size();
+    }
+
+    @Override
+    public long getAppendedRecords()
+    {
+        return appended.get();
+    }
+
+    @Override
+    public int getCompactions()
+    {
+        SessionLog sessionLog = log;
+        return sessionLog == null ? 0 : sessionLog.compactions();
+    }
+
+    @Override
+    public long getLastFlushMillis()
+    {
+        return lastFlushMillis;
+    }
+
+    /**
+     * The attributes of a logged session, deserialized the first time they are read.
+     */
+    private final class LazyAttributes extends AbstractMap<String, Object>
+    {
+        private final String id;
+
+        private final ClassLoader classLoader;
+
+        private Map<String, Object> attributes;
+
+        LazyAttributes(String id, ClassLoader classLoader)
+        {
+            this.id = id;
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        public synchronized Set<Map.Entry<String, Object>> entrySet()
+        {
+            if (attributes == null)
+            {
+                attributes = Collections.emptyMap();
+                try
+                {
+                    Map<String, Object> read = log.read(id, classLoader);
+                    if (read != null)
+                    {
+                        attributes = read;
+                        restoring.put(id, read);
+                        restored.incrementAndGet();
+                    }
+                }
+                catch (IOException | ClassNotFoundException | RuntimeException e)
+                {
+                    logger.warnf(e, "Could not restore session %s of %s", id, deploymentName);
+                }
+            }
+            return attributes.entrySet();
+        }
+    }
+
+    private final class DirtyTracker implements SessionListener
+    {
+        @Override
+        public void sessionCreated(Session session, HttpServerExchange exchange)
+        {
+            SessionLog sessionLog = log;
+            // a session created to restore a logged one is only dirty once something changes
+            if (sessionLog == null || !sessionLog.contains(session.getId()))
+            {
+                dirty.put(session.getId(), session);
+            }
+        }
+
+        @Override
+        public void sessionDestroyed(Session session, HttpServerExchange exchange, SessionDestroyedReason reason)
+        {
+            dirty.remove(session.getId());
+            // sessions destroyed by the undeployment are the ones being persisted
+            if (reason != SessionDestroyedReason.UNDEPLOY)
+            {
+                removed.add(session.getId());
+            }
+        }
+
+        @Override
+        public void attributeAdded(Session session, String name, Object value)
+        {
+            changed(session, name, value);
+        }
+
+        @Override
+        public void attributeUpdated(Session session, String name, Object newValue, Object oldValue)
+        {
+            changed(session, name, newValue);
+        }
+
+        @Override
+        public void attributeRemoved(Session session, String name, Object oldValue)
+        {
+            dirty.put(session.getId(), session);
+        }
+
+        @Override
+        public void sessionIdChanged(Session session, String oldSessionId)
+        {
+            dirty.remove(oldSessionId);
+            removed.add(oldSessionId);
+            dirty.put(session.getId(), session);
+        }
+
+        private void changed(Session session, String name, Object value)
+        {
+            Map<String, Object> restoredValues = restoring.get(session.getId());
+            if (restoredValues == null || restoredValues.get(name) != value)
+            {
+                dirty.put(session.getId(), session);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.undertow.servlet.extension;
+
+import java.io.File;
+
+import javax.servlet.ServletContext;
+
+import org.jboss.logging.Logger;
+
+import io.undertow.servlet.ServletExtension;
+import io.undertow.servlet.api.DeploymentInfo;
+
+/**
+ * Replaces the session persistence of deployments that have persistent sessions with an incremental
+ * {@link SessionLogPersistenceManager}.
+ * <p>
+ * One is created for each servlet container whose persistent-sessions setting has {@code session-log="true"}, and
+ * added to the deployments of that container only. Deployments without persistent sessions are left alone.
+ */
+public class SessionLogServletExtension implements ServletExtension
+{
+    private static final Logger logger = Logger.getLogger(SessionLogServletExtension.class);
+
+    private final File directory;
+
+    private final long flushIntervalMillis;
+
+    private final double compactionRatio;
+
+    /**
+     * Keeps the persistent sessions of deployments in session logs in {@code directory}.
+     *
+     * @param flushIntervalMillis how often dirty sessions are appended to the log
+     * @param compactionRatio the log is compacted once it is this many times larger than its live sessions
+     */
+    public SessionLogServletExtension(File directory, long flushIntervalMillis, double compactionRatio)
+    {
+        this.directory = directory;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.compactionRatio = compactionRatio;
+    }
+
+    @Override
+    public void handleDeployment(final DeploymentInfo deploymentInfo, final ServletContext servletContext)
+    {
+        if (deploymentInfo.getSessionPersistenceManager() == null)
+        {
+            logger.debugf("Deployment %s does not persist sessions, not adding a session log",
+                deploymentInfo.getDeploymentName());
+            return;
+        }
+        SessionLogPersistenceManager manager = new SessionLogPersistenceManager(directory, flushIntervalMillis,
+            compactionRatio);
+        deploymentInfo.setSessionPersistenceManager(manager);
+        deploymentInfo.addSessionListener(manager.getSessionListener());
+        logger.debugf("Sessions of deployment %s are persisted to a session log in %s",
+            deploymentInfo.getDeploymentName(), directory);
+    }
+}
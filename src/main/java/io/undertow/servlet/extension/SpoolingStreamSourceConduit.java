@@ -0,0 +1,266 @@
+package io.undertow.servlet.extension;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSinkChannel;
+import org.xnio.conduits.AbstractStreamSourceConduit;
+import org.xnio.conduits.StreamSourceConduit;
+
+/**
+ * A request body conduit that first moves the whole body into a temp file through the next conduit's
+ * {@link StreamSourceConduit#transferTo(long, long, FileChannel)}, then serves reads from the file.
+ * <p>
+ * Spooling makes progress on every read: each call transfers whatever has arrived and returns 0 until the body is
+ * complete, so a blocking reader waits in {@link #awaitReadable} and a non-blocking one for its read listener, exactly
+ * as they would for the network. Because every transfer goes through the next conduit, a zero-read guard below this
+ * conduit sees the spooling the way it sees ordinary reads.
+ * <p>
+ * The body is complete when the expected length has been read, or, without one, when the next conduit reports the end
+ * of the stream; an end of the stream before the expected length fails the read. The file is closed and deleted by
+ * {@link #close}.
+ */
+class SpoolingStreamSourceConduit extends AbstractStreamSourceConduit<StreamSourceConduit>
+{
+    private final Path directory;
+
+    private final long expectedLength;
+
+    private final UploadSpoolingHandler metrics;
+
+    private Path path;
+
+    private FileChannel file;
+
+    private long spooled;
+
+    private long readPosition;
+
+    private boolean complete;
+
+    private boolean closed;
+
+    SpoolingStreamSourceConduit(StreamSourceConduit next, Path directory, long expectedLength,
+            UploadSpoolingHandler metrics)
+    {
+        super(next);
+        this.directory = directory;
+        this.expectedLength = expectedLength;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Transfers what has arrived of the body to the file.
+     *
+     * @return true once the whole body is in the file
+     */
+    boolean spool() throws IOException
+    {
+        if (complete)
+        {
+            return true;
+        }
+        if (closed)
+        {
+            throw new IOException("Upload spool already closed");
+        }
+        if (file == null)
+        {
+            path = Files.createTempFile(directory, "upload-", ".spool");
+            file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            metrics.spoolStarted();
+        }
+        while (true)
+        {
+            long remaining = expectedLength < 0 ? Long.MAX_VALUE : expectedLength - spooled;
+            long transferred = remaining == 0 ? -1 : next.transferTo(spooled, remaining, file);
+            if (transferred > 0)
+            {
+                spooled += transferred;
+            }
+            else if (transferred < 0)
+            {
+                if (expectedLength >= 0 && spooled < expectedLength)
+                {
+                    // the client went away mid-upload; the servlet must not take a truncated body for the whole one
+                    throw new IOException("Upload ended after " + spooled + " of " + expectedLength + " bytes");
+                }
+                complete = true;
+                metrics.spoolCompleted(spooled);
+                return true;
+            }
+            else
+            {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the temp file, once spooling has started
+     */
+    Path getPath()
+    {
+        return path;
+    }
+
+    long getSpooledBytes()
+    {
+        return spooled;
+    }
+
+    /**
+     * Closes and deletes the temp file.
+     */
+    void close()
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        if (file != null)
+        {
+            IoUtils.safeClose(file);
+            try
+            {
+                Files.deleteIfExists(path);
+            }
+            catch (IOException e)
+            {
+                path.toFile().deleteOnExit();
+            }
+            metrics.spoolClosed(complete);
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException
+    {
+        if (!spool())
+        {
+            return 0;
+        }
+        if (readPosition >= spooled)
+        {
+            return -1;
+        }
+        if (dst.remaining() > spooled - readPosition)
+        {
+            ByteBuffer slice = dst.duplicate();
+            slice.limit(slice.position() + (int) (spooled - readPosition));
+            int read = file.read(slice, readPosition);
+            dst.position(slice.position());
+            readPosition += read;
+            return read;
+        }
+        int read = file.read(dst, readPosition);
+        readPosition += read;
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offs, int len) throws IOException
+    {
+        long read = 0;
+        for (int i = offs; i < offs + len; i++)
+        {
+            if (!dsts[i].hasRemaining())
+            {
+                continue;
+            }
+            int n = read(dsts[i]);
+            if (n <= 0)
+            {
+                return read == 0 ? n : read;
+            }
+            read += n;
+            if (dsts[i].hasRemaining())
+            {
+                break;
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public long transferTo(long position, long count, FileChannel target) throws IOException
+    {
+        if (!spool())
+        {
+            return 0;
+        }
+        if (readPosition >= spooled)
+        {
+            return -1;
+        }
+        // file to file, which the JDK can hand to the kernel
+        file.position(readPosition);
+        long transferred = target.transferFrom(file, position, Math.min(count, spooled - readPosition));
+        readPosition += transferred;
+        return transferred;
+    }
+
+    @Override
+    public long transferTo(long count, ByteBuffer throughBuffer, StreamSinkChannel target) throws IOException
+    {
+        throughBuffer.clear();
+        if (count < throughBuffer.remaining())
+        {
+            throughBuffer.limit((int) count);
+        }
+        int read = read(throughBuffer);
+        throughBuffer.flip();
+        if (read <= 0)
+        {
+            return read;
+        }
+        target.write(throughBuffer);
+        return read;
+    }
+
+    @Override
+    public void terminateReads() throws IOException
+    {
+        close();
+        next.terminateReads();
+    }
+
+    @Override
+    public void resumeReads()
+    {
+        if (complete)
+        {
+            // nothing more will arrive from the network, the rest is in the file
+            next.wakeupReads();
+        }
+        else
+        {
+            next.resumeReads();
+        }
+    }
+
+    @Override
+    public void awaitReadable() throws IOException
+    {
+        if (!complete)
+        {
+            next.awaitReadable();
+        }
+    }
+
+    @Override
+    public void awaitReadable(long time, TimeUnit timeUnit) throws IOException
+    {
+        if (!complete)
+        {
+            next.awaitReadable(time, timeUnit);
+        }
+    }
+}
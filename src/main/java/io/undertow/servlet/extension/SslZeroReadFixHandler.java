@@ -6,6 +6,7 @@ import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 import org.jboss.logging.Logger;
+import org.wildfly.extension.undertow.UndertowEvents;
 import org.xnio.channels.StreamSinkChannel;
 import org.xnio.conduits.AbstractStreamSourceConduit;
 import org.xnio.conduits.StreamSourceConduit;
@@ -186,6 +187,10 @@ public class SslZeroReadFixHandler implements HttpHandler
             else if (ret == 0)
             {
                 this.zeroCount++;
+                if (zeroCount == MAX_ZERO_READ_COUNT)
+                {
+                    UndertowEvents.zeroReadStreak(exchange, zeroCount, nowTime - lastNonZeroTime);
+                }
 
                 // we have the possibility of the bug, i.e. a zero read, do the test to see if will to terminate the
                 // reads...
@@ -195,6 +200,7 @@ public class SslZeroReadFixHandler implements HttpHandler
                     try
                     {
                         logHelper(LOG_HELPER.LOG_TERMINATE_READS, zeroCount, exchange);
+                        UndertowEvents.zeroReadTermination(exchange, zeroCount, nowTime - lastNonZeroTime);
                         terminateReads();
                     }
                     catch (IOException e)
@@ -0,0 +1,144 @@
+package io.undertow.servlet.extension;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xnio.conduits.StreamSourceConduit;
+
+import io.undertow.UndertowOptions;
+import io.undertow.server.ConduitWrapper;
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.ConduitFactory;
+
+/**
+ * Wraps the request channel of large uploads in a {@link SpoolingStreamSourceConduit}, so that the body moves from
+ * the connection to a temp file through {@code transferTo} before the servlet reads it, and removes the file when the
+ * exchange completes.
+ * <p>
+ * Only bodies with a Content-Length above the threshold are spooled. Undertow may already have read bodies up to the
+ * listener's max-buffered-request-size into memory, so the threshold is never taken below it, and a body that is
+ * already complete is left alone.
+ *
+ * @see UploadSpoolingServletExtension
+ */
+class UploadSpoolingHandler implements HttpHandler, UploadSpoolingMXBean
+{
+    private static final int DEFAULT_MAX_BUFFERED_REQUEST_SIZE = 16384;
+
+    private final HttpHandler next;
+
+    private final long threshold;
+
+    private final Path directory;
+
+    private final LongAdder spooledCount = new LongAdder();
+
+    private final LongAdder spooledBytes = new LongAdder();
+
+    private final LongAdder failedCount = new LongAdder();
+
+    private final AtomicInteger activeSpools = new AtomicInteger();
+
+    UploadSpoolingHandler(HttpHandler next, long threshold, Path directory)
+    {
+        this.next = next;
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception
+    {
+        final long length = exchange.getRequestContentLength();
+        if (!exchange.isRequestComplete() && length > threshold && length > exchange.getConnection()
+                .getUndertowOptions().get(UndertowOptions.MAX_BUFFERED_REQUEST_SIZE, DEFAULT_MAX_BUFFERED_REQUEST_SIZE))
+        {
+            exchange.addRequestWrapper(new ConduitWrapper<StreamSourceConduit>()
+            {
+                @Override
+                public StreamSourceConduit wrap(ConduitFactory<StreamSourceConduit> factory,
+                        HttpServerExchange exchange)
+                {
+                    final SpoolingStreamSourceConduit conduit = new SpoolingStreamSourceConduit(factory.create(),
+                        directory, length, UploadSpoolingHandler.this);
+                    exchange.addExchangeCompleteListener(new ExchangeCompletionListener()
+                    {
+                        @Override
+                        public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener)
+                        {
+                            try
+                            {
+                                conduit.close();
+                            }
+                            finally
+                            {
+                                nextListener.proceed();
+                            }
+                        }
+                    });
+                    return conduit;
+                }
+            });
+        }
+        next.handleRequest(exchange);
+    }
+
+    void spoolStarted()
+    {
+        activeSpools.incrementAndGet();
+    }
+
+    void spoolCompleted(long bytes)
+    {
+        spooledCount.increment();
+        spooledBytes.add(bytes);
+    }
+
+    void spoolClosed(boolean complete)
+    {
+        activeSpools.decrementAndGet();
+        if (!complete)
+        {
+            failedCount.increment();
+        }
+    }
+
+    @Override
+    public long getThresholdBytes()
+    {
+        return threshold;
+    }
+
+    @Override
+    public String getDirectory()
+    {
+        return directory.toString();
+    }
+
+    @Override
+    public long getSpooledCount()
+    {
+        return spooledCount.sum();
+    }
+
+    @Override
+    public long getSpooledBytes()
+    {
+        return spooledBytes.sum();
+    }
+
+    @Override
+    public int getActiveSpools()
+    {
+        return activeSpools.get();
+    }
+
+    @Override
+    public long getFailedCount()
+    {
+        return failedCount.sum();
+    }
+}
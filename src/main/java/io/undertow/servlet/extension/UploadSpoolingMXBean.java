@@ -0,0 +1,32 @@
+package io.undertow.servlet.extension;
+
+/**
+ * Metrics of a deployment's upload spooling, registered through
+ * {@link org.wildfly.extension.undertow.UndertowMXBeans} with type {@code UploadSpooling} and the deployment name.
+ */
+public interface UploadSpoolingMXBean
+{
+    /**
+     * @return the Content-Length above which a request body is spooled
+     */
+    long getThresholdBytes();
+
+    String getDirectory();
+
+    /**
+     * @return the number of bodies spooled completely
+     */
+    long getSpooledCount();
+
+    long getSpooledBytes();
+
+    /**
+     * @return the spool files currently on disk
+     */
+    int getActiveSpools();
+
+    /**
+     * @return the number of requests that ended before their body was spooled completely
+     */
+    long getFailedCount();
+}
@@ -0,0 +1,86 @@
+package io.undertow.servlet.extension;
+
+import java.nio.file.Path;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.jboss.logging.Logger;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+
+import io.undertow.server.HandlerWrapper;
+import io.undertow.server.HttpHandler;
+import io.undertow.servlet.ServletExtension;
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.ListenerInfo;
+import io.undertow.servlet.util.ImmediateInstanceFactory;
+
+/**
+ * Spools large request bodies, such as attachment uploads, to a temp file before the servlet reads them. The body
+ * goes from the connection to the file through the conduits' {@code transferTo(long, long, FileChannel)} instead of
+ * being copied through heap buffers by the servlet input stream, and the servlet then reads the file.
+ * <p>
+ * The spooling handler is added to the inner handler chain, which runs after the initial chain the
+ * {@link SslZeroReadFixServletExtension} adds its handler to, so its conduit wraps the zero-read fix conduit and every
+ * transfer to the file still goes through the fix.
+ * <p>
+ * A servlet container with the {@code upload-spooling} attribute adds one to the deployments of that container only,
+ * spooling the bodies above its {@code upload-spooling-threshold} - never less than the listener's
+ * max-buffered-request-size - to its {@code upload-spooling-directory}. The spooled counts are exposed as
+ * {@code org.wildfly.extension.undertow:type=UploadSpooling} MXBeans named after the deployments, for as long as they
+ * are deployed.
+ *
+ * @see SpoolingStreamSourceConduit
+ */
+public class UploadSpoolingServletExtension implements ServletExtension
+{
+    private static final Logger logger = Logger.getLogger(UploadSpoolingServletExtension.class);
+
+    private static final String MXBEAN_TYPE = "UploadSpooling";
+
+    private final long threshold;
+
+    private final Path directory;
+
+    /**
+     * @param threshold bodies with a Content-Length above this many bytes are spooled
+     * @param directory where the spool files go
+     */
+    public UploadSpoolingServletExtension(long threshold, Path directory)
+    {
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    @Override
+    public void handleDeployment(final DeploymentInfo deploymentInfo, final ServletContext servletContext)
+    {
+        final String name = deploymentInfo.getDeploymentName();
+        logger.debugf("Upload spooling above %d bytes to %s added to deployment %s", threshold, directory, name);
+        deploymentInfo.addInnerHandlerChainWrapper(new HandlerWrapper()
+        {
+            @Override
+            public HttpHandler wrap(final HttpHandler handler)
+            {
+                UploadSpoolingHandler spooling = new UploadSpoolingHandler(handler, threshold, directory);
+                UndertowMXBeans.register(MXBEAN_TYPE, name, spooling);
+                return spooling;
+            }
+        });
+        deploymentInfo.addListener(new ListenerInfo(ServletContextListener.class,
+            new ImmediateInstanceFactory<ServletContextListener>(new ServletContextListener()
+            {
+                @Override
+                public void contextInitialized(ServletContextEvent event)
+                {
+                }
+
+                @Override
+                public void contextDestroyed(ServletContextEvent event)
+                {
+                    UndertowMXBeans.unregister(MXBEAN_TYPE, name);
+                }
+            })));
+    }
+}
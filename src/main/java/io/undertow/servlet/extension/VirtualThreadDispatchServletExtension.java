@@ -0,0 +1,92 @@
+package io.undertow.servlet.extension;
+
+import java.time.Duration;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.jboss.logging.Logger;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+
+import io.undertow.servlet.ServletExtension;
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.ListenerInfo;
+import io.undertow.servlet.util.ImmediateInstanceFactory;
+
+/**
+ * Dispatches the requests of deployments to virtual threads instead of the XNIO worker's task pool, so that
+ * requests blocked in JDBC or remote calls no longer use up a bounded pool of platform threads. Undertow already
+ * dispatches servlet requests off the IO thread to the deployment's executor when it has one; this extension sets it,
+ * and the executor of {@code AsyncContext.start}, to a {@link VirtualThreadExecutor}.
+ * <p>
+ * Reading the request and writing the response still go through XNIO's blocking streams, which wait on their carrier
+ * thread, so the gain is for time spent blocked elsewhere.
+ * <p>
+ * A servlet container with the {@code virtual-threads} attribute adds one to the deployments of that container only;
+ * on JVMs without virtual threads (before Java 21) requests stay on the worker pool. Virtual threads blocked while
+ * pinned to their carrier for at least the container's {@code pinned-threshold} are counted; pinning is watched once
+ * per JVM, from the threshold of the first deployment that starts it. The in-flight and pinning counts are exposed as
+ * {@code org.wildfly.extension.undertow:type=VirtualThreadDispatch} MXBeans named after the deployments, for as long
+ * as they are deployed.
+ */
+public class VirtualThreadDispatchServletExtension implements ServletExtension
+{
+    private static final Logger logger = Logger.getLogger(VirtualThreadDispatchServletExtension.class);
+
+    private static final String MXBEAN_TYPE = "VirtualThreadDispatch";
+
+    private static boolean unsupportedLogged;
+
+    private final long pinnedThresholdMillis;
+
+    /**
+     * @param pinnedThresholdMillis virtual threads blocked while pinned to their carrier for at least this long are
+     *            counted
+     */
+    public VirtualThreadDispatchServletExtension(long pinnedThresholdMillis)
+    {
+        this.pinnedThresholdMillis = pinnedThresholdMillis;
+    }
+
+    @Override
+    public void handleDeployment(final DeploymentInfo deploymentInfo, final ServletContext servletContext)
+    {
+        VirtualThreadExecutor executor = VirtualThreadExecutor.create(deploymentInfo.getDeploymentName());
+        if (executor == null)
+        {
+            logUnsupported();
+            return;
+        }
+        deploymentInfo.setExecutor(executor);
+        deploymentInfo.setAsyncExecutor(executor);
+        VirtualThreadPinningMonitor.start(Duration.ofMillis(pinnedThresholdMillis));
+        final String name = deploymentInfo.getDeploymentName();
+        UndertowMXBeans.register(MXBEAN_TYPE, name, executor);
+        deploymentInfo.addListener(new ListenerInfo(ServletContextListener.class,
+            new ImmediateInstanceFactory<ServletContextListener>(new ServletContextListener()
+            {
+                @Override
+                public void contextInitialized(ServletContextEvent event)
+                {
+                }
+
+                @Override
+                public void contextDestroyed(ServletContextEvent event)
+                {
+                    UndertowMXBeans.unregister(MXBEAN_TYPE, name);
+                }
+            })));
+        logger.debugf("Requests of deployment %s are dispatched to virtual threads", deploymentInfo.getDeploymentName());
+    }
+
+    private static synchronized void logUnsupported()
+    {
+        if (!unsupportedLogged)
+        {
+            unsupportedLogged = true;
+            logger.infof("Java %s does not support virtual threads, requests stay on the worker thread pool",
+                System.getProperty("java.version"));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package io.undertow.servlet.extension;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Runs each task on a new virtual thread, counting the tasks in flight.
+ * <p>
+ * Virtual threads need Java 21, while this module is built for older JVMs, so the thread factory is looked up
+ * reflectively through {@code Thread.ofVirtual()}; {@link #create} returns {@code null} when the JVM has none.
+ */
+public class VirtualThreadExecutor implements Executor, VirtualThreadExecutorMXBean
+{
+    private static final Logger logger = Logger.getLogger(VirtualThreadExecutor.class);
+
+    private final String name;
+
+    private final ThreadFactory threadFactory;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private final LongAdder dispatched = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    VirtualThreadExecutor(final String name, final ThreadFactory threadFactory)
+    {
+        this.name = name;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * @return an executor whose threads are named after {@code name}, or {@code null} if the JVM does not support
+     * virtual threads
+     */
+    public static VirtualThreadExecutor create(final String name)
+    {
+        ThreadFactory factory = virtualThreadFactory(name + "-vt-");
+        return factory == null ? null : new VirtualThreadExecutor(name, factory);
+    }
+
+    static ThreadFactory virtualThreadFactory(final String prefix)
+    {
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            // the builder implementation is not exported, so its methods are called through the public interface
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        }
+        catch (NoSuchMethodException | ClassNotFoundException e)
+        {
+            return null;
+        }
+        catch (IllegalAccessException | InvocationTargetException e)
+        {
+            logger.debugf(e, "Could not create a virtual thread factory");
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(final Runnable task)
+    {
+        Thread thread = threadFactory.newThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    task.run();
+                }
+                finally
+                {
+                    inFlight.decrementAndGet();
+                }
+            }
+        });
+        int current = inFlight.incrementAndGet();
+        int peak;
+        while (current > (peak = peakInFlight.get()) && !peakInFlight.compareAndSet(peak, current))
+        {
+            // retry
+        }
+        dispatched.increment();
+        try
+        {
+            thread.start();
+        }
+        catch (RuntimeException | Error e)
+        {
+            inFlight.decrementAndGet();
+            failed.increment();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public int getInFlight()
+    {
+        return inFlight.get();
+    }
+
+    @Override
+    public int getPeakInFlight()
+    {
+        return peakInFlight.get();
+    }
+
+    @Override
+    public long getDispatchedCount()
+    {
+        return dispatched.sum();
+    }
+
+    @Override
+    public long getFailedStartCount()
+    {
+        return failed.sum();
+    }
+
+    @Override
+    public long getPinnedCount()
+    {
+        return VirtualThreadPinningMonitor.pinnedCount();
+    }
+
+    @Override
+    public long getPinnedMillis()
+    {
+        return VirtualThreadPinningMonitor.pinnedMillis();
+    }
+}
@@ -0,0 +1,36 @@
+package io.undertow.servlet.extension;
+
+/**
+ * Metrics of the virtual threads a deployment's requests are dispatched to, registered through
+ * {@link org.wildfly.extension.undertow.UndertowMXBeans} with type {@code VirtualThreadDispatch} and the deployment
+ * name.
+ */
+public interface VirtualThreadExecutorMXBean
+{
+    String getName();
+
+    /**
+     * @return the virtual threads started for requests that have not finished yet
+     */
+    int getInFlight();
+
+    int getPeakInFlight();
+
+    long getDispatchedCount();
+
+    /**
+     * @return the number of requests whose virtual thread could not be started
+     */
+    long getFailedStartCount();
+
+    /**
+     * @return the number of times a virtual thread blocked while pinned to its carrier, across the whole JVM, or 0 if
+     * the JVM cannot report it
+     */
+    long getPinnedCount();
+
+    /**
+     * @return the total time virtual threads spent blocked while pinned, across the whole JVM
+     */
+    long getPinnedMillis();
+}
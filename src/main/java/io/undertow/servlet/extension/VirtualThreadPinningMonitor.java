@@ -0,0 +1,89 @@
+package io.undertow.servlet.extension;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Counts the JVM's {@code jdk.VirtualThreadPinned} JFR events - a virtual thread that blocked while pinned to its
+ * carrier, typically inside a {@code synchronized} block, and so held the carrier for the whole wait - through a JFR
+ * recording stream that runs for the life of the JVM.
+ * <p>
+ * Like the thread factory in {@link VirtualThreadExecutor}, the stream is set up reflectively as it needs a newer JVM
+ * than this module is built for.
+ */
+final class VirtualThreadPinningMonitor
+{
+    private static final Logger logger = Logger.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final LongAdder pinned = new LongAdder();
+
+    private static final LongAdder pinnedNanos = new LongAdder();
+
+    private static Object stream;
+
+    private VirtualThreadPinningMonitor()
+    {
+    }
+
+    /**
+     * Starts counting pinning events that last at least {@code threshold}, if it is not counting already.
+     *
+     * @return false if the JVM cannot stream JFR events
+     */
+    static synchronized boolean start(final Duration threshold)
+    {
+        if (stream != null)
+        {
+            return true;
+        }
+        try
+        {
+            Class<?> streamType = Class.forName("jdk.jfr.consumer.RecordingStream");
+            final Method getDuration = Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getDuration");
+            Object recording = streamType.getConstructor().newInstance();
+            Object settings = streamType.getMethod("enable", String.class).invoke(recording, PINNED_EVENT);
+            Class.forName("jdk.jfr.EventSettings").getMethod("withThreshold", Duration.class).invoke(settings, threshold);
+            streamType.getMethod("onEvent", String.class, Consumer.class).invoke(recording, PINNED_EVENT,
+                new Consumer<Object>()
+                {
+                    @Override
+                    public void accept(final Object event)
+                    {
+                        pinned.increment();
+                        try
+                        {
+                            pinnedNanos.add(((Duration) getDuration.invoke(event)).toNanos());
+                        }
+                        catch (ReflectiveOperationException e)
+                        {
+                            // counted without its duration
+                        }
+                    }
+                });
+            streamType.getMethod("startAsync").invoke(recording);
+            stream = recording;
+            return true;
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            logger.debugf(e, "Could not stream %s events, virtual thread pinning is not counted", PINNED_EVENT);
+            return false;
+        }
+    }
+
+    static long pinnedCount()
+    {
+        return pinned.sum();
+    }
+
+    static long pinnedMillis()
+    {
+        return pinnedNanos.sum() / 1000000;
+    }
+}
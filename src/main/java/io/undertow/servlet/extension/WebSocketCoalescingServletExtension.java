@@ -0,0 +1,51 @@
+package io.undertow.servlet.extension;
+
+import javax.servlet.ServletContext;
+
+import org.jboss.logging.Logger;
+import org.wildfly.extension.undertow.filters.WebSocketCoalescingHandler;
+
+import io.undertow.server.HandlerWrapper;
+import io.undertow.server.HttpHandler;
+import io.undertow.servlet.ServletExtension;
+import io.undertow.servlet.api.DeploymentInfo;
+
+/**
+ * Coalesces the frames written to the websocket connections of deployments, see {@link WebSocketCoalescingHandler}.
+ * <p>
+ * One is created for each servlet container whose websockets setting has a {@code coalescing-window}, and added to the
+ * deployments of that container only.
+ */
+public class WebSocketCoalescingServletExtension implements ServletExtension
+{
+    private static final Logger logger = Logger.getLogger(WebSocketCoalescingServletExtension.class);
+
+    private final long windowMicros;
+
+    private final int maxBatchSize;
+
+    /**
+     * @param windowMicros how long outgoing frames are held to be written together
+     * @param maxBatchSize bytes of held frames that are written at once without waiting for the window
+     */
+    public WebSocketCoalescingServletExtension(long windowMicros, int maxBatchSize)
+    {
+        this.windowMicros = windowMicros;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public void handleDeployment(final DeploymentInfo deploymentInfo, final ServletContext servletContext)
+    {
+        logger.debugf("Websocket frames of deployment %s are coalesced for %d microseconds",
+            deploymentInfo.getDeploymentName(), windowMicros);
+        deploymentInfo.addInitialHandlerChainWrapper(new HandlerWrapper()
+        {
+            @Override
+            public HttpHandler wrap(final HttpHandler handler)
+            {
+                return new WebSocketCoalescingHandler(handler, maxBatchSize, windowMicros);
+            }
+        });
+    }
+}
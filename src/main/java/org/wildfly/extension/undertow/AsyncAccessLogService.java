@@ -0,0 +1,106 @@
+package org.wildfly.extension.undertow;
+
+import java.io.File;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.accesslog.AccessLogHandler;
+import io.undertow.server.handlers.accesslog.AccessLogReceiver;
+import io.undertow.servlet.extension.AsyncAccessLog;
+import io.undertow.servlet.extension.AsyncAccessLogWriter;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+
+/**
+ * The access log service of a host whose access-log setting has {@code async="true"}. It is installed under the name
+ * of the upstream access log service, so the host wraps its root handler with it - and the deployments on the host,
+ * which depend on the host, start after it - in the same way; it only replaces the handler and the file writing.
+ * <p>
+ * The queue depth and drop counts of the log are exposed as the
+ * {@code org.wildfly.extension.undertow:type=AsyncAccessLog,name=<server>/<host>} MXBean.
+ */
+class AsyncAccessLogService extends AccessLogService {
+
+    private static final String MXBEAN_TYPE = "AsyncAccessLog";
+
+    private static final AccessLogReceiver UNUSED_RECEIVER = new AccessLogReceiver() {
+        @Override
+        public void logMessage(String message) {
+        }
+    };
+
+    private final String name;
+    private final String pattern;
+    private final File directory;
+    private final String prefix;
+    private final String suffix;
+    private final boolean rotate;
+    private final int bufferRecords;
+    private final AsyncAccessLogWriter.OverflowPolicy overflowPolicy;
+    private final boolean compressRotated;
+
+    private volatile AsyncAccessLog log;
+
+    AsyncAccessLogService(String serverName, String hostName, String pattern, File directory, String prefix,
+            String suffix, boolean rotate, int bufferRecords, AsyncAccessLogWriter.OverflowPolicy overflowPolicy,
+            boolean compressRotated) {
+        super(pattern, directory, prefix, suffix);
+        this.name = serverName + '/' + hostName;
+        this.pattern = pattern;
+        this.directory = directory;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.rotate = rotate;
+        this.bufferRecords = bufferRecords;
+        this.overflowPolicy = overflowPolicy;
+        this.compressRotated = compressRotated;
+    }
+
+    @Override
+    public void start(StartContext context) throws StartException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw UndertowMessages.MESSAGES.couldNotCreateLogDirectory(directory);
+        }
+        final AsyncAccessLog log;
+        try {
+            log = new AsyncAccessLog(pattern, bufferRecords, overflowPolicy, directory, prefix, suffix, rotate, compressRotated);
+        } catch (IllegalArgumentException e) {
+            throw new StartException("Invalid asynchronous access log of " + name, e);
+        }
+        log.start();
+        UndertowMXBeans.register(MXBEAN_TYPE, name, log.getMetrics());
+        this.log = log;
+    }
+
+    @Override
+    public void stop(StopContext context) {
+        UndertowMXBeans.unregister(MXBEAN_TYPE, name);
+        log.stop();
+        log = null;
+    }
+
+    @Override
+    protected AccessLogHandler configureAccessLogHandler(HttpHandler handler) {
+        return new AsyncHandler(handler, log);
+    }
+
+    /**
+     * The host only accepts an access log handler; this one hands every request to the asynchronous log instead of
+     * formatting it with the upstream pattern.
+     */
+    private static final class AsyncHandler extends AccessLogHandler {
+
+        private final HttpHandler handler;
+
+        AsyncHandler(HttpHandler next, AsyncAccessLog log) {
+            super(next, UNUSED_RECEIVER, "common", AsyncAccessLogService.class.getClassLoader());
+            this.handler = log.wrap(next);
+        }
+
+        @Override
+        public void handleRequest(HttpServerExchange exchange) throws Exception {
+            handler.handleRequest(exchange);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+/*
+ * Modified by IDBS to install the off-heap SlabBufferCache of a buffer cache with an eviction-policy.
+ */
+
+package org.wildfly.extension.undertow;
+
+import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.OP_ADDR;
+
+import java.util.List;
+
+import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceTarget;
+import org.wildfly.extension.undertow.handlers.SlabBufferCache;
+
+/**
+ * @author Stuart Douglas
+ */
+final class BufferCacheAdd extends AbstractAddStepHandler {
+
+    static final BufferCacheAdd INSTANCE = new BufferCacheAdd();
+
+    BufferCacheAdd() {
+    }
+
+    @Override
+    protected void populateModel(final ModelNode operation, final ModelNode model) throws OperationFailedException {
+        for (AttributeDefinition def : BufferCacheDefinition.INSTANCE.getAttributes()) {
+            def.validateAndSet(operation, model);
+        }
+    }
+
+    @Override
+    protected void performRuntime(final OperationContext context, final ModelNode operation, final ModelNode model, final ServiceVerificationHandler verificationHandler, final List<ServiceController<?>> newControllers) throws OperationFailedException {
+        final PathAddress address = PathAddress.pathAddress(operation.get(OP_ADDR));
+        final String name = address.getLastElement().getValue();
+
+        int bufferSize = BufferCacheDefinition.BUFFER_SIZE.resolveModelAttribute(context, model).asInt();
+        int buffersPerRegions = BufferCacheDefinition.BUFFERS_PER_REGION.resolveModelAttribute(context, model).asInt();
+        int maxRegions = BufferCacheDefinition.MAX_REGIONS.resolveModelAttribute(context, model).asInt();
+
+        final BufferCacheService service = new BufferCacheService(bufferSize, buffersPerRegions, maxRegions);
+        final ServiceTarget target = context.getServiceTarget();
+        final ServiceBuilder<?> builder = target.addService(BufferCacheService.SERVICE_NAME.append(name), service)
+                .setInitialMode(ServiceController.Mode.ON_DEMAND);
+
+        builder.addListener(verificationHandler);
+
+        final ServiceController<?> serviceController = builder.install();
+        if (newControllers != null) {
+            newControllers.add(serviceController);
+        }
+
+        ModelNode evictionPolicy = BufferCacheDefinition.EVICTION_POLICY.resolveModelAttribute(context, model);
+        if (evictionPolicy.isDefined()) {
+            SlabBufferCache.install(name, bufferSize, buffersPerRegions * maxRegions,
+                    SlabBufferCache.EvictionPolicy.forName(evictionPolicy.asString()));
+        } else {
+            SlabBufferCache.uninstall(name);
+        }
+    }
+
+    @Override
+    protected void rollbackRuntime(OperationContext context, ModelNode operation, ModelNode model, List<ServiceController<?>> controllers) {
+        super.rollbackRuntime(context, operation, model, controllers);
+        SlabBufferCache.uninstall(PathAddress.pathAddress(operation.get(OP_ADDR)).getLastElement().getValue());
+    }
+}
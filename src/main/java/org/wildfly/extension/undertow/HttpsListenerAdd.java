@@ -23,6 +23,12 @@
 /*
  * Modified by IDBS to enable the CERTIFICATE_FORWARDING and PROXY_ADDRESS_FORWARDING attributes
  * for the undertow https-listener. 2nd September 2014
+ *
+ * Modified by IDBS to resolve the TCP_NO_DELAY and CORK options of the https-listener.
+ *
+ * Modified by IDBS to pass the WARM_UP_HANDSHAKES attribute to the https-listener service.
+ *
+ * Modified by IDBS to pass the QUEUE_DEADLINE attribute to the https-listener service.
  */
 package org.wildfly.extension.undertow;
 
@@ -51,9 +57,13 @@ public class HttpsListenerAdd extends ListenerAdd {
         HttpsListenerResourceDefinition.VERIFY_CLIENT.resolveOption(context, model,builder);
         HttpsListenerResourceDefinition.ENABLED_CIPHER_SUITES.resolveOption(context, model, builder);
         HttpsListenerResourceDefinition.ENABLED_PROTOCOLS.resolveOption(context, model, builder);
+        HttpsListenerResourceDefinition.TCP_NO_DELAY.resolveOption(context, model, builder);
+        HttpsListenerResourceDefinition.CORK.resolveOption(context, model, builder);
         final boolean certificateForwarding = HttpListenerResourceDefinition.CERTIFICATE_FORWARDING.resolveModelAttribute(context, model).asBoolean();
         final boolean proxyAddressForwarding = HttpListenerResourceDefinition.PROXY_ADDRESS_FORWARDING.resolveModelAttribute(context, model).asBoolean();
-        return new HttpsListenerService(name, serverName, listenerOptions, builder.getMap(), certificateForwarding, proxyAddressForwarding);
+        final int warmUpHandshakes = HttpsListenerResourceDefinition.WARM_UP_HANDSHAKES.resolveModelAttribute(context, model).asInt();
+        final long queueDeadline = HttpsListenerResourceDefinition.QUEUE_DEADLINE.resolveModelAttribute(context, model).asLong();
+        return new HttpsListenerService(name, serverName, listenerOptions, builder.getMap(), certificateForwarding, proxyAddressForwarding, warmUpHandshakes, queueDeadline);
     }
 
     @Override
@@ -23,6 +23,12 @@
 /*
  * Modified by IDBS to enable the CERTIFICATE_FORWARDING and PROXY_ADDRESS_FORWARDING attributes
  * for the undertow https-listener. 2nd September 2014
+ *
+ * Modified by IDBS to add the TCP_NO_DELAY and CORK attributes to the https-listener.
+ *
+ * Modified by IDBS to add the WARM_UP_HANDSHAKES attribute to the https-listener.
+ *
+ * Modified by IDBS to add the QUEUE_DEADLINE attribute to the https-listener.
  */
 
 package org.wildfly.extension.undertow;
@@ -36,6 +42,8 @@ import org.jboss.as.controller.AttributeDefinition;
 import org.jboss.as.controller.SimpleAttributeDefinition;
 import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
 import org.jboss.as.controller.operations.validation.EnumValidator;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
 import org.jboss.as.controller.operations.validation.StringLengthValidator;
 import org.jboss.as.controller.registry.AttributeAccess;
 import org.jboss.dmr.ModelNode;
@@ -92,6 +100,44 @@ public class HttpsListenerResourceDefinition extends ListenerResourceDefinition
             .setAllowExpression(true)
             .build();
 
+    /*
+     * TCP options for the connections accepted by the listener, left to the XNIO defaults unless set
+     */
+    protected static final OptionAttributeDefinition TCP_NO_DELAY = OptionAttributeDefinition.builder("tcp-no-delay", Options.TCP_NODELAY)
+            .setAllowNull(true)
+            .setFlags(AttributeAccess.Flag.RESTART_ALL_SERVICES)
+            .setAllowExpression(true)
+            .build();
+
+    protected static final OptionAttributeDefinition CORK = OptionAttributeDefinition.builder("cork", Options.CORK)
+            .setAllowNull(true)
+            .setFlags(AttributeAccess.Flag.RESTART_ALL_SERVICES)
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * Number of in-memory TLS handshakes run against the listener's SSLContext before it starts accepting, see TlsWarmUp
+     */
+    protected static final SimpleAttributeDefinition WARM_UP_HANDSHAKES = new SimpleAttributeDefinitionBuilder("warm-up-handshakes", ModelType.INT)
+            .setAllowNull(true)
+            .setFlags(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .setDefaultValue(new ModelNode(0))
+            .setValidator(new IntRangeValidator(0, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * Milliseconds a request may wait for a worker thread before it is answered with a 503 instead, 0 for no limit;
+     * see QueueSojournHandler
+     */
+    protected static final SimpleAttributeDefinition QUEUE_DEADLINE = new SimpleAttributeDefinitionBuilder("queue-deadline", ModelType.LONG)
+            .setAllowNull(true)
+            .setFlags(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .setDefaultValue(new ModelNode(0L))
+            .setValidator(new LongRangeValidator(0, Long.MAX_VALUE, true, true))
+            .setAllowExpression(true)
+            .build();
+
 
     private HttpsListenerResourceDefinition() {
         super(UndertowExtension.HTTPS_LISTENER_PATH);
@@ -106,6 +152,10 @@ public class HttpsListenerResourceDefinition extends ListenerResourceDefinition
         res.add(ENABLED_PROTOCOLS);
         res.add(CERTIFICATE_FORWARDING);
         res.add(PROXY_ADDRESS_FORWARDING);
+        res.add(TCP_NO_DELAY);
+        res.add(CORK);
+        res.add(WARM_UP_HANDSHAKES);
+        res.add(QUEUE_DEADLINE);
         return res;
     }
 
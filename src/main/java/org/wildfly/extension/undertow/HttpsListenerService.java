@@ -23,14 +23,25 @@
 /*
  * Modified by IDBS to enable the CERTIFICATE_FORWARDING and PROXY_ADDRESS_FORWARDING attributes
  * for the undertow https-listener. 2nd September 2014
+ *
+ * Modified by IDBS to report the TCP_NO_DELAY and CORK options of the https-listener.
+ *
+ * Modified by IDBS to optionally warm up TLS before the https-listener starts accepting connections.
+ *
+ * Modified by IDBS to measure how long requests wait for a worker thread and drop those older than the queue-deadline.
+ *
+ * Modified by IDBS to emit flight recorder events for listener starts and stops, accepts and TLS handshakes.
  */
 
 package org.wildfly.extension.undertow;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLContext;
 
+import io.undertow.server.HandlerWrapper;
+import io.undertow.server.HttpHandler;
 import org.jboss.as.domain.management.SecurityRealm;
 import org.jboss.msc.value.InjectedValue;
 import org.xnio.ChannelListener;
@@ -55,10 +66,23 @@ public class HttpsListenerService extends HttpListenerService {
 
     private final InjectedValue<SecurityRealm> securityRealm = new InjectedValue<>();
     private volatile AcceptingChannel<SslConnection> sslServer;
+    private final int warmUpHandshakes;
     static final String PROTOCOL = "https";
 
-    public HttpsListenerService(final String name, String serverName, OptionMap listenerOptions, OptionMap socketOptions, boolean certificateForwarding, boolean proxyAddressForwarding) {
+    public HttpsListenerService(final String name, String serverName, OptionMap listenerOptions, OptionMap socketOptions, boolean certificateForwarding, boolean proxyAddressForwarding, int warmUpHandshakes, final long queueDeadline) {
         super(name, serverName, listenerOptions, socketOptions, certificateForwarding, proxyAddressForwarding);
+        this.warmUpHandshakes = warmUpHandshakes;
+        // added before the handler wrappers of ListenerAdd, so that the metrics handler wraps it
+        if (queueDeadline > 0) {
+            addWrapperHandler(new HandlerWrapper() {
+                @Override
+                public HttpHandler wrap(HttpHandler handler) {
+                    QueueSojournHandler sojournHandler = new QueueSojournHandler(handler, queueDeadline, TimeUnit.MILLISECONDS);
+                    UndertowMXBeans.register("listener-queue", name, sojournHandler);
+                    return sojournHandler;
+                }
+            });
+        }
     }
 
     @Override
@@ -71,10 +95,30 @@ public class HttpsListenerService extends HttpListenerService {
         OptionMap combined = builder.getMap();
 
         XnioSsl xnioSsl = new JsseXnioSsl(worker.getXnio(), combined, sslContext);
-        sslServer = xnioSsl.createSslConnectionServer(worker, socketAddress, (ChannelListener) acceptListener, combined);
+        sslServer = xnioSsl.createSslConnectionServer(worker, socketAddress,
+                UndertowEvents.acceptListener(getName(), acceptListener), combined);
+
+        // TCP_NODELAY (and CORK where the XNIO provider implements it) in the combined map are applied by the
+        // accepting channel to every connection it accepts
+        if (combined.contains(Options.CORK) && !sslServer.supportsOption(Options.CORK)) {
+            UndertowLogger.ROOT_LOGGER.warnf("cork is set on https-listener %s but is not supported by the %s XNIO provider, it will be ignored",
+                    getName(), worker.getXnio().getName());
+        }
+        UndertowLogger.ROOT_LOGGER.debugf("https-listener %s TCP options: tcp-no-delay=%s, cork=%s", getName(),
+                combined.get(Options.TCP_NODELAY), combined.get(Options.CORK));
+
+        // the accepting channel is created suspended, so connections arriving during the warm-up wait in the backlog
+        if (warmUpHandshakes > 0) {
+            try {
+                new TlsWarmUp(getName(), sslContext, combined).run(warmUpHandshakes);
+            } catch (Exception e) {
+                UndertowLogger.ROOT_LOGGER.warnf(e, "Could not warm up TLS for https-listener %s", getName());
+            }
+        }
         sslServer.resumeAccepts();
 
         UndertowLogger.ROOT_LOGGER.listenerStarted("HTTPS", getName(), socketAddress);
+        UndertowEvents.listenerStarted(getName(), PROTOCOL, socketAddress);
     }
 
     @Override
@@ -88,7 +132,9 @@ public class HttpsListenerService extends HttpListenerService {
         UndertowLogger.ROOT_LOGGER.listenerSuspend("HTTPS", getName());
         IoUtils.safeClose(sslServer);
         sslServer = null;
+        UndertowMXBeans.unregister("listener-queue", getName());
         UndertowLogger.ROOT_LOGGER.listenerStopped("HTTPS", getName(), getBinding().getValue().getSocketAddress());
+        UndertowEvents.listenerStopped(getName(), PROTOCOL, getBinding().getValue().getSocketAddress());
         httpListenerRegistry.getValue().removeListener(getName());
     }
 
@@ -0,0 +1,254 @@
+package org.wildfly.extension.undertow;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import javax.net.ssl.SSLSession;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.ServerConnection;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.xnio.ChannelListener;
+import org.xnio.StreamConnection;
+import org.xnio.channels.AcceptingChannel;
+import org.xnio.ssl.SslConnection;
+
+/**
+ * The flight recorder events behind {@link UndertowEvents}, which only loads this class once it knows {@code jdk.jfr}
+ * is there.
+ * <p>
+ * Every method builds its event first and fills it in only if {@link Event#shouldCommit} - or, for the handshake,
+ * {@link Event#isEnabled} - says a recording wants it.
+ */
+final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    static void listenerState(String listener, String protocol, InetSocketAddress address, boolean started) {
+        ListenerStateEvent event = new ListenerStateEvent();
+        if (event.shouldCommit()) {
+            event.listener = listener;
+            event.protocol = protocol;
+            event.address = String.valueOf(address);
+            event.started = started;
+            event.commit();
+        }
+    }
+
+    static ChannelListener<AcceptingChannel<SslConnection>> acceptListener(final String listener,
+            final ChannelListener<AcceptingChannel<StreamConnection>> acceptListener) {
+        return new ChannelListener<AcceptingChannel<SslConnection>>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public void handleEvent(AcceptingChannel<SslConnection> channel) {
+                ConnectionAcceptedEvent accepted = new ConnectionAcceptedEvent();
+                TlsHandshakeEvent handshake = new TlsHandshakeEvent();
+                if (!accepted.isEnabled() && !handshake.isEnabled()) {
+                    acceptListener.handleEvent((AcceptingChannel) channel);
+                    return;
+                }
+                SslConnection connection;
+                try {
+                    connection = channel.accept();
+                } catch (IOException e) {
+                    UndertowLogger.ROOT_LOGGER.debugf(e, "Accept failed on https-listener %s", listener);
+                    return;
+                }
+                if (connection == null) {
+                    return;
+                }
+                String peer = String.valueOf(connection.getPeerAddress());
+                if (accepted.shouldCommit()) {
+                    accepted.listener = listener;
+                    accepted.peerAddress = peer;
+                    accepted.commit();
+                }
+                if (handshake.isEnabled()) {
+                    handshake.begin();
+                    connection.getHandshakeSetter().set(new HandshakeListener(handshake, listener, peer,
+                            System.currentTimeMillis()));
+                }
+                acceptListener.handleEvent((AcceptingChannel) acceptedChannel(channel, connection));
+            }
+        };
+    }
+
+    /*
+     * Undertow's accept listener accepts the connection itself, so it is given a view of the channel whose accept
+     * returns the connection accepted above
+     */
+    @SuppressWarnings("unchecked")
+    private static AcceptingChannel<SslConnection> acceptedChannel(final AcceptingChannel<SslConnection> channel,
+            final SslConnection connection) {
+        return (AcceptingChannel<SslConnection>) Proxy.newProxyInstance(JfrEvents.class.getClassLoader(),
+                new Class<?>[]{AcceptingChannel.class}, new InvocationHandler() {
+                    private boolean taken;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("accept") && method.getParameterTypes().length == 0) {
+                            if (taken) {
+                                return null;
+                            }
+                            taken = true;
+                            return connection;
+                        }
+                        try {
+                            return method.invoke(channel, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+    private static final class HandshakeListener implements ChannelListener<SslConnection> {
+
+        private final TlsHandshakeEvent event;
+        private final String listener;
+        private final String peer;
+        private final long acceptedMillis;
+
+        HandshakeListener(TlsHandshakeEvent event, String listener, String peer, long acceptedMillis) {
+            this.event = event;
+            this.listener = listener;
+            this.peer = peer;
+            this.acceptedMillis = acceptedMillis;
+        }
+
+        @Override
+        public void handleEvent(SslConnection connection) {
+            // only the first handshake, renegotiations are not timed from the accept
+            connection.getHandshakeSetter().set(null);
+            event.end();
+            if (event.shouldCommit()) {
+                event.listener = listener;
+                event.peerAddress = peer;
+                SSLSession session = connection.getSslSession();
+                if (session != null) {
+                    event.protocol = session.getProtocol();
+                    event.cipherSuite = session.getCipherSuite();
+                    // a resumed session was created by an earlier connection
+                    event.resumed = session.getCreationTime() < acceptedMillis;
+                }
+                event.commit();
+            }
+        }
+    }
+
+    static void zeroReadStreak(HttpServerExchange exchange, int zeroReads, long millisSinceData) {
+        ZeroReadStreakEvent event = new ZeroReadStreakEvent();
+        if (event.shouldCommit()) {
+            fill(event, exchange, zeroReads, millisSinceData);
+            event.commit();
+        }
+    }
+
+    static void zeroReadTermination(HttpServerExchange exchange, int zeroReads, long millisSinceData) {
+        ZeroReadTerminationEvent event = new ZeroReadTerminationEvent();
+        if (event.shouldCommit()) {
+            fill(event, exchange, zeroReads, millisSinceData);
+            event.commit();
+        }
+    }
+
+    private static void fill(ZeroReadEvent event, HttpServerExchange exchange, int zeroReads, long millisSinceData) {
+        ServerConnection connection = exchange.getConnection();
+        event.peerAddress = address(connection.getPeerAddress());
+        event.localAddress = address(connection.getLocalAddress());
+        event.request = exchange.getRequestMethod() + " " + exchange.getRequestURI();
+        event.zeroReads = zeroReads;
+        event.sinceLastData = millisSinceData;
+    }
+
+    private static String address(SocketAddress address) {
+        return address == null ? null : address.toString();
+    }
+
+    @Name("org.wildfly.undertow.ListenerState")
+    @Label("Listener State")
+    @Category({"WildFly", "Undertow"})
+    @Description("A listener started or stopped accepting connections")
+    @StackTrace(false)
+    static final class ListenerStateEvent extends Event {
+        @Label("Listener")
+        String listener;
+        @Label("Protocol")
+        String protocol;
+        @Label("Address")
+        String address;
+        @Label("Started")
+        boolean started;
+    }
+
+    @Name("org.wildfly.undertow.ConnectionAccepted")
+    @Label("Connection Accepted")
+    @Category({"WildFly", "Undertow"})
+    @Description("An https-listener accepted a connection")
+    @StackTrace(false)
+    static final class ConnectionAcceptedEvent extends Event {
+        @Label("Listener")
+        String listener;
+        @Label("Peer Address")
+        String peerAddress;
+    }
+
+    @Name("org.wildfly.undertow.TlsHandshake")
+    @Label("TLS Handshake")
+    @Category({"WildFly", "Undertow"})
+    @Description("The first TLS handshake of a connection, from the accept to its completion")
+    @StackTrace(false)
+    static final class TlsHandshakeEvent extends Event {
+        @Label("Listener")
+        String listener;
+        @Label("Peer Address")
+        String peerAddress;
+        @Label("Protocol")
+        String protocol;
+        @Label("Cipher Suite")
+        String cipherSuite;
+        @Label("Resumed")
+        @Description("The session was resumed rather than negotiated in full")
+        boolean resumed;
+    }
+
+    abstract static class ZeroReadEvent extends Event {
+        @Label("Peer Address")
+        String peerAddress;
+        @Label("Local Address")
+        String localAddress;
+        @Label("Request")
+        String request;
+        @Label("Zero Reads")
+        @Description("Consecutive reads that returned no data")
+        int zeroReads;
+        @Label("Since Last Data")
+        @Timespan(Timespan.MILLISECONDS)
+        long sinceLastData;
+    }
+
+    @Name("org.wildfly.undertow.ZeroReadStreak")
+    @Label("Zero Read Streak")
+    @Category({"WildFly", "Undertow"})
+    @Description("A request body read returned no data max-zero-read-count times in a row, the start of a possible UNDERTOW-282 spin")
+    static final class ZeroReadStreakEvent extends ZeroReadEvent {
+    }
+
+    @Name("org.wildfly.undertow.ZeroReadTermination")
+    @Label("Zero Read Termination")
+    @Category({"WildFly", "Undertow"})
+    @Description("The UNDERTOW-282 fix terminated the reads of a request and closed its connection")
+    static final class ZeroReadTerminationEvent extends ZeroReadEvent {
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+/*
+ * Modified by IDBS to wrap the handlers of a listener with metrics-enabled in a ListenerMetricsHandler.
+ */
+
+package org.wildfly.extension.undertow;
+
+import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.OP_ADDR;
+
+import java.util.List;
+
+import io.undertow.server.HandlerWrapper;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.PeerNameResolvingHandler;
+import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.as.network.SocketBinding;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceName;
+import org.wildfly.extension.io.IOServices;
+import org.wildfly.extension.io.OptionList;
+import org.xnio.OptionMap;
+import org.xnio.Pool;
+import org.xnio.XnioWorker;
+
+/**
+ * @author Tomaz Cerar (c) 2012 Red Hat Inc.
+ */
+abstract class ListenerAdd extends AbstractAddStepHandler {
+
+    private final ListenerResourceDefinition listenerDefinition;
+
+    ListenerAdd(ListenerResourceDefinition definition) {
+        this.listenerDefinition = definition;
+    }
+
+    @Override
+    protected void populateModel(ModelNode operation, ModelNode model) throws OperationFailedException {
+        for (AttributeDefinition attr : listenerDefinition.getAttributes()) {
+            attr.validateAndSet(operation, model);
+        }
+    }
+
+    @Override
+    protected void performRuntime(OperationContext context, ModelNode operation, ModelNode model, ServiceVerificationHandler verificationHandler, List<ServiceController<?>> newControllers) throws OperationFailedException {
+        final PathAddress address = PathAddress.pathAddress(operation.get(OP_ADDR));
+        final PathAddress parent = address.subAddress(0, address.size() - 1);
+        final String name = address.getLastElement().getValue();
+        final String bindingRef = ListenerResourceDefinition.SOCKET_BINDING.resolveModelAttribute(context, model).asString();
+        final String workerName = ListenerResourceDefinition.WORKER.resolveModelAttribute(context, model).asString();
+        final String bufferPoolName = ListenerResourceDefinition.BUFFER_POOL.resolveModelAttribute(context, model).asString();
+        final boolean enabled = ListenerResourceDefinition.ENABLED.resolveModelAttribute(context, model).asBoolean();
+        final boolean peerHostLookup = ListenerResourceDefinition.RESOLVE_PEER_ADDRESS.resolveModelAttribute(context, model).asBoolean();
+        final boolean metricsEnabled = ListenerResourceDefinition.METRICS_ENABLED.resolveModelAttribute(context, model).asBoolean();
+        OptionMap listenerOptions = OptionList.resolveOptions(context, model, ListenerResourceDefinition.LISTENER_OPTIONS);
+        OptionMap socketOptions = OptionList.resolveOptions(context, model, ListenerResourceDefinition.SOCKET_OPTIONS);
+        final String serverName = parent.getLastElement().getValue();
+        final ServiceName listenerServiceName = UndertowService.listenerName(name);
+        final ListenerService<? extends ListenerService> service = createService(name, serverName, context, model, listenerOptions, socketOptions);
+        if (peerHostLookup) {
+            service.addWrapperHandler(new HandlerWrapper() {
+                @Override
+                public HttpHandler wrap(HttpHandler handler) {
+                    return new PeerNameResolvingHandler(handler);
+                }
+            });
+        }
+        // added after the wrappers of the listener service itself, so the latency includes whatever they do
+        if (metricsEnabled) {
+            service.addWrapperHandler(new HandlerWrapper() {
+                @Override
+                public HttpHandler wrap(HttpHandler handler) {
+                    return new ListenerMetricsHandler(handler, ListenerMetrics.register(serverName, name, service.getProtocol()));
+                }
+            });
+        }
+        final ServiceBuilder<? extends ListenerService> serviceBuilder = context.getServiceTarget().addService(listenerServiceName, service);
+        serviceBuilder.addDependency(IOServices.WORKER.append(workerName), XnioWorker.class, service.getWorker())
+                .addDependency(SocketBinding.JBOSS_BINDING_NAME.append(bindingRef), SocketBinding.class, service.getBinding())
+                .addDependency(IOServices.BUFFER_POOL.append(bufferPoolName), Pool.class, service.getBufferPool())
+                .addDependency(UndertowService.SERVER.append(serverName), Server.class, service.getServerService());
+
+        configureAdditionalDependencies(context, serviceBuilder, model, service);
+        serviceBuilder.setInitialMode(enabled ? ServiceController.Mode.ACTIVE : ServiceController.Mode.NEVER);
+
+        serviceBuilder.addListener(verificationHandler);
+        final ServiceController<? extends ListenerService> serviceController = serviceBuilder.install();
+        if (newControllers != null) {
+            newControllers.add(serviceController);
+        }
+    }
+
+    abstract ListenerService<? extends ListenerService> createService(String name, final String serverName, final OperationContext context, ModelNode model, OptionMap listenerOptions, OptionMap socketOptions) throws OperationFailedException;
+
+    abstract void configureAdditionalDependencies(OperationContext context, ServiceBuilder<? extends ListenerService> serviceBuilder, ModelNode model, ListenerService service) throws OperationFailedException;
+
+}
@@ -0,0 +1,172 @@
+package org.wildfly.extension.undertow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The request metrics of one listener: completed requests, bytes in and out, requests in flight, responses by status
+ * class and a {@link LatencyHistogram} of request latencies. Everything is a {@link LongAdder}, so the IO threads and
+ * worker threads that update them concurrently do not contend on a shared counter, and the memory used is fixed.
+ * <p>
+ * The metrics of the listeners with metrics-enabled are kept in a registry by server and listener name for the
+ * metrics-endpoint filter, and registered as MXBeans named {@code <server>/<listener>}.
+ */
+public final class ListenerMetrics implements ListenerMetricsMXBean {
+
+    private static final ConcurrentMap<String, ListenerMetrics> LISTENERS = new ConcurrentHashMap<>();
+
+    private final String server;
+    private final String listener;
+    private final String protocol;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder[] statusClasses = new LongAdder[5];
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    ListenerMetrics(String server, String listener, String protocol) {
+        this.server = server;
+        this.listener = listener;
+        this.protocol = protocol;
+        for (int i = 0; i < statusClasses.length; i++) {
+            statusClasses[i] = new LongAdder();
+        }
+    }
+
+    static ListenerMetrics register(String server, String listener, String protocol) {
+        ListenerMetrics metrics = new ListenerMetrics(server, listener, protocol);
+        String key = key(server, listener);
+        LISTENERS.put(key, metrics);
+        UndertowMXBeans.register("listener-metrics", key, metrics);
+        return metrics;
+    }
+
+    static void unregister(String server, String listener) {
+        String key = key(server, listener);
+        if (LISTENERS.remove(key) != null) {
+            UndertowMXBeans.unregister("listener-metrics", key);
+        }
+    }
+
+    private static String key(String server, String listener) {
+        return server + '/' + listener;
+    }
+
+    /**
+     * @return the metrics of the listeners, by server and listener name
+     */
+    public static List<ListenerMetrics> all() {
+        List<ListenerMetrics> all = new ArrayList<>(LISTENERS.values());
+        Collections.sort(all, new Comparator<ListenerMetrics>() {
+            @Override
+            public int compare(ListenerMetrics a, ListenerMetrics b) {
+                int byServer = a.server.compareTo(b.server);
+                return byServer != 0 ? byServer : a.listener.compareTo(b.listener);
+            }
+        });
+        return all;
+    }
+
+    void requestStarted() {
+        inFlight.increment();
+    }
+
+    void requestCompleted(int status, long latencyNanos) {
+        inFlight.decrement();
+        requests.increment();
+        int statusClass = status / 100;
+        if (statusClass >= 1 && statusClass <= statusClasses.length) {
+            statusClasses[statusClass - 1].increment();
+        }
+        latencies.record(latencyNanos);
+    }
+
+    LongAdder bytesReceived() {
+        return bytesReceived;
+    }
+
+    LongAdder bytesSent() {
+        return bytesSent;
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    public String getListener() {
+        return listener;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long[] getStatusClassCounts() {
+        long[] counts = new long[statusClasses.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = statusClasses[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        return latencies.getMeanMillis();
+    }
+
+    @Override
+    public double getMaxLatencyMillis() {
+        return latencies.getMaxMillis();
+    }
+
+    @Override
+    public double getLatency50thPercentileMillis() {
+        return latencies.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getLatency99thPercentileMillis() {
+        return latencies.getPercentileMillis(99);
+    }
+
+    @Override
+    public double[] getLatencyBucketBoundsMillis() {
+        return LatencyHistogram.getBucketBoundsMillis();
+    }
+
+    @Override
+    public long[] getLatencyBucketCounts() {
+        return latencies.getBucketCounts();
+    }
+}
@@ -0,0 +1,186 @@
+package org.wildfly.extension.undertow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.undertow.server.ConduitWrapper;
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.ConduitFactory;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSinkChannel;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.AbstractStreamSourceConduit;
+import org.xnio.conduits.ConduitReadableByteChannel;
+import org.xnio.conduits.StreamSinkConduit;
+import org.xnio.conduits.StreamSourceConduit;
+
+/**
+ * The outermost handler of a listener with metrics-enabled: counts each request into the listener's
+ * {@link ListenerMetrics} while it is in flight, the body bytes it reads and writes, and its status and latency once it
+ * completes.
+ * <p>
+ * The wrappers and the completion listener are shared by all the requests of the listener, so a request only costs
+ * the two counting conduits. The latency is counted from the request start time Undertow records when
+ * record-request-start-time is on, which includes reading the request, otherwise from the moment the request reached
+ * the listener.
+ */
+final class ListenerMetricsHandler implements HttpHandler {
+
+    private static final AttachmentKey<Long> ARRIVED = AttachmentKey.create(Long.class);
+
+    private final HttpHandler next;
+    private final ListenerMetrics metrics;
+    private final ConduitWrapper<StreamSourceConduit> requestWrapper;
+    private final ConduitWrapper<StreamSinkConduit> responseWrapper;
+    private final ExchangeCompletionListener completionListener;
+
+    ListenerMetricsHandler(HttpHandler next, final ListenerMetrics metrics) {
+        this.next = next;
+        this.metrics = metrics;
+        this.requestWrapper = new ConduitWrapper<StreamSourceConduit>() {
+            @Override
+            public StreamSourceConduit wrap(ConduitFactory<StreamSourceConduit> factory, HttpServerExchange exchange) {
+                return new CountingStreamSourceConduit(factory.create(), metrics.bytesReceived());
+            }
+        };
+        this.responseWrapper = new ConduitWrapper<StreamSinkConduit>() {
+            @Override
+            public StreamSinkConduit wrap(ConduitFactory<StreamSinkConduit> factory, HttpServerExchange exchange) {
+                return new CountingStreamSinkConduit(factory.create(), metrics.bytesSent());
+            }
+        };
+        this.completionListener = new ExchangeCompletionListener() {
+            @Override
+            public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+                try {
+                    long arrived = exchange.getRequestStartTime();
+                    if (arrived <= 0) {
+                        arrived = exchange.getAttachment(ARRIVED);
+                    }
+                    metrics.requestCompleted(exchange.getResponseCode(), System.nanoTime() - arrived);
+                } finally {
+                    nextListener.proceed();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        if (exchange.getRequestStartTime() <= 0) {
+            exchange.putAttachment(ARRIVED, System.nanoTime());
+        }
+        metrics.requestStarted();
+        exchange.addExchangeCompleteListener(completionListener);
+        if (!exchange.isRequestComplete()) {
+            exchange.addRequestWrapper(requestWrapper);
+        }
+        exchange.addResponseWrapper(responseWrapper);
+        next.handleRequest(exchange);
+    }
+
+    static final class CountingStreamSourceConduit extends AbstractStreamSourceConduit<StreamSourceConduit> {
+
+        private final LongAdder bytes;
+
+        CountingStreamSourceConduit(StreamSourceConduit next, LongAdder bytes) {
+            super(next);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return count(next.read(dst));
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offs, int len) throws IOException {
+            return count(next.read(dsts, offs, len));
+        }
+
+        @Override
+        public long transferTo(long position, long count, FileChannel target) throws IOException {
+            return count(next.transferTo(position, count, target));
+        }
+
+        @Override
+        public long transferTo(long count, ByteBuffer throughBuffer, StreamSinkChannel target) throws IOException {
+            // through read, so that bytes left over in the through buffer are counted once
+            return IoUtils.transfer(new ConduitReadableByteChannel(this), count, throughBuffer, target);
+        }
+
+        private int count(int read) {
+            if (read > 0) {
+                bytes.add(read);
+            }
+            return read;
+        }
+
+        private long count(long read) {
+            if (read > 0) {
+                bytes.add(read);
+            }
+            return read;
+        }
+    }
+
+    static final class CountingStreamSinkConduit extends AbstractStreamSinkConduit<StreamSinkConduit> {
+
+        private final LongAdder bytes;
+
+        CountingStreamSinkConduit(StreamSinkConduit next, LongAdder bytes) {
+            super(next);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return count(next.write(src));
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offs, int len) throws IOException {
+            return count(next.write(srcs, offs, len));
+        }
+
+        @Override
+        public int writeFinal(ByteBuffer src) throws IOException {
+            return count(next.writeFinal(src));
+        }
+
+        @Override
+        public long writeFinal(ByteBuffer[] srcs, int offs, int len) throws IOException {
+            return count(next.writeFinal(srcs, offs, len));
+        }
+
+        @Override
+        public long transferFrom(FileChannel src, long position, long count) throws IOException {
+            return count(next.transferFrom(src, position, count));
+        }
+
+        @Override
+        public long transferFrom(StreamSourceChannel source, long count, ByteBuffer throughBuffer) throws IOException {
+            return count(next.transferFrom(source, count, throughBuffer));
+        }
+
+        private int count(int written) {
+            if (written > 0) {
+                bytes.add(written);
+            }
+            return written;
+        }
+
+        private long count(long written) {
+            if (written > 0) {
+                bytes.add(written);
+            }
+            return written;
+        }
+    }
+}
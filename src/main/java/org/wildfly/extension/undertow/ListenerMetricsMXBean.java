@@ -0,0 +1,33 @@
+package org.wildfly.extension.undertow;
+
+/**
+ * Request metrics of a listener, registered through {@link UndertowMXBeans} with type {@code listener-metrics} and
+ * the listener's name.
+ */
+public interface ListenerMetricsMXBean {
+
+    long getRequestCount();
+
+    long getBytesReceived();
+
+    long getBytesSent();
+
+    long getInFlight();
+
+    /**
+     * @return the responses by status class, 1xx to 5xx
+     */
+    long[] getStatusClassCounts();
+
+    double getMeanLatencyMillis();
+
+    double getMaxLatencyMillis();
+
+    double getLatency50thPercentileMillis();
+
+    double getLatency99thPercentileMillis();
+
+    double[] getLatencyBucketBoundsMillis();
+
+    long[] getLatencyBucketCounts();
+}
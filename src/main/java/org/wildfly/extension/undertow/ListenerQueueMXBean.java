@@ -0,0 +1,29 @@
+package org.wildfly.extension.undertow;
+
+/**
+ * How long the requests of a listener waited for a worker thread, registered through {@link UndertowMXBeans} with
+ * type {@code listener-queue} and the listener's name.
+ */
+public interface ListenerQueueMXBean {
+
+    /**
+     * @return the age in milliseconds past which a request is turned away
+     */
+    long getQueueDeadlineMillis();
+
+    long getRequestCount();
+
+    long getDroppedCount();
+
+    double getMeanWaitMillis();
+
+    double getMaxWaitMillis();
+
+    double getWait50thPercentileMillis();
+
+    double getWait99thPercentileMillis();
+
+    double[] getWaitBucketBoundsMillis();
+
+    long[] getWaitBucketCounts();
+}
@@ -0,0 +1,50 @@
+package org.wildfly.extension.undertow;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.ResourceBundle;
+
+/**
+ * The resource bundle that {@link UndertowExtension#getResolver} describes the subsystem from. {@link ResourceBundle}
+ * looks for a class of the bundle name before a properties file, so this class is found ahead of the
+ * LocalDescriptions.properties of the upstream module. It serves the upstream descriptions with those of
+ * PatchDescriptions.properties on top, which describe the attributes and filters this patch adds, so the resources
+ * keep their upstream descriptions without a copy of them being kept here.
+ */
+public class LocalDescriptions extends ResourceBundle {
+
+    static final String UPSTREAM = "org/wildfly/extension/undertow/LocalDescriptions.properties";
+    static final String PATCH = "org/wildfly/extension/undertow/PatchDescriptions.properties";
+
+    private final Properties descriptions = new Properties();
+
+    public LocalDescriptions() {
+        ClassLoader loader = LocalDescriptions.class.getClassLoader();
+        load(loader, UPSTREAM);
+        load(loader, PATCH);
+    }
+
+    private void load(ClassLoader loader, String name) {
+        try (InputStream in = loader.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException(name + " not found");
+            }
+            descriptions.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + name, e);
+        }
+    }
+
+    @Override
+    protected Object handleGetObject(String key) {
+        return descriptions.getProperty(key);
+    }
+
+    @Override
+    public Enumeration<String> getKeys() {
+        return Collections.enumeration(descriptions.stringPropertyNames());
+    }
+}
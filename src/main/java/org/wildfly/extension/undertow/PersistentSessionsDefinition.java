@@ -0,0 +1,266 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+/*
+ * Modified by IDBS to add the SESSION_LOG, FLUSH_INTERVAL and COMPACTION_RATIO attributes. Disk based persistent
+ * sessions with session-log="true" are kept in incremental session logs by the SessionLogService of the servlet
+ * container, see io.undertow.servlet.extension.SessionLogServletExtension.
+ */
+
+package org.wildfly.extension.undertow;
+
+import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.OP_ADDR;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.undertow.servlet.api.SessionPersistenceManager;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.OperationStepHandler;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.PersistentResourceDefinition;
+import org.jboss.as.controller.RestartParentResourceAddHandler;
+import org.jboss.as.controller.RestartParentResourceRemoveHandler;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.registry.AttributeAccess;
+import org.jboss.as.controller.services.path.PathManager;
+import org.jboss.as.controller.services.path.PathManagerService;
+import org.jboss.as.server.Services;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.modules.ModuleLoader;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * @author Stuart Douglas
+ */
+class PersistentSessionsDefinition extends PersistentResourceDefinition {
+
+    static final PersistentSessionsDefinition INSTANCE = new PersistentSessionsDefinition();
+
+    protected static final SimpleAttributeDefinition PATH =
+            new SimpleAttributeDefinitionBuilder(Constants.PATH, ModelType.STRING, true)
+                    .setFlags(AttributeAccess.Flag.RESTART_ALL_SERVICES)
+                    .setAllowExpression(true)
+                    .build();
+    protected static final SimpleAttributeDefinition RELATIVE_TO =
+            new SimpleAttributeDefinitionBuilder(Constants.RELATIVE_TO, ModelType.STRING, true)
+                    .setFlags(AttributeAccess.Flag.RESTART_ALL_SERVICES)
+                    .setAllowExpression(true)
+                    .build();
+
+    /*
+     * Whether the sessions persisted to path are kept in an append-only log of the sessions changed since the last
+     * flush, rather than written out in full when the deployment stops
+     */
+    protected static final SimpleAttributeDefinition SESSION_LOG =
+            new SimpleAttributeDefinitionBuilder("session-log", ModelType.BOOLEAN, true)
+                    .setFlags(AttributeAccess.Flag.RESTART_ALL_SERVICES)
+                    .setDefaultValue(new ModelNode(false))
+                    .setAllowExpression(true)
+                    .build();
+    protected static final SimpleAttributeDefinition FLUSH_INTERVAL =
+            new SimpleAttributeDefinitionBuilder("flush-interval", ModelType.INT, true)
+                    .setFlags(AttributeAccess.Flag.RESTART_ALL_SERVICES)
+                    .setDefaultValue(new ModelNode(10))
+                    .setValidator(new IntRangeValidator(1, true, true))
+                    .setAllowExpression(true)
+                    .build();
+    protected static final SimpleAttributeDefinition COMPACTION_RATIO =
+            new SimpleAttributeDefinitionBuilder("compaction-ratio", ModelType.DOUBLE, true)
+                    .setFlags(AttributeAccess.Flag.RESTART_ALL_SERVICES)
+                    .setDefaultValue(new ModelNode(2.0))
+                    .setAllowExpression(true)
+                    .build();
+
+    protected static final SimpleAttributeDefinition[] ATTRIBUTES = {
+            PATH,
+            RELATIVE_TO,
+            SESSION_LOG,
+            FLUSH_INTERVAL,
+            COMPACTION_RATIO
+    };
+    static final Map<String, AttributeDefinition> ATTRIBUTES_MAP = new HashMap<>();
+
+    static {
+        for (SimpleAttributeDefinition attr : ATTRIBUTES) {
+            ATTRIBUTES_MAP.put(attr.getName(), attr);
+        }
+    }
+
+    private PersistentSessionsDefinition() {
+        super(UndertowExtension.PATH_PERSISTENT_SESSIONS,
+                UndertowExtension.getResolver(UndertowExtension.PATH_PERSISTENT_SESSIONS.getKeyValuePair()),
+                new PersistentSessionsAdd(),
+                new PersistentSessionsRemove());
+    }
+
+    @Override
+    public Collection<AttributeDefinition> getAttributes() {
+        return ATTRIBUTES_MAP.values();
+    }
+
+    public static boolean isEnabled(final OperationContext context, final ModelNode model) throws OperationFailedException {
+        return model.isDefined();
+    }
+
+    /**
+     * Whether the persistent sessions of {@code model}, which must be enabled, are kept in session logs.
+     */
+    static boolean isSessionLog(final OperationContext context, final ModelNode model) throws OperationFailedException {
+        return SESSION_LOG.resolveModelAttribute(context, model).asBoolean();
+    }
+
+    private static class PersistentSessionsAdd extends RestartParentResourceAddHandler {
+        protected PersistentSessionsAdd() {
+            super(ServletContainerDefinition.INSTANCE.getPathElement().getKey());
+        }
+
+        @Override
+        public void execute(OperationContext context, ModelNode operation) throws OperationFailedException {
+            super.execute(context, operation);
+            if (requiresRuntime(context)) {
+                context.addStep(new OperationStepHandler() {
+                    public void execute(OperationContext context, ModelNode operation) throws OperationFailedException {
+                        final List<ServiceController<?>> controllers = new ArrayList<ServiceController<?>>();
+                        final ServiceVerificationHandler verificationHandler = new ServiceVerificationHandler();
+                        performRuntime(context, operation, operation, verificationHandler, controllers);
+
+                        context.addStep(verificationHandler, OperationContext.Stage.VERIFY);
+
+                        context.completeStep(new OperationContext.RollbackHandler() {
+                            @Override
+                            public void handleRollback(OperationContext context, ModelNode operation) {
+                                rollbackRuntime(context, operation, operation, controllers);
+                            }
+                        });
+                    }
+                }, OperationContext.Stage.RUNTIME);
+            }
+            context.stepCompleted();
+        }
+
+        private void performRuntime(OperationContext context, ModelNode operation, ModelNode model, ServiceVerificationHandler verificationHandler, List<ServiceController<?>> controllers) throws OperationFailedException {
+            if (isEnabled(context, model)) {
+                ModelNode pathValue = PATH.resolveModelAttribute(context, model);
+                final boolean sessionLog = isSessionLog(context, model);
+                if (sessionLog && !pathValue.isDefined()) {
+                    throw new OperationFailedException(new ModelNode("A session-log needs the path to keep the sessions in"));
+                }
+                ServiceBuilder<SessionPersistenceManager> builder;
+                String relativeTo = null;
+                if (pathValue.isDefined()) {
+                    String path = pathValue.asString();
+                    ModelNode relativeToValue = RELATIVE_TO.resolveModelAttribute(context, model);
+                    if (relativeToValue.isDefined()) {
+                        relativeTo = relativeToValue.asString();
+                    }
+                    DiskBasedModularPersistentSessionManager service = new DiskBasedModularPersistentSessionManager(path, relativeTo);
+                    builder = context.getServiceTarget().addService(AbstractPersistentSessionManager.SERVICE_NAME, service)
+                            .addDependency(Services.JBOSS_SERVICE_MODULE_LOADER, ModuleLoader.class, service.getModuleLoaderInjectedValue())
+                            .addDependency(PathManagerService.SERVICE_NAME, PathManager.class, service.getPathManager());
+                } else {
+                    InMemoryModularPersistentSessionManager service = new InMemoryModularPersistentSessionManager();
+                    builder = context.getServiceTarget().addService(AbstractPersistentSessionManager.SERVICE_NAME, service)
+                            .addDependency(Services.JBOSS_SERVICE_MODULE_LOADER, ModuleLoader.class, service.getModuleLoaderInjectedValue());
+                }
+                install(builder, verificationHandler, controllers);
+
+                if (sessionLog) {
+                    // the servlet container depends on it, see ServletContainerAdd
+                    final PathAddress address = PathAddress.pathAddress(operation.get(OP_ADDR));
+                    final String servletContainer = address.getElement(address.size() - 2).getValue();
+                    final SessionLogService service = new SessionLogService(pathValue.asString(), relativeTo,
+                            FLUSH_INTERVAL.resolveModelAttribute(context, model).asLong() * 1000,
+                            COMPACTION_RATIO.resolveModelAttribute(context, model).asDouble());
+                    install(context.getServiceTarget().addService(SessionLogService.serviceName(servletContainer), service)
+                            .addDependency(PathManagerService.SERVICE_NAME, PathManager.class, service.getPathManager()),
+                            verificationHandler, controllers);
+                }
+            }
+        }
+
+        private static void install(ServiceBuilder<?> builder, ServiceVerificationHandler verificationHandler, List<ServiceController<?>> controllers) {
+            if (verificationHandler != null) {
+                builder.addListener(verificationHandler);
+            }
+            ServiceController<?> sc = builder.install();
+            if (controllers != null) {
+                controllers.add(sc);
+            }
+        }
+
+        private void rollbackRuntime(OperationContext context, final ModelNode operation, final ModelNode model, List<ServiceController<?>> controllers) {
+        }
+
+        @Override
+        protected void populateModel(ModelNode operation, ModelNode model) throws OperationFailedException {
+            for (AttributeDefinition def : ATTRIBUTES) {
+                def.validateAndSet(operation, model);
+            }
+        }
+
+        @Override
+        protected void recreateParentService(OperationContext context, PathAddress parentAddress, ModelNode parentModel, ServiceVerificationHandler verificationHandler) throws OperationFailedException {
+            ServletContainerAdd.INSTANCE.installRuntimeServices(context, parentModel, null, parentAddress.getLastElement().getValue());
+        }
+
+        @Override
+        protected ServiceName getParentServiceName(PathAddress parentAddress) {
+            return UndertowService.SERVLET_CONTAINER.append(parentAddress.getLastElement().getValue());
+        }
+    }
+
+    private static class PersistentSessionsRemove extends RestartParentResourceRemoveHandler {
+
+        protected PersistentSessionsRemove() {
+            super(ServletContainerDefinition.INSTANCE.getPathElement().getKey());
+        }
+
+        @Override
+        protected void removeServices(OperationContext context, ServiceName parentService, ModelNode parentModel) throws OperationFailedException {
+            super.removeServices(context, parentService, parentModel);
+            context.removeService(AbstractPersistentSessionManager.SERVICE_NAME);
+            context.removeService(parentService.append(SessionLogService.SERVICE_NAME_SUFFIX));
+        }
+
+        @Override
+        protected void recreateParentService(OperationContext context, PathAddress parentAddress, ModelNode parentModel, ServiceVerificationHandler verificationHandler) throws OperationFailedException {
+            ServletContainerAdd.INSTANCE.installRuntimeServices(context, parentModel, null, parentAddress.getLastElement().getValue());
+        }
+
+        @Override
+        protected ServiceName getParentServiceName(PathAddress parentAddress) {
+            return UndertowService.SERVLET_CONTAINER.append(parentAddress.getLastElement().getValue());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.wildfly.extension.undertow;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Writes {@link ListenerMetrics} in the Prometheus text exposition format, version 0.0.4. Every metric has the
+ * server, listener name and protocol as labels; the latency histogram is written in seconds with cumulative buckets, as
+ * Prometheus expects.
+ */
+public final class PrometheusTextFormat {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private PrometheusTextFormat() {
+    }
+
+    public static String write(List<ListenerMetrics> listeners) {
+        StringBuilder out = new StringBuilder(1024 + listeners.size() * 2048);
+
+        header(out, "undertow_listener_requests_total", "counter", "Requests completed by the listener.");
+        for (ListenerMetrics metrics : listeners) {
+            sample(out, "undertow_listener_requests_total", metrics, null, metrics.getRequestCount());
+        }
+        header(out, "undertow_listener_requests_in_flight", "gauge", "Requests the listener is handling.");
+        for (ListenerMetrics metrics : listeners) {
+            sample(out, "undertow_listener_requests_in_flight", metrics, null, metrics.getInFlight());
+        }
+        header(out, "undertow_listener_received_bytes_total", "counter", "Request body bytes read by the listener.");
+        for (ListenerMetrics metrics : listeners) {
+            sample(out, "undertow_listener_received_bytes_total", metrics, null, metrics.getBytesReceived());
+        }
+        header(out, "undertow_listener_sent_bytes_total", "counter", "Response body bytes written by the listener.");
+        for (ListenerMetrics metrics : listeners) {
+            sample(out, "undertow_listener_sent_bytes_total", metrics, null, metrics.getBytesSent());
+        }
+        header(out, "undertow_listener_responses_total", "counter", "Responses of the listener by status class.");
+        for (ListenerMetrics metrics : listeners) {
+            long[] counts = metrics.getStatusClassCounts();
+            for (int i = 0; i < counts.length; i++) {
+                sample(out, "undertow_listener_responses_total", metrics, "status=\"" + STATUS_CLASSES[i] + '"',
+                        counts[i]);
+            }
+        }
+        header(out, "undertow_listener_request_duration_seconds", "histogram",
+                "Time from the start of a request to the end of its response.");
+        double[] bounds = LatencyHistogram.getBucketBoundsMillis();
+        for (ListenerMetrics metrics : listeners) {
+            LatencyHistogram latencies = metrics.getLatencies();
+            long[] counts = latencies.getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                String le = i < bounds.length ? seconds(bounds[i]) : "+Inf";
+                sample(out, "undertow_listener_request_duration_seconds_bucket", metrics, "le=\"" + le + '"',
+                        cumulative);
+            }
+            sample(out, "undertow_listener_request_duration_seconds_sum", metrics, null,
+                    seconds(latencies.getSumMillis()));
+            sample(out, "undertow_listener_request_duration_seconds_count", metrics, null, cumulative);
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, ListenerMetrics metrics, String label, Object value) {
+        out.append(name).append("{server=\"");
+        escape(out, metrics.getServer());
+        out.append("\",listener=\"");
+        escape(out, metrics.getListener());
+        out.append("\",protocol=\"");
+        escape(out, metrics.getProtocol());
+        out.append('"');
+        if (label != null) {
+            out.append(',').append(label);
+        }
+        out.append("} ").append(value).append('\n');
+    }
+
+    private static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    /*
+     * Without an exponent or trailing zeros, so the bucket bounds read 0.0001, 0.00025 ... 10
+     */
+    static String seconds(double millis) {
+        return BigDecimal.valueOf(millis).movePointLeft(3).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,131 @@
+package org.wildfly.extension.undertow;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.undertow.server.Connectors;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.StatusCodes;
+
+/**
+ * The outermost handler of a listener with a queue-deadline: measures how long each request that is dispatched to the
+ * worker waited for a worker thread, and turns away those that waited past the deadline with a 503 before anything
+ * else runs for them. Under overload the oldest requests are the ones whose clients have most likely given up already.
+ * <p>
+ * Nothing is dispatched here. The handler sets a {@link SojournExecutor} as the exchange's dispatch executor, so the
+ * dispatch the handlers further in make anyway - the servlet handler's, typically - goes through it. A dispatch to an
+ * executor of its own bypasses it and is not measured, neither is a request that completes on the I/O thread, which
+ * never waits for a worker.
+ * <p>
+ * The wait is counted from the request start time Undertow records when record-request-start-time is on, which
+ * includes reading the request, otherwise from the moment the request reached the listener.
+ */
+final class QueueSojournHandler implements HttpHandler, ListenerQueueMXBean {
+
+    private static final HttpHandler REJECT = new HttpHandler() {
+        @Override
+        public void handleRequest(HttpServerExchange exchange) {
+            exchange.setResponseCode(StatusCodes.SERVICE_UNAVAILABLE);
+            exchange.endExchange();
+        }
+    };
+
+    private final HttpHandler next;
+    private final long deadlineNanos;
+    private final LatencyHistogram waits = new LatencyHistogram();
+    private final LongAdder dropped = new LongAdder();
+
+    QueueSojournHandler(HttpHandler next, long deadline, TimeUnit unit) {
+        this.next = next;
+        this.deadlineNanos = unit.toNanos(deadline);
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        if (exchange.isInIoThread() && exchange.getDispatchExecutor() == null) {
+            long arrived = exchange.getRequestStartTime();
+            exchange.setDispatchExecutor(new SojournExecutor(exchange, arrived > 0 ? arrived : System.nanoTime()));
+        }
+        next.handleRequest(exchange);
+    }
+
+    /**
+     * Runs the dispatch task of one exchange on the connection's worker, once the wait for the worker is recorded and
+     * found to be within the deadline. Undertow clears the dispatch executor when it uses it, so only the first
+     * dispatch of the exchange is measured.
+     */
+    private final class SojournExecutor implements Executor {
+
+        private final HttpServerExchange exchange;
+        private final long arrived;
+
+        SojournExecutor(HttpServerExchange exchange, long arrived) {
+            this.exchange = exchange;
+            this.arrived = arrived;
+        }
+
+        @Override
+        public void execute(final Runnable task) {
+            exchange.getConnection().getWorker().execute(new Runnable() {
+                @Override
+                public void run() {
+                    long waited = System.nanoTime() - arrived;
+                    waits.record(waited);
+                    if (waited > deadlineNanos) {
+                        dropped.increment();
+                        Connectors.executeRootHandler(REJECT, exchange);
+                        return;
+                    }
+                    task.run();
+                }
+            });
+        }
+    }
+
+    @Override
+    public long getQueueDeadlineMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos);
+    }
+
+    @Override
+    public long getRequestCount() {
+        return waits.getCount();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public double getMeanWaitMillis() {
+        return waits.getMeanMillis();
+    }
+
+    @Override
+    public double getMaxWaitMillis() {
+        return waits.getMaxMillis();
+    }
+
+    @Override
+    public double getWait50thPercentileMillis() {
+        return waits.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getWait99thPercentileMillis() {
+        return waits.getPercentileMillis(99);
+    }
+
+    @Override
+    public double[] getWaitBucketBoundsMillis() {
+        return LatencyHistogram.getBucketBoundsMillis();
+    }
+
+    @Override
+    public long[] getWaitBucketCounts() {
+        return waits.getBucketCounts();
+    }
+}
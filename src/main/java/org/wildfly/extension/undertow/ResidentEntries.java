@@ -0,0 +1,84 @@
+package org.wildfly.extension.undertow;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The entries resident in a size bounded cache, from which the cache picks its eviction victims without scanning them
+ * all: the victim is the first, in the cache's eviction order, of a random sample of {@value #SAMPLE_SIZE} entries, or
+ * of all of them while there are no more than that. Adding and removing an entry take constant time, as each entry
+ * keeps its index in the list.
+ * <p>
+ * Not thread safe: the cache guards it, and the {@link Entry#residentIndex index} of its entries, with its own lock.
+ * Lookups that only update what the eviction order reads, such as an access time, need not take that lock.
+ */
+public final class ResidentEntries<E extends ResidentEntries.Entry> {
+
+    public static final int SAMPLE_SIZE = 8;
+
+    private final List<E> entries = new ArrayList<>();
+
+    /**
+     * An entry of a cache that evicts through {@link ResidentEntries}.
+     */
+    public abstract static class Entry {
+        // guarded by the cache
+        int residentIndex = -1;
+    }
+
+    public void add(E entry) {
+        if (entry.residentIndex >= 0) {
+            return;
+        }
+        entry.residentIndex = entries.size();
+        entries.add(entry);
+    }
+
+    /**
+     * Removes the entry, if it is resident.
+     */
+    public void remove(E entry) {
+        int index = entry.residentIndex;
+        if (index < 0) {
+            return;
+        }
+        E last = entries.remove(entries.size() - 1);
+        if (last != entry) {
+            entries.set(index, last);
+            last.residentIndex = index;
+        }
+        entry.residentIndex = -1;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param evictionOrder orders the entries that should be evicted first before the others
+     * @return the victim among a sample of the resident entries, which stays resident, or {@code null} if there are
+     *         none
+     */
+    public E sample(Comparator<? super E> evictionOrder) {
+        int size = entries.size();
+        E victim = null;
+        if (size <= SAMPLE_SIZE) {
+            for (E candidate : entries) {
+                if (victim == null || evictionOrder.compare(candidate, victim) < 0) {
+                    victim = candidate;
+                }
+            }
+            return victim;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            E candidate = entries.get(random.nextInt(size));
+            if (victim == null || evictionOrder.compare(candidate, victim) < 0) {
+                victim = candidate;
+            }
+        }
+        return victim;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+/*
+ * Modified by IDBS to add the servlet extensions of the session log, the websocket coalescing, the virtual thread
+ * dispatch and the upload spooling of the container to its deployments, see SessionLogService,
+ * WebsocketsDefinition.getCoalescing, ServletContainerDefinition.VIRTUAL_THREADS and
+ * ServletContainerDefinition.UPLOAD_SPOOLING, and not to fail when the container is reinstalled without a list of new
+ * controllers.
+ */
+
+package org.wildfly.extension.undertow;
+
+import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.OP_ADDR;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+import io.undertow.server.handlers.cache.DirectBufferCache;
+import io.undertow.servlet.ServletExtension;
+import io.undertow.servlet.api.ServletStackTraces;
+import io.undertow.servlet.api.SessionPersistenceManager;
+import io.undertow.servlet.extension.UploadSpoolingServletExtension;
+import io.undertow.servlet.extension.VirtualThreadDispatchServletExtension;
+import io.undertow.servlet.extension.WebSocketCoalescingServletExtension;
+import org.jboss.as.controller.AbstractBoottimeAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.as.controller.registry.Resource;
+import org.jboss.dmr.ModelNode;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceTarget;
+import org.wildfly.extension.io.IOServices;
+import org.xnio.Pool;
+import org.xnio.XnioWorker;
+
+/**
+ * @author Tomaz Cerar (c) 2013 Red Hat Inc.
+ */
+final class ServletContainerAdd extends AbstractBoottimeAddStepHandler {
+    static final ServletContainerAdd INSTANCE = new ServletContainerAdd();
+
+    ServletContainerAdd() {
+    }
+
+    @Override
+    protected void populateModel(final ModelNode operation, final ModelNode model) throws OperationFailedException {
+        for (AttributeDefinition def : ServletContainerDefinition.INSTANCE.getAttributes()) {
+            def.validateAndSet(operation, model);
+        }
+    }
+
+    @Override
+    protected void performBoottime(OperationContext context, ModelNode operation, ModelNode model, ServiceVerificationHandler verificationHandler, List<ServiceController<?>> newControllers) throws OperationFailedException {
+        final PathAddress address = PathAddress.pathAddress(operation.get(OP_ADDR));
+        installRuntimeServices(context, model, newControllers, address.getLastElement().getValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void installRuntimeServices(OperationContext context, ModelNode model, List<ServiceController<?>> newControllers, String name) throws OperationFailedException {
+        final ModelNode fullModel = Resource.Tools.readModel(context.readResource(PathAddress.EMPTY_ADDRESS));
+
+        final SessionCookieConfig config = SessionCookieDefinition.INSTANCE.getConfig(context, fullModel.get(SessionCookieDefinition.INSTANCE.getPathElement().getKeyValuePair()));
+        final ModelNode persistentSessionsModel = fullModel.get(PersistentSessionsDefinition.INSTANCE.getPathElement().getKeyValuePair());
+        final boolean persistentSessions = PersistentSessionsDefinition.isEnabled(context, persistentSessionsModel);
+        final boolean sessionLog = persistentSessions && PersistentSessionsDefinition.isSessionLog(context, persistentSessionsModel);
+        final boolean allowNonStandardWrappers = ServletContainerDefinition.ALLOW_NON_STANDARD_WRAPPERS.resolveModelAttribute(context, model).asBoolean();
+        final String bufferCache = ServletContainerDefinition.DEFAULT_BUFFER_CACHE.resolveModelAttribute(context, model).asString();
+        final JSPConfig jspConfig = JspDefinition.INSTANCE.getConfig(context, fullModel.get(JspDefinition.INSTANCE.getPathElement().getKeyValuePair()));
+
+        final String stackTracesString = ServletContainerDefinition.STACK_TRACE_ON_ERROR.resolveModelAttribute(context, model).asString();
+        final ModelNode defaultEncodingValue = ServletContainerDefinition.DEFAULT_ENCODING.resolveModelAttribute(context, model);
+        final String defaultEncoding = defaultEncodingValue.isDefined() ? defaultEncodingValue.asString() : null;
+        final boolean useListenerEncoding = ServletContainerDefinition.USE_LISTENER_ENCODING.resolveModelAttribute(context, model).asBoolean();
+        final boolean ignoreFlush = ServletContainerDefinition.IGNORE_FLUSH.resolveModelAttribute(context, model).asBoolean();
+        final boolean eagerFilterInit = ServletContainerDefinition.EAGER_FILTER_INIT.resolveModelAttribute(context, model).asBoolean();
+        final boolean disableCachingForSecuredPages = ServletContainerDefinition.DISABLE_CACHING_FOR_SECURED_PAGES.resolveModelAttribute(context, model).asBoolean();
+
+        final int sessionTimeout = ServletContainerDefinition.DEFAULT_SESSION_TIMEOUT.resolveModelAttribute(context, model).asInt();
+        final boolean virtualThreads = ServletContainerDefinition.VIRTUAL_THREADS.resolveModelAttribute(context, model).asBoolean();
+        final long pinnedThreshold = ServletContainerDefinition.PINNED_THRESHOLD.resolveModelAttribute(context, model).asLong();
+        final boolean uploadSpooling = ServletContainerDefinition.UPLOAD_SPOOLING.resolveModelAttribute(context, model).asBoolean();
+        final long uploadSpoolingThreshold = ServletContainerDefinition.UPLOAD_SPOOLING_THRESHOLD.resolveModelAttribute(context, model).asLong();
+        final ModelNode uploadSpoolingDirectory = ServletContainerDefinition.UPLOAD_SPOOLING_DIRECTORY.resolveModelAttribute(context, model);
+
+        WebsocketsDefinition.WebSocketInfo info = WebsocketsDefinition.INSTANCE.getConfig(context, model);
+        final WebSocketCoalescingServletExtension coalescing = WebsocketsDefinition.INSTANCE.getCoalescing(context,
+                fullModel.get(WebsocketsDefinition.INSTANCE.getPathElement().getKeyValuePair()));
+
+        final ServletContainerService container = new ServletContainerService(allowNonStandardWrappers,
+                ServletStackTraces.valueOf(stackTracesString.toUpperCase().replace('-', '_')),
+                config,
+                jspConfig,
+                defaultEncoding,
+                useListenerEncoding,
+                ignoreFlush,
+                eagerFilterInit,
+                sessionTimeout,
+                disableCachingForSecuredPages, info != null, info != null && info.isDispatchToWorker());
+        if (coalescing != null) {
+            container.addServletExtension(coalescing);
+        }
+        if (virtualThreads) {
+            container.addServletExtension(new VirtualThreadDispatchServletExtension(pinnedThreshold));
+        }
+        if (uploadSpooling) {
+            container.addServletExtension(new UploadSpoolingServletExtension(uploadSpoolingThreshold,
+                    Paths.get(uploadSpoolingDirectory.isDefined() ? uploadSpoolingDirectory.asString() : System.getProperty("java.io.tmpdir"))));
+        }
+
+        final ServiceTarget target = context.getServiceTarget();
+        final ServiceBuilder<ServletContainerService> builder = target.addService(UndertowService.SERVLET_CONTAINER.append(name), container);
+        if (bufferCache != null) {
+            builder.addDependency(BufferCacheService.SERVICE_NAME.append(bufferCache), DirectBufferCache.class, container.getBufferCacheInjectedValue());
+        }
+        if (persistentSessions) {
+            builder.addDependency(AbstractPersistentSessionManager.SERVICE_NAME, SessionPersistenceManager.class, container.getSessionPersistenceManagerInjectedValue());
+        }
+        if (sessionLog) {
+            builder.addDependency(SessionLogService.serviceName(name), ServletExtension.class, container.addInjectedServletExtension());
+        }
+        if (info != null) {
+            builder.addDependency(IOServices.WORKER.append(info.getWorker()), XnioWorker.class, container.getWebsocketsWorker());
+            builder.addDependency(IOServices.BUFFER_POOL.append(info.getBufferPool()), (Class) Pool.class, container.getWebsocketsBufferPool());
+        }
+
+        final ServiceController<ServletContainerService> controller = builder.setInitialMode(ServiceController.Mode.ON_DEMAND).install();
+        if (newControllers != null) {
+            newControllers.add(controller);
+        }
+    }
+}
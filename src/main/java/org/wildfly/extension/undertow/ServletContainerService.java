@@ -0,0 +1,249 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+/*
+ * Modified by IDBS to add servlet extensions to the deployments made on the container, see addServletExtension. They
+ * are how the IDBS servlet container settings reach the deployments of that container, without a
+ * META-INF/services/io.undertow.servlet.ServletExtension registration.
+ */
+
+package org.wildfly.extension.undertow;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import io.undertow.server.handlers.cache.DirectBufferCache;
+import io.undertow.servlet.ServletExtension;
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.DeploymentManager;
+import io.undertow.servlet.api.ServletContainer;
+import io.undertow.servlet.api.ServletStackTraces;
+import io.undertow.servlet.api.SessionPersistenceManager;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.value.InjectedValue;
+import org.xnio.Pool;
+import org.xnio.XnioWorker;
+
+/**
+ * Central Undertow 'Container' HTTP listeners will make this container accessible whilst deployers will add content.
+ *
+ * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
+ */
+public class ServletContainerService implements Service<ServletContainerService> {
+
+    private final boolean allowNonStandardWrappers;
+    private final ServletStackTraces stackTraces;
+    private final SessionCookieConfig sessionCookieConfig;
+    private final JSPConfig jspConfig;
+    private volatile ServletContainer servletContainer;
+    private final InjectedValue<DirectBufferCache> bufferCacheInjectedValue = new InjectedValue<>();
+    private final InjectedValue<SessionPersistenceManager> sessionPersistenceManagerInjectedValue = new InjectedValue<>();
+    private final String defaultEncoding;
+    private final boolean useListenerEncoding;
+    private final boolean ignoreFlush;
+    private final boolean eagerFilterInit;
+    private final int defaultSessionTimeout;
+    private final boolean disableCachingForSecuredPages;
+
+    private final boolean websocketsEnabled;
+    private final InjectedValue<Pool<ByteBuffer>> websocketsBufferPool = new InjectedValue<>();
+    private final InjectedValue<XnioWorker> websocketsWorker = new InjectedValue<>();
+    private final boolean dispatchWebsocketInvocationToWorker;
+
+    private final List<ServletExtension> servletExtensions = new ArrayList<>();
+    private final List<InjectedValue<ServletExtension>> injectedServletExtensions = new ArrayList<>();
+
+    public ServletContainerService(boolean allowNonStandardWrappers, ServletStackTraces stackTraces, SessionCookieConfig sessionCookieConfig, JSPConfig jspConfig,
+                                   String defaultEncoding, boolean useListenerEncoding, boolean ignoreFlush, boolean eagerFilterInit, int defaultSessionTimeout,
+                                   boolean disableCachingForSecuredPages, boolean websocketsEnabled, boolean dispatchWebsocketInvocationToWorker) {
+        this.allowNonStandardWrappers = allowNonStandardWrappers;
+        this.stackTraces = stackTraces;
+        this.sessionCookieConfig = sessionCookieConfig;
+        this.jspConfig = jspConfig;
+        this.defaultEncoding = defaultEncoding;
+        this.useListenerEncoding = useListenerEncoding;
+        this.ignoreFlush = ignoreFlush;
+        this.eagerFilterInit = eagerFilterInit;
+        this.defaultSessionTimeout = defaultSessionTimeout;
+        this.disableCachingForSecuredPages = disableCachingForSecuredPages;
+        this.websocketsEnabled = websocketsEnabled;
+        this.dispatchWebsocketInvocationToWorker = dispatchWebsocketInvocationToWorker;
+    }
+
+    public void start(StartContext context) throws StartException {
+        final List<ServletExtension> extensions = new ArrayList<>(servletExtensions);
+        for (InjectedValue<ServletExtension> extension : injectedServletExtensions) {
+            extensions.add(extension.getValue());
+        }
+        final ServletContainer container = ServletContainer.Factory.newInstance();
+        servletContainer = extensions.isEmpty() ? container : new ExtendedServletContainer(container, extensions);
+    }
+
+    public void stop(StopContext context) {
+
+    }
+
+    public ServletContainerService getValue() throws IllegalStateException, IllegalArgumentException {
+        return this;
+    }
+
+    public ServletContainer getServletContainer() {
+        return servletContainer;
+    }
+
+    /**
+     * Adds {@code extension} to every deployment made on this container from when it next starts.
+     */
+    void addServletExtension(ServletExtension extension) {
+        servletExtensions.add(extension);
+    }
+
+    /**
+     * As {@link #addServletExtension}, for an extension that is the value of a service the container depends on.
+     */
+    InjectedValue<ServletExtension> addInjectedServletExtension() {
+        final InjectedValue<ServletExtension> extension = new InjectedValue<>();
+        injectedServletExtensions.add(extension);
+        return extension;
+    }
+
+    public boolean isAllowNonStandardWrappers() {
+        return allowNonStandardWrappers;
+    }
+
+    public JSPConfig getJspConfig() {
+        return jspConfig;
+    }
+
+    public ServletStackTraces getStackTraces() {
+        return stackTraces;
+    }
+
+    public SessionCookieConfig getSessionCookieConfig() {
+        return sessionCookieConfig;
+    }
+
+    InjectedValue<DirectBufferCache> getBufferCacheInjectedValue() {
+        return bufferCacheInjectedValue;
+    }
+
+    public DirectBufferCache getBufferCache() {
+        return bufferCacheInjectedValue.getOptionalValue();
+    }
+
+    public boolean isDisableCachingForSecuredPages() {
+        return disableCachingForSecuredPages;
+    }
+
+    public boolean isDispatchWebsocketInvocationToWorker() {
+        return dispatchWebsocketInvocationToWorker;
+    }
+
+    public InjectedValue<XnioWorker> getWebsocketsWorker() {
+        return websocketsWorker;
+    }
+
+    public InjectedValue<Pool<ByteBuffer>> getWebsocketsBufferPool() {
+        return websocketsBufferPool;
+    }
+
+    public boolean isWebsocketsEnabled() {
+        return websocketsEnabled;
+    }
+
+    InjectedValue<SessionPersistenceManager> getSessionPersistenceManagerInjectedValue() {
+        return sessionPersistenceManagerInjectedValue;
+    }
+
+    public SessionPersistenceManager getSessionPersistenceManager() {
+        return sessionPersistenceManagerInjectedValue.getOptionalValue();
+    }
+
+    public String getDefaultEncoding() {
+        return defaultEncoding;
+    }
+
+    public boolean isUseListenerEncoding() {
+        return useListenerEncoding;
+    }
+
+    public boolean isIgnoreFlush() {
+        return ignoreFlush;
+    }
+
+    public boolean isEagerFilterInit() {
+        return eagerFilterInit;
+    }
+
+    public int getDefaultSessionTimeout() {
+        return defaultSessionTimeout;
+    }
+
+    /**
+     * The container the deployments are made on, which hands each of them the servlet extensions of this container
+     * before Undertow deploys it.
+     */
+    private static final class ExtendedServletContainer implements ServletContainer {
+
+        private final ServletContainer container;
+        private final List<ServletExtension> extensions;
+
+        ExtendedServletContainer(ServletContainer container, List<ServletExtension> extensions) {
+            this.container = container;
+            this.extensions = extensions;
+        }
+
+        @Override
+        public Collection<String> listDeployments() {
+            return container.listDeployments();
+        }
+
+        @Override
+        public DeploymentManager addDeployment(DeploymentInfo deployment) {
+            final DeploymentInfo extended = deployment.clone();
+            for (ServletExtension extension : extensions) {
+                extended.addServletExtension(extension);
+            }
+            return container.addDeployment(extended);
+        }
+
+        @Override
+        public DeploymentManager getDeployment(String deploymentName) {
+            return container.getDeployment(deploymentName);
+        }
+
+        @Override
+        public void removeDeployment(DeploymentInfo deploymentInfo) {
+            container.removeDeployment(deploymentInfo);
+        }
+
+        @Override
+        public DeploymentManager getDeploymentByPath(String path) {
+            return container.getDeploymentByPath(path);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.wildfly.extension.undertow;
+
+import java.io.File;
+
+import io.undertow.servlet.extension.SessionLogServletExtension;
+import org.jboss.as.controller.services.path.PathManager;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.value.InjectedValue;
+
+/**
+ * Resolves the session log directory of a servlet container whose persistent-sessions setting has
+ * {@code session-log="true"}. Its value is the {@link SessionLogServletExtension} the container adds to its
+ * deployments, so they are deployed after it and keep their sessions in session logs in that directory.
+ */
+class SessionLogService implements Service<SessionLogServletExtension> {
+
+    static final String SERVICE_NAME_SUFFIX = "session-log";
+
+    private final String path;
+    private final String relativeTo;
+    private final long flushIntervalMillis;
+    private final double compactionRatio;
+
+    private final InjectedValue<PathManager> pathManager = new InjectedValue<>();
+
+    private volatile SessionLogServletExtension extension;
+
+    SessionLogService(String path, String relativeTo, long flushIntervalMillis, double compactionRatio) {
+        this.path = path;
+        this.relativeTo = relativeTo;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.compactionRatio = compactionRatio;
+    }
+
+    static ServiceName serviceName(String servletContainer) {
+        return UndertowService.SERVLET_CONTAINER.append(servletContainer, SERVICE_NAME_SUFFIX);
+    }
+
+    @Override
+    public void start(StartContext context) throws StartException {
+        final File directory = new File(pathManager.getValue().resolveRelativePathEntry(path, relativeTo));
+        extension = new SessionLogServletExtension(directory, flushIntervalMillis, compactionRatio);
+    }
+
+    @Override
+    public void stop(StopContext context) {
+        extension = null;
+    }
+
+    @Override
+    public SessionLogServletExtension getValue() {
+        return extension;
+    }
+
+    InjectedValue<PathManager> getPathManager() {
+        return pathManager;
+    }
+}
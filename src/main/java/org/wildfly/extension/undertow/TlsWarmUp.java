@@ -0,0 +1,226 @@
+package org.wildfly.extension.undertow;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Sequence;
+
+/**
+ * Runs a number of full TLS handshakes, each followed by a request/response exchange, between a client engine and a
+ * server engine created from an https-listener's {@link SSLContext} before the listener starts accepting connections.
+ * This gets the JSSE handshake, key exchange and record encryption code compiled so that the first users after a
+ * restart do not pay for it.
+ * <p>
+ * Everything happens in memory: while the listener's accepts are suspended a loopback connection would only sit in the
+ * backlog, so the warm-up cannot go through the listener's handler chain.
+ */
+final class TlsWarmUp {
+
+    private static final byte[] REQUEST = ("GET /ewb/ HTTP/1.1\r\nHost: localhost\r\nUser-Agent: https-listener-warm-up\r\n"
+            + "Accept: text/html\r\nCookie: JSESSIONID=warm-up\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] RESPONSE = new byte[8 * 1024];
+
+    private final String listenerName;
+    private final SSLContext serverContext;
+    private final SSLContext clientContext;
+    private final OptionMap socketOptions;
+
+    TlsWarmUp(String listenerName, SSLContext serverContext, OptionMap socketOptions) throws Exception {
+        this.listenerName = listenerName;
+        this.serverContext = serverContext;
+        this.socketOptions = socketOptions;
+        // the client side only talks to our own engine, it has no reason to validate the listener's certificate
+        this.clientContext = SSLContext.getInstance("TLS");
+        this.clientContext.init(null, new TrustManager[]{new TrustAllManager()}, null);
+    }
+
+    /**
+     * Runs the warm-up, logging progress every quarter. Failures are logged and end the warm-up early; they never
+     * prevent the listener from starting.
+     */
+    void run(int handshakes) {
+        UndertowLogger.ROOT_LOGGER.infof("Warming up TLS for https-listener %s with %d handshakes", listenerName, handshakes);
+        final long start = System.nanoTime();
+        final int step = Math.max(1, handshakes / 4);
+        int completed = 0;
+        try {
+            while (completed < handshakes) {
+                handshakeAndExchange();
+                completed++;
+                if (completed % step == 0 && completed < handshakes) {
+                    UndertowLogger.ROOT_LOGGER.infof("TLS warm-up for https-listener %s: %d/%d handshakes in %d ms",
+                            listenerName, completed, handshakes, elapsedMillis(start));
+                }
+            }
+        } catch (Exception e) {
+            UndertowLogger.ROOT_LOGGER.warnf(e, "TLS warm-up for https-listener %s stopped after %d handshakes",
+                    listenerName, completed);
+        }
+        UndertowLogger.ROOT_LOGGER.infof("TLS warm-up for https-listener %s completed %d handshakes in %d ms",
+                listenerName, completed, elapsedMillis(start));
+    }
+
+    private void handshakeAndExchange() throws SSLException {
+        // the no-argument createSSLEngine gives no peer host/port, so each round is a full handshake, not a resumption
+        SSLEngine server = serverContext.createSSLEngine();
+        server.setUseClientMode(false);
+        restrict(server);
+        SSLEngine client = clientContext.createSSLEngine();
+        client.setUseClientMode(true);
+
+        int packetSize = Math.max(server.getSession().getPacketBufferSize(), client.getSession().getPacketBufferSize());
+        int appSize = Math.max(server.getSession().getApplicationBufferSize(), client.getSession().getApplicationBufferSize());
+        ByteBuffer clientToServer = ByteBuffer.allocate(packetSize);
+        ByteBuffer serverToClient = ByteBuffer.allocate(packetSize);
+        ByteBuffer serverApp = ByteBuffer.allocate(appSize);
+        ByteBuffer clientApp = ByteBuffer.allocate(appSize);
+        ByteBuffer empty = ByteBuffer.allocate(0);
+
+        client.beginHandshake();
+        server.beginHandshake();
+        for (int rounds = 0; isHandshaking(client) || isHandshaking(server); rounds++) {
+            if (rounds > 1000) {
+                throw new SSLException("Handshake did not complete");
+            }
+            step(client, empty, clientToServer, serverToClient, clientApp);
+            step(server, empty, serverToClient, clientToServer, serverApp);
+        }
+
+        transfer(client, ByteBuffer.wrap(REQUEST), clientToServer, server, serverApp);
+        transfer(server, ByteBuffer.wrap(RESPONSE), serverToClient, client, clientApp);
+
+        client.closeOutbound();
+        server.closeOutbound();
+    }
+
+    /*
+     * Applies the listener's enabled-protocols and enabled-cipher-suites, so the warm-up exercises the same
+     * algorithms real clients will negotiate. Client authentication is deliberately not applied.
+     */
+    private void restrict(SSLEngine engine) {
+        Sequence<String> protocols = socketOptions.get(Options.SSL_ENABLED_PROTOCOLS);
+        if (protocols != null) {
+            engine.setEnabledProtocols(supported(protocols, engine.getSupportedProtocols()));
+        }
+        Sequence<String> cipherSuites = socketOptions.get(Options.SSL_ENABLED_CIPHER_SUITES);
+        if (cipherSuites != null) {
+            engine.setEnabledCipherSuites(supported(cipherSuites, engine.getSupportedCipherSuites()));
+        }
+    }
+
+    private static String[] supported(Sequence<String> requested, String[] supported) {
+        List<String> supportedList = Arrays.asList(supported);
+        List<String> result = new ArrayList<>();
+        for (String name : requested) {
+            if (supportedList.contains(name)) {
+                result.add(name);
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    private static boolean isHandshaking(SSLEngine engine) {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && status != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    /*
+     * Network buffers are kept in write mode: wrap appends to netOut, unwrap flips netIn, consumes and compacts.
+     */
+    private static void step(SSLEngine engine, ByteBuffer appOut, ByteBuffer netOut, ByteBuffer netIn, ByteBuffer appIn) throws SSLException {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        switch (status) {
+            case NEED_WRAP:
+                engine.wrap(appOut, netOut);
+                break;
+            case NEED_TASK:
+                runTasks(engine);
+                break;
+            case NEED_UNWRAP:
+                unwrap(engine, netIn, appIn);
+                break;
+            default:
+                // NEED_UNWRAP_AGAIN on newer JDKs
+                if (status.name().startsWith("NEED_UNWRAP")) {
+                    unwrap(engine, netIn, appIn);
+                }
+        }
+    }
+
+    private static void unwrap(SSLEngine engine, ByteBuffer netIn, ByteBuffer appIn) throws SSLException {
+        netIn.flip();
+        try {
+            engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+        }
+        appIn.clear();
+    }
+
+    private static void runTasks(SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private static void transfer(SSLEngine from, ByteBuffer payload, ByteBuffer net, SSLEngine to, ByteBuffer appIn) throws SSLException {
+        int expected = payload.remaining();
+        int received = 0;
+        for (int rounds = 0; payload.hasRemaining() || received < expected; rounds++) {
+            if (rounds > 1000) {
+                throw new SSLException("Application data exchange did not complete");
+            }
+            if (payload.hasRemaining()) {
+                from.wrap(payload, net);
+            }
+            net.flip();
+            try {
+                while (net.hasRemaining()) {
+                    SSLEngineResult result = to.unwrap(net, appIn);
+                    runTasks(to);
+                    received += appIn.position();
+                    appIn.clear();
+                    if (result.getStatus() != SSLEngineResult.Status.OK) {
+                        break;
+                    }
+                }
+            } finally {
+                net.compact();
+            }
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static final class TrustAllManager implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.wildfly.extension.undertow;
+
+import java.net.InetSocketAddress;
+
+import io.undertow.server.HttpServerExchange;
+import org.xnio.ChannelListener;
+import org.xnio.StreamConnection;
+import org.xnio.channels.AcceptingChannel;
+import org.xnio.ssl.SslConnection;
+
+/**
+ * Emits Java Flight Recorder events for the https-listener, its TLS handshakes and the UNDERTOW-282 zero-read fix, so
+ * that a recording taken during an incident shows listener restarts, handshake storms and spinning reads on the same
+ * timeline as the JVM's own CPU, GC and socket events. The events are in the {@code WildFly / Undertow} category.
+ * <p>
+ * The event classes need {@code jdk.jfr}, which this module cannot assume: when the JVM does not provide it, or the
+ * module cannot see it, every method here does nothing. When it does, an event that no recording has enabled costs a
+ * check of its enabled flag, which the JIT reduces to almost nothing.
+ *
+ * @see JfrEvents
+ */
+public final class UndertowEvents {
+
+    private static final boolean AVAILABLE = available();
+
+    private UndertowEvents() {
+    }
+
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event", false, UndertowEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            UndertowLogger.ROOT_LOGGER.debugf("jdk.jfr is not available, no flight recorder events are emitted");
+            return false;
+        }
+    }
+
+    public static void listenerStarted(String listener, String protocol, InetSocketAddress address) {
+        if (AVAILABLE) {
+            JfrEvents.listenerState(listener, protocol, address, true);
+        }
+    }
+
+    public static void listenerStopped(String listener, String protocol, InetSocketAddress address) {
+        if (AVAILABLE) {
+            JfrEvents.listenerState(listener, protocol, address, false);
+        }
+    }
+
+    /**
+     * @return an accept listener that emits connection accepted and TLS handshake events for the connections it
+     * accepts before handing them to {@code acceptListener}
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static ChannelListener<AcceptingChannel<SslConnection>> acceptListener(String listener,
+            ChannelListener<AcceptingChannel<StreamConnection>> acceptListener) {
+        if (AVAILABLE) {
+            return JfrEvents.acceptListener(listener, acceptListener);
+        }
+        return (ChannelListener) acceptListener;
+    }
+
+    /**
+     * A request body read has returned no data {@code zeroReads} times in a row: the start of what may become an
+     * UNDERTOW-282 spin.
+     */
+    public static void zeroReadStreak(HttpServerExchange exchange, int zeroReads, long millisSinceData) {
+        if (AVAILABLE) {
+            JfrEvents.zeroReadStreak(exchange, zeroReads, millisSinceData);
+        }
+    }
+
+    /**
+     * The zero-read fix is terminating the reads of {@code exchange} and closing its connection.
+     */
+    public static void zeroReadTermination(HttpServerExchange exchange, int zeroReads, long millisSinceData) {
+        if (AVAILABLE) {
+            JfrEvents.zeroReadTermination(exchange, zeroReads, millisSinceData);
+        }
+    }
+}
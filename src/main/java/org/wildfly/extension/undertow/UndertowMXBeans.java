@@ -0,0 +1,63 @@
+package org.wildfly.extension.undertow;
+
+import java.lang.management.ManagementFactory;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers the runtime metrics of the IDBS additions to the subsystem (caches, limiters...) as MXBeans in the
+ * platform MBean server, under {@code org.wildfly.extension.undertow:type=<type>,name=<name>}.
+ * <p>
+ * These are plain platform MBeans rather than management model runtime attributes, so that they can be read with
+ * JConsole or the JMX exporter already used for the JVM metrics. A bean registered again under the same name - the
+ * handler or filter was recreated by a reload - replaces the previous one.
+ */
+public final class UndertowMXBeans {
+
+    public static final String DOMAIN = "org.wildfly.extension.undertow";
+
+    private UndertowMXBeans() {
+    }
+
+    public static ObjectName objectName(String type, String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * Registers {@code mxBean}, logging rather than failing if that is not possible: metrics are never a reason not to
+     * serve requests.
+     */
+    public static void register(String type, String name, Object mxBean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = objectName(type, name);
+            try {
+                server.registerMBean(mxBean, objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                unregister(server, objectName);
+                server.registerMBean(mxBean, objectName);
+            }
+        } catch (JMException e) {
+            UndertowLogger.ROOT_LOGGER.warnf(e, "Could not register the %s %s MXBean", type, name);
+        }
+    }
+
+    public static void unregister(String type, String name) {
+        try {
+            unregister(ManagementFactory.getPlatformMBeanServer(), objectName(type, name));
+        } catch (JMException e) {
+            UndertowLogger.ROOT_LOGGER.debugf(e, "Could not unregister the %s %s MXBean", type, name);
+        }
+    }
+
+    private static void unregister(MBeanServer server, ObjectName objectName) throws JMException {
+        try {
+            server.unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            // already gone
+        }
+    }
+}
@@ -0,0 +1,494 @@
+/*
+ *
+ *  JBoss, Home of Professional Open Source.
+ *  Copyright 2014, Red Hat, Inc., and individual contributors
+ *  as indicated by the @author tags. See the copyright.txt file in the
+ *  distribution for a full listing of individual contributors.
+ *
+ *  This is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 2.1 of
+ *  the License, or (at your option) any later version.
+ *
+ *  This software is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this software; if not, write to the Free
+ *  Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ *  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ * /
+ */
+
+/*
+ * Modified by IDBS: the XML descriptions previously built in the static initializers of UndertowSubsystemParser_1_1
+ * and UndertowSubsystemParser_1_2 were moved here so that each is only built when its namespace is first used.
+ */
+
+package org.wildfly.extension.undertow;
+
+import static org.jboss.as.controller.PersistentResourceXMLDescription.builder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.PersistentResourceXMLDescription;
+import org.jboss.as.controller.operations.common.Util;
+import org.jboss.dmr.ModelNode;
+import org.jboss.logging.Logger;
+import org.wildfly.extension.undertow.filters.AdaptiveConcurrencyLimitFilter;
+import org.wildfly.extension.undertow.filters.BasicAuthHandler;
+import org.wildfly.extension.undertow.filters.BulkheadFilter;
+import org.wildfly.extension.undertow.filters.ConnectionLimitHandler;
+import org.wildfly.extension.undertow.filters.CustomFilterDefinition;
+import org.wildfly.extension.undertow.filters.ErrorPageDefinition;
+import org.wildfly.extension.undertow.filters.FilterDefinitions;
+import org.wildfly.extension.undertow.filters.FilterRefDefinition;
+import org.wildfly.extension.undertow.filters.GzipFilter;
+import org.wildfly.extension.undertow.filters.MetricsEndpointFilter;
+import org.wildfly.extension.undertow.filters.RateLimitFilter;
+import org.wildfly.extension.undertow.filters.RequestDecompressionFilter;
+import org.wildfly.extension.undertow.filters.RequestProfilerFilter;
+import org.wildfly.extension.undertow.filters.ResponseCacheFilter;
+import org.wildfly.extension.undertow.filters.ResponseHeaderFilter;
+import org.wildfly.extension.undertow.handlers.FileHandler;
+import org.wildfly.extension.undertow.handlers.HandlerDefinitions;
+import org.wildfly.extension.undertow.handlers.ReverseProxyHandler;
+import org.wildfly.extension.undertow.handlers.ReverseProxyHandlerHost;
+
+/**
+ * The {@link PersistentResourceXMLDescription}s used by the undertow subsystem parsers, one per schema version.
+ * <p>
+ * Each description is built on first use through a holder class, so a server only pays for the version that its
+ * standalone-ewb-ha.xml is actually written in (plus the current one when the configuration is persisted). The listener
+ * attribute groups are shared between the AJP, HTTP and HTTPS listeners of both versions.
+ */
+final class UndertowXmlDescriptions {
+
+    private static final Logger logger = Logger.getLogger(UndertowXmlDescriptions.class);
+
+    /**
+     * Protocol attributes common to every listener in the 1.1 schema.
+     */
+    static final AttributeDefinition[] LISTENER_ATTRIBUTES_1_1 = {
+            ListenerResourceDefinition.MAX_HEADER_SIZE, ListenerResourceDefinition.MAX_ENTITY_SIZE,
+            ListenerResourceDefinition.BUFFER_PIPELINED_DATA, ListenerResourceDefinition.MAX_PARAMETERS,
+            ListenerResourceDefinition.MAX_HEADERS, ListenerResourceDefinition.MAX_COOKIES,
+            ListenerResourceDefinition.ALLOW_ENCODED_SLASH, ListenerResourceDefinition.DECODE_URL,
+            ListenerResourceDefinition.URL_CHARSET, ListenerResourceDefinition.ALWAYS_SET_KEEP_ALIVE,
+            ListenerResourceDefinition.MAX_BUFFERED_REQUEST_SIZE, ListenerResourceDefinition.RECORD_REQUEST_START_TIME,
+            ListenerResourceDefinition.ALLOW_EQUALS_IN_COOKIE_VALUE};
+
+    /**
+     * Protocol attributes common to every listener in the 1.2 schema.
+     */
+    static final AttributeDefinition[] LISTENER_ATTRIBUTES_1_2 = concat(LISTENER_ATTRIBUTES_1_1,
+            ListenerResourceDefinition.NO_REQUEST_TIMEOUT, ListenerResourceDefinition.REQUEST_PARSE_TIMEOUT);
+
+    /**
+     * Socket attributes common to every listener in the 1.1 schema.
+     */
+    static final AttributeDefinition[] SOCKET_ATTRIBUTES_1_1 = {
+            ListenerResourceDefinition.BACKLOG, ListenerResourceDefinition.RECEIVE_BUFFER,
+            ListenerResourceDefinition.SEND_BUFFER, ListenerResourceDefinition.KEEP_ALIVE};
+
+    /**
+     * Socket attributes common to every listener in the 1.2 schema.
+     */
+    static final AttributeDefinition[] SOCKET_ATTRIBUTES_1_2 = concat(SOCKET_ATTRIBUTES_1_1,
+            ListenerResourceDefinition.READ_TIMEOUT, ListenerResourceDefinition.WRITE_TIMEOUT);
+
+    private static final ConcurrentMap<Namespace, Long> constructionNanos = new ConcurrentHashMap<>();
+
+    private UndertowXmlDescriptions() {
+    }
+
+    /**
+     * @return the description for the urn:jboss:domain:undertow:1.1 schema, building it on first call
+     */
+    static PersistentResourceXMLDescription undertow_1_1() {
+        return Version1_1.DESCRIPTION;
+    }
+
+    /**
+     * @return the description for the urn:jboss:domain:undertow:1.2 schema, building it on first call
+     */
+    static PersistentResourceXMLDescription undertow_1_2() {
+        return Version1_2.DESCRIPTION;
+    }
+
+    /**
+     * @return how long building the description for {@code namespace} took, or -1 if it has not been built
+     */
+    static long getConstructionTime(Namespace namespace, TimeUnit unit) {
+        Long nanos = constructionNanos.get(namespace);
+        return nanos == null ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static final class Version1_1 {
+        static final PersistentResourceXMLDescription DESCRIPTION;
+
+        static {
+            long start = System.nanoTime();
+            DESCRIPTION = build_1_1();
+            built(Namespace.UNDERTOW_1_1, start);
+        }
+    }
+
+    private static final class Version1_2 {
+        static final PersistentResourceXMLDescription DESCRIPTION;
+
+        static {
+            long start = System.nanoTime();
+            DESCRIPTION = build_1_2();
+            built(Namespace.UNDERTOW_1_2, start);
+        }
+    }
+
+    private static void built(Namespace namespace, long start) {
+        long nanos = System.nanoTime() - start;
+        constructionNanos.put(namespace, nanos);
+        logger.debugf("Built XML description for %s in %d ms", namespace.getUriString(),
+                TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    private static AttributeDefinition[] concat(AttributeDefinition[] first, AttributeDefinition... second) {
+        AttributeDefinition[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static PersistentResourceXMLDescription build_1_1() {
+        return builder(UndertowRootDefinition.INSTANCE)
+                .addAttributes(UndertowRootDefinition.DEFAULT_VIRTUAL_HOST, UndertowRootDefinition.DEFAULT_SERVLET_CONTAINER, UndertowRootDefinition.DEFAULT_SERVER, UndertowRootDefinition.INSTANCE_ID)
+                .addAttribute(UndertowRootDefinition.STATISTICS_ENABLED)
+                .addChild(
+                        builder(BufferCacheDefinition.INSTANCE)
+                                .addAttributes(BufferCacheDefinition.BUFFER_SIZE, BufferCacheDefinition.BUFFERS_PER_REGION, BufferCacheDefinition.MAX_REGIONS)
+                )
+                .addChild(builder(ServerDefinition.INSTANCE)
+                                .addAttributes(ServerDefinition.DEFAULT_HOST, ServerDefinition.SERVLET_CONTAINER)
+                                .addChild(
+                                        builder(AjpListenerResourceDefinition.INSTANCE)
+                                                .addAttributes(AjpListenerResourceDefinition.SCHEME, AjpListenerResourceDefinition.BUFFER_POOL, AjpListenerResourceDefinition.ENABLED, AjpListenerResourceDefinition.SOCKET_BINDING, AjpListenerResourceDefinition.WORKER, ListenerResourceDefinition.REDIRECT_SOCKET)
+                                                .addAttributes(LISTENER_ATTRIBUTES_1_1)
+                                                .addAttributes(SOCKET_ATTRIBUTES_1_1)
+                                )
+                                .addChild(
+                                        builder(HttpListenerResourceDefinition.INSTANCE)
+                                                .addAttributes(HttpListenerResourceDefinition.BUFFER_POOL, HttpListenerResourceDefinition.CERTIFICATE_FORWARDING, HttpListenerResourceDefinition.ENABLED, HttpListenerResourceDefinition.SOCKET_BINDING, HttpListenerResourceDefinition.WORKER, ListenerResourceDefinition.REDIRECT_SOCKET, HttpListenerResourceDefinition.PROXY_ADDRESS_FORWARDING)
+                                                .addAttributes(LISTENER_ATTRIBUTES_1_1)
+                                                .addAttributes(SOCKET_ATTRIBUTES_1_1)
+                                ).addChild(
+                                        builder(HttpsListenerResourceDefinition.INSTANCE)
+                                                .addAttributes(AjpListenerResourceDefinition.SOCKET_BINDING, AjpListenerResourceDefinition.WORKER, AjpListenerResourceDefinition.BUFFER_POOL, AjpListenerResourceDefinition.ENABLED)
+                                                .addAttributes(HttpsListenerResourceDefinition.SECURITY_REALM, HttpsListenerResourceDefinition.VERIFY_CLIENT, HttpsListenerResourceDefinition.ENABLED_CIPHER_SUITES, HttpsListenerResourceDefinition.ENABLED_PROTOCOLS, HttpsListenerResourceDefinition.CERTIFICATE_FORWARDING, HttpsListenerResourceDefinition.PROXY_ADDRESS_FORWARDING)
+                                                .addAttributes(LISTENER_ATTRIBUTES_1_1)
+                                                .addAttributes(SOCKET_ATTRIBUTES_1_1)
+                                ).addChild(
+                                        builder(HostDefinition.INSTANCE)
+                                                .addAttributes(HostDefinition.ALIAS, HostDefinition.DEFAULT_WEB_MODULE)
+                                                .addChild(
+                                                        builder(LocationDefinition.INSTANCE)
+                                                                .addAttributes(LocationDefinition.HANDLER)
+                                                                .addChild(
+                                                                        builder(FilterRefDefinition.INSTANCE)
+                                                                                .addAttributes(FilterRefDefinition.PREDICATE)
+                                                                )
+                                                ).addChild(
+                                                builder(AccessLogDefinition.INSTANCE)
+                                                        .addAttributes(AccessLogDefinition.PATTERN, AccessLogDefinition.DIRECTORY, AccessLogDefinition.PREFIX, AccessLogDefinition.SUFFIX, AccessLogDefinition.WORKER, AccessLogDefinition.ROTATE)
+                                        ).addChild(
+                                                builder(FilterRefDefinition.INSTANCE)
+                                                        .addAttributes(FilterRefDefinition.PREDICATE)
+                                        ).addChild(
+                                                builder(SingleSignOnDefinition.INSTANCE)
+                                                        .addAttributes(SingleSignOnDefinition.DOMAIN, SingleSignOnDefinition.PATH, SingleSignOnDefinition.HTTP_ONLY, SingleSignOnDefinition.SECURE, SingleSignOnDefinition.COOKIE_NAME)
+                                        )
+                                )
+                )
+                .addChild(
+                        builder(ServletContainerDefinition.INSTANCE)
+                                .setAdditionalOperationsGenerator(new PersistentResourceXMLDescription.AdditionalOperationsGenerator() {
+                                    @Override
+                                    public void additionalOperations(PathAddress address, ModelNode addOperation, List<ModelNode> operations) {
+                                        operations.add(Util.createAddOperation(address.append(UndertowExtension.PATH_WEBSOCKETS))); //backwards compat
+                                    }
+                                })
+                                .addAttribute(ServletContainerDefinition.ALLOW_NON_STANDARD_WRAPPERS)
+                                .addAttribute(ServletContainerDefinition.DEFAULT_BUFFER_CACHE)
+                                .addAttribute(ServletContainerDefinition.STACK_TRACE_ON_ERROR)
+                                .addAttribute(ServletContainerDefinition.USE_LISTENER_ENCODING)
+                                .addAttribute(ServletContainerDefinition.DEFAULT_ENCODING)
+                                .addAttribute(ServletContainerDefinition.IGNORE_FLUSH)
+                                .addAttribute(ServletContainerDefinition.EAGER_FILTER_INIT)
+                                .addChild(
+                                        builder(JspDefinition.INSTANCE)
+                                                .setXmlElementName(Constants.JSP_CONFIG)
+                                                .addAttributes(
+                                                        JspDefinition.DISABLED,
+                                                        JspDefinition.DEVELOPMENT,
+                                                        JspDefinition.KEEP_GENERATED,
+                                                        JspDefinition.TRIM_SPACES,
+                                                        JspDefinition.TAG_POOLING,
+                                                        JspDefinition.MAPPED_FILE,
+                                                        JspDefinition.CHECK_INTERVAL,
+                                                        JspDefinition.MODIFICATION_TEST_INTERVAL,
+                                                        JspDefinition.RECOMPILE_ON_FAIL,
+                                                        JspDefinition.SMAP,
+                                                        JspDefinition.DUMP_SMAP,
+                                                        JspDefinition.GENERATE_STRINGS_AS_CHAR_ARRAYS,
+                                                        JspDefinition.ERROR_ON_USE_BEAN_INVALID_CLASS_ATTRIBUTE,
+                                                        JspDefinition.SCRATCH_DIR,
+                                                        JspDefinition.SOURCE_VM,
+                                                        JspDefinition.TARGET_VM,
+                                                        JspDefinition.JAVA_ENCODING,
+                                                        JspDefinition.X_POWERED_BY,
+                                                        JspDefinition.DISPLAY_SOURCE_FRAGMENT)
+                                )
+                                .addChild(
+                                        builder(SessionCookieDefinition.INSTANCE)
+                                                .addAttributes(
+                                                        SessionCookieDefinition.NAME,
+                                                        SessionCookieDefinition.DOMAIN,
+                                                        SessionCookieDefinition.COMMENT,
+                                                        SessionCookieDefinition.HTTP_ONLY,
+                                                        SessionCookieDefinition.SECURE,
+                                                        SessionCookieDefinition.MAX_AGE
+                                                )
+                                )
+                                .addChild(
+                                        builder(PersistentSessionsDefinition.INSTANCE)
+                                                .addAttributes(
+                                                        PersistentSessionsDefinition.PATH,
+                                                        PersistentSessionsDefinition.RELATIVE_TO
+                                                )
+                                )
+                )
+                .addChild( //todo add NOOP element parser
+                        builder(ErrorPageDefinition.INSTANCE)
+                                .addAttributes(ErrorPageDefinition.CODE, ErrorPageDefinition.PATH)
+                                .setNoAddOperation(true)
+                                .setXmlWrapperElement(Constants.ERROR_PAGES))
+                .addChild(
+                        builder(HandlerDefinitions.INSTANCE)
+                                .setXmlElementName(Constants.HANDLERS)
+                                .setNoAddOperation(true)
+                                .addChild(
+                                        builder(FileHandler.INSTANCE)
+                                                .addAttributes(
+                                                        FileHandler.PATH,
+                                                        FileHandler.CACHE_BUFFER_SIZE,
+                                                        FileHandler.CACHE_BUFFERS,
+                                                        FileHandler.DIRECTORY_LISTING)
+                                )
+                                .addChild(
+                                        builder(ReverseProxyHandler.INSTANCE)
+                                                .addAttributes(
+                                                        ReverseProxyHandler.CONNECTIONS_PER_THREAD,
+                                                        ReverseProxyHandler.SESSION_COOKIE_NAMES,
+                                                        ReverseProxyHandler.PROBLEM_SERVER_RETRY,
+                                                        ReverseProxyHandler.MAX_REQUEST_TIME)
+                                                .addChild(builder(ReverseProxyHandlerHost.INSTANCE)
+                                                                .setXmlElementName(Constants.HOST)
+                                                                .addAttributes(ReverseProxyHandlerHost.INSTANCE_ID)
+                                                )
+                                )
+
+
+                )
+                .addChild(
+                        builder(FilterDefinitions.INSTANCE)
+                                .setXmlElementName(Constants.FILTERS)
+                                .setNoAddOperation(true)
+                                .addChild(
+                                        builder(BasicAuthHandler.INSTANCE)
+                                                .addAttributes(BasicAuthHandler.SECURITY_DOMAIN)
+                                )
+                                .addChild(
+                                        builder(ConnectionLimitHandler.INSTANCE)
+                                                .addAttributes(ConnectionLimitHandler.MAX_CONCURRENT_REQUESTS, ConnectionLimitHandler.QUEUE_SIZE)
+                                ).addChild(
+                                builder(ResponseHeaderFilter.INSTANCE)
+                                        .addAttributes(ResponseHeaderFilter.NAME, ResponseHeaderFilter.VALUE)
+                        ).addChild(
+                                builder(GzipFilter.INSTANCE)
+                        )
+
+                )
+                        //here to make sure we always add filters & handlers path to mgmt model
+                .setAdditionalOperationsGenerator(new PersistentResourceXMLDescription.AdditionalOperationsGenerator() {
+                    @Override
+                    public void additionalOperations(final PathAddress address, final ModelNode addOperation, final List<ModelNode> operations) {
+                        operations.add(Util.createAddOperation(address.append(UndertowExtension.PATH_FILTERS)));
+                        operations.add(Util.createAddOperation(address.append(UndertowExtension.PATH_HANDLERS)));
+                    }
+                })
+                .build();
+    }
+
+    private static PersistentResourceXMLDescription build_1_2() {
+        return builder(UndertowRootDefinition.INSTANCE)
+                .addAttributes(UndertowRootDefinition.DEFAULT_VIRTUAL_HOST,
+                    UndertowRootDefinition.DEFAULT_SERVLET_CONTAINER, UndertowRootDefinition.DEFAULT_SERVER,
+                    UndertowRootDefinition.INSTANCE_ID)
+                .addAttribute(UndertowRootDefinition.STATISTICS_ENABLED)
+                .addChild(builder(BufferCacheDefinition.INSTANCE).addAttributes(BufferCacheDefinition.BUFFER_SIZE,
+                    BufferCacheDefinition.BUFFERS_PER_REGION, BufferCacheDefinition.MAX_REGIONS,
+                    BufferCacheDefinition.EVICTION_POLICY))
+                .addChild(builder(ServerDefinition.INSTANCE)
+                        .addAttributes(ServerDefinition.DEFAULT_HOST, ServerDefinition.SERVLET_CONTAINER)
+                        .addChild(builder(AjpListenerResourceDefinition.INSTANCE)
+                                .addAttributes(AjpListenerResourceDefinition.SCHEME,
+                                    AjpListenerResourceDefinition.BUFFER_POOL, AjpListenerResourceDefinition.ENABLED,
+                                    AjpListenerResourceDefinition.SOCKET_BINDING, AjpListenerResourceDefinition.WORKER,
+                                    ListenerResourceDefinition.REDIRECT_SOCKET)
+                                .addAttribute(ListenerResourceDefinition.RESOLVE_PEER_ADDRESS)
+                                .addAttributes(LISTENER_ATTRIBUTES_1_2)
+                                .addAttributes(SOCKET_ATTRIBUTES_1_2)
+                                .addAttribute(ListenerResourceDefinition.METRICS_ENABLED))
+                        .addChild(builder(HttpListenerResourceDefinition.INSTANCE)
+                                .addAttributes(HttpListenerResourceDefinition.BUFFER_POOL,
+                                    HttpListenerResourceDefinition.CERTIFICATE_FORWARDING,
+                                    HttpListenerResourceDefinition.ENABLED,
+                                    HttpListenerResourceDefinition.SOCKET_BINDING,
+                                    HttpListenerResourceDefinition.WORKER, ListenerResourceDefinition.REDIRECT_SOCKET,
+                                    HttpListenerResourceDefinition.PROXY_ADDRESS_FORWARDING)
+                                .addAttribute(ListenerResourceDefinition.RESOLVE_PEER_ADDRESS)
+                                .addAttributes(LISTENER_ATTRIBUTES_1_2)
+                                .addAttributes(SOCKET_ATTRIBUTES_1_2)
+                                .addAttribute(ListenerResourceDefinition.METRICS_ENABLED))
+                        .addChild(builder(HttpsListenerResourceDefinition.INSTANCE)
+                                .addAttributes(AjpListenerResourceDefinition.SOCKET_BINDING,
+                                    AjpListenerResourceDefinition.WORKER, AjpListenerResourceDefinition.BUFFER_POOL,
+                                    AjpListenerResourceDefinition.ENABLED)
+                                .addAttribute(ListenerResourceDefinition.RESOLVE_PEER_ADDRESS)
+                                .addAttributes(HttpsListenerResourceDefinition.SECURITY_REALM,
+                                    HttpsListenerResourceDefinition.VERIFY_CLIENT,
+                                    HttpsListenerResourceDefinition.ENABLED_CIPHER_SUITES,
+                                    HttpsListenerResourceDefinition.ENABLED_PROTOCOLS,
+                                    HttpsListenerResourceDefinition.CERTIFICATE_FORWARDING,
+                                    HttpsListenerResourceDefinition.PROXY_ADDRESS_FORWARDING)
+                                .addAttributes(LISTENER_ATTRIBUTES_1_2)
+                                .addAttributes(SOCKET_ATTRIBUTES_1_2)
+                                .addAttributes(HttpsListenerResourceDefinition.TCP_NO_DELAY,
+                                    HttpsListenerResourceDefinition.CORK, HttpsListenerResourceDefinition.WARM_UP_HANDSHAKES,
+                                    HttpsListenerResourceDefinition.QUEUE_DEADLINE)
+                                .addAttribute(ListenerResourceDefinition.METRICS_ENABLED))
+                        .addChild(builder(HostDefinition.INSTANCE)
+                                .addAttributes(HostDefinition.ALIAS, HostDefinition.DEFAULT_WEB_MODULE)
+                                .addChild(builder(LocationDefinition.INSTANCE).addAttributes(LocationDefinition.HANDLER)
+                                        .addChild(builder(FilterRefDefinition.INSTANCE).addAttributes(
+                                            FilterRefDefinition.PREDICATE, FilterRefDefinition.PRIORITY)))
+                                .addChild(builder(AccessLogDefinition.INSTANCE).addAttributes(
+                                    AccessLogDefinition.PATTERN, AccessLogDefinition.DIRECTORY,
+                                    AccessLogDefinition.PREFIX, AccessLogDefinition.SUFFIX, AccessLogDefinition.WORKER,
+                                    AccessLogDefinition.ROTATE, AccessLogDefinition.ASYNC,
+                                    AccessLogDefinition.BUFFER_RECORDS, AccessLogDefinition.OVERFLOW_POLICY,
+                                    AccessLogDefinition.COMPRESS_ROTATED))
+                                .addChild(builder(FilterRefDefinition.INSTANCE)
+                                        .addAttributes(FilterRefDefinition.PREDICATE, FilterRefDefinition.PRIORITY))
+                                .addChild(builder(SingleSignOnDefinition.INSTANCE).addAttributes(
+                                    SingleSignOnDefinition.DOMAIN, SingleSignOnDefinition.PATH,
+                                    SingleSignOnDefinition.HTTP_ONLY, SingleSignOnDefinition.SECURE,
+                                    SingleSignOnDefinition.COOKIE_NAME))))
+                .addChild(builder(ServletContainerDefinition.INSTANCE)
+                        .addAttribute(ServletContainerDefinition.ALLOW_NON_STANDARD_WRAPPERS)
+                        .addAttribute(ServletContainerDefinition.DEFAULT_BUFFER_CACHE)
+                        .addAttribute(ServletContainerDefinition.STACK_TRACE_ON_ERROR)
+                        .addAttribute(ServletContainerDefinition.USE_LISTENER_ENCODING)
+                        .addAttribute(ServletContainerDefinition.DEFAULT_ENCODING)
+                        .addAttribute(ServletContainerDefinition.IGNORE_FLUSH)
+                        .addAttribute(ServletContainerDefinition.EAGER_FILTER_INIT)
+                        .addAttribute(ServletContainerDefinition.DEFAULT_SESSION_TIMEOUT)
+                        .addAttribute(ServletContainerDefinition.DISABLE_CACHING_FOR_SECURED_PAGES)
+                        .addAttributes(ServletContainerDefinition.VIRTUAL_THREADS,
+                            ServletContainerDefinition.PINNED_THRESHOLD, ServletContainerDefinition.UPLOAD_SPOOLING,
+                            ServletContainerDefinition.UPLOAD_SPOOLING_THRESHOLD,
+                            ServletContainerDefinition.UPLOAD_SPOOLING_DIRECTORY)
+                        .addChild(builder(JspDefinition.INSTANCE).setXmlElementName(Constants.JSP_CONFIG).addAttributes(
+                            JspDefinition.DISABLED, JspDefinition.DEVELOPMENT, JspDefinition.KEEP_GENERATED,
+                            JspDefinition.TRIM_SPACES, JspDefinition.TAG_POOLING, JspDefinition.MAPPED_FILE,
+                            JspDefinition.CHECK_INTERVAL, JspDefinition.MODIFICATION_TEST_INTERVAL,
+                            JspDefinition.RECOMPILE_ON_FAIL, JspDefinition.SMAP, JspDefinition.DUMP_SMAP,
+                            JspDefinition.GENERATE_STRINGS_AS_CHAR_ARRAYS,
+                            JspDefinition.ERROR_ON_USE_BEAN_INVALID_CLASS_ATTRIBUTE, JspDefinition.SCRATCH_DIR,
+                            JspDefinition.SOURCE_VM, JspDefinition.TARGET_VM, JspDefinition.JAVA_ENCODING,
+                            JspDefinition.X_POWERED_BY, JspDefinition.DISPLAY_SOURCE_FRAGMENT))
+                        .addChild(builder(SessionCookieDefinition.INSTANCE).addAttributes(SessionCookieDefinition.NAME,
+                            SessionCookieDefinition.DOMAIN, SessionCookieDefinition.COMMENT,
+                            SessionCookieDefinition.HTTP_ONLY, SessionCookieDefinition.SECURE,
+                            SessionCookieDefinition.MAX_AGE))
+                        .addChild(builder(PersistentSessionsDefinition.INSTANCE).addAttributes(
+                            PersistentSessionsDefinition.PATH, PersistentSessionsDefinition.RELATIVE_TO,
+                            PersistentSessionsDefinition.SESSION_LOG, PersistentSessionsDefinition.FLUSH_INTERVAL,
+                            PersistentSessionsDefinition.COMPACTION_RATIO))
+                        .addChild(builder(WebsocketsDefinition.INSTANCE).addAttributes(WebsocketsDefinition.WORKER,
+                            WebsocketsDefinition.BUFFER_POOL, WebsocketsDefinition.DISPATCH_TO_WORKER,
+                            WebsocketsDefinition.COALESCING_WINDOW, WebsocketsDefinition.COALESCING_MAX_BATCH_SIZE)))
+                .addChild(builder(HandlerDefinitions.INSTANCE).setXmlElementName(Constants.HANDLERS)
+                        .setNoAddOperation(true)
+                        .addChild(builder(FileHandler.INSTANCE).addAttributes(FileHandler.PATH,
+                            FileHandler.CACHE_BUFFER_SIZE, FileHandler.CACHE_BUFFERS, FileHandler.DIRECTORY_LISTING,
+                            FileHandler.MAPPED_CACHE_SIZE, FileHandler.MAPPED_MIN_FILE_SIZE, FileHandler.BUFFER_CACHE))
+                        .addChild(builder(ReverseProxyHandler.INSTANCE)
+                                .addAttributes(ReverseProxyHandler.CONNECTIONS_PER_THREAD,
+                                    ReverseProxyHandler.SESSION_COOKIE_NAMES, ReverseProxyHandler.PROBLEM_SERVER_RETRY,
+                                    ReverseProxyHandler.MAX_REQUEST_TIME, ReverseProxyHandler.LOAD_BALANCING_POLICY,
+                                    ReverseProxyHandler.HEALTH_CHECK_PATH, ReverseProxyHandler.HEALTH_CHECK_INTERVAL)
+                                .addChild(builder(ReverseProxyHandlerHost.INSTANCE).setXmlElementName(Constants.HOST)
+                                        .addAttributes(ReverseProxyHandlerHost.INSTANCE_ID,
+                                            ReverseProxyHandlerHost.PATH, ReverseProxyHandlerHost.SCHEME,
+                                            ReverseProxyHandlerHost.OUTBOUND_SOCKET_BINDING)))
+                )
+                .addChild(builder(FilterDefinitions.INSTANCE).setXmlElementName(Constants.FILTERS)
+                        .setNoAddOperation(true)
+                        .addChild(builder(BasicAuthHandler.INSTANCE).addAttributes(BasicAuthHandler.SECURITY_DOMAIN))
+                        .addChild(builder(ConnectionLimitHandler.INSTANCE).addAttributes(
+                            ConnectionLimitHandler.MAX_CONCURRENT_REQUESTS, ConnectionLimitHandler.QUEUE_SIZE))
+                        .addChild(builder(ResponseHeaderFilter.INSTANCE).addAttributes(ResponseHeaderFilter.NAME,
+                            ResponseHeaderFilter.VALUE))
+                        .addChild(builder(GzipFilter.INSTANCE).addAttributes(GzipFilter.CACHE_SIZE,
+                            GzipFilter.MAX_CACHEABLE_SIZE, GzipFilter.PRECOMPRESSED_DIRECTORY))
+                        .addChild(builder(ErrorPageDefinition.INSTANCE).addAttributes(ErrorPageDefinition.CODE,
+                            ErrorPageDefinition.PATH))
+                        .addChild(builder(CustomFilterDefinition.INSTANCE).addAttributes(
+                            CustomFilterDefinition.CLASS_NAME, CustomFilterDefinition.MODULE,
+                            CustomFilterDefinition.PARAMETERS).setXmlElementName("filter"))
+                        .addChild(builder(AdaptiveConcurrencyLimitFilter.INSTANCE).addAttributes(
+                            AdaptiveConcurrencyLimitFilter.ALGORITHM, AdaptiveConcurrencyLimitFilter.INITIAL_LIMIT,
+                            AdaptiveConcurrencyLimitFilter.MIN_LIMIT, AdaptiveConcurrencyLimitFilter.MAX_LIMIT,
+                            AdaptiveConcurrencyLimitFilter.LATENCY_THRESHOLD))
+                        .addChild(builder(ResponseCacheFilter.INSTANCE).addAttributes(
+                            ResponseCacheFilter.CACHE_SIZE, ResponseCacheFilter.MAX_CACHEABLE_SIZE,
+                            ResponseCacheFilter.DEFAULT_MAX_AGE))
+                        .addChild(builder(RateLimitFilter.INSTANCE).addAttributes(
+                            RateLimitFilter.KEY, RateLimitFilter.HEADER_NAME, RateLimitFilter.REQUESTS_PER_SECOND,
+                            RateLimitFilter.BURST, RateLimitFilter.MAX_CLIENTS))
+                        .addChild(builder(BulkheadFilter.INSTANCE).addAttributes(
+                            BulkheadFilter.MAX_THREADS, BulkheadFilter.QUEUE_SIZE, BulkheadFilter.QUEUE_TIMEOUT))
+                        .addChild(builder(RequestDecompressionFilter.INSTANCE).addAttributes(
+                            RequestDecompressionFilter.MAX_DECOMPRESSED_SIZE))
+                        .addChild(builder(RequestProfilerFilter.INSTANCE).addAttributes(
+                            RequestProfilerFilter.SAMPLE_RATE, RequestProfilerFilter.BUFFER_SIZE))
+                        .addChild(builder(MetricsEndpointFilter.INSTANCE).addAttributes(
+                            MetricsEndpointFilter.PATH, MetricsEndpointFilter.ALLOW_REMOTE))
+                )
+                // here to make sure we always add filters & handlers path to mgmt model
+                .setAdditionalOperationsGenerator(new PersistentResourceXMLDescription.AdditionalOperationsGenerator() {
+                    @Override
+                    public void additionalOperations(final PathAddress address, final ModelNode addOperation,
+                            final List<ModelNode> operations) {
+                        operations.add(Util.createAddOperation(address.append(UndertowExtension.PATH_FILTERS)));
+                        operations.add(Util.createAddOperation(address.append(UndertowExtension.PATH_HANDLERS)));
+                    }
+                }).build();
+    }
+}
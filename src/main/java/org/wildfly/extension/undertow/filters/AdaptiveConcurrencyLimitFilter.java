@@ -0,0 +1,127 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.Handlers;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.ExpressionResolver;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.EnumValidator;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+
+/**
+ * A concurrency limit for the requests of a location that adapts to their latency, see
+ * {@link AdaptiveConcurrencyLimiter}. Each filter-ref gets its own limiter; the limiters of a filter resource are
+ * published together as one MXBean with type {@code adaptive-concurrency-limit} named after the resource, see
+ * {@link AdaptiveConcurrencyLimits} and {@link FilterResourceNames}.
+ */
+public class AdaptiveConcurrencyLimitFilter extends Filter implements FilterResourceNames.Release {
+
+    public static final AdaptiveConcurrencyLimitFilter INSTANCE = new AdaptiveConcurrencyLimitFilter();
+
+    public static final SimpleAttributeDefinition ALGORITHM = new SimpleAttributeDefinitionBuilder("algorithm", ModelType.STRING)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(AdaptiveConcurrencyLimiter.Algorithm.GRADIENT.toString()))
+            .setValidator(new EnumValidator<>(AdaptiveConcurrencyLimiter.Algorithm.class, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    public static final SimpleAttributeDefinition INITIAL_LIMIT = new SimpleAttributeDefinitionBuilder("initial-limit", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(50))
+            .setValidator(new IntRangeValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    public static final SimpleAttributeDefinition MIN_LIMIT = new SimpleAttributeDefinitionBuilder("min-limit", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(10))
+            .setValidator(new IntRangeValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    public static final SimpleAttributeDefinition MAX_LIMIT = new SimpleAttributeDefinitionBuilder("max-limit", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(1000))
+            .setValidator(new IntRangeValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * Only used by the aimd algorithm
+     */
+    public static final SimpleAttributeDefinition LATENCY_THRESHOLD = new SimpleAttributeDefinitionBuilder("latency-threshold", ModelType.LONG)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(1000L))
+            .setValidator(new LongRangeValidator(1, Long.MAX_VALUE, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    private static final ConcurrentMap<String, AdaptiveConcurrencyLimits> LIMITS = new ConcurrentHashMap<>();
+
+    private AdaptiveConcurrencyLimitFilter() {
+        super("adaptive-concurrency-limit");
+    }
+
+    @Override
+    public Collection<AttributeDefinition> getAttributes() {
+        return Arrays.<AttributeDefinition>asList(ALGORITHM, INITIAL_LIMIT, MIN_LIMIT, MAX_LIMIT, LATENCY_THRESHOLD);
+    }
+
+    @Override
+    public void release(String name) {
+        if (LIMITS.remove(name) != null) {
+            UndertowMXBeans.unregister("adaptive-concurrency-limit", name);
+        }
+    }
+
+    @Override
+    public Class<? extends HttpHandler> getHandlerClass() {
+        return null;
+    }
+
+    @Override
+    public HttpHandler createHttpHandler(final Predicate predicate, final ModelNode model, HttpHandler next) {
+        AdaptiveConcurrencyLimiter.Algorithm algorithm;
+        AdaptiveConcurrencyLimiter limiter;
+        try {
+            algorithm = AdaptiveConcurrencyLimiter.Algorithm.forName(ALGORITHM.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asString());
+            limiter = new AdaptiveConcurrencyLimiter(algorithm,
+                    INITIAL_LIMIT.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt(),
+                    MIN_LIMIT.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt(),
+                    MAX_LIMIT.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt(),
+                    LATENCY_THRESHOLD.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asLong(), TimeUnit.MILLISECONDS);
+        } catch (OperationFailedException e) {
+            throw new IllegalArgumentException(e);
+        }
+        String name = FilterResourceNames.nameOf(model, "adaptive-concurrency-limit");
+        AdaptiveConcurrencyLimits limits = LIMITS.get(name);
+        if (limits == null) {
+            limits = new AdaptiveConcurrencyLimits(algorithm);
+            AdaptiveConcurrencyLimits existing = LIMITS.putIfAbsent(name, limits);
+            if (existing != null) {
+                limits = existing;
+            } else {
+                UndertowMXBeans.register("adaptive-concurrency-limit", name, limits);
+            }
+        }
+        limits.add(limiter);
+        UndertowLogger.ROOT_LOGGER.debugf("Created %s adaptive concurrency limiter %s", limiter.getAlgorithm(), name);
+
+        HttpHandler handler = new AdaptiveConcurrencyLimitHandler(next, limiter);
+        return predicate != null ? Handlers.predicate(predicate, handler, next) : handler;
+    }
+}
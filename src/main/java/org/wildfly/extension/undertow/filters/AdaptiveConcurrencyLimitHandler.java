@@ -0,0 +1,43 @@
+package org.wildfly.extension.undertow.filters;
+
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.StatusCodes;
+
+/**
+ * Admits requests while fewer than the {@link AdaptiveConcurrencyLimiter}'s limit are in progress and answers the rest
+ * with an immediate 503, without queueing them: a request turned away straight away can be retried on another node,
+ * one parked in a queue only adds to the latency the limit is trying to protect.
+ */
+final class AdaptiveConcurrencyLimitHandler implements HttpHandler {
+
+    private final HttpHandler next;
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    AdaptiveConcurrencyLimitHandler(HttpHandler next, AdaptiveConcurrencyLimiter limiter) {
+        this.next = next;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        if (!limiter.tryAcquire()) {
+            exchange.setResponseCode(StatusCodes.SERVICE_UNAVAILABLE);
+            exchange.endExchange();
+            return;
+        }
+        final long start = System.nanoTime();
+        exchange.addExchangeCompleteListener(new ExchangeCompletionListener() {
+            @Override
+            public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+                try {
+                    limiter.release(System.nanoTime() - start, exchange.getResponseCode() >= StatusCodes.INTERNAL_SERVER_ERROR);
+                } finally {
+                    nextListener.proceed();
+                }
+            }
+        });
+        next.handleRequest(exchange);
+    }
+}
@@ -0,0 +1,232 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrency limit that follows the latency of the requests it lets through.
+ * <p>
+ * Latencies are averaged over windows of about one limit's worth of completed requests and the limit is recalculated
+ * at the end of each window. With the {@link Algorithm#GRADIENT gradient} algorithm it is multiplied by the ratio
+ * between the lowest average seen (the latency without queueing) and the current one, allowing the latency to grow up
+ * to the tolerance before the limit shrinks, plus a small allowance for queueing so that it keeps probing upwards; the
+ * baseline itself is re-measured periodically in a window run at half the limit. With
+ * {@link Algorithm#AIMD AIMD} the limit grows additively while the window average is under the latency threshold, and
+ * is cut by a tenth when it is over. In both cases a failed (5xx) request in the window backs the limit off, and a
+ * window in which less than half of the limit was used is not a reason to grow: it says nothing about how much more
+ * the backend can take.
+ * <p>
+ * Completions add their latency to the window without taking a lock; the completion that fills the window, and wins the
+ * flag that makes it the only one at a time, starts the next window and recalculates the limit from the one it ended. A
+ * completion adds its latency before it counts itself, so one that lands while the window ends can only raise the
+ * ended window's average or be left out of it; it never lowers the baseline.
+ */
+final class AdaptiveConcurrencyLimiter {
+
+    enum Algorithm {
+        GRADIENT, AIMD;
+
+        static Algorithm forName(String name) {
+            return valueOf(name.toUpperCase(Locale.ENGLISH));
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    /*
+     * How much the latency may exceed the lowest latency seen before the gradient algorithm reduces the limit
+     */
+    static final double TOLERANCE = 1.5;
+
+    private static final double SMOOTHING = 0.2;
+
+    private static final int PROBE_DRAINING = 1;
+
+    private static final int PROBE_MEASURING = 2;
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /*
+     * Samples are averaged over a window of about one limit's worth of completions, i.e. roughly one round trip
+     */
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    /*
+     * Windows between two probes of the gradient algorithm's baseline latency
+     */
+    static final int PROBE_INTERVAL_WINDOWS = 200;
+
+    private static final int PROBE_RETRY_WINDOWS = 10;
+
+    private final Algorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private volatile int limit;
+
+    private volatile Window window = new Window();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private final AtomicBoolean windowFailed = new AtomicBoolean();
+    private volatile int windowSize;
+    private final AtomicBoolean recalculating = new AtomicBoolean();
+
+    // only used by the completion recalculating the limit, which recalculating hands over
+    private double estimatedLimit;
+    private volatile long minRttNanos;
+    private int windowsSinceProbe;
+    private int probePhase;
+    private double limitBeforeProbe;
+
+    AdaptiveConcurrencyLimiter(Algorithm algorithm, int initialLimit, int minLimit, int maxLimit, long latencyThreshold, TimeUnit unit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limits " + minLimit + " - " + maxLimit);
+        }
+        this.algorithm = algorithm;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+        setLimit(initialLimit);
+    }
+
+    /**
+     * @return {@code true} if the request may proceed, in which case {@link #release} must be called once it completes
+     */
+    boolean tryAcquire() {
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release(long rttNanos, boolean failed) {
+        int inFlightAtCompletion = inFlight.getAndDecrement();
+        completed.increment();
+        Window window = this.window;
+        window.rttNanos.add(Math.max(1, rttNanos));
+        int max = windowMaxInFlight.get();
+        while (inFlightAtCompletion > max && !windowMaxInFlight.compareAndSet(max, inFlightAtCompletion)) {
+            max = windowMaxInFlight.get();
+        }
+        if (failed) {
+            windowFailed.set(true);
+        }
+        if (window.samples.incrementAndGet() >= windowSize && recalculating.compareAndSet(false, true)) {
+            try {
+                endWindow(window);
+            } finally {
+                recalculating.set(false);
+            }
+        }
+    }
+
+    private void endWindow(Window ended) {
+        if (ended != window) {
+            // filled by a completion that read the window before the last one ended it
+            return;
+        }
+        window = new Window();
+        // the count first: every completion it includes has already added its latency
+        int samples = ended.samples.get();
+        long rtt = ended.rttNanos.sum() / samples;
+        boolean appLimited = windowMaxInFlight.getAndSet(0) * 2 < estimatedLimit;
+        boolean backOff = windowFailed.getAndSet(false);
+
+        if (probePhase == PROBE_DRAINING) {
+            // this window still holds requests admitted before the probe started
+            probePhase = PROBE_MEASURING;
+            return;
+        }
+        if (probePhase == PROBE_MEASURING) {
+            // a clearly lower baseline means the old one included queueing, and so may this one: probe again soon
+            windowsSinceProbe = rtt < minRttNanos * 0.9 ? PROBE_INTERVAL_WINDOWS - PROBE_RETRY_WINDOWS : 0;
+            minRttNanos = rtt;
+            probePhase = 0;
+            setLimit(limitBeforeProbe);
+            return;
+        }
+        if (minRttNanos == 0 || rtt < minRttNanos) {
+            minRttNanos = rtt;
+        }
+        double newLimit;
+        if (backOff) {
+            newLimit = estimatedLimit * BACKOFF_RATIO;
+        } else if (algorithm == Algorithm.AIMD) {
+            if (rtt > latencyThresholdNanos) {
+                newLimit = estimatedLimit * BACKOFF_RATIO;
+            } else if (!appLimited) {
+                newLimit = estimatedLimit + Math.max(1, Math.sqrt(estimatedLimit) / 2);
+            } else {
+                return;
+            }
+        } else {
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minRttNanos / rtt));
+            if (gradient == 1.0 && appLimited) {
+                return;
+            }
+            newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        }
+        setLimit(newLimit);
+
+        // The lowest latency seen is only the latency without queueing if some window was ever run without a queue:
+        // it is wrong when the limiter started out overloaded, and stale when the backend has become slower. Every so
+        // often the gradient algorithm halves the limit for a window and takes that window's latency as the baseline.
+        if (algorithm == Algorithm.GRADIENT && ++windowsSinceProbe >= PROBE_INTERVAL_WINDOWS && !appLimited) {
+            limitBeforeProbe = estimatedLimit;
+            probePhase = PROBE_DRAINING;
+            limit = Math.max(minLimit, (int) (estimatedLimit / 2));
+        }
+    }
+
+    private void setLimit(double newLimit) {
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+        windowSize = Math.max(MIN_WINDOW_SAMPLES, limit);
+    }
+
+    String getAlgorithm() {
+        return algorithm.toString();
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    long getCompletedCount() {
+        return completed.sum();
+    }
+
+    double getTargetLatencyMillis() {
+        long nanos = algorithm == Algorithm.AIMD ? latencyThresholdNanos : minRttNanos;
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static final class Window {
+        final AtomicInteger samples = new AtomicInteger();
+        final LongAdder rttNanos = new LongAdder();
+    }
+}
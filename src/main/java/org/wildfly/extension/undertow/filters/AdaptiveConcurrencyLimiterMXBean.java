@@ -0,0 +1,29 @@
+package org.wildfly.extension.undertow.filters;
+
+/**
+ * Runtime state of an adaptive-concurrency-limit filter, summed over the limiters of its filter-refs, registered through
+ * {@link org.wildfly.extension.undertow.UndertowMXBeans} with type {@code adaptive-concurrency-limit}.
+ */
+public interface AdaptiveConcurrencyLimiterMXBean {
+
+    String getAlgorithm();
+
+    /**
+     * @return the number of filter-refs whose limiters are summed
+     */
+    int getLimiterCount();
+
+    int getLimit();
+
+    int getInFlight();
+
+    long getRejectedCount();
+
+    long getCompletedCount();
+
+    /**
+     * @return the latency, in milliseconds, the limits are currently being measured against: the long term average for
+     *         the gradient algorithm, the configured threshold for AIMD; the highest of them across the filter-refs
+     */
+    double getTargetLatencyMillis();
+}
@@ -0,0 +1,85 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The limiters of the filter-refs of one adaptive-concurrency-limit filter, published together as its MXBean. A limiter
+ * is held weakly, so the limiters of handlers that have been rebuilt drop out once nothing uses them.
+ */
+final class AdaptiveConcurrencyLimits implements AdaptiveConcurrencyLimiterMXBean {
+
+    private final String algorithm;
+
+    private final Set<AdaptiveConcurrencyLimiter> limiters = Collections.newSetFromMap(new WeakHashMap<AdaptiveConcurrencyLimiter, Boolean>());
+
+    AdaptiveConcurrencyLimits(AdaptiveConcurrencyLimiter.Algorithm algorithm) {
+        this.algorithm = algorithm.toString();
+    }
+
+    synchronized void add(AdaptiveConcurrencyLimiter limiter) {
+        limiters.add(limiter);
+    }
+
+    private synchronized List<AdaptiveConcurrencyLimiter> limiters() {
+        return new ArrayList<>(limiters);
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public int getLimiterCount() {
+        return limiters().size();
+    }
+
+    @Override
+    public int getLimit() {
+        int limit = 0;
+        for (AdaptiveConcurrencyLimiter limiter : limiters()) {
+            limit += limiter.getLimit();
+        }
+        return limit;
+    }
+
+    @Override
+    public int getInFlight() {
+        int inFlight = 0;
+        for (AdaptiveConcurrencyLimiter limiter : limiters()) {
+            inFlight += limiter.getInFlight();
+        }
+        return inFlight;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        long rejected = 0;
+        for (AdaptiveConcurrencyLimiter limiter : limiters()) {
+            rejected += limiter.getRejectedCount();
+        }
+        return rejected;
+    }
+
+    @Override
+    public long getCompletedCount() {
+        long completed = 0;
+        for (AdaptiveConcurrencyLimiter limiter : limiters()) {
+            completed += limiter.getCompletedCount();
+        }
+        return completed;
+    }
+
+    @Override
+    public double getTargetLatencyMillis() {
+        double target = 0;
+        for (AdaptiveConcurrencyLimiter limiter : limiters()) {
+            target = Math.max(target, limiter.getTargetLatencyMillis());
+        }
+        return target;
+    }
+}
@@ -0,0 +1,149 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A worker pool of its own for one class of requests, with a bounded queue in front of it.
+ * <p>
+ * Admission is decided before a request is dispatched: {@link #tryAcquire} hands out one permit per thread and per
+ * queue slot, and the permit is given back by {@link #release} once the request's handler returns on the pool. The
+ * pool's own queue is unbounded, as the permits already bound it, so that a dispatch Undertow makes on our behalf is
+ * never refused. A request that has waited for longer than the queue timeout by the time a thread picks it up is not
+ * run, see {@link #started}.
+ */
+final class Bulkhead implements Executor, BulkheadMXBean {
+
+    private final int maxThreads;
+    private final int maxQueued;
+    private final long queueTimeoutNanos;
+    private final Semaphore permits;
+    private final ThreadPoolExecutor pool;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    Bulkhead(final String name, int maxThreads, int maxQueued, long queueTimeout, TimeUnit unit) {
+        this.maxThreads = maxThreads;
+        this.maxQueued = maxQueued;
+        this.queueTimeoutNanos = unit.toNanos(queueTimeout);
+        this.permits = new Semaphore(maxThreads + maxQueued);
+        this.pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "undertow-" + name + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return {@code true} if the request may be dispatched to the pool, in which case it must {@link #release} when
+     *         done
+     */
+    boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Records the time a request spent queued, once a pool thread has picked it up.
+     *
+     * @return {@code false} if it waited for too long and should be turned away
+     */
+    boolean started(long waitedNanos) {
+        started.increment();
+        waitNanos.add(waitedNanos);
+        long max = maxWaitNanos.get();
+        while (waitedNanos > max && !maxWaitNanos.compareAndSet(max, waitedNanos)) {
+            max = maxWaitNanos.get();
+        }
+        if (queueTimeoutNanos > 0 && waitedNanos > queueTimeoutNanos) {
+            timedOut.increment();
+            return false;
+        }
+        return true;
+    }
+
+    void release() {
+        completed.increment();
+        permits.release();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        pool.execute(command);
+    }
+
+    /**
+     * Lets the requests already queued run and then stops the threads; requests dispatched after this are refused.
+     */
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    @Override
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return pool.getQueue().size();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public double getMeanWaitMillis() {
+        long count = started.sum();
+        return count == 0 ? 0 : waitNanos.sum() / (count * 1e6);
+    }
+
+    @Override
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+}
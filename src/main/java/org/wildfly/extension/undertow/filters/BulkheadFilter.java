@@ -0,0 +1,114 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.Handlers;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.ExpressionResolver;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+
+/**
+ * Runs the requests a filter-ref's predicate selects on a bounded worker pool of their own, see
+ * {@link BulkheadHandler}; the predicate is what classifies requests, so a class of heavy work is one filter-ref. Each
+ * filter resource has one pool, shared by its filter-refs and kept while the handlers of their locations are rebuilt,
+ * published as an MXBean with type {@code bulkhead} named after the resource. The pool is shut down when the filter
+ * service stops, see {@link FilterResourceNames}.
+ */
+public class BulkheadFilter extends Filter implements FilterResourceNames.Release {
+
+    public static final BulkheadFilter INSTANCE = new BulkheadFilter();
+
+    public static final SimpleAttributeDefinition MAX_THREADS = new SimpleAttributeDefinitionBuilder("max-threads", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(8))
+            .setValidator(new IntRangeValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * Requests that may wait for a thread, further requests are answered with a 503
+     */
+    public static final SimpleAttributeDefinition QUEUE_SIZE = new SimpleAttributeDefinitionBuilder("queue-size", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(50))
+            .setValidator(new IntRangeValidator(0, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * Milliseconds a request may wait for a thread before it is answered with a 503, 0 waits for as long as it takes
+     */
+    public static final SimpleAttributeDefinition QUEUE_TIMEOUT = new SimpleAttributeDefinitionBuilder("queue-timeout", ModelType.LONG)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(0L))
+            .setValidator(new LongRangeValidator(0, Long.MAX_VALUE, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    private static final ConcurrentMap<String, Bulkhead> BULKHEADS = new ConcurrentHashMap<>();
+
+    private BulkheadFilter() {
+        super("bulkhead");
+    }
+
+    @Override
+    public Collection<AttributeDefinition> getAttributes() {
+        return Arrays.<AttributeDefinition>asList(MAX_THREADS, QUEUE_SIZE, QUEUE_TIMEOUT);
+    }
+
+    @Override
+    public void release(String name) {
+        Bulkhead bulkhead = BULKHEADS.remove(name);
+        if (bulkhead != null) {
+            UndertowMXBeans.unregister("bulkhead", name);
+            bulkhead.shutdown();
+            UndertowLogger.ROOT_LOGGER.debugf("Shut down bulkhead %s", name);
+        }
+    }
+
+    @Override
+    public Class<? extends HttpHandler> getHandlerClass() {
+        return null;
+    }
+
+    @Override
+    public HttpHandler createHttpHandler(final Predicate predicate, final ModelNode model, HttpHandler next) {
+        String name = FilterResourceNames.nameOf(model, "bulkhead");
+        Bulkhead bulkhead = BULKHEADS.get(name);
+        if (bulkhead == null) {
+            try {
+                bulkhead = new Bulkhead("bulkhead-" + name,
+                        MAX_THREADS.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt(),
+                        QUEUE_SIZE.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt(),
+                        QUEUE_TIMEOUT.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asLong(), TimeUnit.MILLISECONDS);
+            } catch (OperationFailedException e) {
+                throw new IllegalArgumentException(e);
+            }
+            Bulkhead existing = BULKHEADS.putIfAbsent(name, bulkhead);
+            if (existing != null) {
+                bulkhead.shutdown();
+                bulkhead = existing;
+            } else {
+                UndertowMXBeans.register("bulkhead", name, bulkhead);
+                UndertowLogger.ROOT_LOGGER.debugf("Created bulkhead %s with %d threads", name, bulkhead.getMaxThreads());
+            }
+        }
+
+        HttpHandler handler = new BulkheadHandler(next, bulkhead);
+        return predicate != null ? Handlers.predicate(predicate, handler, next) : handler;
+    }
+}
@@ -0,0 +1,46 @@
+package org.wildfly.extension.undertow.filters;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.StatusCodes;
+
+/**
+ * Dispatches the requests its predicate selects - report exports, bulk imports - to the {@link Bulkhead}'s pool instead
+ * of the listener's worker, so that however many of them pile up they only queue behind each other. When the pool and
+ * its queue are full, or a request waited past the queue timeout, it is answered with a 503.
+ */
+final class BulkheadHandler implements HttpHandler {
+
+    private final HttpHandler next;
+    private final Bulkhead bulkhead;
+
+    BulkheadHandler(HttpHandler next, Bulkhead bulkhead) {
+        this.next = next;
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        if (!bulkhead.tryAcquire()) {
+            exchange.setResponseCode(StatusCodes.SERVICE_UNAVAILABLE);
+            exchange.endExchange();
+            return;
+        }
+        final long queued = System.nanoTime();
+        exchange.dispatch(bulkhead, new HttpHandler() {
+            @Override
+            public void handleRequest(HttpServerExchange exchange) throws Exception {
+                try {
+                    if (!bulkhead.started(System.nanoTime() - queued)) {
+                        exchange.setResponseCode(StatusCodes.SERVICE_UNAVAILABLE);
+                        exchange.endExchange();
+                        return;
+                    }
+                    next.handleRequest(exchange);
+                } finally {
+                    bulkhead.release();
+                }
+            }
+        });
+    }
+}
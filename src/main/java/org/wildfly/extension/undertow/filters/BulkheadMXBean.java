@@ -0,0 +1,32 @@
+package org.wildfly.extension.undertow.filters;
+
+/**
+ * Runtime state of the worker pool of a bulkhead filter resource, registered through
+ * {@link org.wildfly.extension.undertow.UndertowMXBeans} with type {@code bulkhead}.
+ */
+public interface BulkheadMXBean {
+
+    int getMaxThreads();
+
+    int getMaxQueued();
+
+    int getActiveCount();
+
+    int getQueueDepth();
+
+    long getCompletedCount();
+
+    /**
+     * @return requests turned away because the pool and its queue were full
+     */
+    long getRejectedCount();
+
+    /**
+     * @return requests turned away because they waited in the queue for longer than the queue-timeout
+     */
+    long getTimedOutCount();
+
+    double getMeanWaitMillis();
+
+    double getMaxWaitMillis();
+}
@@ -0,0 +1,391 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import io.undertow.predicate.Predicate;
+import io.undertow.server.ConduitWrapper;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.encoding.GzipEncodingProvider;
+import io.undertow.util.ConduitFactory;
+import io.undertow.util.DateUtils;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.HeaderValues;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.MimeMappings;
+import io.undertow.util.StatusCodes;
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.ConduitWritableByteChannel;
+import org.xnio.conduits.Conduits;
+import org.xnio.conduits.StreamSinkConduit;
+
+/**
+ * The handler installed by the {@link GzipFilter} when its cache or pre-compressed directory is configured.
+ * <p>
+ * For a GET that accepts gzip it first looks for a pre-compressed {@code <path>.gz} file under the configured
+ * directory and serves it as is. Otherwise the request goes down the chain and, once the response headers are known,
+ * a cacheable response - a 200 with an ETag and a Content-Length no larger than the max-cacheable-size, without
+ * Set-Cookie or a private/no-store Cache-Control - is looked up by path, query, ETag and encoding: on a hit the
+ * uncompressed body is discarded and the stored gzip bytes are sent instead, on a miss the body is compressed once and
+ * stored. Because the ETag is part of the key, a changed resource can never be served from a stale entry. Responses
+ * that are not cacheable are compressed on the fly as before, and all other requests go to the plain
+ * {@link io.undertow.server.handlers.encoding.EncodingHandler}.
+ */
+final class CachingGzipHandler implements HttpHandler {
+
+    private static final String GZIP = "gzip";
+
+    private static final GzipEncodingProvider GZIP_PROVIDER = new GzipEncodingProvider();
+
+    private final HttpHandler encodingHandler;
+    private final HttpHandler next;
+    private final Predicate predicate;
+    private final OffHeapResponseStore store;
+    private final int maxCacheableSize;
+    private final Path precompressedDirectory;
+
+    CachingGzipHandler(HttpHandler encodingHandler, HttpHandler next, Predicate predicate, OffHeapResponseStore store,
+            int maxCacheableSize, String precompressedDirectory) {
+        this.encodingHandler = encodingHandler;
+        this.next = next;
+        this.predicate = predicate;
+        this.store = store;
+        this.maxCacheableSize = maxCacheableSize;
+        this.precompressedDirectory = precompressedDirectory == null ? null
+                : Paths.get(precompressedDirectory).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        if (!Methods.GET.equals(exchange.getRequestMethod()) || !acceptsGzip(exchange)
+                || exchange.getRequestHeaders().contains(Headers.RANGE)) {
+            encodingHandler.handleRequest(exchange);
+            return;
+        }
+        if (precompressedDirectory != null) {
+            final Path file = precompressedFile(exchange.getRequestPath());
+            if (file != null) {
+                if (exchange.isInIoThread()) {
+                    exchange.dispatch(new HttpHandler() {
+                        @Override
+                        public void handleRequest(HttpServerExchange exchange) throws Exception {
+                            servePrecompressed(exchange, file);
+                        }
+                    });
+                } else {
+                    servePrecompressed(exchange, file);
+                }
+                return;
+            }
+        }
+        if (store == null) {
+            encodingHandler.handleRequest(exchange);
+            return;
+        }
+        exchange.addResponseWrapper(new ConduitWrapper<StreamSinkConduit>() {
+            @Override
+            public StreamSinkConduit wrap(ConduitFactory<StreamSinkConduit> factory, HttpServerExchange exchange) {
+                return wrapResponse(factory, exchange);
+            }
+        });
+        next.handleRequest(exchange);
+    }
+
+    private StreamSinkConduit wrapResponse(ConduitFactory<StreamSinkConduit> factory, HttpServerExchange exchange) {
+        HeaderMap headers = exchange.getResponseHeaders();
+        int status = exchange.getResponseCode();
+        if (status == StatusCodes.NO_CONTENT || status == StatusCodes.NOT_MODIFIED
+                || headers.contains(Headers.CONTENT_ENCODING) || !predicate.resolve(exchange)) {
+            return factory.create();
+        }
+        headers.put(Headers.CONTENT_ENCODING, GZIP);
+        headers.add(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+
+        long contentLength = cacheableLength(exchange);
+        if (contentLength < 0) {
+            headers.remove(Headers.CONTENT_LENGTH);
+            return GZIP_PROVIDER.getResponseWrapper().wrap(factory, exchange);
+        }
+        String key = exchange.getRequestPath() + '?' + exchange.getQueryString() + '\n'
+                + headers.getFirst(Headers.ETAG) + '\n' + GZIP;
+        ByteBuffer cached = store.get(key);
+        if (cached != null) {
+            headers.put(Headers.CONTENT_LENGTH, cached.remaining());
+            return new CachedBodyConduit(factory.create(), cached);
+        }
+        headers.remove(Headers.CONTENT_LENGTH);
+        return new CachedBodyConduit(factory.create(), key, (int) contentLength);
+    }
+
+    /*
+     * Returns the uncompressed length of a response that may be cached, -1 for any other response
+     */
+    private long cacheableLength(HttpServerExchange exchange) {
+        HeaderMap headers = exchange.getResponseHeaders();
+        if (exchange.getResponseCode() != StatusCodes.OK || !headers.contains(Headers.ETAG)
+                || headers.contains(Headers.SET_COOKIE)) {
+            return -1;
+        }
+        String cacheControl = headers.getFirst(Headers.CACHE_CONTROL);
+        if (cacheControl != null && (cacheControl.contains("no-store") || cacheControl.contains("private"))) {
+            return -1;
+        }
+        String contentLength = headers.getFirst(Headers.CONTENT_LENGTH);
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            long length = Long.parseLong(contentLength.trim());
+            return length <= maxCacheableSize ? length : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean acceptsGzip(HttpServerExchange exchange) {
+        HeaderValues values = exchange.getRequestHeaders().get(Headers.ACCEPT_ENCODING);
+        if (values == null) {
+            return false;
+        }
+        for (String value : values) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim();
+                if (name.equalsIgnoreCase(GZIP) || name.equals("*")) {
+                    return !isQValueZero(parts);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isQValueZero(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) == 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Resolves <request path>.gz under the pre-compressed directory, refusing anything that would escape it
+     */
+    private Path precompressedFile(String requestPath) {
+        if (requestPath.isEmpty() || requestPath.endsWith("/")) {
+            return null;
+        }
+        try {
+            Path file = precompressedDirectory.resolve(requestPath.substring(1) + ".gz").normalize();
+            if (file.startsWith(precompressedDirectory) && Files.isRegularFile(file)) {
+                return file;
+            }
+        } catch (InvalidPathException e) {
+            // not a path we could have a file for
+        }
+        return null;
+    }
+
+    private static void servePrecompressed(HttpServerExchange exchange, Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String etag = "W/\"" + Long.toHexString(attributes.size()) + '-' + Long.toHexString(lastModified) + "-gz\"";
+
+        HeaderMap headers = exchange.getResponseHeaders();
+        headers.put(Headers.ETAG, etag);
+        headers.put(Headers.LAST_MODIFIED, DateUtils.toDateString(new Date(lastModified)));
+        headers.put(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+        if (matchesIfNoneMatch(exchange.getRequestHeaders().getFirst(Headers.IF_NONE_MATCH), etag)) {
+            exchange.setResponseCode(StatusCodes.NOT_MODIFIED);
+            exchange.endExchange();
+            return;
+        }
+        String requestPath = exchange.getRequestPath();
+        int dot = requestPath.lastIndexOf('.');
+        String contentType = dot > requestPath.lastIndexOf('/') ? MimeMappings.DEFAULT.getMimeType(requestPath.substring(dot + 1)) : null;
+        if (contentType != null) {
+            headers.put(Headers.CONTENT_TYPE, contentType);
+        }
+        headers.put(Headers.CONTENT_ENCODING, GZIP);
+        headers.put(Headers.CONTENT_LENGTH, attributes.size());
+
+        UndertowLogger.ROOT_LOGGER.tracef("Serving pre-compressed %s for %s", file, requestPath);
+        exchange.startBlocking();
+        try (OutputStream out = exchange.getOutputStream()) {
+            Files.copy(file, out);
+        }
+    }
+
+    private static boolean matchesIfNoneMatch(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ByteBuffer gzip(ByteBuffer body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, body.remaining() / 4));
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed, 8192)) {
+            if (body.hasArray()) {
+                out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            } else {
+                byte[] bytes = new byte[body.remaining()];
+                body.duplicate().get(bytes);
+                out.write(bytes);
+            }
+        }
+        return ByteBuffer.wrap(compressed.toByteArray());
+    }
+
+    /**
+     * Swallows the uncompressed body written by the rest of the chain and writes a gzip body in its place once writes
+     * are terminated: either the stored entry (hit), or the captured body compressed and stored on the way (miss).
+     */
+    private final class CachedBodyConduit extends AbstractStreamSinkConduit<StreamSinkConduit> {
+
+        private final String key;
+        private final int expectedLength;
+        private ByteBuffer captured;
+        private ByteBuffer pending;
+        private boolean terminated;
+        private boolean nextTerminated;
+
+        CachedBodyConduit(StreamSinkConduit next, ByteBuffer cached) {
+            super(next);
+            this.key = null;
+            this.expectedLength = -1;
+            this.pending = cached;
+        }
+
+        CachedBodyConduit(StreamSinkConduit next, String key, int expectedLength) {
+            super(next);
+            this.key = key;
+            this.expectedLength = expectedLength;
+            this.captured = ByteBuffer.allocate(expectedLength);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (terminated) {
+                throw new ClosedChannelException();
+            }
+            int length = src.remaining();
+            if (captured != null) {
+                if (length > captured.remaining()) {
+                    // more than the Content-Length promised, keep it all but don't cache it
+                    ByteBuffer larger = ByteBuffer.allocate(Math.max(captured.capacity() * 2, captured.position() + length));
+                    captured.flip();
+                    larger.put(captured);
+                    captured = larger;
+                }
+                captured.put(src);
+            } else {
+                src.position(src.limit());
+            }
+            return length;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                written += write(srcs[i]);
+            }
+            return written;
+        }
+
+        @Override
+        public int writeFinal(ByteBuffer src) throws IOException {
+            return Conduits.writeFinalBasic(this, src);
+        }
+
+        @Override
+        public long writeFinal(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return Conduits.writeFinalBasic(this, srcs, offset, length);
+        }
+
+        @Override
+        public long transferFrom(FileChannel src, long position, long count) throws IOException {
+            if (captured == null) {
+                if (terminated) {
+                    throw new ClosedChannelException();
+                }
+                return Math.max(0, Math.min(count, src.size() - position));
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, 8192));
+            int read = src.read(buffer, position);
+            if (read <= 0) {
+                return 0;
+            }
+            buffer.flip();
+            return write(buffer);
+        }
+
+        @Override
+        public long transferFrom(StreamSourceChannel source, long count, ByteBuffer throughBuffer) throws IOException {
+            return IoUtils.transfer(source, count, throughBuffer, new ConduitWritableByteChannel(this));
+        }
+
+        @Override
+        public void terminateWrites() throws IOException {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            if (captured != null) {
+                captured.flip();
+                pending = gzip(captured);
+                if (captured.remaining() == expectedLength) {
+                    store.put(key, pending);
+                } else {
+                    UndertowLogger.ROOT_LOGGER.debugf("Not caching %s, its body did not match its Content-Length", key);
+                }
+                captured = null;
+            }
+        }
+
+        @Override
+        public boolean flush() throws IOException {
+            if (!terminated) {
+                return next.flush();
+            }
+            while (pending.hasRemaining()) {
+                if (next.write(pending) == 0) {
+                    return false;
+                }
+            }
+            if (!nextTerminated) {
+                next.terminateWrites();
+                nextTerminated = true;
+            }
+            return next.flush();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.xnio.Buffers;
+import org.xnio.IoUtils;
+import org.xnio.XnioExecutor;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.ConduitWritableByteChannel;
+import org.xnio.conduits.Conduits;
+import org.xnio.conduits.StreamSinkConduit;
+
+/**
+ * Holds back the small writes made to an upgraded connection for a short window, so that a burst of websocket frames
+ * goes out in one socket write - and, over https, one TLS record - rather than one each.
+ * <p>
+ * Writes are copied into a buffer of {@code maxBatchSize} bytes, which is written to the connection when it would
+ * overflow or when the window that started with its first write ends. Flushes are deferred to the end of the window as
+ * well; only once writes are terminated does a flush write everything through. Writes larger than the buffer go
+ * straight through, after whatever is buffered.
+ * <p>
+ * Conduit methods are synchronized: the window's timer runs on the connection's IO thread, while some websocket
+ * senders write from the application thread.
+ */
+final class CoalescingStreamSinkConduit extends AbstractStreamSinkConduit<StreamSinkConduit> {
+
+    private final ByteBuffer buffer;
+    private final long windowMicros;
+    private final WebSocketEndpointMetrics metrics;
+    private final Runnable windowEnd = new Runnable() {
+        @Override
+        public void run() {
+            endWindow();
+        }
+    };
+
+    private XnioExecutor.Key timer;
+    private boolean terminated;
+    private boolean nextTerminated;
+    private IOException failure;
+
+    CoalescingStreamSinkConduit(StreamSinkConduit next, int maxBatchSize, long windowMicros, WebSocketEndpointMetrics metrics) {
+        super(next);
+        this.buffer = ByteBuffer.allocate(maxBatchSize);
+        this.windowMicros = windowMicros;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[]{src}, 0, 1);
+    }
+
+    @Override
+    public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        checkWritable();
+        long total = Buffers.remaining(srcs, offset, length);
+        if (total == 0) {
+            return 0;
+        }
+        if (total > buffer.remaining() && !writeBuffer()) {
+            // the connection is not keeping up, let the caller wait for it to become writable
+            return 0;
+        }
+        if (total > buffer.remaining()) {
+            long written = next.write(srcs, offset, length);
+            if (written > 0) {
+                metrics.frameWrite(written);
+                metrics.connectionWrite();
+            }
+            return written;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            buffer.put(srcs[i]);
+        }
+        metrics.frameWrite(total);
+        if (timer == null) {
+            timer = next.getWriteThread().executeAfter(windowEnd, windowMicros, TimeUnit.MICROSECONDS);
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized int writeFinal(ByteBuffer src) throws IOException {
+        return Conduits.writeFinalBasic(this, src);
+    }
+
+    @Override
+    public synchronized long writeFinal(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        return Conduits.writeFinalBasic(this, srcs, offset, length);
+    }
+
+    @Override
+    public synchronized long transferFrom(FileChannel src, long position, long count) throws IOException {
+        return src.transferTo(position, count, new ConduitWritableByteChannel(this));
+    }
+
+    @Override
+    public synchronized long transferFrom(StreamSourceChannel source, long count, ByteBuffer throughBuffer) throws IOException {
+        return IoUtils.transfer(source, count, throughBuffer, new ConduitWritableByteChannel(this));
+    }
+
+    /**
+     * Until writes are terminated, a flush only makes sure the window is running: the buffered frames are written when
+     * it ends.
+     */
+    @Override
+    public synchronized boolean flush() throws IOException {
+        checkFailure();
+        if (!terminated) {
+            return buffer.position() > 0 || next.flush();
+        }
+        if (!writeBuffer()) {
+            return false;
+        }
+        if (!nextTerminated) {
+            nextTerminated = true;
+            next.terminateWrites();
+        }
+        return next.flush();
+    }
+
+    @Override
+    public synchronized void terminateWrites() throws IOException {
+        terminated = true;
+        cancelTimer();
+    }
+
+    @Override
+    public synchronized void truncateWrites() throws IOException {
+        terminated = true;
+        cancelTimer();
+        buffer.clear();
+        next.truncateWrites();
+    }
+
+    @Override
+    public synchronized boolean isWriteShutdown() {
+        return terminated;
+    }
+
+    private synchronized void endWindow() {
+        timer = null;
+        if (terminated || failure != null) {
+            return;
+        }
+        try {
+            if (!writeBuffer() || !next.flush()) {
+                // the connection is full, try again after another window
+                timer = next.getWriteThread().executeAfter(windowEnd, windowMicros, TimeUnit.MICROSECONDS);
+            }
+        } catch (IOException e) {
+            // reported to the websocket channel by its next write or flush
+            UndertowLogger.ROOT_LOGGER.debugf(e, "Could not write coalesced websocket frames");
+            failure = e;
+            buffer.clear();
+        }
+    }
+
+    /*
+     * Writes the buffer to the connection, returning true once it is empty.
+     */
+    private boolean writeBuffer() throws IOException {
+        if (buffer.position() == 0) {
+            return true;
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                if (next.write(buffer) == 0) {
+                    break;
+                }
+            }
+        } finally {
+            buffer.compact();
+        }
+        if (buffer.position() > 0) {
+            return false;
+        }
+        metrics.connectionWrite();
+        cancelTimer();
+        return true;
+    }
+
+    private void cancelTimer() {
+        if (timer != null) {
+            timer.remove();
+            timer = null;
+        }
+    }
+
+    private void checkWritable() throws IOException {
+        checkFailure();
+        if (terminated) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
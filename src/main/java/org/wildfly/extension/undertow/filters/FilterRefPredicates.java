@@ -0,0 +1,634 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.attribute.ExchangeAttributeParser;
+import io.undertow.attribute.ExchangeAttributes;
+import io.undertow.predicate.Predicate;
+import io.undertow.predicate.PredicateParser;
+import io.undertow.predicate.Predicates;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+
+/**
+ * The filter-ref predicates of one handler chain, compiled together at deployment rather than interpreted one by one:
+ * <ul>
+ * <li>{@code regex} patterns are compiled once for the chain, and each pattern runs at most once on a value in a
+ * request, however many filter-refs test it; the filter-refs after the first take its result, and its groups, from
+ * the exchange;
+ * <li>{@code path-prefix} and {@code path} test the relative path in place, where Undertow's PathMatcher allocates a
+ * match, and a substring for every prefix length, on every test.
+ * </ul>
+ * The other tests, such as {@code method}, {@code path-suffix} or {@code equals}, cost less to run again than to look
+ * up, so they are parsed by Undertow one by one and left to it. The {@code and}, {@code or} and {@code not} of each
+ * predicate are evaluated by Undertow's own predicates, in the same order, and a predicate string this class cannot read
+ * is left to Undertow whole, so a filter-ref always matches the requests its interpreted predicate would, recording
+ * the same predicate context entries.
+ * <p>
+ * A regex result is kept against the value it was decided from, so a filter that rewrites the path or a header before
+ * the next filter-ref has the pattern run again.
+ */
+public final class FilterRefPredicates {
+
+    private final AttachmentKey<Evaluation> key = AttachmentKey.create(Evaluation.class);
+
+    private final ClassLoader classLoader;
+
+    private final ExchangeAttributeParser attributeParser;
+
+    private final Map<String, Predicate> tests = new HashMap<>();
+
+    private int regexCount;
+
+    private FilterRefPredicates(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        this.attributeParser = ExchangeAttributes.parser(classLoader);
+    }
+
+    /**
+     * Compiles the predicates of the filter-refs of a handler chain together.
+     *
+     * @return the predicate to test each filter-ref with, in the order of {@code filters}, {@code null} for a
+     *         filter-ref without one
+     */
+    public static List<Predicate> compile(List<FilterRef> filters) {
+        FilterRefPredicates compiled = new FilterRefPredicates(FilterRefPredicates.class.getClassLoader());
+        List<Predicate> predicates = new ArrayList<>(filters.size());
+        for (FilterRef filter : filters) {
+            predicates.add(compiled.compile(filter.getPredicateString(), filter.getPredicate()));
+        }
+        return predicates;
+    }
+
+    private Predicate compile(String string, Predicate interpreted) {
+        if (string == null) {
+            return interpreted;
+        }
+        Expression expression;
+        try {
+            List<Token> tokens = tokenize(string);
+            expression = tokens == null ? null : new Parser(string, tokens).parse();
+        } catch (RuntimeException e) {
+            // a pattern, an attribute or a test Undertow rejects on its own; Undertow decides what the whole means
+            expression = null;
+        }
+        return expression == null ? interpreted : build(expression);
+    }
+
+    private Predicate build(Expression expression) {
+        if (expression.operator == null) {
+            return expression.key == null ? expression.test : share(expression.key, expression.test);
+        }
+        switch (expression.operator) {
+            case "and":
+                return Predicates.and(build(expression.left), build(expression.right));
+            case "or":
+                return Predicates.or(build(expression.left), build(expression.right));
+            default:
+                return Predicates.not(build(expression.left));
+        }
+    }
+
+    /*
+     * The compiled test, the first one compiled for the key
+     */
+    private Predicate share(String key, Predicate test) {
+        Predicate shared = tests.get(key);
+        if (shared == null) {
+            if (test instanceof RegexTest) {
+                ((RegexTest) test).index = regexCount++;
+            }
+            tests.put(key, test);
+            shared = test;
+        }
+        return shared;
+    }
+
+    /*
+     * A path as PathMatcher keys it, with a leading slash and without trailing ones
+     */
+    private static String normalize(String path) {
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        String trimmed = end == path.length() ? path : path.substring(0, end);
+        return trimmed.startsWith("/") ? trimmed : "/" + trimmed;
+    }
+
+    private static boolean isOperator(String token) {
+        return token.equals("and") || token.equals("or") || token.equals("not");
+    }
+
+    private static boolean isSpecial(String token) {
+        return token.length() == 1 && "(),=[]{}".indexOf(token.charAt(0)) >= 0;
+    }
+
+    /*
+     * Splits a predicate string as Undertow's PredicateParser does, keeping where each token is in the string; null if
+     * Undertow would take a quoted token for an operator or a bracket, or would not read the string at all
+     */
+    private static List<Token> tokenize(String string) {
+        List<Token> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int start = 0;
+        char quote = 0;
+        boolean inVariable = false;
+        for (int pos = 0; pos < string.length(); pos++) {
+            char c = string.charAt(pos);
+            if (quote != 0) {
+                if (c == quote) {
+                    if (current.length() == 0) {
+                        return null;
+                    }
+                    if (current.charAt(current.length() - 1) != '\\') {
+                        String text = current.toString();
+                        if (isOperator(text) || isSpecial(text)) {
+                            return null;
+                        }
+                        tokens.add(new Token(text, start, pos + 1, true));
+                        current.setLength(0);
+                        quote = 0;
+                        continue;
+                    }
+                }
+                current.append(c);
+                continue;
+            }
+            switch (c) {
+                case ' ':
+                case '\t':
+                    if (current.length() != 0) {
+                        tokens.add(new Token(current.toString(), start, pos, false));
+                        current.setLength(0);
+                    }
+                    break;
+                case '(':
+                case ')':
+                case ',':
+                case '=':
+                case '[':
+                case ']':
+                case '{':
+                case '}':
+                    if (inVariable) {
+                        current.append(c);
+                        inVariable = c != '}';
+                        break;
+                    }
+                    if (current.length() != 0) {
+                        tokens.add(new Token(current.toString(), start, pos, false));
+                        current.setLength(0);
+                    }
+                    tokens.add(new Token(String.valueOf(c), pos, pos + 1, false));
+                    break;
+                case '"':
+                case '\'':
+                    if (current.length() != 0) {
+                        return null;
+                    }
+                    quote = c;
+                    start = pos;
+                    break;
+                default:
+                    if (current.length() == 0) {
+                        start = pos;
+                    }
+                    current.append(c);
+                    if (c == '%') {
+                        if (pos + 1 == string.length()) {
+                            return null;
+                        }
+                        inVariable |= string.charAt(pos + 1) == '{';
+                    }
+            }
+        }
+        if (quote != 0 || inVariable) {
+            return null;
+        }
+        if (current.length() != 0) {
+            tokens.add(new Token(current.toString(), start, string.length(), false));
+        }
+        return tokens;
+    }
+
+    private static final class Token {
+        final String text;
+        final int start;
+        final int end;
+        final boolean quoted;
+
+        Token(String text, int start, int end, boolean quoted) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.quoted = quoted;
+        }
+
+        boolean is(String token) {
+            return !quoted && text.equals(token);
+        }
+    }
+
+    /*
+     * A predicate as read from its string: an operator over one or two expressions, or a test, shared with the tests
+     * of the chain that have the same key when it has one
+     */
+    private static final class Expression {
+        final String operator;
+        final Expression left;
+        final Expression right;
+        final String key;
+        final Predicate test;
+
+        Expression(String operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+            this.key = null;
+            this.test = null;
+        }
+
+        Expression(String key, Predicate test) {
+            this.operator = null;
+            this.left = null;
+            this.right = null;
+            this.key = key;
+            this.test = test;
+        }
+    }
+
+    /*
+     * Reads the grammar of Undertow's PredicateParser: not binds tighter than and, which binds tighter than or, and
+     * both associate to the left. Returns null for anything it does not read the way Undertow does.
+     */
+    private final class Parser {
+        private final String string;
+        private final List<Token> tokens;
+        private int next;
+
+        Parser(String string, List<Token> tokens) {
+            this.string = string;
+            this.tokens = tokens;
+        }
+
+        Expression parse() {
+            Expression expression = or();
+            return next == tokens.size() ? expression : null;
+        }
+
+        private Token peek() {
+            return next < tokens.size() ? tokens.get(next) : null;
+        }
+
+        private boolean accept(String token) {
+            Token peeked = peek();
+            if (peeked != null && peeked.is(token)) {
+                next++;
+                return true;
+            }
+            return false;
+        }
+
+        private Expression or() {
+            Expression left = and();
+            while (left != null && accept("or")) {
+                Expression right = and();
+                left = right == null ? null : new Expression("or", left, right);
+            }
+            return left;
+        }
+
+        private Expression and() {
+            Expression left = not();
+            while (left != null && accept("and")) {
+                Expression right = not();
+                left = right == null ? null : new Expression("and", left, right);
+            }
+            return left;
+        }
+
+        private Expression not() {
+            if (accept("not")) {
+                Expression operand = primary();
+                return operand == null ? null : new Expression("not", operand, null);
+            }
+            return primary();
+        }
+
+        private Expression primary() {
+            if (accept("(")) {
+                Expression inner = or();
+                return inner != null && accept(")") ? inner : null;
+            }
+            return test();
+        }
+
+        private Expression test() {
+            Token name = peek();
+            if (name == null || name.quoted || isOperator(name.text) || isSpecial(name.text)) {
+                return null;
+            }
+            next++;
+            if (name.text.equals("true") || name.text.equals("false")) {
+                Token bracket = peek();
+                if (bracket != null && bracket.is("[")) {
+                    return null;
+                }
+                return new Expression(null, name.text.equals("true") ? Predicates.truePredicate()
+                        : Predicates.falsePredicate());
+            }
+            if (!accept("[")) {
+                return new Expression(null, PredicateParser.parse(name.text, classLoader));
+            }
+            int open = next;
+            while (next < tokens.size() && !tokens.get(next).is("]")) {
+                next++;
+            }
+            if (next == tokens.size()) {
+                return null;
+            }
+            List<Token> arguments = tokens.subList(open, next);
+            String text = string.substring(name.start, tokens.get(next++).end);
+            switch (name.text) {
+                case "path-prefix":
+                    return pathPrefix(parameters(arguments, "path"));
+                case "path":
+                    return path(parameters(arguments, "path"));
+                case "regex":
+                    return regex(parameters(arguments, "pattern"));
+                default:
+                    return new Expression(null, PredicateParser.parse(text, classLoader));
+            }
+        }
+
+        /*
+         * The values of the parameters between the brackets of a test, given as a single value, as values of the
+         * default parameter, or by name
+         */
+        private Map<String, List<String>> parameters(List<Token> arguments, String defaultParameter) {
+            Map<String, List<String>> parameters = new HashMap<>();
+            if (arguments.isEmpty()) {
+                return null;
+            }
+            if (arguments.get(0).is("{")) {
+                List<String> values = new ArrayList<>();
+                if (array(arguments, 1, values) != arguments.size()) {
+                    return null;
+                }
+                parameters.put(defaultParameter, values);
+                return parameters;
+            }
+            if (arguments.size() == 1 || arguments.get(1).is(",")) {
+                if (arguments.size() % 2 == 0) {
+                    return null;
+                }
+                List<String> values = new ArrayList<>();
+                for (int i = 0; i < arguments.size(); i += 2) {
+                    if (!isValue(arguments.get(i)) || i + 1 < arguments.size() && !arguments.get(i + 1).is(",")) {
+                        return null;
+                    }
+                    values.add(arguments.get(i).text);
+                }
+                parameters.put(defaultParameter, values);
+                return parameters;
+            }
+            int i = 0;
+            while (true) {
+                if (i + 2 >= arguments.size() || arguments.get(i).quoted || !isValue(arguments.get(i))
+                        || !arguments.get(i + 1).is("=")) {
+                    return null;
+                }
+                String parameter = arguments.get(i).text;
+                List<String> values = new ArrayList<>();
+                if (arguments.get(i + 2).is("{")) {
+                    i = array(arguments, i + 3, values);
+                    if (i < 0) {
+                        return null;
+                    }
+                } else if (isValue(arguments.get(i + 2))) {
+                    values.add(arguments.get(i + 2).text);
+                    i += 3;
+                } else {
+                    return null;
+                }
+                if (parameters.put(parameter, values) != null) {
+                    return null;
+                }
+                if (i == arguments.size()) {
+                    return parameters;
+                }
+                if (!arguments.get(i++).is(",")) {
+                    return null;
+                }
+            }
+        }
+
+        /*
+         * Reads the values of an array up to its closing brace, from the token after the opening one; returns the
+         * index after the closing brace, or -1
+         */
+        private int array(List<Token> arguments, int from, List<String> values) {
+            for (int i = from; i + 1 < arguments.size(); i += 2) {
+                if (!isValue(arguments.get(i))) {
+                    return -1;
+                }
+                values.add(arguments.get(i).text);
+                if (arguments.get(i + 1).is("}")) {
+                    return i + 2;
+                }
+                if (!arguments.get(i + 1).is(",")) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        private boolean isValue(Token token) {
+            return token.quoted || !isOperator(token.text) && !isSpecial(token.text);
+        }
+
+        private Expression pathPrefix(Map<String, List<String>> parameters) {
+            if (parameters == null || parameters.size() != 1 || !parameters.containsKey("path")) {
+                return null;
+            }
+            List<String> prefixes = new ArrayList<>();
+            for (String path : parameters.get("path")) {
+                prefixes.add(normalize(path));
+            }
+            return new Expression("path-prefix" + prefixes, new PrefixTest(prefixes));
+        }
+
+        private Expression path(Map<String, List<String>> parameters) {
+            if (parameters == null || parameters.size() != 1 || !parameters.containsKey("path")) {
+                return null;
+            }
+            Set<String> paths = new HashSet<>();
+            for (String path : parameters.get("path")) {
+                paths.add(normalize(path));
+            }
+            return new Expression("path" + paths, new PathTest(paths));
+        }
+
+        private Expression regex(Map<String, List<String>> parameters) {
+            if (parameters == null || !parameters.containsKey("pattern")) {
+                return null;
+            }
+            String pattern = null;
+            String value = null;
+            boolean fullMatch = false;
+            for (Map.Entry<String, List<String>> parameter : parameters.entrySet()) {
+                if (parameter.getValue().size() != 1) {
+                    return null;
+                }
+                String single = parameter.getValue().get(0);
+                switch (parameter.getKey()) {
+                    case "pattern":
+                        pattern = single;
+                        break;
+                    case "value":
+                        value = single;
+                        break;
+                    case "full-match":
+                        fullMatch = Boolean.valueOf(single);
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            ExchangeAttribute attribute = value == null ? ExchangeAttributes.relativePath() : attributeParser.parse(value);
+            return new Expression("regex" + Arrays.asList(pattern, value, fullMatch),
+                    new RegexTest(pattern, attribute, fullMatch));
+        }
+    }
+
+    /*
+     * Matches as PathPrefixPredicate does: the longest prefix that starts the relative path, where the path ends or
+     * goes on with a slash, or else the prefix "/", which matches every path
+     */
+    private static final class PrefixTest implements Predicate {
+        private final String[] prefixes;
+        private final boolean everything;
+
+        PrefixTest(List<String> normalized) {
+            List<String> prefixes = new ArrayList<>(normalized);
+            everything = prefixes.removeAll(Collections.singleton("/"));
+            Collections.sort(prefixes, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return Integer.compare(b.length(), a.length());
+                }
+            });
+            this.prefixes = prefixes.toArray(new String[prefixes.size()]);
+        }
+
+        @Override
+        public boolean resolve(HttpServerExchange exchange) {
+            String path = exchange.getRelativePath();
+            for (String prefix : prefixes) {
+                int length = prefix.length();
+                if (path.startsWith(prefix) && (path.length() == length || path.charAt(length) == '/')) {
+                    return matched(exchange, path.substring(length));
+                }
+            }
+            return everything && matched(exchange, path);
+        }
+
+        private static boolean matched(HttpServerExchange exchange, String remaining) {
+            // as PathPrefixPredicate does, which expects whoever tests it to have attached the context
+            Map<String, Object> context = exchange.getAttachment(PREDICATE_CONTEXT);
+            context.put("remaining", remaining);
+            return true;
+        }
+    }
+
+    /*
+     * Matches as PathMatchPredicate does
+     */
+    private static final class PathTest implements Predicate {
+        private final Set<String> paths;
+
+        PathTest(Set<String> paths) {
+            this.paths = paths;
+        }
+
+        @Override
+        public boolean resolve(HttpServerExchange exchange) {
+            return paths.contains(normalize(exchange.getRelativePath()));
+        }
+    }
+
+    /*
+     * Matches as RegularExpressionPredicate does, running the pattern once on a value in a request
+     */
+    private final class RegexTest implements Predicate {
+        private final Pattern pattern;
+        private final ExchangeAttribute attribute;
+        private final boolean fullMatch;
+        int index;
+
+        RegexTest(String pattern, ExchangeAttribute attribute, boolean fullMatch) {
+            this.pattern = Pattern.compile(pattern);
+            this.attribute = attribute;
+            this.fullMatch = fullMatch;
+        }
+
+        @Override
+        public boolean resolve(HttpServerExchange exchange) {
+            String value = attribute.readAttribute(exchange);
+            Evaluation evaluation = exchange.getAttachment(key);
+            if (evaluation == null) {
+                evaluation = new Evaluation(regexCount);
+                exchange.putAttachment(key, evaluation);
+            }
+            if (evaluation.values[index] != value || value == null) {
+                Matcher matcher = pattern.matcher(value);
+                String[] groups = null;
+                if (fullMatch ? matcher.matches() : matcher.find()) {
+                    groups = new String[matcher.groupCount() + 1];
+                    for (int i = 0; i < groups.length; i++) {
+                        groups[i] = matcher.group(i);
+                    }
+                }
+                evaluation.values[index] = value;
+                evaluation.groups[index] = groups;
+            }
+            String[] groups = evaluation.groups[index];
+            if (groups == null) {
+                return false;
+            }
+            Map<String, Object> context = exchange.getAttachment(PREDICATE_CONTEXT);
+            if (context != null) {
+                for (int i = 0; i < groups.length; i++) {
+                    context.put(Integer.toString(i), groups[i]);
+                }
+            }
+            return true;
+        }
+    }
+
+    /*
+     * The regex results of one exchange: per pattern, the value it last ran on and the groups it matched there, null
+     * if it did not match
+     */
+    private static final class Evaluation {
+        final String[] values;
+        final String[][] groups;
+
+        Evaluation(int regexCount) {
+            values = new String[regexCount];
+            groups = new String[regexCount][];
+        }
+    }
+}
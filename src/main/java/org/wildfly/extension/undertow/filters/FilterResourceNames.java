@@ -0,0 +1,61 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.as.controller.PathElement;
+import org.jboss.dmr.ModelNode;
+import org.wildfly.extension.undertow.UndertowLogger;
+
+/**
+ * Names what the filters this patch adds publish - their MXBeans, the bulkhead pools - after the filter resource, so
+ * that rebuilding the handlers of a location replaces them rather than adding to them, and stopping the filter takes
+ * them away.
+ * <p>
+ * {@code createHttpHandler} is handed the model of the filter resource but not its address. The {@link FilterService}
+ * of a resource therefore binds the model it hands to every {@code createHttpHandler} to the address of the resource
+ * while it is up, and when it stops - on removal, across a reload, or when no location uses the filter any more - has
+ * a filter that implements {@link Release} release what it published under the resource name. Bindings are to the
+ * model node the service holds, so filters of different types, or a resource added again under the same name, never
+ * see each other's.
+ */
+public final class FilterResourceNames {
+
+    /**
+     * Unregisters, closes or shuts down what a filter published under a resource name.
+     */
+    public interface Release {
+        void release(String name);
+    }
+
+    private static final Map<ModelNode, PathElement> ADDRESSES = Collections.synchronizedMap(new IdentityHashMap<ModelNode, PathElement>());
+
+    private static final AtomicInteger UNNAMED = new AtomicInteger();
+
+    private FilterResourceNames() {
+    }
+
+    /**
+     * @return the name of the filter resource whose model this is, or a generated one if no filter service holds the
+     *         model; what is published under a generated name is only released with the server
+     */
+    public static String nameOf(ModelNode model, String type) {
+        PathElement address = ADDRESSES.get(model);
+        if (address == null) {
+            String name = type + "-" + UNNAMED.incrementAndGet();
+            UndertowLogger.ROOT_LOGGER.debugf("No filter resource is bound to the %s model, publishing as %s", type, name);
+            return name;
+        }
+        return address.getValue();
+    }
+
+    static void bind(ModelNode model, PathElement address) {
+        ADDRESSES.put(model, address);
+    }
+
+    static void unbind(ModelNode model) {
+        ADDRESSES.remove(model);
+    }
+}
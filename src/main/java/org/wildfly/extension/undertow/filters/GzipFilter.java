@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+/*
+ * Modified by IDBS to add the CACHE_SIZE, MAX_CACHEABLE_SIZE and PRECOMPRESSED_DIRECTORY attributes, which cache
+ * compressed responses and serve pre-compressed files, see CachingGzipHandler.
+ */
+
+package org.wildfly.extension.undertow.filters;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import io.undertow.predicate.Predicate;
+import io.undertow.predicate.Predicates;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.encoding.ContentEncodingRepository;
+import io.undertow.server.handlers.encoding.EncodingHandler;
+import io.undertow.server.handlers.encoding.GzipEncodingProvider;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.ExpressionResolver;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
+import org.jboss.as.controller.operations.validation.StringLengthValidator;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * @author Tomaz Cerar (c) 2014 Red Hat Inc.
+ */
+public class GzipFilter extends Filter {
+
+    public static final GzipFilter INSTANCE = new GzipFilter();
+
+    /*
+     * Total size in bytes of the compressed responses cached by each filter-ref, 0 disables the cache
+     */
+    public static final SimpleAttributeDefinition CACHE_SIZE = new SimpleAttributeDefinitionBuilder("cache-size", ModelType.LONG)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(0L))
+            .setValidator(new LongRangeValidator(0, Long.MAX_VALUE, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    public static final SimpleAttributeDefinition MAX_CACHEABLE_SIZE = new SimpleAttributeDefinitionBuilder("max-cacheable-size", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(1024 * 1024))
+            .setValidator(new IntRangeValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    public static final SimpleAttributeDefinition PRECOMPRESSED_DIRECTORY = new SimpleAttributeDefinitionBuilder("precompressed-directory", ModelType.STRING)
+            .setAllowNull(true)
+            .setValidator(new StringLengthValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    private GzipFilter() {
+        super("gzip");
+    }
+
+    @Override
+    public Collection<AttributeDefinition> getAttributes() {
+        return Arrays.<AttributeDefinition>asList(CACHE_SIZE, MAX_CACHEABLE_SIZE, PRECOMPRESSED_DIRECTORY);
+    }
+
+    @Override
+    public Class<? extends HttpHandler> getHandlerClass() {
+        return null;
+    }
+
+    @Override
+    public HttpHandler createHttpHandler(final Predicate predicate, final ModelNode model, HttpHandler next) {
+        final Predicate gzipPredicate = predicate != null ? predicate : Predicates.truePredicate();
+        EncodingHandler encodingHandler = new EncodingHandler(new ContentEncodingRepository()
+                .addEncodingHandler("gzip", new GzipEncodingProvider(), 50, gzipPredicate));
+        encodingHandler.setNext(next);
+
+        final long cacheSize;
+        final int maxCacheableSize;
+        final ModelNode precompressedDirectory;
+        try {
+            cacheSize = CACHE_SIZE.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asLong();
+            maxCacheableSize = MAX_CACHEABLE_SIZE.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt();
+            precompressedDirectory = PRECOMPRESSED_DIRECTORY.resolveModelAttribute(ExpressionResolver.DEFAULT, model);
+        } catch (OperationFailedException e) {
+            throw new IllegalArgumentException(e);
+        }
+        if (cacheSize == 0 && !precompressedDirectory.isDefined()) {
+            return encodingHandler;
+        }
+        return new CachingGzipHandler(encodingHandler, next, gzipPredicate,
+                cacheSize > 0 ? new OffHeapResponseStore(cacheSize) : null, (int) Math.min(maxCacheableSize, cacheSize),
+                precompressedDirectory.isDefined() ? precompressedDirectory.asString() : null);
+    }
+}
@@ -0,0 +1,366 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSinkChannel;
+import org.xnio.conduits.AbstractStreamSourceConduit;
+import org.xnio.conduits.ConduitReadableByteChannel;
+import org.xnio.conduits.StreamSourceConduit;
+
+/**
+ * Inflates a gzip or deflate request body as it is read. Compressed bytes are read from the next conduit into a
+ * small buffer and inflated straight into the reader's buffer, so no more than one buffer of either is ever held.
+ * <p>
+ * Concatenated gzip members are read one after the other, and each member's CRC and length are checked. A deflate
+ * body may be zlib-wrapped, as the standard says, or raw deflate, as some clients send it. A body that inflates to
+ * more than the limit fails the read with an {@link IOException}, which stops a small compressed body from expanding
+ * into an unbounded one.
+ */
+final class InflatingStreamSourceConduit extends AbstractStreamSourceConduit<StreamSourceConduit> {
+
+    enum Encoding {
+        GZIP, DEFLATE;
+
+        static Encoding forContentEncoding(String contentEncoding) {
+            switch (contentEncoding.trim().toLowerCase(Locale.ENGLISH)) {
+                case "gzip":
+                case "x-gzip":
+                    return GZIP;
+                case "deflate":
+                    return DEFLATE;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_TRAILER_LENGTH = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private enum State {
+        HEADER, BODY, TRAILER, MEMBER_END, DONE
+    }
+
+    private final Encoding encoding;
+    private final long limit;
+    private final RequestDecompressionHandler metrics;
+    private final byte[] inputArray = new byte[BUFFER_SIZE];
+    private final ByteBuffer input = ByteBuffer.wrap(inputArray);
+    private final CRC32 crc = new CRC32();
+    private byte[] outputArray;
+    private Inflater inflater;
+    private State state = State.HEADER;
+    private boolean inputEnded;
+    private long compressed;
+    private long inflated;
+    private long memberInflated;
+
+    InflatingStreamSourceConduit(StreamSourceConduit next, Encoding encoding, long limit,
+            RequestDecompressionHandler metrics) {
+        super(next);
+        this.encoding = encoding;
+        this.limit = limit;
+        this.metrics = metrics;
+        input.flip();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = 0;
+        while (dst.hasRemaining()) {
+            int n;
+            switch (state) {
+                case HEADER:
+                    n = readHeader() ? 0 : -2;
+                    break;
+                case BODY:
+                    n = inflate(dst);
+                    break;
+                case TRAILER:
+                    n = readTrailer() ? 0 : -2;
+                    break;
+                case MEMBER_END:
+                    n = nextMember() ? 0 : -2;
+                    break;
+                default:
+                    return read == 0 ? -1 : read;
+            }
+            if (n == -2) {
+                // waiting for the next conduit
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offs, int len) throws IOException {
+        long read = 0;
+        for (int i = offs; i < offs + len; i++) {
+            if (!dsts[i].hasRemaining()) {
+                continue;
+            }
+            int n = read(dsts[i]);
+            if (n <= 0) {
+                return read == 0 ? n : read;
+            }
+            read += n;
+            if (dsts[i].hasRemaining()) {
+                break;
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public long transferTo(long position, long count, FileChannel target) throws IOException {
+        return target.transferFrom(new ConduitReadableByteChannel(this), position, count);
+    }
+
+    @Override
+    public long transferTo(long count, ByteBuffer throughBuffer, StreamSinkChannel target) throws IOException {
+        return IoUtils.transfer(new ConduitReadableByteChannel(this), count, throughBuffer, target);
+    }
+
+    @Override
+    public void terminateReads() throws IOException {
+        end();
+        next.terminateReads();
+    }
+
+    long getCompressedBytes() {
+        return compressed;
+    }
+
+    long getInflatedBytes() {
+        return inflated;
+    }
+
+    /*
+     * Reads at least one more byte into the input buffer, returns false if none are available yet
+     */
+    private boolean fill() throws IOException {
+        if (inputEnded) {
+            throw new IOException("Compressed request body is truncated");
+        }
+        input.compact();
+        int read;
+        try {
+            read = next.read(input);
+        } finally {
+            input.flip();
+        }
+        if (read < 0) {
+            inputEnded = true;
+            throw new IOException("Compressed request body is truncated");
+        }
+        compressed += read;
+        return read > 0;
+    }
+
+    private boolean readHeader() throws IOException {
+        if (encoding == Encoding.DEFLATE) {
+            while (input.remaining() < 2) {
+                if (!fill()) {
+                    return false;
+                }
+            }
+            int cmf = input.get(input.position()) & 0xff;
+            int flg = input.get(input.position() + 1) & 0xff;
+            boolean zlib = (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+            startInflater(!zlib);
+            return true;
+        }
+        int length;
+        while ((length = gzipHeaderLength()) < 0) {
+            if (input.remaining() == input.capacity()) {
+                throw new IOException("Gzip header of the request body is too long");
+            }
+            if (!fill()) {
+                return false;
+            }
+        }
+        input.position(input.position() + length);
+        startInflater(true);
+        return true;
+    }
+
+    /*
+     * Returns the length of the gzip header at the start of the input, or -1 if it is not all there yet
+     */
+    private int gzipHeaderLength() throws IOException {
+        int start = input.position();
+        int end = input.limit();
+        if (end - start < 10) {
+            return -1;
+        }
+        if (((inputArray[start] & 0xff) | (inputArray[start + 1] & 0xff) << 8) != GZIP_MAGIC
+                || inputArray[start + 2] != 8) {
+            throw new IOException("Request body is not in gzip format");
+        }
+        int flags = inputArray[start + 3] & 0xff;
+        int position = start + 10;
+        if ((flags & FEXTRA) != 0) {
+            if (end - position < 2) {
+                return -1;
+            }
+            position += 2 + ((inputArray[position] & 0xff) | (inputArray[position + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            position = skipString(position, end);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            position = skipString(position, end);
+        }
+        if ((flags & FHCRC) != 0) {
+            position += 2;
+        }
+        return position > end ? -1 : position - start;
+    }
+
+    private int skipString(int position, int end) {
+        while (position < end) {
+            if (inputArray[position++] == 0) {
+                return position;
+            }
+        }
+        return end + 1;
+    }
+
+    private void startInflater(boolean nowrap) {
+        if (inflater == null) {
+            inflater = new Inflater(nowrap);
+        } else {
+            inflater.reset();
+        }
+        crc.reset();
+        memberInflated = 0;
+        state = State.BODY;
+    }
+
+    /*
+     * Inflates into dst, returns the number of bytes inflated or -2 if more input is needed and not yet available
+     */
+    private int inflate(ByteBuffer dst) throws IOException {
+        while (true) {
+            if (inflater.needsInput()) {
+                if (!input.hasRemaining() && !fill()) {
+                    return -2;
+                }
+                inflater.setInput(inputArray, input.position(), input.remaining());
+            }
+            int n;
+            try {
+                if (dst.hasArray()) {
+                    n = inflater.inflate(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                    crc.update(dst.array(), dst.arrayOffset() + dst.position(), n);
+                    dst.position(dst.position() + n);
+                } else {
+                    if (outputArray == null) {
+                        outputArray = new byte[BUFFER_SIZE];
+                    }
+                    n = inflater.inflate(outputArray, 0, Math.min(dst.remaining(), outputArray.length));
+                    crc.update(outputArray, 0, n);
+                    dst.put(outputArray, 0, n);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Compressed request body is corrupt", e);
+            }
+            input.position(input.limit() - inflater.getRemaining());
+            memberInflated += n;
+            inflated += n;
+            if (limit > 0 && inflated > limit) {
+                metrics.limitExceeded();
+                throw new IOException(String.format("Decompressed request body is larger than %d bytes", limit));
+            }
+            if (inflater.finished()) {
+                if (encoding == Encoding.GZIP) {
+                    state = State.TRAILER;
+                } else {
+                    done();
+                }
+                return n;
+            }
+            if (inflater.needsDictionary()) {
+                throw new IOException("Compressed request body needs a preset dictionary");
+            }
+            if (n > 0) {
+                return n;
+            }
+        }
+    }
+
+    private boolean readTrailer() throws IOException {
+        while (input.remaining() < GZIP_TRAILER_LENGTH) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        int position = input.position();
+        if (readInt(position) != (int) crc.getValue() || readInt(position + 4) != (int) memberInflated) {
+            throw new IOException("Gzip trailer of the request body does not match its content");
+        }
+        input.position(position + GZIP_TRAILER_LENGTH);
+        state = State.MEMBER_END;
+        return true;
+    }
+
+    private int readInt(int position) {
+        return (inputArray[position] & 0xff) | (inputArray[position + 1] & 0xff) << 8
+                | (inputArray[position + 2] & 0xff) << 16 | (inputArray[position + 3] & 0xff) << 24;
+    }
+
+    /*
+     * After a gzip member, either another member follows or the body ends
+     */
+    private boolean nextMember() throws IOException {
+        if (input.hasRemaining()) {
+            state = State.HEADER;
+            return true;
+        }
+        input.clear();
+        int read;
+        try {
+            read = next.read(input);
+        } finally {
+            input.flip();
+        }
+        if (read < 0) {
+            inputEnded = true;
+            done();
+            return true;
+        }
+        if (read == 0) {
+            return false;
+        }
+        compressed += read;
+        state = State.HEADER;
+        return true;
+    }
+
+    private void done() {
+        state = State.DONE;
+        end();
+        metrics.bodyInflated(compressed, inflated);
+    }
+
+    private void end() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+}
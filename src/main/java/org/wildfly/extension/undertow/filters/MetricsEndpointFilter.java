@@ -0,0 +1,76 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import io.undertow.Handlers;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.ExpressionResolver;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.StringLengthValidator;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.wildfly.extension.undertow.UndertowLogger;
+
+/**
+ * Serves the request metrics of the listeners with metrics-enabled on a path of a location, in the Prometheus text
+ * format, see {@link MetricsEndpointHandler}.
+ */
+public class MetricsEndpointFilter extends Filter {
+
+    public static final MetricsEndpointFilter INSTANCE = new MetricsEndpointFilter();
+
+    /*
+     * Request path the metrics are served on
+     */
+    public static final SimpleAttributeDefinition PATH = new SimpleAttributeDefinitionBuilder("path", ModelType.STRING)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode("/metrics"))
+            .setValidator(new StringLengthValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * Whether clients other than those on the loopback address may scrape the metrics
+     */
+    public static final SimpleAttributeDefinition ALLOW_REMOTE = new SimpleAttributeDefinitionBuilder("allow-remote", ModelType.BOOLEAN)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(false))
+            .setAllowExpression(true)
+            .build();
+
+    private MetricsEndpointFilter() {
+        super("metrics-endpoint");
+    }
+
+    @Override
+    public Collection<AttributeDefinition> getAttributes() {
+        return Arrays.<AttributeDefinition>asList(PATH, ALLOW_REMOTE);
+    }
+
+    @Override
+    public Class<? extends HttpHandler> getHandlerClass() {
+        return null;
+    }
+
+    @Override
+    public HttpHandler createHttpHandler(final Predicate predicate, final ModelNode model, HttpHandler next) {
+        String path;
+        boolean allowRemote;
+        try {
+            path = PATH.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asString();
+            allowRemote = ALLOW_REMOTE.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asBoolean();
+        } catch (OperationFailedException e) {
+            throw new IllegalArgumentException(e);
+        }
+        UndertowLogger.ROOT_LOGGER.debugf("Serving listener metrics on %s to %s clients", path,
+                allowRemote ? "all" : "loopback");
+
+        HttpHandler handler = new MetricsEndpointHandler(next, path, allowRemote);
+        return predicate != null ? Handlers.predicate(predicate, handler, next) : handler;
+    }
+}
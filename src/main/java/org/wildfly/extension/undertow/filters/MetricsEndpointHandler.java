@@ -0,0 +1,73 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.StatusCodes;
+import org.wildfly.extension.undertow.ListenerMetrics;
+import org.wildfly.extension.undertow.PrometheusTextFormat;
+
+/**
+ * Answers requests for one path with the {@link ListenerMetrics} of every listener that has metrics-enabled, in the
+ * Prometheus text format, and passes all other requests on.
+ * <p>
+ * Unless remote scrapes are allowed only clients on the loopback address are answered, so the metrics stay on the
+ * management side of a server whose location is otherwise public; everyone else gets a 404 as if the filter were not
+ * there. The address checked is the peer of the connection, not the source address, because proxy-address-forwarding
+ * sets that from an X-Forwarded-For header any client can send.
+ */
+final class MetricsEndpointHandler implements HttpHandler {
+
+    private final HttpHandler next;
+    private final String path;
+    private final boolean allowRemote;
+
+    MetricsEndpointHandler(HttpHandler next, String path, boolean allowRemote) {
+        this.next = next;
+        this.path = path;
+        this.allowRemote = allowRemote;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        if (!path.equals(exchange.getRequestPath())) {
+            next.handleRequest(exchange);
+            return;
+        }
+        if (!allowRemote && !isLoopback(exchange.getConnection().getPeerAddress(InetSocketAddress.class))) {
+            exchange.setResponseCode(StatusCodes.NOT_FOUND);
+            exchange.endExchange();
+            return;
+        }
+        boolean head = Methods.HEAD.equals(exchange.getRequestMethod());
+        if (!head && !Methods.GET.equals(exchange.getRequestMethod())) {
+            exchange.setResponseCode(StatusCodes.METHOD_NOT_ALLOWED);
+            exchange.getResponseHeaders().put(Headers.ALLOW, "GET, HEAD");
+            exchange.endExchange();
+            return;
+        }
+        byte[] body = PrometheusTextFormat.write(ListenerMetrics.all()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, PrometheusTextFormat.CONTENT_TYPE);
+        exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "no-store");
+        exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, body.length);
+        if (head) {
+            exchange.endExchange();
+            return;
+        }
+        exchange.getResponseSender().send(ByteBuffer.wrap(body));
+    }
+
+    static boolean isLoopback(InetSocketAddress address) {
+        if (address == null) {
+            return false;
+        }
+        InetAddress inetAddress = address.getAddress();
+        return inetAddress != null && inetAddress.isLoopbackAddress();
+    }
+}
@@ -0,0 +1,162 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.wildfly.extension.undertow.ResidentEntries;
+
+/**
+ * A size bounded, approximately least recently used store of response bodies held in direct buffers, so that large cached bodies
+ * stay out of the heap and can be written to a connection without copying.
+ * <p>
+ * Entries are looked up by an opaque key chosen by the caller. The bodies are immutable once stored; {@link #get}
+ * returns a fresh read-only view each time so concurrent requests can write the same entry.
+ * <p>
+ * Lookups take no lock. Recency is kept as a stamp on each entry, counted in puts: a put stamps the entry it stores,
+ * and a hit stamps its entry as used after the latest put. The stamp is only written when it changes, so hits on a
+ * popular entry between two puts share its cache line rather than write to it. Puts and removals are serialised among
+ * themselves; a put that takes the store over its capacity evicts, from a sample of the
+ * {@link ResidentEntries resident entries}, the one with the oldest stamp, taking the one stored earliest among entries
+ * last used between the same two puts, until the store is back within its capacity.
+ */
+public final class OffHeapResponseStore {
+
+    private final long capacity;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    // guarded by this
+    private final ResidentEntries<Entry> resident = new ResidentEntries<>();
+
+    private static final Comparator<Entry> LEAST_RECENTLY_USED = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            int order = Long.compare(a.lastUsed, b.lastUsed);
+            return order != 0 ? order : Long.compare(a.storedAt, b.storedAt);
+        }
+    };
+
+    // written under the lock on this, read without it
+    private volatile long puts;
+
+    private volatile long size;
+
+    private volatile long evictions;
+
+    public OffHeapResponseStore(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return a read-only view of the stored body, or {@code null} if there is no entry for the key
+     */
+    public ByteBuffer get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        long now = puts * 2 + 1;
+        if (entry.lastUsed != now) {
+            entry.lastUsed = now;
+        }
+        return entry.body.duplicate();
+    }
+
+    /**
+     * Copies the remaining bytes of {@code body} off-heap and stores them, evicting the least recently used entries to
+     * stay within the capacity. Bodies larger than the whole store are not stored.
+     *
+     * @return {@code true} if the body was stored
+     */
+    public boolean put(String key, ByteBuffer body) {
+        int length = body.remaining();
+        if (length > capacity) {
+            return false;
+        }
+        ByteBuffer stored = ByteBuffer.allocateDirect(length);
+        stored.put(body.duplicate());
+        stored.flip();
+        synchronized (this) {
+            long stamp = ++puts * 2;
+            Entry entry = new Entry(key, stored.asReadOnlyBuffer(), stamp);
+            Entry previous = entries.put(key, entry);
+            long newSize = size + length;
+            if (previous != null) {
+                resident.remove(previous);
+                newSize -= previous.body.capacity();
+            }
+            while (newSize > capacity) {
+                Entry victim = resident.sample(LEAST_RECENTLY_USED);
+                if (victim == null) {
+                    break;
+                }
+                resident.remove(victim);
+                entries.remove(victim.key, victim);
+                newSize -= victim.body.capacity();
+                evictions++;
+            }
+            resident.add(entry);
+            size = newSize;
+        }
+        return true;
+    }
+
+    public void remove(String key) {
+        synchronized (this) {
+            Entry previous = entries.remove(key);
+            if (previous != null) {
+                resident.remove(previous);
+                size -= previous.body.capacity();
+            }
+        }
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    private static final class Entry extends ResidentEntries.Entry {
+        final String key;
+        final ByteBuffer body;
+        final long storedAt;
+        volatile long lastUsed;
+
+        Entry(String key, ByteBuffer body, long storedAt) {
+            this.key = key;
+            this.body = body;
+            this.storedAt = storedAt;
+            this.lastUsed = storedAt;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.wildfly.extension.undertow.filters;
+
+/**
+ * Where the sampled requests of one path spent their time, in milliseconds, as returned by
+ * {@link RequestProfilerMXBean#breakdown}:
+ * <ul>
+ * <li>received - from the start of the request to the filter, which is header parsing and any wait for a worker
+ * before the filter; only known when the listener has record-request-start-time on
+ * <li>queue - from the filter to the request's dispatch to a worker thread, for requests dispatched after the filter
+ * <li>handler - the rest of the handler chain and the servlet, until the response is started
+ * <li>response - writing the response, until the exchange completes
+ * </ul>
+ * The means of received and queue are over the samples where they are known.
+ */
+public final class PathPhaseBreakdown {
+
+    private final String path;
+    private final long count;
+    private final double meanReceivedMillis;
+    private final double meanQueueMillis;
+    private final double meanHandlerMillis;
+    private final double meanResponseMillis;
+    private final double meanTotalMillis;
+    private final double maxTotalMillis;
+
+    PathPhaseBreakdown(String path, long count, double meanReceivedMillis, double meanQueueMillis,
+            double meanHandlerMillis, double meanResponseMillis, double meanTotalMillis, double maxTotalMillis) {
+        this.path = path;
+        this.count = count;
+        this.meanReceivedMillis = meanReceivedMillis;
+        this.meanQueueMillis = meanQueueMillis;
+        this.meanHandlerMillis = meanHandlerMillis;
+        this.meanResponseMillis = meanResponseMillis;
+        this.meanTotalMillis = meanTotalMillis;
+        this.maxTotalMillis = maxTotalMillis;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanReceivedMillis() {
+        return meanReceivedMillis;
+    }
+
+    public double getMeanQueueMillis() {
+        return meanQueueMillis;
+    }
+
+    public double getMeanHandlerMillis() {
+        return meanHandlerMillis;
+    }
+
+    public double getMeanResponseMillis() {
+        return meanResponseMillis;
+    }
+
+    public double getMeanTotalMillis() {
+        return meanTotalMillis;
+    }
+
+    public double getMaxTotalMillis() {
+        return maxTotalMillis;
+    }
+}
@@ -0,0 +1,113 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import io.undertow.Handlers;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.ExpressionResolver;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.EnumValidator;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+
+/**
+ * Limits the rate of requests each client may make to a location, see {@link RateLimitHandler}. Each filter-ref gets
+ * its own table of buckets; the one built last is published as an MXBean with type {@code rate-limit} named after the
+ * filter resource, see {@link FilterResourceNames}.
+ */
+public class RateLimitFilter extends Filter implements FilterResourceNames.Release {
+
+    public static final RateLimitFilter INSTANCE = new RateLimitFilter();
+
+    public static final SimpleAttributeDefinition KEY = new SimpleAttributeDefinitionBuilder("key", ModelType.STRING)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(RateLimiter.Key.ADDRESS.toString()))
+            .setValidator(new EnumValidator<>(RateLimiter.Key.class, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * Only used when the key is header
+     */
+    public static final SimpleAttributeDefinition HEADER_NAME = new SimpleAttributeDefinitionBuilder("header-name", ModelType.STRING)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .build();
+
+    public static final SimpleAttributeDefinition REQUESTS_PER_SECOND = new SimpleAttributeDefinitionBuilder("requests-per-second", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(50))
+            .setValidator(new IntRangeValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * Requests a client may make at once after being idle
+     */
+    public static final SimpleAttributeDefinition BURST = new SimpleAttributeDefinitionBuilder("burst", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(100))
+            .setValidator(new IntRangeValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    public static final SimpleAttributeDefinition MAX_CLIENTS = new SimpleAttributeDefinitionBuilder("max-clients", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(100000))
+            .setValidator(new IntRangeValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    private RateLimitFilter() {
+        super("rate-limit");
+    }
+
+    @Override
+    public Collection<AttributeDefinition> getAttributes() {
+        return Arrays.<AttributeDefinition>asList(KEY, HEADER_NAME, REQUESTS_PER_SECOND, BURST, MAX_CLIENTS);
+    }
+
+    @Override
+    public void release(String name) {
+        UndertowMXBeans.unregister("rate-limit", name);
+    }
+
+    @Override
+    public Class<? extends HttpHandler> getHandlerClass() {
+        return null;
+    }
+
+    @Override
+    public HttpHandler createHttpHandler(final Predicate predicate, final ModelNode model, HttpHandler next) {
+        RateLimiter limiter;
+        String header;
+        try {
+            limiter = new RateLimiter(
+                    RateLimiter.Key.forName(KEY.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asString()),
+                    REQUESTS_PER_SECOND.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt(),
+                    BURST.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt(),
+                    MAX_CLIENTS.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt());
+            ModelNode headerName = HEADER_NAME.resolveModelAttribute(ExpressionResolver.DEFAULT, model);
+            header = headerName.isDefined() ? headerName.asString() : null;
+        } catch (OperationFailedException e) {
+            throw new IllegalArgumentException(e);
+        }
+        if (limiter.getKeySource() == RateLimiter.Key.HEADER && header == null) {
+            throw new IllegalArgumentException("A rate-limit keyed by header needs a header-name");
+        }
+        String name = FilterResourceNames.nameOf(model, "rate-limit");
+        UndertowMXBeans.register("rate-limit", name, limiter);
+        UndertowLogger.ROOT_LOGGER.debugf("Created rate limiter %s keyed by %s", name, limiter.getKey());
+
+        HttpHandler handler = new RateLimitHandler(next, limiter, header);
+        return predicate != null ? Handlers.predicate(predicate, handler, next) : handler;
+    }
+}
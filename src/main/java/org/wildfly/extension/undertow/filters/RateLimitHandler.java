@@ -0,0 +1,92 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.net.InetSocketAddress;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.RenegotiationRequiredException;
+import io.undertow.server.SSLSessionInfo;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+
+/**
+ * Takes a token from the calling client's bucket in the {@link RateLimiter} for each request, answering those that
+ * find it empty with a 429 and a Retry-After of the seconds until it has a token again.
+ * <p>
+ * The client is identified by its address - the forwarded one when the listener has proxy-address-forwarding on, as
+ * the listener has already replaced the source address by then - by the subject of its certificate, or by the value
+ * of a request header. Requests without a certificate or the header are counted against their address.
+ */
+final class RateLimitHandler implements HttpHandler {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final HttpHandler next;
+    private final RateLimiter limiter;
+    private final HttpString header;
+
+    RateLimitHandler(HttpHandler next, RateLimiter limiter, String header) {
+        this.next = next;
+        this.limiter = limiter;
+        this.header = header == null ? null : new HttpString(header);
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        long wait = limiter.acquire(client(exchange), System.nanoTime());
+        if (wait > 0) {
+            // rounded up, a client that retries early is only refused again
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1);
+            exchange.setResponseCode(TOO_MANY_REQUESTS);
+            exchange.getResponseHeaders().put(Headers.RETRY_AFTER, Math.max(1, seconds));
+            exchange.endExchange();
+            return;
+        }
+        next.handleRequest(exchange);
+    }
+
+    private String client(HttpServerExchange exchange) {
+        switch (limiter.getKeySource()) {
+            case CERTIFICATE:
+                String subject = certificateSubject(exchange);
+                if (subject != null) {
+                    return subject;
+                }
+                break;
+            case HEADER:
+                String value = exchange.getRequestHeaders().getFirst(header);
+                if (value != null) {
+                    return value;
+                }
+                break;
+            default:
+                break;
+        }
+        InetSocketAddress address = exchange.getSourceAddress();
+        if (address == null) {
+            return "";
+        }
+        return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+    }
+
+    private static String certificateSubject(HttpServerExchange exchange) {
+        SSLSessionInfo session = exchange.getConnection().getSslSessionInfo();
+        if (session == null) {
+            return null;
+        }
+        try {
+            Certificate[] certificates = session.getPeerCertificates();
+            if (certificates.length > 0 && certificates[0] instanceof X509Certificate) {
+                return ((X509Certificate) certificates[0]).getSubjectX500Principal().getName();
+            }
+        } catch (SSLPeerUnverifiedException | RenegotiationRequiredException e) {
+            // no client certificate, or only after a renegotiation this filter does not ask for
+        }
+        return null;
+    }
+}
@@ -0,0 +1,180 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets, one per client, in a table bounded by max-clients.
+ * <p>
+ * Each bucket holds up to burst tokens and refills at the configured rate; a request takes a token or is refused
+ * with the time until the next one. The table is split into stripes, each an access ordered map behind its own lock,
+ * so that clients only contend with the few others that hash to the same stripe. A bucket idle for long enough to have
+ * refilled is no different from a new one, so each stripe drops such buckets from its least recently used end whenever
+ * a new client arrives, and drops the least recently used bucket regardless once it holds its share of max-clients.
+ */
+final class RateLimiter implements RateLimiterMXBean {
+
+    enum Key {
+        ADDRESS, CERTIFICATE, HEADER;
+
+        static Key forName(String name) {
+            return valueOf(name.toUpperCase(Locale.ENGLISH));
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private final Key key;
+    private final double tokensPerNano;
+    private final int burst;
+    private final long refillNanos;
+    private final Stripe[] stripes;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    RateLimiter(Key key, double requestsPerSecond, int burst, int maxClients) {
+        this.key = key;
+        this.tokensPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.refillNanos = (long) Math.ceil(burst / tokensPerNano);
+        int count = Math.min(Integer.highestOneBit(Math.max(16, Runtime.getRuntime().availableProcessors() * 4)),
+                Integer.highestOneBit(maxClients));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(Math.max(1, maxClients / count));
+        }
+    }
+
+    Key getKeySource() {
+        return key;
+    }
+
+    /**
+     * Takes a token from the client's bucket.
+     *
+     * @return 0 if the request may proceed, otherwise the nanoseconds until the bucket has a token again
+     */
+    long acquire(String client, long now) {
+        int hash = client.hashCode();
+        hash ^= hash >>> 16;
+        Stripe stripe = stripes[hash & (stripes.length - 1)];
+        long wait;
+        synchronized (stripe) {
+            Bucket bucket = stripe.get(client);
+            if (bucket == null) {
+                stripe.expire(now);
+                bucket = new Bucket(burst, now);
+                stripe.put(client, bucket);
+            }
+            double tokens = Math.min(burst, bucket.tokens + (now - bucket.updated) * tokensPerNano);
+            bucket.updated = now;
+            if (tokens >= 1) {
+                bucket.tokens = tokens - 1;
+                wait = 0;
+            } else {
+                bucket.tokens = tokens;
+                wait = Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+            }
+        }
+        if (wait == 0) {
+            allowed.increment();
+        } else {
+            rejected.increment();
+        }
+        return wait;
+    }
+
+    @Override
+    public String getKey() {
+        return key.toString();
+    }
+
+    @Override
+    public double getRequestsPerSecond() {
+        return tokensPerNano * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public int getBurst() {
+        return burst;
+    }
+
+    @Override
+    public int getClientCount() {
+        int clients = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                clients += stripe.size();
+            }
+        }
+        return clients;
+    }
+
+    @Override
+    public long getAllowedCount() {
+        return allowed.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private static final class Bucket {
+        double tokens;
+        long updated;
+
+        Bucket(double tokens, long updated) {
+            this.tokens = tokens;
+            this.updated = updated;
+        }
+    }
+
+    /*
+     * Guarded by its own monitor
+     */
+    private final class Stripe extends LinkedHashMap<String, Bucket> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        /*
+         * Drops the refilled buckets at the least recently used end, each bucket is only ever dropped once so this
+         * costs an amortised constant amount per new client
+         */
+        void expire(long now) {
+            Iterator<Bucket> buckets = values().iterator();
+            while (buckets.hasNext() && now - buckets.next().updated >= refillNanos) {
+                buckets.remove();
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
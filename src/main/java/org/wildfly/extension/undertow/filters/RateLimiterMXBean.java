@@ -0,0 +1,28 @@
+package org.wildfly.extension.undertow.filters;
+
+/**
+ * Runtime state of a rate-limit filter-ref, registered through
+ * {@link org.wildfly.extension.undertow.UndertowMXBeans} with type {@code rate-limit}.
+ */
+public interface RateLimiterMXBean {
+
+    String getKey();
+
+    double getRequestsPerSecond();
+
+    int getBurst();
+
+    /**
+     * @return clients with a bucket in the table, those idle long enough for their bucket to refill are dropped
+     */
+    int getClientCount();
+
+    long getAllowedCount();
+
+    long getRejectedCount();
+
+    /**
+     * @return buckets dropped to keep the table within max-clients before they had refilled
+     */
+    long getEvictionCount();
+}
@@ -0,0 +1,73 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import io.undertow.Handlers;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.ExpressionResolver;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+
+/**
+ * Inflates gzip and deflate request bodies of a location as they are read, see {@link RequestDecompressionHandler}.
+ * Each filter-ref keeps its own counts; those of the one built last are published as an MXBean with type
+ * {@code request-decompression} named after the filter resource, see {@link FilterResourceNames}.
+ */
+public class RequestDecompressionFilter extends Filter implements FilterResourceNames.Release {
+
+    public static final RequestDecompressionFilter INSTANCE = new RequestDecompressionFilter();
+
+    /*
+     * Largest decompressed body in bytes, 0 applies the listener's max-entity-size, or 10 MiB if it has none
+     */
+    public static final SimpleAttributeDefinition MAX_DECOMPRESSED_SIZE = new SimpleAttributeDefinitionBuilder("max-decompressed-size", ModelType.LONG)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(0L))
+            .setValidator(new LongRangeValidator(0, Long.MAX_VALUE, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    private RequestDecompressionFilter() {
+        super("request-decompression");
+    }
+
+    @Override
+    public Collection<AttributeDefinition> getAttributes() {
+        return Arrays.<AttributeDefinition>asList(MAX_DECOMPRESSED_SIZE);
+    }
+
+    @Override
+    public void release(String name) {
+        UndertowMXBeans.unregister("request-decompression", name);
+    }
+
+    @Override
+    public Class<? extends HttpHandler> getHandlerClass() {
+        return null;
+    }
+
+    @Override
+    public HttpHandler createHttpHandler(final Predicate predicate, final ModelNode model, HttpHandler next) {
+        RequestDecompressionHandler handler;
+        try {
+            handler = new RequestDecompressionHandler(next,
+                    MAX_DECOMPRESSED_SIZE.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asLong());
+        } catch (OperationFailedException e) {
+            throw new IllegalArgumentException(e);
+        }
+        String name = FilterResourceNames.nameOf(model, "request-decompression");
+        UndertowMXBeans.register("request-decompression", name, handler);
+        UndertowLogger.ROOT_LOGGER.debugf("Created request decompression %s", name);
+
+        return predicate != null ? Handlers.predicate(predicate, handler, next) : handler;
+    }
+}
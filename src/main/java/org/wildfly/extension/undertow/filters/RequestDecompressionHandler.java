@@ -0,0 +1,120 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import io.undertow.UndertowOptions;
+import io.undertow.server.ConduitWrapper;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.ConduitFactory;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import org.xnio.conduits.StreamSourceConduit;
+
+/**
+ * Accepts request bodies with a gzip or deflate Content-Encoding and inflates them as the application reads them,
+ * through an {@link InflatingStreamSourceConduit}. The Content-Encoding and Content-Length headers are removed, so
+ * the application sees the body as if it had been sent uncompressed.
+ * <p>
+ * The listener's max-entity-size only limits the compressed body, so the decompressed body has a limit of its own:
+ * max-decompressed-size when set, otherwise the same max-entity-size, and when the listener sets no max-entity-size
+ * either, the 10 MiB that is the default max-post-size of a listener. A few kilobytes of gzip can inflate to gigabytes,
+ * so a body is never inflated without a limit. Other encodings are refused with a 415 and an
+ * Accept-Encoding header naming the two that are understood.
+ */
+final class RequestDecompressionHandler implements HttpHandler, RequestDecompressionMXBean {
+
+    private static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+
+    static final long DEFAULT_MAX_DECOMPRESSED_SIZE = 10 * 1024 * 1024;
+
+    private final HttpHandler next;
+    private final long maxDecompressedSize;
+    private final LongAdder decompressed = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder decompressedBytes = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder unsupported = new LongAdder();
+
+    RequestDecompressionHandler(HttpHandler next, long maxDecompressedSize) {
+        this.next = next;
+        this.maxDecompressedSize = maxDecompressedSize;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        String contentEncoding = exchange.getRequestHeaders().getFirst(Headers.CONTENT_ENCODING);
+        if (contentEncoding == null || contentEncoding.trim().equalsIgnoreCase("identity")) {
+            next.handleRequest(exchange);
+            return;
+        }
+        final InflatingStreamSourceConduit.Encoding encoding =
+                InflatingStreamSourceConduit.Encoding.forContentEncoding(contentEncoding);
+        if (encoding == null) {
+            unsupported.increment();
+            exchange.setResponseCode(StatusCodes.UNSUPPORTED_MEDIA_TYPE);
+            exchange.getResponseHeaders().put(Headers.ACCEPT_ENCODING, SUPPORTED_ENCODINGS);
+            exchange.endExchange();
+            return;
+        }
+        final long limit = limit(maxDecompressedSize,
+                exchange.getConnection().getUndertowOptions().get(UndertowOptions.MAX_ENTITY_SIZE, -1L));
+        exchange.getRequestHeaders().remove(Headers.CONTENT_ENCODING);
+        exchange.getRequestHeaders().remove(Headers.CONTENT_LENGTH);
+        exchange.addRequestWrapper(new ConduitWrapper<StreamSourceConduit>() {
+            @Override
+            public StreamSourceConduit wrap(ConduitFactory<StreamSourceConduit> factory, HttpServerExchange exchange) {
+                return new InflatingStreamSourceConduit(factory.create(), encoding, limit,
+                        RequestDecompressionHandler.this);
+            }
+        });
+        next.handleRequest(exchange);
+    }
+
+    static long limit(long maxDecompressedSize, long maxEntitySize) {
+        if (maxDecompressedSize > 0) {
+            return maxDecompressedSize;
+        }
+        return maxEntitySize > 0 ? maxEntitySize : DEFAULT_MAX_DECOMPRESSED_SIZE;
+    }
+
+    void bodyInflated(long compressed, long inflated) {
+        decompressed.increment();
+        compressedBytes.add(compressed);
+        decompressedBytes.add(inflated);
+    }
+
+    void limitExceeded() {
+        rejected.increment();
+    }
+
+    @Override
+    public long getMaxDecompressedSize() {
+        return maxDecompressedSize;
+    }
+
+    @Override
+    public long getDecompressedCount() {
+        return decompressed.sum();
+    }
+
+    @Override
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    @Override
+    public long getDecompressedBytes() {
+        return decompressedBytes.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getUnsupportedCount() {
+        return unsupported.sum();
+    }
+}
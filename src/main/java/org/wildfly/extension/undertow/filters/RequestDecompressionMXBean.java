@@ -0,0 +1,33 @@
+package org.wildfly.extension.undertow.filters;
+
+/**
+ * Counts of a request-decompression filter-ref, registered through
+ * {@link org.wildfly.extension.undertow.UndertowMXBeans} with type {@code request-decompression}.
+ */
+public interface RequestDecompressionMXBean {
+
+    /**
+     * @return the configured limit on a decompressed body, 0 if the listener's max-entity-size, or failing that 10 MiB,
+     *         applies
+     */
+    long getMaxDecompressedSize();
+
+    /**
+     * @return bodies inflated to the end
+     */
+    long getDecompressedCount();
+
+    long getCompressedBytes();
+
+    long getDecompressedBytes();
+
+    /**
+     * @return bodies that inflated past the limit
+     */
+    long getRejectedCount();
+
+    /**
+     * @return requests refused with a 415 for a content encoding other than gzip or deflate
+     */
+    long getUnsupportedCount();
+}
@@ -0,0 +1,176 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Picks one in N requests for profiling and keeps the phase timestamps of the latest sampled requests in a ring
+ * buffer allocated up front, so that recording a sample allocates nothing and old samples simply get overwritten.
+ * <p>
+ * Each slot holds a request path and five {@code System.nanoTime()} timestamps: request start, filter entry, dispatch,
+ * response start and completion, 0 where a phase did not happen or is not known. A slot's stamp is -1 while it is
+ * being written and the sequence number of its sample afterwards, so {@link #breakdown} can skip slots that change
+ * under it without the writers taking a lock.
+ */
+final class RequestProfiler implements RequestProfilerMXBean {
+
+    static final int START = 0;
+    static final int ENTERED = 1;
+    static final int DISPATCHED = 2;
+    static final int RESPONSE_STARTED = 3;
+    static final int COMPLETED = 4;
+    private static final int TIMESTAMPS = 5;
+
+    private final int sampleRate;
+    private final int mask;
+    private final String[] paths;
+    private final long[] timestamps;
+    private final AtomicLongArray stamps;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+
+    RequestProfiler(int sampleRate, int bufferSize) {
+        this.sampleRate = sampleRate;
+        int capacity = bufferSize <= 1 ? 1 : Integer.highestOneBit(bufferSize - 1) << 1;
+        this.mask = capacity - 1;
+        this.paths = new String[capacity];
+        this.timestamps = new long[capacity * TIMESTAMPS];
+        this.stamps = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            stamps.set(i, -1);
+        }
+    }
+
+    /**
+     * @return true for one in every sample-rate calls
+     */
+    boolean sample() {
+        return requests.getAndIncrement() % sampleRate == 0;
+    }
+
+    void record(String path, long start, long entered, long dispatched, long responseStarted, long completed) {
+        long number = sequence.getAndIncrement();
+        int slot = (int) (number & mask);
+        stamps.set(slot, -1);
+        paths[slot] = path;
+        int base = slot * TIMESTAMPS;
+        timestamps[base + START] = start;
+        timestamps[base + ENTERED] = entered;
+        timestamps[base + DISPATCHED] = dispatched;
+        timestamps[base + RESPONSE_STARTED] = responseStarted;
+        timestamps[base + COMPLETED] = completed;
+        stamps.set(slot, number);
+    }
+
+    @Override
+    public List<PathPhaseBreakdown> breakdown(int maxPaths) {
+        Map<String, PathTotals> byPath = new HashMap<>();
+        long[] sample = new long[TIMESTAMPS];
+        for (int slot = 0; slot < paths.length; slot++) {
+            long stamp = stamps.get(slot);
+            if (stamp < 0) {
+                continue;
+            }
+            String path = paths[slot];
+            System.arraycopy(timestamps, slot * TIMESTAMPS, sample, 0, TIMESTAMPS);
+            if (stamps.get(slot) != stamp) {
+                continue;
+            }
+            PathTotals totals = byPath.get(path);
+            if (totals == null) {
+                totals = new PathTotals(path);
+                byPath.put(path, totals);
+            }
+            totals.add(sample);
+        }
+        List<PathTotals> sorted = new ArrayList<>(byPath.values());
+        Collections.sort(sorted, new Comparator<PathTotals>() {
+            @Override
+            public int compare(PathTotals a, PathTotals b) {
+                return Long.compare(b.total, a.total);
+            }
+        });
+        int size = maxPaths > 0 ? Math.min(maxPaths, sorted.size()) : sorted.size();
+        List<PathPhaseBreakdown> breakdown = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            breakdown.add(sorted.get(i).toBreakdown());
+        }
+        return breakdown;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return paths.length;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public long getSampledCount() {
+        return sequence.get();
+    }
+
+    private static final class PathTotals {
+
+        final String path;
+        long count;
+        long received;
+        long receivedCount;
+        long queue;
+        long queueCount;
+        long handler;
+        long response;
+        long total;
+        long maxTotal;
+
+        PathTotals(String path) {
+            this.path = path;
+        }
+
+        void add(long[] sample) {
+            long entered = sample[ENTERED];
+            long completed = sample[COMPLETED];
+            long start = entered;
+            if (sample[START] > 0) {
+                start = sample[START];
+                received += entered - start;
+                receivedCount++;
+            }
+            long handlerStart = entered;
+            if (sample[DISPATCHED] > 0) {
+                handlerStart = sample[DISPATCHED];
+                queue += handlerStart - entered;
+                queueCount++;
+            }
+            long responseStarted = sample[RESPONSE_STARTED] > 0 ? sample[RESPONSE_STARTED] : completed;
+            handler += responseStarted - handlerStart;
+            response += completed - responseStarted;
+            total += completed - start;
+            maxTotal = Math.max(maxTotal, completed - start);
+            count++;
+        }
+
+        PathPhaseBreakdown toBreakdown() {
+            return new PathPhaseBreakdown(path, count, mean(received, receivedCount), mean(queue, queueCount),
+                    mean(handler, count), mean(response, count), mean(total, count), maxTotal / 1e6);
+        }
+
+        private static double mean(long nanos, long count) {
+            return count == 0 ? 0 : nanos / 1e6 / count;
+        }
+    }
+}
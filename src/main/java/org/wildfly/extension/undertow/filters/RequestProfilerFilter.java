@@ -0,0 +1,86 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import io.undertow.Handlers;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.ExpressionResolver;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+
+/**
+ * Profiles a sample of the requests a filter-ref's predicate selects, see {@link RequestProfilerHandler}. Each
+ * filter-ref gets its own buffer of samples; the one built last is published as an MXBean with type
+ * {@code request-profiler}, named after the filter resource, whose {@code breakdown} operation shows where each path's
+ * requests spend their time. See {@link FilterResourceNames}.
+ */
+public class RequestProfilerFilter extends Filter implements FilterResourceNames.Release {
+
+    public static final RequestProfilerFilter INSTANCE = new RequestProfilerFilter();
+
+    /*
+     * One in this many requests is profiled
+     */
+    public static final SimpleAttributeDefinition SAMPLE_RATE = new SimpleAttributeDefinitionBuilder("sample-rate", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(100))
+            .setValidator(new IntRangeValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * Samples kept, rounded up to a power of two
+     */
+    public static final SimpleAttributeDefinition BUFFER_SIZE = new SimpleAttributeDefinitionBuilder("buffer-size", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(4096))
+            .setValidator(new IntRangeValidator(1, 1 << 20, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    private RequestProfilerFilter() {
+        super("request-profiler");
+    }
+
+    @Override
+    public Collection<AttributeDefinition> getAttributes() {
+        return Arrays.<AttributeDefinition>asList(SAMPLE_RATE, BUFFER_SIZE);
+    }
+
+    @Override
+    public void release(String name) {
+        UndertowMXBeans.unregister("request-profiler", name);
+    }
+
+    @Override
+    public Class<? extends HttpHandler> getHandlerClass() {
+        return null;
+    }
+
+    @Override
+    public HttpHandler createHttpHandler(final Predicate predicate, final ModelNode model, HttpHandler next) {
+        RequestProfiler profiler;
+        try {
+            profiler = new RequestProfiler(SAMPLE_RATE.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt(),
+                    BUFFER_SIZE.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt());
+        } catch (OperationFailedException e) {
+            throw new IllegalArgumentException(e);
+        }
+        String name = FilterResourceNames.nameOf(model, "request-profiler");
+        UndertowMXBeans.register("request-profiler", name, profiler);
+        UndertowLogger.ROOT_LOGGER.debugf("Created request profiler %s sampling 1 in %d requests", name,
+                profiler.getSampleRate());
+
+        HttpHandler handler = new RequestProfilerHandler(next, profiler);
+        return predicate != null ? Handlers.predicate(predicate, handler, next) : handler;
+    }
+}
@@ -0,0 +1,96 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.concurrent.Executor;
+
+import io.undertow.server.ConduitWrapper;
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.ConduitFactory;
+import org.xnio.conduits.StreamSinkConduit;
+
+/**
+ * Times the phases of the requests the {@link RequestProfiler} samples; the others only go through its counter.
+ * <p>
+ * For a sampled request the handler notes when it was entered, wraps the exchange's dispatch executor to note when
+ * the request starts on a worker thread, wraps the response channel to note when the response is started, and hands
+ * everything to the profiler when the exchange completes. A request dispatched to an executor of its own, as a
+ * deployment with its own executor does, has no queue phase; its wait is part of the handler phase.
+ */
+final class RequestProfilerHandler implements HttpHandler {
+
+    private final HttpHandler next;
+    private final RequestProfiler profiler;
+
+    RequestProfilerHandler(HttpHandler next, RequestProfiler profiler) {
+        this.next = next;
+        this.profiler = profiler;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        if (profiler.sample()) {
+            final Sample sample = new Sample(exchange.getRequestPath(), exchange.getRequestStartTime(), System.nanoTime());
+            Executor executor = exchange.getDispatchExecutor();
+            exchange.setDispatchExecutor(new TimingExecutor(
+                    executor != null ? executor : exchange.getConnection().getWorker(), sample));
+            exchange.addResponseWrapper(sample);
+            exchange.addExchangeCompleteListener(sample);
+        }
+        next.handleRequest(exchange);
+    }
+
+    private final class Sample implements ConduitWrapper<StreamSinkConduit>, ExchangeCompletionListener {
+
+        private final String path;
+        private final long start;
+        private final long entered;
+        private volatile long dispatched;
+        private volatile long responseStarted;
+
+        Sample(String path, long start, long entered) {
+            this.path = path;
+            this.start = start > 0 ? start : 0;
+            this.entered = entered;
+        }
+
+        @Override
+        public StreamSinkConduit wrap(ConduitFactory<StreamSinkConduit> factory, HttpServerExchange exchange) {
+            responseStarted = System.nanoTime();
+            return factory.create();
+        }
+
+        @Override
+        public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+            try {
+                profiler.record(path, start, entered, dispatched, responseStarted, System.nanoTime());
+            } finally {
+                nextListener.proceed();
+            }
+        }
+    }
+
+    private static final class TimingExecutor implements Executor {
+
+        private final Executor executor;
+        private final Sample sample;
+
+        TimingExecutor(Executor executor, Sample sample) {
+            this.executor = executor;
+            this.sample = sample;
+        }
+
+        @Override
+        public void execute(final Runnable task) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (sample.dispatched == 0) {
+                        sample.dispatched = System.nanoTime();
+                    }
+                    task.run();
+                }
+            });
+        }
+    }
+}
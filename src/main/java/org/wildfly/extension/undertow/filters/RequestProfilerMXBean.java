@@ -0,0 +1,28 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.List;
+
+/**
+ * Runtime state of a request-profiler filter-ref, registered through
+ * {@link org.wildfly.extension.undertow.UndertowMXBeans} with type {@code request-profiler}.
+ */
+public interface RequestProfilerMXBean {
+
+    /**
+     * @return N, one in N requests is profiled
+     */
+    int getSampleRate();
+
+    int getBufferSize();
+
+    long getRequestCount();
+
+    long getSampledCount();
+
+    /**
+     * Aggregates the samples in the buffer by request path.
+     *
+     * @param maxPaths the number of paths to return, those with the most total time first; 0 for all
+     */
+    List<PathPhaseBreakdown> breakdown(int maxPaths);
+}
@@ -0,0 +1,94 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.Handlers;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.ExpressionResolver;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.SimpleAttributeDefinition;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+
+/**
+ * Caches whole responses of a location off-heap and answers repeated and conditional requests from the cache, see
+ * {@link ResponseCacheHandler}. Each filter-ref gets its own cache; the one built last is published as an MXBean
+ * with type {@code response-cache} named after the filter resource, see {@link FilterResourceNames}.
+ */
+public class ResponseCacheFilter extends Filter implements FilterResourceNames.Release {
+
+    public static final ResponseCacheFilter INSTANCE = new ResponseCacheFilter();
+
+    /*
+     * Total size in bytes of the responses cached by each filter-ref
+     */
+    public static final SimpleAttributeDefinition CACHE_SIZE = new SimpleAttributeDefinitionBuilder("cache-size", ModelType.LONG)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(64L * 1024 * 1024))
+            .setValidator(new LongRangeValidator(1, Long.MAX_VALUE, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    public static final SimpleAttributeDefinition MAX_CACHEABLE_SIZE = new SimpleAttributeDefinitionBuilder("max-cacheable-size", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(1024 * 1024))
+            .setValidator(new IntRangeValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * Seconds a response without Cache-Control max-age or Expires stays fresh, 0 leaves such responses uncached
+     */
+    public static final SimpleAttributeDefinition DEFAULT_MAX_AGE = new SimpleAttributeDefinitionBuilder("default-max-age", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(0))
+            .setValidator(new IntRangeValidator(0, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    private ResponseCacheFilter() {
+        super("response-cache");
+    }
+
+    @Override
+    public Collection<AttributeDefinition> getAttributes() {
+        return Arrays.<AttributeDefinition>asList(CACHE_SIZE, MAX_CACHEABLE_SIZE, DEFAULT_MAX_AGE);
+    }
+
+    @Override
+    public void release(String name) {
+        UndertowMXBeans.unregister("response-cache", name);
+    }
+
+    @Override
+    public Class<? extends HttpHandler> getHandlerClass() {
+        return null;
+    }
+
+    @Override
+    public HttpHandler createHttpHandler(final Predicate predicate, final ModelNode model, HttpHandler next) {
+        ResponseCacheHandler handler;
+        try {
+            handler = new ResponseCacheHandler(next,
+                    new OffHeapResponseStore(CACHE_SIZE.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asLong()),
+                    MAX_CACHEABLE_SIZE.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt(),
+                    TimeUnit.SECONDS.toMillis(DEFAULT_MAX_AGE.resolveModelAttribute(ExpressionResolver.DEFAULT, model).asInt()));
+        } catch (OperationFailedException e) {
+            throw new IllegalArgumentException(e);
+        }
+        String name = FilterResourceNames.nameOf(model, "response-cache");
+        UndertowMXBeans.register("response-cache", name, handler);
+        UndertowLogger.ROOT_LOGGER.debugf("Created response cache %s of %d bytes", name, handler.getCapacity());
+
+        return predicate != null ? Handlers.predicate(predicate, handler, next) : handler;
+    }
+}
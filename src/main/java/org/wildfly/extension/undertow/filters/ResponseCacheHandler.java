@@ -0,0 +1,630 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.undertow.server.ConduitWrapper;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.ConduitFactory;
+import io.undertow.util.DateUtils;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.HeaderValues;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import io.undertow.util.StatusCodes;
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.ConduitWritableByteChannel;
+import org.xnio.conduits.Conduits;
+import org.xnio.conduits.StreamSinkConduit;
+
+/**
+ * The handler installed by the {@link ResponseCacheFilter}: keeps whole responses - status, headers and body - in an
+ * {@link OffHeapResponseStore} and answers GET and HEAD requests from it while they are fresh.
+ * <p>
+ * A response is stored when it is a 200 without Set-Cookie, {@code Vary: *} or a no-store, no-cache or private
+ * Cache-Control, no larger than the max-cacheable-size and with a freshness lifetime: s-maxage, then max-age, then
+ * Expires, then the filter's default-max-age. Responses to requests with credentials - an Authorization or a Cookie
+ * header - are only stored when marked public or given an s-maxage. Entries are looked up by scheme, host and port,
+ * path and query; a response that varies on request
+ * headers leaves a marker under that key naming them, and the response itself under a key that adds their values.
+ * <p>
+ * A fresh entry answers an If-None-Match matching its ETag, or failing that an If-Modified-Since no older than its
+ * Last-Modified, with a 304. A request with {@code no-cache} skips the lookup but still refreshes the entry, one with
+ * {@code no-store} bypasses the cache entirely, as do range requests.
+ */
+final class ResponseCacheHandler implements HttpHandler, ResponseCacheMXBean {
+
+    private static final byte RESPONSE = 0;
+    private static final byte VARY = 1;
+
+    /*
+     * Connection level and per-response headers that are not stored
+     */
+    private static final HttpString[] UNSTORED_HEADERS = {Headers.CONNECTION, Headers.KEEP_ALIVE, Headers.TRANSFER_ENCODING,
+        Headers.CONTENT_LENGTH, Headers.DATE, Headers.AGE};
+
+    /*
+     * The headers a 304 repeats from the stored response
+     */
+    private static final HttpString[] NOT_MODIFIED_HEADERS = {Headers.CACHE_CONTROL, Headers.CONTENT_LOCATION,
+        Headers.ETAG, Headers.EXPIRES, Headers.VARY, Headers.LAST_MODIFIED};
+
+    private final HttpHandler next;
+    private final OffHeapResponseStore store;
+    private final int maxCacheableSize;
+    private final long defaultMaxAgeMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+
+    ResponseCacheHandler(HttpHandler next, OffHeapResponseStore store, int maxCacheableSize, long defaultMaxAgeMillis) {
+        this.next = next;
+        this.store = store;
+        this.maxCacheableSize = maxCacheableSize;
+        this.defaultMaxAgeMillis = defaultMaxAgeMillis;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        HttpString method = exchange.getRequestMethod();
+        HeaderMap requestHeaders = exchange.getRequestHeaders();
+        String requestCacheControl = joined(requestHeaders.get(Headers.CACHE_CONTROL));
+        if (!(Methods.GET.equals(method) || Methods.HEAD.equals(method)) || requestHeaders.contains(Headers.RANGE)
+                || directive(requestCacheControl, "no-store") != null) {
+            next.handleRequest(exchange);
+            return;
+        }
+        final String key = cacheKey(exchange.getRequestScheme(), exchange.getHostAndPort(), exchange.getRequestPath(),
+                exchange.getQueryString());
+        long now = System.currentTimeMillis();
+        if (!isNoCache(requestCacheControl, requestHeaders)) {
+            CachedResponse cached = lookup(key, exchange);
+            if (cached != null && cached.expires > now) {
+                hits.increment();
+                serve(exchange, cached, now);
+                return;
+            }
+        }
+        misses.increment();
+        if (Methods.GET.equals(method)) {
+            final boolean credentialed = hasCredentials(requestHeaders);
+            exchange.addResponseWrapper(new ConduitWrapper<StreamSinkConduit>() {
+                @Override
+                public StreamSinkConduit wrap(ConduitFactory<StreamSinkConduit> factory, HttpServerExchange exchange) {
+                    return wrapResponse(factory, exchange, key, credentialed);
+                }
+            });
+        }
+        next.handleRequest(exchange);
+    }
+
+    private CachedResponse lookup(String key, HttpServerExchange exchange) {
+        ByteBuffer entry = store.get(key);
+        if (entry == null) {
+            return null;
+        }
+        CachedResponse cached = CachedResponse.decode(entry);
+        if (cached.type == VARY) {
+            entry = store.get(variantKey(key, cached.headerNames(), exchange.getRequestHeaders()));
+            return entry == null ? null : CachedResponse.decode(entry);
+        }
+        return cached;
+    }
+
+    private void serve(HttpServerExchange exchange, CachedResponse cached, long now) {
+        HeaderMap responseHeaders = exchange.getResponseHeaders();
+        String etag = cached.header(Headers.ETAG);
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst(Headers.IF_NONE_MATCH);
+        boolean modified;
+        if (ifNoneMatch != null) {
+            modified = etag == null || !matchesIfNoneMatch(ifNoneMatch, etag);
+        } else {
+            String lastModified = cached.header(Headers.LAST_MODIFIED);
+            Date date = lastModified == null ? null : DateUtils.parseDate(lastModified);
+            modified = date == null || DateUtils.handleIfModifiedSince(exchange, date);
+        }
+        if (!modified) {
+            notModified.increment();
+            exchange.setResponseCode(StatusCodes.NOT_MODIFIED);
+            for (HttpString name : NOT_MODIFIED_HEADERS) {
+                String value = cached.header(name);
+                if (value != null) {
+                    responseHeaders.put(name, value);
+                }
+            }
+            exchange.endExchange();
+            return;
+        }
+        exchange.setResponseCode(cached.status);
+        for (String[] header : cached.headers) {
+            responseHeaders.add(new HttpString(header[0]), header[1]);
+        }
+        responseHeaders.put(Headers.AGE, Math.max(0, (now - cached.storedAt) / 1000));
+        responseHeaders.put(Headers.CONTENT_LENGTH, cached.body.remaining());
+        if (Methods.HEAD.equals(exchange.getRequestMethod())) {
+            exchange.endExchange();
+            return;
+        }
+        bytesServed.add(cached.body.remaining());
+        exchange.getResponseSender().send(cached.body);
+    }
+
+    private StreamSinkConduit wrapResponse(ConduitFactory<StreamSinkConduit> factory, HttpServerExchange exchange,
+            String key, boolean credentialed) {
+        HeaderMap headers = exchange.getResponseHeaders();
+        long now = System.currentTimeMillis();
+        long freshness = exchange.getResponseCode() == StatusCodes.OK
+                ? freshnessMillis(headers, credentialed, defaultMaxAgeMillis, now) : -1;
+        long contentLength = exchange.getResponseContentLength();
+        if (freshness <= 0 || contentLength > maxCacheableSize) {
+            return factory.create();
+        }
+        TreeSet<String> varyNames = varyNames(headers.get(Headers.VARY));
+        if (varyNames == null) {
+            return factory.create();
+        }
+        List<String[]> storedHeaders = new ArrayList<>();
+        for (HeaderValues values : headers) {
+            if (!isUnstored(values.getHeaderName())) {
+                for (String value : values) {
+                    storedHeaders.add(new String[] {values.getHeaderName().toString(), value});
+                }
+            }
+        }
+        String storeKey = key;
+        ByteBuffer marker = null;
+        if (!varyNames.isEmpty()) {
+            List<String[]> names = new ArrayList<>();
+            for (String name : varyNames) {
+                names.add(new String[] {name, ""});
+            }
+            marker = CachedResponse.encode(VARY, now, now + freshness, 0, names, ByteBuffer.allocate(0));
+            storeKey = variantKey(key, varyNames, exchange.getRequestHeaders());
+        }
+        int initialCapacity = contentLength >= 0 ? (int) contentLength : Math.min(8192, maxCacheableSize);
+        return new CapturingConduit(factory.create(), key, marker, storeKey, now, now + freshness, exchange.getResponseCode(),
+                storedHeaders, (int) contentLength, initialCapacity);
+    }
+
+    /**
+     * @return the key a response is stored under: the scheme and authority keep the responses of an http and an https
+     *         listener, or of two ports, apart
+     */
+    static String cacheKey(String scheme, String hostAndPort, String path, String query) {
+        return scheme + "://" + hostAndPort + path + '?' + query;
+    }
+
+    /**
+     * @return whether the request carries credentials a shared cache must not serve another client the response to
+     */
+    static boolean hasCredentials(HeaderMap requestHeaders) {
+        return requestHeaders.contains(Headers.AUTHORIZATION) || requestHeaders.contains(Headers.COOKIE);
+    }
+
+    /**
+     * @return how long, in milliseconds, a response with these headers stays fresh, or -1 if it must not be stored
+     */
+    static long freshnessMillis(HeaderMap headers, boolean credentialed, long defaultMaxAgeMillis, long now) {
+        String cacheControl = joined(headers.get(Headers.CACHE_CONTROL));
+        if (headers.contains(Headers.SET_COOKIE) || directive(cacheControl, "no-store") != null
+                || directive(cacheControl, "no-cache") != null || directive(cacheControl, "private") != null) {
+            return -1;
+        }
+        String sharedMaxAge = directive(cacheControl, "s-maxage");
+        if (credentialed && sharedMaxAge == null && directive(cacheControl, "public") == null) {
+            return -1;
+        }
+        long seconds = seconds(sharedMaxAge);
+        if (seconds < 0) {
+            seconds = seconds(directive(cacheControl, "max-age"));
+        }
+        if (seconds >= 0) {
+            return seconds * 1000;
+        }
+        String expires = headers.getFirst(Headers.EXPIRES);
+        if (expires != null) {
+            Date date = DateUtils.parseDate(expires);
+            // an unparseable Expires means already expired
+            return date == null ? -1 : date.getTime() - now;
+        }
+        return defaultMaxAgeMillis > 0 ? defaultMaxAgeMillis : -1;
+    }
+
+    /**
+     * @return the value of the Cache-Control directive, {@code ""} if it has none, or {@code null} if it is absent
+     */
+    static String directive(String cacheControl, String name) {
+        if (cacheControl == null) {
+            return null;
+        }
+        for (String token : cacheControl.split(",")) {
+            token = token.trim();
+            int equals = token.indexOf('=');
+            String directive = equals < 0 ? token : token.substring(0, equals).trim();
+            if (directive.equalsIgnoreCase(name)) {
+                if (equals < 0) {
+                    return "";
+                }
+                String value = token.substring(equals + 1).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Returns the header names a response varies on, lower cased, or null for Vary: *
+     */
+    static TreeSet<String> varyNames(HeaderValues vary) {
+        TreeSet<String> names = new TreeSet<>();
+        if (vary != null) {
+            for (String value : vary) {
+                for (String name : value.split(",")) {
+                    name = name.trim().toLowerCase(Locale.ENGLISH);
+                    if (name.equals("*")) {
+                        return null;
+                    }
+                    if (!name.isEmpty()) {
+                        names.add(name);
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    static String variantKey(String key, Iterable<String> varyNames, HeaderMap requestHeaders) {
+        StringBuilder variant = new StringBuilder(key);
+        for (String name : varyNames) {
+            variant.append('\n').append(name).append(':');
+            String value = joined(requestHeaders.get(name));
+            if (value != null) {
+                variant.append(value);
+            }
+        }
+        return variant.toString();
+    }
+
+    private static boolean isNoCache(String cacheControl, HeaderMap requestHeaders) {
+        return directive(cacheControl, "no-cache") != null || "0".equals(directive(cacheControl, "max-age"))
+                || "no-cache".equalsIgnoreCase(requestHeaders.getFirst(Headers.PRAGMA));
+    }
+
+    private static boolean isUnstored(HttpString name) {
+        for (HttpString unstored : UNSTORED_HEADERS) {
+            if (unstored.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long seconds(String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String joined(HeaderValues values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        if (values.size() == 1) {
+            return values.getFirst();
+        }
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(value);
+        }
+        return joined.toString();
+    }
+
+    private static boolean matchesIfNoneMatch(String ifNoneMatch, String etag) {
+        String weak = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(weak)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getCapacity() {
+        return store.getCapacity();
+    }
+
+    @Override
+    public long getSize() {
+        return store.getSize();
+    }
+
+    @Override
+    public int getEntryCount() {
+        return store.getEntryCount();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return store.getEvictionCount();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = this.hits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getNotModifiedCount() {
+        return notModified.sum();
+    }
+
+    @Override
+    public long getStoredCount() {
+        return stored.sum();
+    }
+
+    @Override
+    public long getBytesServed() {
+        return bytesServed.sum();
+    }
+
+    /**
+     * A stored entry: a header block - type, times, status and headers - followed by the body.
+     */
+    static final class CachedResponse {
+        final byte type;
+        final long storedAt;
+        final long expires;
+        final int status;
+        final List<String[]> headers;
+        final ByteBuffer body;
+
+        private CachedResponse(byte type, long storedAt, long expires, int status, List<String[]> headers, ByteBuffer body) {
+            this.type = type;
+            this.storedAt = storedAt;
+            this.expires = expires;
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        String header(HttpString name) {
+            for (String[] header : headers) {
+                if (name.equalToString(header[0])) {
+                    return header[1];
+                }
+            }
+            return null;
+        }
+
+        List<String> headerNames() {
+            List<String> names = new ArrayList<>(headers.size());
+            for (String[] header : headers) {
+                names.add(header[0]);
+            }
+            return names;
+        }
+
+        static ByteBuffer encode(byte type, long storedAt, long expires, int status, List<String[]> headers, ByteBuffer body) {
+            ByteArrayOutputStream block = new ByteArrayOutputStream(256);
+            try (DataOutputStream out = new DataOutputStream(block)) {
+                out.writeByte(type);
+                out.writeLong(storedAt);
+                out.writeLong(expires);
+                out.writeInt(status);
+                out.writeInt(headers.size());
+                for (String[] header : headers) {
+                    writeString(out, header[0]);
+                    writeString(out, header[1]);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            ByteBuffer encoded = ByteBuffer.allocate(4 + block.size() + body.remaining());
+            encoded.putInt(block.size());
+            encoded.put(block.toByteArray());
+            encoded.put(body.duplicate());
+            encoded.flip();
+            return encoded;
+        }
+
+        static CachedResponse decode(ByteBuffer entry) {
+            int blockLength = entry.getInt();
+            int bodyStart = entry.position() + blockLength;
+            byte type = entry.get();
+            long storedAt = entry.getLong();
+            long expires = entry.getLong();
+            int status = entry.getInt();
+            int count = entry.getInt();
+            List<String[]> headers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                headers.add(new String[] {readString(entry), readString(entry)});
+            }
+            entry.position(bodyStart);
+            return new CachedResponse(type, storedAt, expires, status, headers, entry.slice());
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(ByteBuffer entry) {
+            byte[] bytes = new byte[entry.getInt()];
+            entry.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Passes the body through while keeping a copy of it, and stores the response once writes are terminated. The copy
+     * is abandoned as soon as the body outgrows the max-cacheable-size or the write is truncated.
+     */
+    private final class CapturingConduit extends AbstractStreamSinkConduit<StreamSinkConduit> {
+
+        private final String key;
+        private final ByteBuffer varyMarker;
+        private final String storeKey;
+        private final long storedAt;
+        private final long expires;
+        private final int status;
+        private final List<String[]> headers;
+        private final int expectedLength;
+        private ByteBuffer captured;
+        private boolean terminated;
+
+        CapturingConduit(StreamSinkConduit next, String key, ByteBuffer varyMarker, String storeKey, long storedAt,
+                long expires, int status, List<String[]> headers, int expectedLength, int initialCapacity) {
+            super(next);
+            this.key = key;
+            this.varyMarker = varyMarker;
+            this.storeKey = storeKey;
+            this.storedAt = storedAt;
+            this.expires = expires;
+            this.status = status;
+            this.headers = headers;
+            this.expectedLength = expectedLength;
+            this.captured = ByteBuffer.allocate(initialCapacity);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int position = src.position();
+            int written = next.write(src);
+            capture(src, position, written);
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            int[] positions = new int[length];
+            for (int i = 0; i < length; i++) {
+                positions[i] = srcs[offset + i].position();
+            }
+            long written = next.write(srcs, offset, length);
+            for (int i = 0; i < length; i++) {
+                ByteBuffer src = srcs[offset + i];
+                capture(src, positions[i], src.position() - positions[i]);
+            }
+            return written;
+        }
+
+        @Override
+        public int writeFinal(ByteBuffer src) throws IOException {
+            return Conduits.writeFinalBasic(this, src);
+        }
+
+        @Override
+        public long writeFinal(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return Conduits.writeFinalBasic(this, srcs, offset, length);
+        }
+
+        @Override
+        public long transferFrom(FileChannel src, long position, long count) throws IOException {
+            if (captured == null) {
+                return next.transferFrom(src, position, count);
+            }
+            return src.transferTo(position, count, new ConduitWritableByteChannel(this));
+        }
+
+        @Override
+        public long transferFrom(StreamSourceChannel source, long count, ByteBuffer throughBuffer) throws IOException {
+            return IoUtils.transfer(source, count, throughBuffer, new ConduitWritableByteChannel(this));
+        }
+
+        @Override
+        public void truncateWrites() throws IOException {
+            captured = null;
+            next.truncateWrites();
+        }
+
+        @Override
+        public void terminateWrites() throws IOException {
+            next.terminateWrites();
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            if (captured == null) {
+                return;
+            }
+            captured.flip();
+            if (expectedLength >= 0 && captured.remaining() != expectedLength) {
+                UndertowLogger.ROOT_LOGGER.debugf("Not caching %s, its body did not match its Content-Length", key);
+            } else if (store.put(storeKey, CachedResponse.encode(RESPONSE, storedAt, expires, status, headers, captured))) {
+                if (varyMarker != null) {
+                    store.put(key, varyMarker);
+                }
+                stored.increment();
+            }
+            captured = null;
+        }
+
+        private void capture(ByteBuffer src, int position, int length) {
+            if (captured == null || length <= 0) {
+                return;
+            }
+            if (length > captured.remaining()) {
+                int required = captured.position() + length;
+                if (required > maxCacheableSize) {
+                    captured = null;
+                    return;
+                }
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(maxCacheableSize, Math.max(required, captured.capacity() * 2)));
+                captured.flip();
+                larger.put(captured);
+                captured = larger;
+            }
+            ByteBuffer written = src.duplicate();
+            written.limit(position + length).position(position);
+            captured.put(written);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.wildfly.extension.undertow.filters;
+
+/**
+ * Runtime state of a response-cache filter-ref, registered through
+ * {@link org.wildfly.extension.undertow.UndertowMXBeans} with type {@code response-cache}.
+ */
+public interface ResponseCacheMXBean {
+
+    long getCapacity();
+
+    long getSize();
+
+    int getEntryCount();
+
+    long getEvictionCount();
+
+    /**
+     * @return requests answered from the cache, including those answered with a 304
+     */
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRatio();
+
+    long getNotModifiedCount();
+
+    long getStoredCount();
+
+    /**
+     * @return body bytes written from the cache, 304s and HEAD requests count for nothing
+     */
+    long getBytesServed();
+}
@@ -0,0 +1,89 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.undertow.server.AbstractServerConnection;
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+import org.xnio.StreamConnection;
+import org.xnio.conduits.ConduitStreamSinkChannel;
+
+/**
+ * Installs a {@link CoalescingStreamSinkConduit} on connections upgraded to websocket. It is added to deployments by
+ * {@code io.undertow.servlet.extension.WebSocketCoalescingServletExtension} when the servlet-container websockets
+ * setting has a coalescing window.
+ * <p>
+ * The handshake response ends the exchange before Undertow hands the connection to the websocket upgrade listener, so
+ * a completion listener can swap the connection's sink conduit before the websocket channel writes its first frame.
+ * The metrics are kept per request path, up to {@link #MAX_ENDPOINTS} paths; any further paths are counted together
+ * under {@code other}.
+ */
+public final class WebSocketCoalescingHandler implements HttpHandler {
+
+    static final int MAX_ENDPOINTS = 64;
+
+    private static final String OTHER = "other";
+
+    private final HttpHandler next;
+    private final int maxBatchSize;
+    private final long windowMicros;
+    private final ConcurrentMap<String, WebSocketEndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+    public WebSocketCoalescingHandler(HttpHandler next, int maxBatchSize, long windowMicros) {
+        this.next = next;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMicros = windowMicros;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        String upgrade = exchange.getRequestHeaders().getFirst(Headers.UPGRADE);
+        if (upgrade != null && upgrade.equalsIgnoreCase("websocket")) {
+            final String path = exchange.getRequestPath();
+            exchange.addExchangeCompleteListener(new ExchangeCompletionListener() {
+                @Override
+                public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+                    try {
+                        if (exchange.getResponseCode() == StatusCodes.SWITCHING_PROTOCOLS) {
+                            coalesce(exchange, path);
+                        }
+                    } finally {
+                        nextListener.proceed();
+                    }
+                }
+            });
+        }
+        next.handleRequest(exchange);
+    }
+
+    private void coalesce(HttpServerExchange exchange, String path) {
+        if (!(exchange.getConnection() instanceof AbstractServerConnection)) {
+            return;
+        }
+        StreamConnection connection = ((AbstractServerConnection) exchange.getConnection()).getChannel();
+        WebSocketEndpointMetrics metrics = metrics(path);
+        metrics.connection();
+        ConduitStreamSinkChannel sink = connection.getSinkChannel();
+        sink.setConduit(new CoalescingStreamSinkConduit(sink.getConduit(), maxBatchSize, windowMicros, metrics));
+    }
+
+    private WebSocketEndpointMetrics metrics(String path) {
+        WebSocketEndpointMetrics metrics = endpoints.get(path);
+        if (metrics != null) {
+            return metrics;
+        }
+        String name = endpoints.size() < MAX_ENDPOINTS ? path : OTHER;
+        metrics = new WebSocketEndpointMetrics();
+        WebSocketEndpointMetrics existing = endpoints.putIfAbsent(name, metrics);
+        if (existing != null) {
+            return existing;
+        }
+        UndertowMXBeans.register("websocket-endpoint", name, metrics);
+        return metrics;
+    }
+}
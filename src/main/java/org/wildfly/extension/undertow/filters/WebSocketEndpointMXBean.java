@@ -0,0 +1,27 @@
+package org.wildfly.extension.undertow.filters;
+
+/**
+ * Outgoing traffic of the websocket connections upgraded on one request path, registered as
+ * {@code org.wildfly.extension.undertow:type=websocket-endpoint,name=<path>}.
+ */
+public interface WebSocketEndpointMXBean {
+
+    long getConnections();
+
+    /**
+     * Frame writes made by the websocket channels - a frame is usually one gathering write of its header and payload.
+     */
+    long getFrameWrites();
+
+    long getFrameBytes();
+
+    /**
+     * Writes made to the connections, each carrying one or more coalesced frame writes.
+     */
+    long getConnectionWrites();
+
+    /**
+     * Frame writes per connection write; 1 means no coalescing happened.
+     */
+    double getCoalescingRatio();
+}
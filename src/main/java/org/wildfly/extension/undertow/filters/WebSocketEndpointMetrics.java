@@ -0,0 +1,53 @@
+package org.wildfly.extension.undertow.filters;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters behind a {@link WebSocketEndpointMXBean}, shared by all the connections of an endpoint.
+ */
+final class WebSocketEndpointMetrics implements WebSocketEndpointMXBean {
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder frameWrites = new LongAdder();
+    private final LongAdder frameBytes = new LongAdder();
+    private final LongAdder connectionWrites = new LongAdder();
+
+    void connection() {
+        connections.increment();
+    }
+
+    void frameWrite(long bytes) {
+        frameWrites.increment();
+        frameBytes.add(bytes);
+    }
+
+    void connectionWrite() {
+        connectionWrites.increment();
+    }
+
+    @Override
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    @Override
+    public long getFrameWrites() {
+        return frameWrites.sum();
+    }
+
+    @Override
+    public long getFrameBytes() {
+        return frameBytes.sum();
+    }
+
+    @Override
+    public long getConnectionWrites() {
+        return connectionWrites.sum();
+    }
+
+    @Override
+    public double getCoalescingRatio() {
+        long writes = connectionWrites.sum();
+        return writes == 0 ? 1 : (double) frameWrites.sum() / writes;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+/*
+ * Modified by IDBS to add the MAPPED_CACHE_SIZE and MAPPED_MIN_FILE_SIZE attributes, which serve large files through
+ * sendfile or a memory-mapped cache, see MappedFileHandler, and the BUFFER_CACHE attribute, which serves smaller files
+ * from the off-heap SlabBufferCache of a buffer-cache with an eviction-policy, and to install the handler as a
+ * FileHandlerService, which publishes the MXBean of the memory-mapped cache under the handler name while the handler
+ * service is up.
+ */
+
+package org.wildfly.extension.undertow.handlers;
+
+import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.OP_ADDR;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.resource.FileResourceManager;
+import io.undertow.server.handlers.resource.ResourceHandler;
+import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.ServiceRemoveStepHandler;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.LongRangeValidator;
+import org.jboss.as.controller.operations.validation.StringLengthValidator;
+import org.jboss.as.controller.registry.ManagementResourceRegistration;
+import org.jboss.as.controller.registry.OperationEntry;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.wildfly.extension.undertow.Constants;
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+import org.wildfly.extension.undertow.UndertowService;
+
+/**
+ * @author Tomaz Cerar (c) 2013 Red Hat Inc.
+ */
+public class FileHandler extends Handler {
+
+    public static final FileHandler INSTANCE = new FileHandler();
+
+    /*<file name="welcome-content" path="${jboss.home.dir}/welcome-content" directory-listing="true"/>*/
+    public static final AttributeDefinition PATH = new SimpleAttributeDefinitionBuilder(Constants.PATH, ModelType.STRING)
+            .setAllowNull(false)
+            .setAllowExpression(true)
+            .build();
+    public static final AttributeDefinition CACHE_BUFFER_SIZE = new SimpleAttributeDefinitionBuilder("cache-buffer-size", ModelType.LONG)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(1024))
+            .setAllowExpression(true)
+            .build();
+    public static final AttributeDefinition CACHE_BUFFERS = new SimpleAttributeDefinitionBuilder("cache-buffers", ModelType.LONG)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(1024))
+            .setAllowExpression(true)
+            .build();
+    public static final AttributeDefinition DIRECTORY_LISTING = new SimpleAttributeDefinitionBuilder(Constants.DIRECTORY_LISTING, ModelType.BOOLEAN)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(false))
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * Total bytes of memory-mapped files kept for HTTPS responses, 0 leaves files to the ResourceHandler alone
+     */
+    public static final AttributeDefinition MAPPED_CACHE_SIZE = new SimpleAttributeDefinitionBuilder("mapped-cache-size", ModelType.LONG)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(0L))
+            .setValidator(new LongRangeValidator(0, Long.MAX_VALUE, true, true))
+            .setAllowExpression(true)
+            .build();
+    public static final AttributeDefinition MAPPED_MIN_FILE_SIZE = new SimpleAttributeDefinitionBuilder("mapped-min-file-size", ModelType.LONG)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(64 * 1024L))
+            .setValidator(new LongRangeValidator(0, Long.MAX_VALUE, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    /*
+     * The buffer-cache whose off-heap cache serves files smaller than mapped-min-file-size, left to the ResourceHandler
+     * when undefined
+     */
+    public static final AttributeDefinition BUFFER_CACHE = new SimpleAttributeDefinitionBuilder(Constants.BUFFER_CACHE, ModelType.STRING)
+            .setAllowNull(true)
+            .setValidator(new StringLengthValidator(1, true, true))
+            .setAllowExpression(true)
+            .build();
+
+    private FileHandler() {
+        super(Constants.FILE);
+    }
+
+    @Override
+    public Collection<AttributeDefinition> getAttributes() {
+        return Arrays.asList(PATH, CACHE_BUFFER_SIZE, CACHE_BUFFERS, DIRECTORY_LISTING, MAPPED_CACHE_SIZE, MAPPED_MIN_FILE_SIZE,
+                BUFFER_CACHE);
+    }
+
+    @Override
+    public void registerOperations(ManagementResourceRegistration resourceRegistration) {
+        FileHandlerAdd add = new FileHandlerAdd();
+        registerAddOperation(resourceRegistration, add, OperationEntry.Flag.RESTART_RESOURCE_SERVICES);
+        registerRemoveOperation(resourceRegistration, new ServiceRemoveStepHandler(UndertowService.HANDLER, add), OperationEntry.Flag.RESTART_RESOURCE_SERVICES);
+    }
+
+    @Override
+    public HttpHandler createHandler(final OperationContext context, ModelNode model) throws OperationFailedException {
+        String path = PATH.resolveModelAttribute(context, model).asString();
+        boolean directoryListing = DIRECTORY_LISTING.resolveModelAttribute(context, model).asBoolean();
+        UndertowLogger.ROOT_LOGGER.infof("Creating file handler for path %s", path);
+        FileResourceManager resourceManager = new FileResourceManager(new File(path), 1024 * 1024);
+        ResourceHandler handler = new ResourceHandler(resourceManager);
+        handler.setDirectoryListingEnabled(directoryListing);
+
+        long mappedCacheSize = MAPPED_CACHE_SIZE.resolveModelAttribute(context, model).asLong();
+        ModelNode bufferCache = BUFFER_CACHE.resolveModelAttribute(context, model);
+        if (mappedCacheSize == 0 && !bufferCache.isDefined()) {
+            return handler;
+        }
+        long mappedMinFileSize = MAPPED_MIN_FILE_SIZE.resolveModelAttribute(context, model).asLong();
+        MappedFileCache cache = null;
+        if (mappedCacheSize > 0) {
+            cache = new MappedFileCache(path, mappedCacheSize);
+        }
+        SlabBufferCache slabCache = null;
+        if (bufferCache.isDefined()) {
+            slabCache = SlabBufferCache.forBufferCache(bufferCache.asString());
+            if (slabCache == null) {
+                UndertowLogger.ROOT_LOGGER.warnf("Buffer cache %s of the file handler for path %s has no eviction-policy, small files are not cached off-heap",
+                        bufferCache.asString(), path);
+            }
+        }
+        return new MappedFileHandler(handler, resourceManager, cache, slabCache, mappedMinFileSize);
+    }
+
+    private final class FileHandlerAdd extends AbstractAddStepHandler {
+
+        private FileHandlerAdd() {
+            super(getAttributes());
+        }
+
+        @Override
+        protected void performRuntime(OperationContext context, ModelNode operation, ModelNode model, ServiceVerificationHandler verificationHandler, List<ServiceController<?>> newControllers) throws OperationFailedException {
+            final String name = PathAddress.pathAddress(operation.get(OP_ADDR)).getLastElement().getValue();
+            final FileHandlerService service = new FileHandlerService(name, createHandler(context, model));
+            final ServiceController<HttpHandler> controller = context.getServiceTarget().addService(UndertowService.HANDLER.append(name), service)
+                    .setInitialMode(ServiceController.Mode.ON_DEMAND)
+                    .install();
+            if (newControllers != null) {
+                newControllers.add(controller);
+            }
+        }
+    }
+
+    /**
+     * The file handler; the {@link MappedFileCache} it has, if any, is published as an MXBean with type
+     * {@code file-handler-cache} named after the handler resource while the service is up.
+     */
+    private static final class FileHandlerService implements Service<HttpHandler> {
+
+        private static final String MXBEAN_TYPE = "file-handler-cache";
+
+        private final String name;
+        private final HttpHandler handler;
+        private final MappedFileCache cache;
+
+        private FileHandlerService(String name, HttpHandler handler) {
+            this.name = name;
+            this.handler = handler;
+            this.cache = handler instanceof MappedFileHandler ? ((MappedFileHandler) handler).getCache() : null;
+        }
+
+        @Override
+        public void start(StartContext context) throws StartException {
+            if (cache != null) {
+                UndertowMXBeans.register(MXBEAN_TYPE, name, cache);
+            }
+        }
+
+        @Override
+        public void stop(StopContext context) {
+            if (cache != null) {
+                UndertowMXBeans.unregister(MXBEAN_TYPE, name);
+            }
+        }
+
+        @Override
+        public HttpHandler getValue() throws IllegalStateException, IllegalArgumentException {
+            return handler;
+        }
+    }
+}
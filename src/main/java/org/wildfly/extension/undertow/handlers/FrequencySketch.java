@@ -0,0 +1,77 @@
+package org.wildfly.extension.undertow.handlers;
+
+/**
+ * A count-min sketch of how often keys were requested recently, with 4 bit counters and periodic halving so that old
+ * popularity fades, as used by TinyLFU.
+ * <p>
+ * Updates are not synchronized: an increment lost to a race only makes an estimate slightly low, which is an
+ * acceptable price for keeping the cache hit path free of locks.
+ */
+final class FrequencySketch {
+
+    private static final int MAX_COUNT = 15;
+    // files requested but not cached far outnumber the cached ones, so the table has room for many more keys
+    private static final int COUNTERS_PER_ENTRY = 16;
+    private static final int MAX_COUNTERS = 1 << 22;
+    private static final int[] SEEDS = {0x97cb3127, 0xb3c5a4d3, 0x9e3779b9, 0x7f4a7c15};
+
+    private final int[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param expectedEntries roughly how many entries the cache holds; counters are halved after ten times as many
+     *                        increments
+     */
+    FrequencySketch(int expectedEntries) {
+        int counters = (int) Math.min(MAX_COUNTERS, Math.max(64L, (long) expectedEntries * COUNTERS_PER_ENTRY));
+        int size = Integer.highestOneBit(counters - 1) << 1;
+        this.table = new int[size];
+        this.mask = size - 1;
+        this.sampleSize = (int) Math.min(Integer.MAX_VALUE, Math.max(160L, expectedEntries * 10L));
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int seed : SEEDS) {
+            frequency = Math.min(frequency, table[index(hash, seed)]);
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int seed : SEEDS) {
+            int index = index(hash, seed);
+            if (table[index] < MAX_COUNT) {
+                table[index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        additions = 0;
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+    }
+
+    private int index(int hash, int seed) {
+        int h = hash * seed;
+        h ^= h >>> 17;
+        return h & mask;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        return hash ^ (hash >>> 16);
+    }
+}
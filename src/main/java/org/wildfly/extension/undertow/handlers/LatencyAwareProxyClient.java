@@ -0,0 +1,461 @@
+package org.wildfly.extension.undertow.handlers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.Cookie;
+import io.undertow.server.handlers.proxy.ExclusivityChecker;
+import io.undertow.server.handlers.proxy.LoadBalancingProxyClient;
+import io.undertow.server.handlers.proxy.ProxyCallback;
+import io.undertow.server.handlers.proxy.ProxyConnection;
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.xnio.ssl.JsseXnioSsl;
+import org.xnio.ssl.XnioSsl;
+
+/**
+ * A {@link LoadBalancingProxyClient} that chooses between its hosts by observed latency and can take hosts that fail an
+ * active health check out of rotation.
+ * <p>
+ * Each host gets its own single-host {@link LoadBalancingProxyClient}, which keeps its connection pool, problem server
+ * handling and session affinity exactly as before; this class only decides which of them serves a request:
+ * <ul>
+ * <li>a request whose session cookie carries a host's route goes to that host while it is healthy</li>
+ * <li>with the {@link Policy#LEAST_LATENCY least-latency} policy two healthy hosts are picked at random and the one with
+ * the lower cost - its peak EWMA latency times its requests in progress plus one - is used ("power of two choices"),
+ * with the {@link Policy#ROUND_ROBIN round-robin} policy the healthy hosts are taken in turn</li>
+ * <li>when no host is healthy all of them are used, a failing health check is not allowed to take the whole proxy
+ * down</li>
+ * </ul>
+ * The latency of a host is the time from getting a connection to the end of the exchange, a 5xx counting as at least
+ * {@link #FAILURE_PENALTY_MILLIS}. Its EWMA jumps straight up with a slow response, moves down a tenth of the way with
+ * each faster one, and decays with a time constant of {@link #DECAY_MILLIS} while the host is idle, so that a host that
+ * was slow is tried again once the memory of it fades.
+ * <p>
+ * Health checks GET the configured path, below the path of the host, on each http/https host every interval; two
+ * failures in a row - no response, or a status outside 200-399 - mark the host unhealthy and a single success brings it
+ * back. An https host is checked with the SSL context the proxy connects to it with, and not checked when it was added
+ * without one. The checks run on a thread of the client's own from {@link #start()} to {@link #stop()}.
+ */
+public class LatencyAwareProxyClient extends LoadBalancingProxyClient {
+
+    public enum Policy {
+        ROUND_ROBIN, LEAST_LATENCY;
+
+        public static Policy forName(String name) {
+            return valueOf(name.toUpperCase(Locale.ENGLISH).replace('-', '_'));
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+        }
+    }
+
+    static final long DECAY_MILLIS = 10000;
+
+    static final long FAILURE_PENALTY_MILLIS = 1000;
+
+    private static final double SAMPLE_WEIGHT = 0.1;
+
+    private static final int UNHEALTHY_AFTER_FAILURES = 2;
+
+    private static final AtomicInteger HEALTH_CHECK_THREADS = new AtomicInteger();
+
+    private final ExclusivityChecker exclusivityChecker;
+    private final Policy policy;
+    private final String healthCheckPath;
+    private final int healthCheckInterval;
+    // null without health checks, or while the client is stopped; guarded by this
+    private ScheduledExecutorService healthChecks;
+    private final List<String> sessionCookieNames = new CopyOnWriteArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile int connectionsPerThread = 10;
+    private volatile int problemServerRetry = 10;
+    private volatile Backend[] backends = new Backend[0];
+
+    /**
+     * @param healthCheckPath     the path to check on each host, or {@code null} for no health checks
+     * @param healthCheckInterval milliseconds between two checks of a host
+     */
+    public LatencyAwareProxyClient(ExclusivityChecker exclusivityChecker, Policy policy, String healthCheckPath, int healthCheckInterval) {
+        super(exclusivityChecker);
+        this.exclusivityChecker = exclusivityChecker;
+        this.policy = policy;
+        this.healthCheckPath = healthCheckPath;
+        this.healthCheckInterval = healthCheckInterval;
+        this.sessionCookieNames.add("JSESSIONID");
+    }
+
+    /**
+     * Starts the health checks of the hosts, and of the hosts added from now on, if the client has a health check path.
+     */
+    public synchronized void start() {
+        if (healthCheckPath == null || healthChecks != null) {
+            return;
+        }
+        healthChecks = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "undertow-proxy-health-check-" + HEALTH_CHECK_THREADS.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (Backend backend : backends) {
+            scheduleHealthCheck(backend);
+        }
+    }
+
+    /**
+     * Stops the health checks of the hosts and their thread. The client still forwards requests, by the latency of the
+     * hosts and their last known health, and can be started again.
+     */
+    public synchronized void stop() {
+        if (healthChecks != null) {
+            healthChecks.shutdownNow();
+            healthChecks = null;
+        }
+    }
+
+    @Override
+    public LoadBalancingProxyClient setConnectionsPerThread(int connectionsPerThread) {
+        this.connectionsPerThread = connectionsPerThread;
+        return super.setConnectionsPerThread(connectionsPerThread);
+    }
+
+    @Override
+    public LoadBalancingProxyClient setProblemServerRetry(int problemServerRetry) {
+        this.problemServerRetry = problemServerRetry;
+        return super.setProblemServerRetry(problemServerRetry);
+    }
+
+    @Override
+    public LoadBalancingProxyClient addSessionCookieName(String sessionCookieName) {
+        if (!sessionCookieNames.contains(sessionCookieName)) {
+            sessionCookieNames.add(sessionCookieName);
+        }
+        return super.addSessionCookieName(sessionCookieName);
+    }
+
+    @Override
+    public LoadBalancingProxyClient addHost(URI host) {
+        return addHost(host, null, null);
+    }
+
+    @Override
+    public LoadBalancingProxyClient addHost(URI host, String jvmRoute) {
+        return addHost(host, jvmRoute, null);
+    }
+
+    @Override
+    public synchronized LoadBalancingProxyClient addHost(URI host, String jvmRoute, XnioSsl ssl) {
+        LoadBalancingProxyClient client = new LoadBalancingProxyClient(exclusivityChecker)
+                .setConnectionsPerThread(connectionsPerThread)
+                .setProblemServerRetry(problemServerRetry);
+        for (String name : sessionCookieNames) {
+            client.addSessionCookieName(name);
+        }
+        client.addHost(host, jvmRoute, ssl);
+
+        Backend backend = new Backend(host, jvmRoute, client, sslContext(ssl));
+        Backend[] current = Arrays.copyOf(backends, backends.length + 1);
+        current[current.length - 1] = backend;
+        backends = current;
+        scheduleHealthCheck(backend);
+        return this;
+    }
+
+    @Override
+    public synchronized LoadBalancingProxyClient removeHost(URI uri) {
+        List<Backend> remaining = new ArrayList<>();
+        for (Backend backend : backends) {
+            if (backend.uri.equals(uri)) {
+                backend.stopHealthCheck();
+            } else {
+                remaining.add(backend);
+            }
+        }
+        backends = remaining.toArray(new Backend[remaining.size()]);
+        return super.removeHost(uri);
+    }
+
+    @Override
+    public ProxyTarget findTarget(HttpServerExchange exchange) {
+        Backend[] current = backends;
+        if (current.length == 0) {
+            // hosts added through an addHost variant not overridden here
+            return super.findTarget(exchange);
+        }
+        Backend backend = stickyBackend(exchange, current);
+        if (backend == null) {
+            backend = select(current);
+        }
+        ProxyTarget target = backend.client.findTarget(exchange);
+        if (target == null) {
+            // that host's client considers it a problem server, fall back to any other that will take the request
+            for (Backend other : current) {
+                if (other != backend && (target = other.client.findTarget(exchange)) != null) {
+                    backend = other;
+                    break;
+                }
+            }
+        }
+        return target == null ? null : new Target(backend, target);
+    }
+
+    @Override
+    public void getConnection(ProxyTarget target, HttpServerExchange exchange, ProxyCallback<ProxyConnection> callback, long timeout, TimeUnit timeUnit) {
+        if (!(target instanceof Target)) {
+            super.getConnection(target, exchange, callback, timeout, timeUnit);
+            return;
+        }
+        final Backend backend = ((Target) target).backend;
+        final long start = System.nanoTime();
+        backend.inFlight.incrementAndGet();
+        exchange.addExchangeCompleteListener(new ExchangeCompletionListener() {
+            @Override
+            public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+                try {
+                    backend.inFlight.decrementAndGet();
+                    long latency = System.nanoTime() - start;
+                    if (exchange.getResponseCode() >= 500) {
+                        latency = Math.max(latency, TimeUnit.MILLISECONDS.toNanos(FAILURE_PENALTY_MILLIS));
+                    }
+                    backend.record(latency, System.nanoTime());
+                } finally {
+                    nextListener.proceed();
+                }
+            }
+        });
+        backend.client.getConnection(((Target) target).delegate, exchange, callback, timeout, timeUnit);
+    }
+
+    private Backend stickyBackend(HttpServerExchange exchange, Backend[] current) {
+        Map<String, Cookie> cookies = exchange.getRequestCookies();
+        for (String name : sessionCookieNames) {
+            Cookie cookie = cookies.get(name);
+            if (cookie == null) {
+                continue;
+            }
+            String value = cookie.getValue();
+            int dot = value.indexOf('.');
+            if (dot < 0) {
+                continue;
+            }
+            String route = value.substring(dot + 1);
+            for (Backend backend : current) {
+                if (route.equals(backend.jvmRoute) && backend.healthy) {
+                    return backend;
+                }
+            }
+        }
+        return null;
+    }
+
+    Backend select(Backend[] current) {
+        List<Backend> candidates = new ArrayList<>(current.length);
+        for (Backend backend : current) {
+            if (backend.healthy) {
+                candidates.add(backend);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates.addAll(Arrays.asList(current));
+        }
+        int size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+        if (policy == Policy.ROUND_ROBIN) {
+            return candidates.get((next.getAndIncrement() & Integer.MAX_VALUE) % size);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        long now = System.nanoTime();
+        Backend a = candidates.get(first);
+        Backend b = candidates.get(second);
+        return a.cost(now) <= b.cost(now) ? a : b;
+    }
+
+    Backend[] getBackends() {
+        return backends;
+    }
+
+    /**
+     * @return the SSL context behind the {@link XnioSsl} the proxy connects to a host with, or {@code null}
+     */
+    static SSLContext sslContext(XnioSsl ssl) {
+        if (ssl instanceof JsseXnioSsl) {
+            return ((JsseXnioSsl) ssl).getSslContext();
+        }
+        return null;
+    }
+
+    // called holding the lock of the client
+    private void scheduleHealthCheck(Backend backend) {
+        if (healthChecks == null) {
+            return;
+        }
+        String scheme = backend.uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            UndertowLogger.ROOT_LOGGER.debugf("Not health checking %s, only http and https hosts can be checked", backend.uri);
+            return;
+        }
+        if ("https".equalsIgnoreCase(scheme) && backend.sslContext == null) {
+            UndertowLogger.ROOT_LOGGER.debugf("Not health checking %s, it was added without an SSL context to check it with", backend.uri);
+            return;
+        }
+        URL url;
+        try {
+            url = new URI(scheme, null, backend.uri.getHost(), backend.uri.getPort(),
+                    healthCheckPath(backend.uri.getPath(), healthCheckPath), null, null).toURL();
+        } catch (URISyntaxException | IOException e) {
+            UndertowLogger.ROOT_LOGGER.warnf(e, "Cannot health check %s with path %s", backend.uri, healthCheckPath);
+            return;
+        }
+        backend.healthCheck = healthChecks.scheduleWithFixedDelay(new HealthCheck(backend, url, healthCheckInterval),
+                ThreadLocalRandom.current().nextInt(healthCheckInterval), healthCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the health check path below the path of a host, which is where the proxy sends requests for the host
+     */
+    static String healthCheckPath(String hostPath, String healthCheckPath) {
+        String base = hostPath == null ? "" : hostPath;
+        if (base.endsWith("/")) {
+            base = base.substring(0, base.length() - 1);
+        }
+        return healthCheckPath.startsWith("/") ? base + healthCheckPath : base + '/' + healthCheckPath;
+    }
+
+    private static final class Target implements ProxyTarget {
+        final Backend backend;
+        final ProxyTarget delegate;
+
+        Target(Backend backend, ProxyTarget delegate) {
+            this.backend = backend;
+            this.delegate = delegate;
+        }
+    }
+
+    static final class Backend {
+        final URI uri;
+        final String jvmRoute;
+        final LoadBalancingProxyClient client;
+        final SSLContext sslContext;
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile boolean healthy = true;
+        volatile ScheduledFuture<?> healthCheck;
+        int consecutiveFailures;
+
+        // guarded by this
+        private double ewmaNanos;
+        private long lastUpdate = System.nanoTime();
+
+        Backend(URI uri, String jvmRoute, LoadBalancingProxyClient client, SSLContext sslContext) {
+            this.uri = uri;
+            this.jvmRoute = jvmRoute;
+            this.client = client;
+            this.sslContext = sslContext;
+        }
+
+        synchronized void record(long latencyNanos, long now) {
+            double decayed = decayed(now);
+            ewmaNanos = latencyNanos > decayed ? latencyNanos : decayed * (1 - SAMPLE_WEIGHT) + latencyNanos * SAMPLE_WEIGHT;
+            lastUpdate = now;
+        }
+
+        synchronized double cost(long now) {
+            return decayed(now) * (inFlight.get() + 1);
+        }
+
+        private double decayed(long now) {
+            return ewmaNanos * Math.exp(-(double) Math.max(0, now - lastUpdate) / TimeUnit.MILLISECONDS.toNanos(DECAY_MILLIS));
+        }
+
+        void stopHealthCheck() {
+            ScheduledFuture<?> check = healthCheck;
+            if (check != null) {
+                check.cancel(false);
+            }
+        }
+    }
+
+    private static final class HealthCheck implements Runnable {
+        private final Backend backend;
+        private final URL url;
+        private final SSLSocketFactory socketFactory;
+        private final int timeout;
+
+        HealthCheck(Backend backend, URL url, int timeout) {
+            this.backend = backend;
+            this.url = url;
+            this.socketFactory = backend.sslContext == null ? null : backend.sslContext.getSocketFactory();
+            this.timeout = timeout;
+        }
+
+        @Override
+        public void run() {
+            int status = -1;
+            try {
+                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                if (connection instanceof HttpsURLConnection) {
+                    ((HttpsURLConnection) connection).setSSLSocketFactory(socketFactory);
+                }
+                connection.setConnectTimeout(timeout);
+                connection.setReadTimeout(timeout);
+                connection.setInstanceFollowRedirects(false);
+                connection.setUseCaches(false);
+                status = connection.getResponseCode();
+                try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                    if (in != null) {
+                        byte[] discard = new byte[1024];
+                        while (in.read(discard) >= 0) {
+                            // drain so the connection can be kept alive
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                UndertowLogger.ROOT_LOGGER.tracef(e, "Health check of %s failed", url);
+            }
+            if (status >= 200 && status < 400) {
+                backend.consecutiveFailures = 0;
+                if (!backend.healthy) {
+                    UndertowLogger.ROOT_LOGGER.infof("Reverse proxy host %s passed its health check and is back in rotation", backend.uri);
+                    backend.healthy = true;
+                }
+            } else if (++backend.consecutiveFailures >= UNHEALTHY_AFTER_FAILURES && backend.healthy) {
+                UndertowLogger.ROOT_LOGGER.warnf("Reverse proxy host %s failed %d health checks (last status %d), taking it out of rotation",
+                        backend.uri, backend.consecutiveFailures, status);
+                backend.healthy = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.wildfly.extension.undertow.handlers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.wildfly.extension.undertow.ResidentEntries;
+
+/**
+ * Read-only memory mappings of the files served by a file handler, capped at a total number of mapped bytes.
+ * <p>
+ * A mapping is reused only while the file keeps the size and modification time it had when it was mapped; the caller
+ * passes freshly read attributes on every lookup. Hits take no lock; mapping, invalidating and evicting are
+ * serialised. When the cap is exceeded the least recently used of a sample of the {@link ResidentEntries resident
+ * mappings} are dropped. They are not unmapped explicitly - responses still being written may hold a view of them -
+ * so the address space is released when the buffers are garbage collected.
+ */
+final class MappedFileCache implements MappedFileCacheMXBean {
+
+    private final String path;
+    private final long capacity;
+    private final ConcurrentHashMap<Path, Mapping> mappings = new ConcurrentHashMap<>();
+    // written under the lock on this, read without it
+    private volatile long bytesMapped;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder transfers = new LongAdder();
+
+    // guarded by this
+    private final ResidentEntries<Mapping> resident = new ResidentEntries<>();
+
+    private static final Comparator<Mapping> LEAST_RECENTLY_USED = new Comparator<Mapping>() {
+        @Override
+        public int compare(Mapping a, Mapping b) {
+            return Long.compare(a.lastAccess, b.lastAccess);
+        }
+    };
+
+    MappedFileCache(String path, long capacity) {
+        this.path = path;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return a view of the mapped file, or {@code null} if the file is larger than the whole cache
+     */
+    ByteBuffer get(Path file, BasicFileAttributes attributes) throws IOException {
+        final long size = attributes.size();
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        Mapping mapping = mappings.get(file);
+        if (mapping != null) {
+            if (mapping.size == size && mapping.lastModified == lastModified) {
+                hits.increment();
+                mapping.lastAccess = System.nanoTime();
+                return mapping.buffer.duplicate();
+            }
+            if (remove(mapping)) {
+                invalidations.increment();
+            }
+        }
+        misses.increment();
+        if (size > capacity || size > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        Mapping created = new Mapping(file, buffer, size, lastModified);
+        synchronized (this) {
+            Mapping previous = mappings.put(file, created);
+            if (previous != null) {
+                resident.remove(previous);
+                bytesMapped -= previous.size;
+            }
+            bytesMapped += size;
+            while (bytesMapped > capacity) {
+                Mapping victim = resident.sample(LEAST_RECENTLY_USED);
+                if (victim == null) {
+                    break;
+                }
+                remove(victim);
+                evictions.increment();
+            }
+            resident.add(created);
+        }
+        return buffer.duplicate();
+    }
+
+    void transferred() {
+        transfers.increment();
+    }
+
+    private synchronized boolean remove(Mapping mapping) {
+        if (!mappings.remove(mapping.file, mapping)) {
+            return false;
+        }
+        resident.remove(mapping);
+        bytesMapped -= mapping.size;
+        return true;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getBytesMapped() {
+        return bytesMapped;
+    }
+
+    @Override
+    public int getMappedFileCount() {
+        return mappings.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public long getTransferCount() {
+        return transfers.sum();
+    }
+
+    private static final class Mapping extends ResidentEntries.Entry {
+        final Path file;
+        final ByteBuffer buffer;
+        final long size;
+        final long lastModified;
+        volatile long lastAccess = System.nanoTime();
+
+        Mapping(Path file, ByteBuffer buffer, long size, long lastModified) {
+            this.file = file;
+            this.buffer = buffer;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
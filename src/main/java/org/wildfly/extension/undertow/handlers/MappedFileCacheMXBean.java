@@ -0,0 +1,33 @@
+package org.wildfly.extension.undertow.handlers;
+
+/**
+ * Metrics of the memory-mapped cache of a file handler, registered through
+ * {@link org.wildfly.extension.undertow.UndertowMXBeans} with type {@code file-handler-cache} named after the handler
+ * resource.
+ */
+public interface MappedFileCacheMXBean {
+
+    String getPath();
+
+    long getCapacity();
+
+    long getBytesMapped();
+
+    int getMappedFileCount();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+
+    /**
+     * @return the number of mappings dropped because the file changed size or modification time
+     */
+    long getInvalidationCount();
+
+    /**
+     * @return the number of plain HTTP responses sent with {@code FileChannel.transferTo}
+     */
+    long getTransferCount();
+}
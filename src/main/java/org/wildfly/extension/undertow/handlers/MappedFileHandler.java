@@ -0,0 +1,220 @@
+package org.wildfly.extension.undertow.handlers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.resource.FileResource;
+import io.undertow.server.handlers.resource.Resource;
+import io.undertow.server.handlers.resource.ResourceManager;
+import io.undertow.util.CanonicalPathUtils;
+import io.undertow.util.DateUtils;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.MimeMappings;
+import io.undertow.util.StatusCodes;
+import org.wildfly.extension.undertow.UndertowLogger;
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSinkChannel;
+
+/**
+ * Serves files of at least {@code mapped-min-file-size} bytes without copying them through heap buffers: over plain
+ * HTTP with {@link FileChannel#transferTo} (sendfile), over HTTPS - where the bytes have to go through the SSL engine
+ * anyway - straight from a {@link MappedFileCache} mapping. Smaller files are served from a {@link SlabBufferCache}
+ * when the handler names a {@code buffer-cache} with an {@code eviction-policy}. Range requests, directories and files
+ * neither cache takes are left to the {@link io.undertow.server.handlers.resource.ResourceHandler}.
+ */
+final class MappedFileHandler implements HttpHandler {
+
+    private final HttpHandler next;
+    private final ResourceManager resourceManager;
+    private final MappedFileCache cache;
+    private final SlabBufferCache slabCache;
+    private final long minFileSize;
+
+    /**
+     * @param cache     the mappings for files of at least {@code minFileSize} bytes, or {@code null} to leave them to
+     *                  {@code next}
+     * @param slabCache the cache for smaller files, or {@code null} to leave them to {@code next}
+     */
+    MappedFileHandler(HttpHandler next, ResourceManager resourceManager, MappedFileCache cache, SlabBufferCache slabCache, long minFileSize) {
+        this.next = next;
+        this.resourceManager = resourceManager;
+        this.cache = cache;
+        this.slabCache = slabCache;
+        this.minFileSize = minFileSize;
+    }
+
+    MappedFileCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        boolean head = Methods.HEAD.equals(exchange.getRequestMethod());
+        if ((!head && !Methods.GET.equals(exchange.getRequestMethod())) || exchange.getRequestHeaders().contains(Headers.RANGE)) {
+            next.handleRequest(exchange);
+            return;
+        }
+        // resolving, reading and mapping files blocks
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(this);
+            return;
+        }
+        Resource resource = resourceManager.getResource(CanonicalPathUtils.canonicalize(exchange.getRelativePath()));
+        if (!(resource instanceof FileResource) || resource.isDirectory()) {
+            next.handleRequest(exchange);
+            return;
+        }
+        Path file = ((FileResource) resource).getFile().toPath();
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        boolean small = attributes.size() < minFileSize;
+        if (small ? slabCache == null : cache == null) {
+            next.handleRequest(exchange);
+            return;
+        }
+        if (small) {
+            slabCache.recordAccess(file);
+        }
+
+        String etag = "W/\"" + Long.toHexString(attributes.size()) + '-' + Long.toHexString(lastModified) + '"';
+        HeaderMap headers = exchange.getResponseHeaders();
+        if (matchesIfNoneMatch(exchange.getRequestHeaders().getFirst(Headers.IF_NONE_MATCH), etag)
+                || !DateUtils.handleIfModifiedSince(exchange, new Date(lastModified))) {
+            headers.put(Headers.ETAG, etag);
+            headers.put(Headers.LAST_MODIFIED, DateUtils.toDateString(new Date(lastModified)));
+            exchange.setResponseCode(StatusCodes.NOT_MODIFIED);
+            exchange.endExchange();
+            return;
+        }
+        SlabBufferCache.Entry entry = null;
+        ByteBuffer[] buffers = null;
+        if (!head && small) {
+            entry = slabCache.get(file, attributes.size(), lastModified);
+            if (entry == null) {
+                entry = slabCache.load(file, attributes.size(), lastModified);
+            }
+            if (entry == null) {
+                next.handleRequest(exchange);
+                return;
+            }
+            buffers = entry.buffers();
+        } else if (!head && exchange.getConnection().getSslSessionInfo() != null) {
+            ByteBuffer mapped = cache.get(file, attributes);
+            if (mapped == null) {
+                next.handleRequest(exchange);
+                return;
+            }
+            buffers = new ByteBuffer[]{mapped};
+        }
+
+        headers.put(Headers.ETAG, etag);
+        headers.put(Headers.LAST_MODIFIED, DateUtils.toDateString(new Date(lastModified)));
+        String contentType = resource.getContentType(MimeMappings.DEFAULT);
+        if (contentType != null) {
+            headers.put(Headers.CONTENT_TYPE, contentType);
+        }
+        headers.put(Headers.CONTENT_LENGTH, attributes.size());
+        if (head) {
+            exchange.endExchange();
+        } else if (buffers != null) {
+            new ResponseWriter(exchange, null, buffers, entry, attributes.size()).start();
+        } else {
+            cache.transferred();
+            new ResponseWriter(exchange, FileChannel.open(file, StandardOpenOption.READ), null, null, attributes.size()).start();
+        }
+    }
+
+    private static boolean matchesIfNoneMatch(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the body without blocking the worker: when the connection cannot take more, it resumes writes and carries
+     * on from the write listener, the way the exchange's Sender does.
+     */
+    private static final class ResponseWriter implements ChannelListener<StreamSinkChannel> {
+
+        private final HttpServerExchange exchange;
+        private final FileChannel file;
+        private final ByteBuffer[] buffers;
+        private final SlabBufferCache.Entry entry;
+        private final long length;
+        private long position;
+
+        ResponseWriter(HttpServerExchange exchange, FileChannel file, ByteBuffer[] buffers, SlabBufferCache.Entry entry, long length) {
+            this.exchange = exchange;
+            this.file = file;
+            this.buffers = buffers;
+            this.entry = entry;
+            this.length = length;
+        }
+
+        void start() {
+            handleEvent(exchange.getResponseChannel());
+        }
+
+        @Override
+        public void handleEvent(StreamSinkChannel channel) {
+            boolean resumed = false;
+            boolean sent = false;
+            try {
+                while (position < length) {
+                    long written = file != null ? channel.transferFrom(file, position, length - position) : channel.write(buffers);
+                    if (written == 0) {
+                        if (file != null && file.size() <= position) {
+                            throw new IOException("File was truncated while it was being sent");
+                        }
+                        channel.getWriteSetter().set(this);
+                        channel.resumeWrites();
+                        resumed = true;
+                        return;
+                    }
+                    position += written;
+                }
+                channel.suspendWrites();
+                channel.getWriteSetter().set(null);
+                sent = true;
+            } catch (IOException | InternalError e) {
+                // reading a mapping whose file was truncated faults with an InternalError rather than an IOException
+                UndertowLogger.ROOT_LOGGER.debugf(e, "Failed to send %s", exchange.getRequestPath());
+            } finally {
+                if (!resumed) {
+                    done();
+                    if (!sent) {
+                        IoUtils.safeClose(exchange.getConnection());
+                    }
+                }
+            }
+            if (sent) {
+                exchange.endExchange();
+            }
+        }
+
+        private void done() {
+            IoUtils.safeClose(file);
+            if (entry != null) {
+                entry.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+/*
+ * Modified by IDBS to add the LOAD_BALANCING_POLICY, HEALTH_CHECK_PATH and HEALTH_CHECK_INTERVAL attributes, see
+ * LatencyAwareProxyClient, and to install the handler as a ReverseProxyService, which runs the health checks of that
+ * client while the handler service is up.
+ */
+
+package org.wildfly.extension.undertow.handlers;
+
+import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.OP_ADDR;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.server.handlers.proxy.ExclusivityChecker;
+import io.undertow.server.handlers.proxy.LoadBalancingProxyClient;
+import io.undertow.server.handlers.proxy.ProxyClient;
+import io.undertow.server.handlers.proxy.ProxyHandler;
+import io.undertow.util.Headers;
+import org.jboss.as.controller.AbstractAddStepHandler;
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.OperationContext;
+import org.jboss.as.controller.OperationFailedException;
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.PersistentResourceDefinition;
+import org.jboss.as.controller.ServiceRemoveStepHandler;
+import org.jboss.as.controller.ServiceVerificationHandler;
+import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.EnumValidator;
+import org.jboss.as.controller.operations.validation.IntRangeValidator;
+import org.jboss.as.controller.operations.validation.StringLengthValidator;
+import org.jboss.as.controller.registry.ManagementResourceRegistration;
+import org.jboss.as.controller.registry.OperationEntry;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.wildfly.extension.undertow.Constants;
+import org.wildfly.extension.undertow.UndertowService;
+
+/**
+ * @author Stuart Douglas
+ */
+public class ReverseProxyHandler extends Handler {
+
+    public static final AttributeDefinition PROBLEM_SERVER_RETRY = new SimpleAttributeDefinitionBuilder(Constants.PROBLEM_SERVER_RETRY, ModelType.INT)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(30))
+            .setAllowNull(true)
+            .build();
+
+    public static final AttributeDefinition SESSION_COOKIE_NAMES = new SimpleAttributeDefinitionBuilder(Constants.SESSION_COOKIE_NAMES, ModelType.STRING)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode("JSESSIONID"))
+            .setAllowNull(true)
+            .build();
+
+    public static final AttributeDefinition CONNECTIONS_PER_THREAD = new SimpleAttributeDefinitionBuilder(Constants.CONNECTIONS_PER_THREAD, ModelType.INT)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(10))
+            .setAllowNull(true)
+            .build();
+
+    public static final AttributeDefinition MAX_REQUEST_TIME = new SimpleAttributeDefinitionBuilder(Constants.MAX_REQUEST_TIME, ModelType.INT)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(-1))
+            .setAllowNull(true)
+            .build();
+
+    public static final AttributeDefinition LOAD_BALANCING_POLICY = new SimpleAttributeDefinitionBuilder("load-balancing-policy", ModelType.STRING)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(LatencyAwareProxyClient.Policy.ROUND_ROBIN.toString()))
+            .setValidator(new EnumValidator<>(LatencyAwareProxyClient.Policy.class, true, true))
+            .setAllowNull(true)
+            .build();
+
+    /*
+     * Path requested from each host, below the path of the host, to check its health; no health checks when undefined
+     */
+    public static final AttributeDefinition HEALTH_CHECK_PATH = new SimpleAttributeDefinitionBuilder("health-check-path", ModelType.STRING)
+            .setAllowExpression(true)
+            .setValidator(new StringLengthValidator(1, true, true))
+            .setAllowNull(true)
+            .build();
+
+    public static final AttributeDefinition HEALTH_CHECK_INTERVAL = new SimpleAttributeDefinitionBuilder("health-check-interval", ModelType.INT)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(5000))
+            .setValidator(new IntRangeValidator(100, true, true))
+            .setAllowNull(true)
+            .build();
+
+    public static final ReverseProxyHandler INSTANCE = new ReverseProxyHandler();
+
+    private ReverseProxyHandler() {
+        super(Constants.REVERSE_PROXY);
+    }
+
+    @Override
+    public Collection<AttributeDefinition> getAttributes() {
+        return Arrays.asList(CONNECTIONS_PER_THREAD, SESSION_COOKIE_NAMES, PROBLEM_SERVER_RETRY, MAX_REQUEST_TIME,
+                LOAD_BALANCING_POLICY, HEALTH_CHECK_PATH, HEALTH_CHECK_INTERVAL);
+    }
+
+    /*
+     * In place of those of Handler, whose HandlerService has no way to stop the health checks of the proxy client
+     */
+    @Override
+    public void registerOperations(ManagementResourceRegistration resourceRegistration) {
+        ReverseProxyHandlerAdd add = new ReverseProxyHandlerAdd();
+        registerAddOperation(resourceRegistration, add, OperationEntry.Flag.RESTART_RESOURCE_SERVICES);
+        registerRemoveOperation(resourceRegistration, new ServiceRemoveStepHandler(UndertowService.HANDLER, add), OperationEntry.Flag.RESTART_RESOURCE_SERVICES);
+    }
+
+    @Override
+    protected List<? extends PersistentResourceDefinition> getChildren() {
+        return Collections.singletonList(ReverseProxyHandlerHost.INSTANCE);
+    }
+
+    @Override
+    public ProxyHandler createHandler(final OperationContext context, ModelNode model) throws OperationFailedException {
+
+        String sessionCookieNames = SESSION_COOKIE_NAMES.resolveModelAttribute(context, model).asString();
+        int connectionsPerThread = CONNECTIONS_PER_THREAD.resolveModelAttribute(context, model).asInt();
+        int problemServerRetry = PROBLEM_SERVER_RETRY.resolveModelAttribute(context, model).asInt();
+        int maxTime = MAX_REQUEST_TIME.resolveModelAttribute(context, model).asInt();
+        LatencyAwareProxyClient.Policy policy = LatencyAwareProxyClient.Policy.forName(LOAD_BALANCING_POLICY.resolveModelAttribute(context, model).asString());
+        ModelNode healthCheckPath = HEALTH_CHECK_PATH.resolveModelAttribute(context, model);
+        int healthCheckInterval = HEALTH_CHECK_INTERVAL.resolveModelAttribute(context, model).asInt();
+
+        ExclusivityChecker exclusivityChecker = new ExclusivityChecker() {
+            @Override
+            public boolean isExclusivityRequired(HttpServerExchange exchange) {
+                //we always create a new connection for upgrade requests
+                return exchange.getRequestHeaders().contains(Headers.UPGRADE);
+            }
+        };
+        // hosts are added by the ReverseProxyHandlerHost services, through the LoadBalancingProxyClient API
+        final LoadBalancingProxyClient lb;
+        if (policy == LatencyAwareProxyClient.Policy.ROUND_ROBIN && !healthCheckPath.isDefined()) {
+            lb = new LoadBalancingProxyClient(exclusivityChecker);
+        } else {
+            lb = new LatencyAwareProxyClient(exclusivityChecker, policy,
+                    healthCheckPath.isDefined() ? healthCheckPath.asString() : null, healthCheckInterval);
+        }
+        lb.setConnectionsPerThread(connectionsPerThread)
+                .setProblemServerRetry(problemServerRetry);
+        String[] sessionIds = sessionCookieNames.split(",");
+        for (String id : sessionIds) {
+            lb.addSessionCookieName(id);
+        }
+
+        ProxyHandler handler = new ProxyHandler(lb, maxTime, ResponseCodeHandler.HANDLE_404);
+        return handler;
+    }
+
+    private final class ReverseProxyHandlerAdd extends AbstractAddStepHandler {
+
+        private ReverseProxyHandlerAdd() {
+            super(getAttributes());
+        }
+
+        @Override
+        protected void performRuntime(OperationContext context, ModelNode operation, ModelNode model, ServiceVerificationHandler verificationHandler, List<ServiceController<?>> newControllers) throws OperationFailedException {
+            final String name = PathAddress.pathAddress(operation.get(OP_ADDR)).getLastElement().getValue();
+            final ReverseProxyService service = new ReverseProxyService(createHandler(context, model));
+            final ServiceController<HttpHandler> controller = context.getServiceTarget().addService(UndertowService.HANDLER.append(name), service)
+                    .setInitialMode(ServiceController.Mode.ON_DEMAND)
+                    .install();
+            if (newControllers != null) {
+                newControllers.add(controller);
+            }
+        }
+    }
+
+    /**
+     * The reverse-proxy handler; the health checks of its {@link LatencyAwareProxyClient}, if it has one, run while the
+     * service is up, so they stop when the handler is removed and no longer outlive a reload.
+     */
+    private static final class ReverseProxyService implements Service<HttpHandler> {
+
+        private final HttpHandler handler;
+        private final LatencyAwareProxyClient client;
+
+        private ReverseProxyService(ProxyHandler handler) {
+            this.handler = handler;
+            ProxyClient proxyClient = handler.getProxyClient();
+            this.client = proxyClient instanceof LatencyAwareProxyClient ? (LatencyAwareProxyClient) proxyClient : null;
+        }
+
+        @Override
+        public void start(StartContext context) throws StartException {
+            if (client != null) {
+                client.start();
+            }
+        }
+
+        @Override
+        public void stop(StopContext context) {
+            if (client != null) {
+                client.stop();
+            }
+        }
+
+        @Override
+        public HttpHandler getValue() throws IllegalStateException, IllegalArgumentException {
+            return handler;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package org.wildfly.extension.undertow.handlers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.wildfly.extension.undertow.ResidentEntries;
+import org.wildfly.extension.undertow.UndertowMXBeans;
+
+/**
+ * The contents of small files served by the file handlers that name a buffer-cache with an {@code eviction-policy},
+ * kept off the heap in direct buffer slabs cut into {@code buffers-per-region} times {@code max-regions} slots of
+ * {@code buffer-size} bytes each. The cache of a buffer-cache is {@link #install installed} by its add operation and
+ * {@link #uninstall uninstalled} by its remove.
+ * <p>
+ * A file occupies as many slots as it needs. Like the {@link MappedFileCache}, an entry is reused only while the file
+ * keeps the size and modification time it had when it was read. When there are not enough free slots for a new file,
+ * victims are chosen from a random sample of the {@link ResidentEntries resident entries} according to the
+ * {@link EvictionPolicy}:
+ * <ul>
+ * <li>{@code lru} evicts the least recently used of the sample
+ * <li>{@code lfu} evicts the least frequently used of the sample
+ * <li>{@code tinylfu} picks the least recently used of the sample as well, but only admits the new file if it has been
+ * requested more often than the victim, so a scan over a working set larger than the cache does not flush the popular
+ * files out
+ * </ul>
+ * Frequencies are estimated for every requested file, cached or not, by a {@link FrequencySketch}.
+ * <p>
+ * Entries are reference counted: responses still writing a file's slots hold a reference, and the slots only return to
+ * the free list once the entry has been evicted and the last response has released it.
+ */
+public final class SlabBufferCache implements SlabBufferCacheMXBean {
+
+    public enum EvictionPolicy {
+        LRU, LFU, TINYLFU;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+
+        public static EvictionPolicy forName(String name) {
+            return valueOf(name.toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private static final String MXBEAN_TYPE = "buffer-cache";
+
+    // by buffer-cache name
+    private static final ConcurrentMap<String, SlabBufferCache> CACHES = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final EvictionPolicy policy;
+    private final int slotSize;
+    private final int slotCount;
+    private final int slotsPerSlab;
+    private final ByteBuffer[] slabs;
+    private final FrequencySketch sketch;
+    private final ConcurrentHashMap<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final Comparator<Entry> evictionOrder;
+
+    // guarded by this
+    private final int[] freeSlots;
+    private int freeCount;
+    private final ResidentEntries<Entry> resident = new ResidentEntries<>();
+
+    SlabBufferCache(String name, int slotSize, int slotCount, EvictionPolicy policy) {
+        if (slotSize <= 0 || slotCount <= 0) {
+            throw new IllegalArgumentException("The cache needs at least one slot of at least one byte");
+        }
+        this.name = name;
+        this.policy = policy;
+        this.slotSize = slotSize;
+        this.slotCount = slotCount;
+        this.slotsPerSlab = Math.min(slotCount, Integer.MAX_VALUE / slotSize);
+        this.slabs = new ByteBuffer[(slotCount + slotsPerSlab - 1) / slotsPerSlab];
+        for (int i = 0; i < slabs.length; i++) {
+            int slots = Math.min(slotsPerSlab, slotCount - i * slotsPerSlab);
+            slabs[i] = ByteBuffer.allocateDirect(slots * slotSize);
+        }
+        this.sketch = new FrequencySketch(slotCount);
+        this.freeSlots = new int[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            freeSlots[i] = slotCount - 1 - i;
+        }
+        this.freeCount = slotCount;
+        this.evictionOrder = new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                if (policy == EvictionPolicy.LFU) {
+                    return Integer.compare(sketch.frequency(a.file), sketch.frequency(b.file));
+                }
+                return Long.compare(a.lastAccess, b.lastAccess);
+            }
+        };
+    }
+
+    /**
+     * Allocates the cache of a buffer-cache, in place of the one an earlier add of the buffer-cache left, and
+     * registers its MXBean.
+     */
+    public static void install(String name, int slotSize, int slotCount, EvictionPolicy policy) {
+        SlabBufferCache cache = new SlabBufferCache(name, slotSize, slotCount, policy);
+        CACHES.put(name, cache);
+        UndertowMXBeans.register(MXBEAN_TYPE, name, cache);
+    }
+
+    /**
+     * Drops the cache of a buffer-cache, if it has one. File handlers already serving from it keep it until they are
+     * rebuilt.
+     */
+    public static void uninstall(String name) {
+        if (CACHES.remove(name) != null) {
+            UndertowMXBeans.unregister(MXBEAN_TYPE, name);
+        }
+    }
+
+    /**
+     * @return the cache of the buffer-cache of the given name, or {@code null} if it has no eviction-policy
+     */
+    static SlabBufferCache forBufferCache(String name) {
+        return CACHES.get(name);
+    }
+
+    /**
+     * Counts a request for the file, whether it ends up being served from the cache or not.
+     */
+    void recordAccess(Path file) {
+        sketch.increment(file);
+    }
+
+    /**
+     * @return the cached entry, retained for the caller, or {@code null} if the file is not cached at its current size
+     * and modification time
+     */
+    Entry get(Path file, long size, long lastModified) {
+        Entry entry = entries.get(file);
+        if (entry != null) {
+            if (entry.size == size && entry.lastModified == lastModified) {
+                if (entry.retain()) {
+                    hits.increment();
+                    entry.lastAccess = System.nanoTime();
+                    return entry;
+                }
+            } else if (invalidate(entry)) {
+                invalidations.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Reads a file into the cache if there is room for it, or the policy lets it take the room of other files.
+     *
+     * @return the new entry, retained for the caller, or {@code null} if the file was not admitted
+     */
+    Entry load(Path file, long size, long lastModified) throws IOException {
+        int[] slots = allocate(file, size);
+        if (slots == null) {
+            return null;
+        }
+        Entry entry = new Entry(file, size, lastModified, slots);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            for (ByteBuffer slot : entry.buffers()) {
+                while (slot.hasRemaining()) {
+                    int read = channel.read(slot, position);
+                    if (read < 0) {
+                        // the file shrank since its attributes were read
+                        free(slots);
+                        return null;
+                    }
+                    position += read;
+                }
+            }
+        } catch (IOException e) {
+            free(slots);
+            throw e;
+        }
+        // retained before it is published, so that it cannot be evicted and freed under the caller
+        entry.retain();
+        synchronized (this) {
+            Entry previous = entries.put(file, entry);
+            if (previous != null) {
+                resident.remove(previous);
+                previous.release();
+            }
+            resident.add(entry);
+        }
+        return entry;
+    }
+
+    private synchronized int[] allocate(Path file, long size) {
+        long needed = (size + slotSize - 1) / slotSize;
+        if (size == 0 || needed > slotCount) {
+            return null;
+        }
+        int frequency = policy == EvictionPolicy.TINYLFU ? sketch.frequency(file) : 0;
+        while (freeCount < needed) {
+            Entry victim = resident.sample(evictionOrder);
+            if (victim == null) {
+                // everything left is still being written by responses to evicted entries
+                return null;
+            }
+            if (policy == EvictionPolicy.TINYLFU && sketch.frequency(victim.file) >= frequency) {
+                rejections.increment();
+                return null;
+            }
+            if (entries.remove(victim.file, victim)) {
+                evictions.increment();
+            }
+            resident.remove(victim);
+            victim.release();
+        }
+        int[] slots = new int[(int) needed];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = freeSlots[--freeCount];
+        }
+        return slots;
+    }
+
+    private synchronized boolean invalidate(Entry entry) {
+        if (!entries.remove(entry.file, entry)) {
+            return false;
+        }
+        resident.remove(entry);
+        entry.release();
+        return true;
+    }
+
+    private synchronized void free(int[] slots) {
+        for (int slot : slots) {
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    private ByteBuffer slot(int slot, int length) {
+        ByteBuffer buffer = slabs[slot / slotsPerSlab].duplicate();
+        int offset = (slot % slotsPerSlab) * slotSize;
+        buffer.limit(offset + length).position(offset);
+        return buffer.slice();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getEvictionPolicy() {
+        return policy.toString();
+    }
+
+    @Override
+    public long getCapacity() {
+        return (long) slotSize * slotCount;
+    }
+
+    @Override
+    public synchronized long getBytesResident() {
+        return (long) (slotCount - freeCount) * slotSize;
+    }
+
+    @Override
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = this.hits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public long getRejectedAdmissionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * A cached file. Holders of a reference read it through {@link #buffers()} and give the reference back with
+     * {@link #release()}.
+     */
+    final class Entry extends ResidentEntries.Entry {
+        final Path file;
+        final long size;
+        final long lastModified;
+        private final int[] slots;
+        // the cache holds one reference until the entry is evicted
+        private final AtomicInteger references = new AtomicInteger(1);
+        volatile long lastAccess = System.nanoTime();
+
+        Entry(Path file, long size, long lastModified, int[] slots) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.slots = slots;
+        }
+
+        /**
+         * @return fresh views of the file's contents, in order
+         */
+        ByteBuffer[] buffers() {
+            ByteBuffer[] buffers = new ByteBuffer[slots.length];
+            long remaining = size;
+            for (int i = 0; i < slots.length; i++) {
+                int length = (int) Math.min(slotSize, remaining);
+                buffers[i] = slot(slots[i], length);
+                remaining -= length;
+            }
+            return buffers;
+        }
+
+        private boolean retain() {
+            for (;;) {
+                int count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                free(slots);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.wildfly.extension.undertow.handlers;
+
+/**
+ * Metrics of the off-heap slab cache of a buffer-cache, registered through
+ * {@link org.wildfly.extension.undertow.UndertowMXBeans} with type {@code buffer-cache}.
+ */
+public interface SlabBufferCacheMXBean {
+
+    /**
+     * @return the name of the buffer-cache
+     */
+    String getName();
+
+    String getEvictionPolicy();
+
+    long getCapacity();
+
+    /**
+     * @return the bytes of the slots in use, including slots of evicted files that responses are still writing
+     */
+    long getBytesResident();
+
+    int getEntryCount();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRatio();
+
+    long getEvictionCount();
+
+    /**
+     * @return the number of entries dropped because the file changed size or modification time
+     */
+    long getInvalidationCount();
+
+    /**
+     * @return the number of files the {@code tinylfu} policy kept out because they were requested less often than
+     * the files they would have replaced
+     */
+    long getRejectedAdmissionCount();
+}
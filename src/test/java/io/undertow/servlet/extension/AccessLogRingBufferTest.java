@@ -0,0 +1,97 @@
+package io.undertow.servlet.extension;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AccessLogRingBufferTest
+{
+    private static void put(AccessLogRingBuffer ring, long position, long value)
+    {
+        AccessLogRecord.encode(ring.data(), ring.offset(position), value, 0, 0, 200);
+        ring.publish(position);
+    }
+
+    @Test
+    public void drainsInOrderAndReportsFull()
+    {
+        AccessLogRingBuffer ring = new AccessLogRingBuffer(4);
+        for (int i = 0; i < 4; i++)
+        {
+            put(ring, ring.claim(), i);
+        }
+        assertEquals("a full ring refuses claims", -1, ring.claim());
+        assertEquals(4, ring.size());
+
+        final long[] next = { 0 };
+        assertEquals(3, ring.drain((data, offset) -> assertEquals(next[0]++, AccessLogRecord.timestamp(data, offset)), 3));
+        assertEquals(1, ring.size());
+
+        // the drained slots can be claimed again, and wrap around the array
+        put(ring, ring.claim(), 4);
+        put(ring, ring.claim(), 5);
+        assertEquals(3, ring.drain((data, offset) -> assertEquals(next[0]++, AccessLogRecord.timestamp(data, offset)), 10));
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void doesNotDrainPastAnUnpublishedSlot()
+    {
+        AccessLogRingBuffer ring = new AccessLogRingBuffer(8);
+        long first = ring.claim();
+        long second = ring.claim();
+        put(ring, second, 2);
+
+        assertEquals("the second record waits for the first", 0, ring.drain((data, offset) -> {
+        }, 10));
+
+        put(ring, first, 1);
+        assertEquals(2, ring.drain((data, offset) -> {
+        }, 10));
+    }
+
+    @Test
+    public void concurrentProducersLoseNothing() throws Exception
+    {
+        final int producers = 4;
+        final int perProducer = 50000;
+        final AccessLogRingBuffer ring = new AccessLogRingBuffer(256);
+        final CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++)
+        {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++)
+                {
+                    long position;
+                    while ((position = ring.claim()) < 0)
+                    {
+                        Thread.yield();
+                    }
+                    // producer in the high bits, sequence in the low bits
+                    put(ring, position, ((long) producer << 32) | i);
+                }
+                done.countDown();
+            });
+            thread.start();
+        }
+
+        final long[] expected = new long[producers];
+        final long[] received = { 0 };
+        while (received[0] < producers * (long) perProducer)
+        {
+            ring.drain((data, offset) -> {
+                long value = AccessLogRecord.timestamp(data, offset);
+                int producer = (int) (value >>> 32);
+                assertEquals("records of one producer stay in order", expected[producer]++, value & 0xFFFFFFFFL);
+                received[0]++;
+            }, 64);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, ring.size());
+    }
+}
@@ -0,0 +1,154 @@
+package io.undertow.servlet.extension;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncAccessLogWriterTest
+{
+    private final File directory;
+
+    public AsyncAccessLogWriterTest() throws IOException
+    {
+        directory = Files.createTempDirectory("access-log").toFile();
+    }
+
+    @After
+    public void deleteDirectory()
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private AsyncAccessLogWriter writer(AccessLogRecord.Pattern pattern, int capacity,
+        AsyncAccessLogWriter.OverflowPolicy policy)
+    {
+        return new AsyncAccessLogWriter(capacity, pattern, policy, directory, "access_log.", "log", true, false);
+    }
+
+    private static boolean request(AsyncAccessLogWriter writer, long timestamp, String uri)
+    {
+        return writer.log(timestamp, 12345, 512, 200, "10.0.0.1", "alice", "GET", "HTTP/1.1", uri, "a=1",
+            "https://ewb/", "Mozilla/5.0");
+    }
+
+    private List<String> lines(String name) throws IOException
+    {
+        return Files.readAllLines(new File(directory, name).toPath(), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void writesCombinedLines() throws Exception
+    {
+        AsyncAccessLogWriter writer = writer(AccessLogRecord.Pattern.COMBINED_TIMED, 64,
+            AsyncAccessLogWriter.OverflowPolicy.BLOCK);
+        long now = System.currentTimeMillis();
+        assertTrue(request(writer, now, "/ewb/services/1.0/entities"));
+        assertTrue(writer.log(now, 0, 0, 304, null, null, "GET", "HTTP/1.1", "/ewb/", null, null, null));
+        writer.start();
+        writer.stop();
+
+        String date = new SimpleDateFormat("[dd/MMM/yyyy:HH:mm:ss Z]", Locale.US).format(new Date(now));
+        List<String> lines = lines("access_log.log");
+        assertEquals(2, lines.size());
+        assertEquals("10.0.0.1 - alice " + date
+            + " \"GET /ewb/services/1.0/entities?a=1 HTTP/1.1\" 200 512 \"https://ewb/\" \"Mozilla/5.0\" 12",
+            lines.get(0));
+        assertEquals("- - - " + date + " \"GET /ewb/ HTTP/1.1\" 304 - \"-\" \"-\" 0", lines.get(1));
+        assertEquals(2, writer.getWrittenRecords());
+        assertEquals("both records went out in one write", 1, writer.getWrites());
+    }
+
+    @Test
+    public void truncatesLongFieldsToTheRecordSize() throws Exception
+    {
+        AsyncAccessLogWriter writer = writer(AccessLogRecord.Pattern.COMMON, 64,
+            AsyncAccessLogWriter.OverflowPolicy.BLOCK);
+        writer.start();
+        StringBuilder uri = new StringBuilder("/");
+        while (uri.length() < 2 * AccessLogRingBuffer.RECORD_SIZE)
+        {
+            uri.append("segment/");
+        }
+        assertTrue(request(writer, System.currentTimeMillis(), uri.toString()));
+        writer.stop();
+
+        String line = lines("access_log.log").get(0);
+        assertTrue(line, line.startsWith("10.0.0.1 - alice "));
+        assertTrue(line, line.length() < AccessLogRingBuffer.RECORD_SIZE + 64);
+    }
+
+    @Test
+    public void rotatesAtMidnight() throws Exception
+    {
+        AsyncAccessLogWriter writer = writer(AccessLogRecord.Pattern.COMMON, 64,
+            AsyncAccessLogWriter.OverflowPolicy.BLOCK);
+        writer.start();
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 23);
+        calendar.set(Calendar.MINUTE, 59);
+        long beforeMidnight = calendar.getTimeInMillis();
+        String day = new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(calendar.getTime());
+        assertTrue(request(writer, beforeMidnight, "/yesterday"));
+        assertTrue(request(writer, beforeMidnight + 2 * 60 * 1000, "/today"));
+        writer.stop();
+
+        List<String> rotated = lines("access_log." + day + ".log");
+        assertEquals(1, rotated.size());
+        assertTrue(rotated.get(0).contains("/yesterday"));
+        List<String> current = lines("access_log.log");
+        assertEquals(1, current.size());
+        assertTrue(current.get(0).contains("/today"));
+    }
+
+    @Test
+    public void dropsWhenFull() throws Exception
+    {
+        // not started, so nothing drains the ring
+        AsyncAccessLogWriter writer = writer(AccessLogRecord.Pattern.COMMON, 4,
+            AsyncAccessLogWriter.OverflowPolicy.DROP);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(request(writer, now, "/" + i));
+        }
+        assertFalse(request(writer, now, "/dropped"));
+        assertEquals(1, writer.getDroppedRecords());
+        assertEquals(4, writer.getQueueDepth());
+
+        writer.start();
+        writer.stop();
+        assertEquals(4, lines("access_log.log").size());
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void compressesRotatedFiles() throws Exception
+    {
+        File file = new File(directory, "access_log.2017-01-01.log");
+        Files.write(file.toPath(), "line\n".getBytes(StandardCharsets.US_ASCII));
+        AsyncAccessLogWriter.compress(file);
+        assertFalse(file.exists());
+        assertTrue(new File(directory, "access_log.2017-01-01.log.gz").length() > 0);
+    }
+}
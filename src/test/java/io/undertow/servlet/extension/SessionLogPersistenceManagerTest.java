@@ -0,0 +1,82 @@
+package io.undertow.servlet.extension;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.undertow.servlet.api.SessionPersistenceManager.PersistentSession;
+
+public class SessionLogPersistenceManagerTest
+{
+    private static final String DEPLOYMENT = "ewb.war";
+
+    private static final Date LATER = new Date(System.currentTimeMillis() + 3600000);
+
+    private final File directory;
+
+    public SessionLogPersistenceManagerTest() throws IOException
+    {
+        directory = Files.createTempDirectory("session-log").toFile();
+    }
+
+    @After
+    public void deleteDirectory()
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private SessionLogPersistenceManager manager()
+    {
+        return new SessionLogPersistenceManager(directory, 60000, 2.0);
+    }
+
+    private Map<String, PersistentSession> load(SessionLogPersistenceManager manager)
+    {
+        return manager.loadSessionAttributes(DEPLOYMENT, getClass().getClassLoader());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void persistsAnAttributeChangedInPlace()
+    {
+        SessionLogPersistenceManager manager = manager();
+        load(manager);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("cart", new ArrayList<>(Arrays.asList("a")));
+        manager.persistSessions(DEPLOYMENT, Collections.singletonMap("s1", new PersistentSession(LATER, attributes)));
+
+        // restored, then changed in place: the session listener never hears of it
+        manager = manager();
+        Map<String, PersistentSession> restored = load(manager);
+        Map<String, Object> restoredAttributes = new HashMap<>(restored.get("s1").getSessionData());
+        ((List<String>) restoredAttributes.get("cart")).add("b");
+        manager.persistSessions(DEPLOYMENT,
+            Collections.singletonMap("s1", new PersistentSession(LATER, restoredAttributes)));
+
+        manager = manager();
+        restored = load(manager);
+        assertEquals(Arrays.asList("a", "b"), restored.get("s1").getSessionData().get("cart"));
+        assertEquals(LATER, restored.get("s1").getExpiration());
+        manager.persistSessions(DEPLOYMENT, Collections.<String, PersistentSession> emptyMap());
+    }
+}
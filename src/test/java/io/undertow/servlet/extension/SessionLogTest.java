@@ -0,0 +1,175 @@
+package io.undertow.servlet.extension;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SessionLogTest
+{
+    private static final long LATER = System.currentTimeMillis() + 3600000;
+
+    private final File directory;
+
+    public SessionLogTest() throws IOException
+    {
+        directory = Files.createTempDirectory("session-log").toFile();
+    }
+
+    @After
+    public void deleteDirectory()
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private SessionLog open() throws IOException
+    {
+        SessionLog log = new SessionLog(directory, "ewb.war");
+        log.open();
+        return log;
+    }
+
+    private static Map<String, Object> attributes(Object... namesAndValues)
+    {
+        Map<String, Object> attributes = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2)
+        {
+            attributes.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return attributes;
+    }
+
+    private static void write(SessionLog log, String id, long expiration, Map<String, Object> attributes)
+        throws IOException
+    {
+        SessionLog.Batch batch = new SessionLog.Batch();
+        batch.full(id, expiration, attributes);
+        log.write(batch);
+    }
+
+    @Test
+    public void restoresTheLatestSnapshotOfEachSession() throws Exception
+    {
+        SessionLog log = open();
+        write(log, "a", LATER, attributes("user", "alice", "count", 1));
+        write(log, "b", LATER, attributes("user", "bob"));
+        write(log, "a", LATER, attributes("user", "alice", "count", 2));
+        assertEquals("read back before a restart", 2, log.read("a", getClass().getClassLoader()).get("count"));
+        log.close();
+
+        log = open();
+        assertEquals(2, log.entries().size());
+        assertEquals(attributes("user", "alice", "count", 2), log.read("a", getClass().getClassLoader()));
+        assertEquals(attributes("user", "bob"), log.read("b", getClass().getClassLoader()));
+        assertNull(log.read("c", getClass().getClassLoader()));
+        log.close();
+    }
+
+    @Test
+    public void appliesTouchesAndRemovals() throws Exception
+    {
+        SessionLog log = open();
+        write(log, "a", LATER, attributes("user", "alice"));
+        write(log, "b", LATER, attributes("user", "bob"));
+        SessionLog.Batch batch = new SessionLog.Batch();
+        batch.touch("a", LATER + 1000);
+        batch.remove("b");
+        log.write(batch);
+        log.close();
+
+        log = open();
+        assertEquals(LATER + 1000, log.entry("a").expiration);
+        assertEquals(LATER, log.entry("a").recordedExpiration);
+        assertFalse(log.contains("b"));
+        log.close();
+    }
+
+    @Test
+    public void skipsAttributesThatAreNotSerializable() throws Exception
+    {
+        SessionLog log = open();
+        write(log, "a", LATER, attributes("user", "alice", "socket", new Object()));
+        assertEquals(attributes("user", "alice"), log.read("a", getClass().getClassLoader()));
+        log.close();
+    }
+
+    @Test
+    public void discardsATornLastRecord() throws Exception
+    {
+        SessionLog log = open();
+        write(log, "a", LATER, attributes("user", "alice"));
+        write(log, "b", LATER, attributes("user", "bob"));
+        File file = log.file(0);
+        long complete = log.size();
+        log.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+        {
+            raf.setLength(complete - 3);
+        }
+
+        log = open();
+        assertTrue(log.contains("a"));
+        assertFalse(log.contains("b"));
+        assertTrue(log.size() < complete - 3);
+        write(log, "c", LATER, attributes("user", "carol"));
+        log.close();
+
+        log = open();
+        assertEquals(attributes("user", "carol"), log.read("c", getClass().getClassLoader()));
+        log.close();
+    }
+
+    @Test
+    public void compactsIntoANewGeneration() throws Exception
+    {
+        SessionLog log = open();
+        for (int i = 0; i < 50; i++)
+        {
+            write(log, "a", LATER, attributes("count", i));
+        }
+        write(log, "expired", System.currentTimeMillis() - 1, attributes("user", "gone"));
+        write(log, "b", LATER, attributes("user", "bob"));
+        SessionLog.Batch touch = new SessionLog.Batch();
+        touch.touch("b", LATER + 5000);
+        log.write(touch);
+        long before = log.size();
+
+        assertFalse("below the minimum size", log.compactIfNeeded(2, before + 1));
+        assertTrue(log.compactIfNeeded(2, 0));
+        assertTrue(log.size() < before / 10);
+        assertFalse(log.file(0).exists());
+        assertTrue(log.file(1).exists());
+        assertEquals(49, log.read("a", getClass().getClassLoader()).get("count"));
+        assertFalse(log.contains("expired"));
+
+        write(log, "c", LATER, Collections.<String, Object>singletonMap("user", "carol"));
+        log.close();
+
+        log = open();
+        assertEquals(3, log.entries().size());
+        assertEquals(49, log.read("a", getClass().getClassLoader()).get("count"));
+        assertEquals("the touch survived the compaction", LATER + 5000, log.entry("b").expiration);
+        assertEquals(attributes("user", "carol"), log.read("c", getClass().getClassLoader()));
+        log.close();
+    }
+}
@@ -0,0 +1,163 @@
+package io.undertow.servlet.extension;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Test;
+import org.xnio.conduits.AbstractStreamSourceConduit;
+import org.xnio.conduits.StreamSourceConduit;
+
+public class SpoolingStreamSourceConduitTest
+{
+    private final Path directory;
+
+    private final UploadSpoolingHandler metrics;
+
+    public SpoolingStreamSourceConduitTest() throws IOException
+    {
+        directory = Files.createTempDirectory("upload-spool");
+        metrics = new UploadSpoolingHandler(null, 0, directory);
+    }
+
+    @After
+    public void deleteDirectory() throws IOException
+    {
+        Files.delete(directory);
+    }
+
+    private static byte[] body(int length)
+    {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            body[i] = (byte) (i * 31);
+        }
+        return body;
+    }
+
+    private static byte[] readAll(SpoolingStreamSourceConduit conduit) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(777);
+        int read;
+        int zeros = 0;
+        while ((read = conduit.read(buffer)) != -1)
+        {
+            if (read == 0 && ++zeros > 100000)
+            {
+                fail("No progress");
+            }
+            buffer.flip();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.write(bytes);
+            buffer.clear();
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void spoolsTheWholeBodyBeforeServingIt() throws IOException
+    {
+        byte[] body = body(100000);
+        SpoolingStreamSourceConduit conduit = new SpoolingStreamSourceConduit(new TrickleConduit(body), directory,
+            body.length, metrics);
+        try
+        {
+            assertArrayEquals(body, readAll(conduit));
+            assertEquals(body.length, conduit.getSpooledBytes());
+        }
+        finally
+        {
+            conduit.close();
+        }
+        assertEquals(1, metrics.getSpooledCount());
+        assertEquals(0, metrics.getFailedCount());
+        assertEquals(0, metrics.getActiveSpools());
+    }
+
+    @Test
+    public void failsABodyThatEndsBeforeItsContentLength() throws IOException
+    {
+        byte[] body = body(50000);
+        SpoolingStreamSourceConduit conduit = new SpoolingStreamSourceConduit(new TrickleConduit(body), directory,
+            body.length + 1000, metrics);
+        try
+        {
+            readAll(conduit);
+            fail("Served a truncated upload");
+        }
+        catch (IOException expected)
+        {
+            // the client went away
+        }
+        finally
+        {
+            conduit.close();
+        }
+        assertEquals(0, metrics.getSpooledCount());
+        assertEquals(1, metrics.getFailedCount());
+    }
+
+    /*
+     * Hands the body to transfers a few kilobytes at a time, with nothing available every other transfer
+     */
+    private static final class TrickleConduit extends AbstractStreamSourceConduit<StreamSourceConduit>
+    {
+        // XNIO insists on a next conduit; nothing is read from it, and the rest of its methods do nothing
+        private static final StreamSourceConduit END = (StreamSourceConduit) Proxy.newProxyInstance(
+            StreamSourceConduit.class.getClassLoader(), new Class<?>[] { StreamSourceConduit.class },
+            new InvocationHandler()
+            {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    if (method.getName().startsWith("read") || method.getName().startsWith("transfer"))
+                    {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                }
+            });
+
+        private final ByteBuffer body;
+
+        private int transfers;
+
+        TrickleConduit(byte[] body)
+        {
+            super(END);
+            this.body = ByteBuffer.wrap(body);
+        }
+
+        @Override
+        public long transferTo(long position, long count, FileChannel target) throws IOException
+        {
+            if (!body.hasRemaining())
+            {
+                return -1;
+            }
+            if (transfers++ % 2 == 0)
+            {
+                return 0;
+            }
+            ByteBuffer slice = body.duplicate();
+            slice.limit(slice.position() + (int) Math.min(Math.min(count, 4096), body.remaining()));
+            int written = target.write(slice, position);
+            body.position(body.position() + written);
+            return written;
+        }
+    }
+}
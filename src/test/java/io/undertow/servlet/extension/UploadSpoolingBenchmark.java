@@ -0,0 +1,223 @@
+package io.undertow.servlet.extension;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wildfly.extension.undertow.BenchmarkSupport;
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+import org.xnio.channels.AcceptingChannel;
+import org.xnio.streams.ChannelInputStream;
+
+/**
+ * Compares two ways of getting a large upload from a connection into a temp file: copying it through an 8 KiB heap
+ * buffer, the way a servlet copies its input stream, and spooling it with a {@link SpoolingStreamSourceConduit}
+ * straight from the connection's conduit. The client sends the body over loopback from another thread, and the
+ * allocation reported is that of the thread moving the body into the file.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark -Dtest=UploadSpoolingBenchmark}; {@code undertow.benchmark.uploadMegabytes}
+ * sets the size of each upload (default 2048) and the spool files go to {@code java.io.tmpdir}.
+ */
+public class UploadSpoolingBenchmark
+{
+    private static final long UPLOAD_BYTES = BenchmarkSupport.intProperty("undertow.benchmark.uploadMegabytes", 2048)
+        * 1024L * 1024L;
+
+    private static final int CLIENT_WRITE_SIZE = 1024 * 1024;
+
+    private static XnioWorker worker;
+
+    private static ExecutorService clientThreads;
+
+    private static AcceptingChannel<StreamConnection> server;
+
+    private static final BlockingQueue<StreamConnection> accepted = new SynchronousQueue<>();
+
+    private static Path directory;
+
+    @BeforeClass
+    public static void start() throws IOException
+    {
+        worker = Xnio.getInstance().createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        clientThreads = Executors.newCachedThreadPool();
+        directory = Files.createTempDirectory("upload-spooling");
+        server = worker.createStreamConnectionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+            new ChannelListener<AcceptingChannel<StreamConnection>>()
+            {
+                @Override
+                public void handleEvent(AcceptingChannel<StreamConnection> channel)
+                {
+                    try
+                    {
+                        StreamConnection connection = channel.accept();
+                        if (connection != null)
+                        {
+                            accepted.put(connection);
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        IoUtils.safeClose(channel);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, OptionMap.EMPTY);
+        server.resumeAccepts();
+    }
+
+    @AfterClass
+    public static void stop() throws IOException
+    {
+        IoUtils.safeClose(server);
+        clientThreads.shutdownNow();
+        worker.shutdownNow();
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void heapCopy() throws Exception
+    {
+        run("8 KiB heap buffer copy", new Upload()
+        {
+            @Override
+            public long receive(StreamConnection connection) throws IOException
+            {
+                Path file = Files.createTempFile(directory, "upload-", ".copy");
+                long copied = 0;
+                try (InputStream in = new ChannelInputStream(connection.getSourceChannel());
+                        OutputStream out = new FileOutputStream(file.toFile()))
+                {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while (copied < UPLOAD_BYTES && (read = in.read(buffer)) > 0)
+                    {
+                        out.write(buffer, 0, read);
+                        copied += read;
+                    }
+                }
+                finally
+                {
+                    Files.delete(file);
+                }
+                return copied;
+            }
+        });
+    }
+
+    @Test
+    public void spooling() throws Exception
+    {
+        final UploadSpoolingHandler metrics = new UploadSpoolingHandler(null, 0, directory);
+        run("spooling conduit", new Upload()
+        {
+            @Override
+            public long receive(StreamConnection connection) throws IOException
+            {
+                SpoolingStreamSourceConduit conduit = new SpoolingStreamSourceConduit(
+                    connection.getSourceChannel().getConduit(), directory, UPLOAD_BYTES, metrics);
+                try
+                {
+                    while (!conduit.spool())
+                    {
+                        conduit.awaitReadable();
+                    }
+                    return conduit.getSpooledBytes();
+                }
+                finally
+                {
+                    conduit.close();
+                }
+            }
+        });
+        System.out.println("spooled " + metrics.getSpooledCount() + " uploads, " + metrics.getActiveSpools()
+            + " spool files left");
+    }
+
+    private interface Upload
+    {
+        long receive(StreamConnection connection) throws IOException;
+    }
+
+    private static void run(String name, final Upload upload) throws Exception
+    {
+        BenchmarkSupport.Result result = BenchmarkSupport.measure(name, 1, 3, new Callable<Object>()
+        {
+            @Override
+            public Object call() throws Exception
+            {
+                try (Socket client = new Socket())
+                {
+                    client.connect(server.getLocalAddress(InetSocketAddress.class));
+                    Future<?> sent = clientThreads.submit(send(client));
+                    StreamConnection connection = accepted.poll(1, TimeUnit.MINUTES);
+                    if (connection == null)
+                    {
+                        throw new IllegalStateException("Connection was not accepted");
+                    }
+                    try
+                    {
+                        long received = upload.receive(connection);
+                        if (received != UPLOAD_BYTES)
+                        {
+                            throw new IllegalStateException("Received " + received + " of " + UPLOAD_BYTES + " bytes");
+                        }
+                    }
+                    finally
+                    {
+                        IoUtils.safeClose(connection);
+                    }
+                    sent.get();
+                    return sent;
+                }
+            }
+        });
+        System.out.println(String.format(Locale.ROOT, "%-48s %,.0f MB/s, %,d bytes allocated per upload", name,
+            UPLOAD_BYTES / 1e6 / (result.meanMillis() / 1000), result.allocatedPerOp()));
+    }
+
+    private static Callable<Void> send(final Socket client)
+    {
+        return new Callable<Void>()
+        {
+            @Override
+            public Void call() throws IOException
+            {
+                byte[] chunk = new byte[CLIENT_WRITE_SIZE];
+                OutputStream out = client.getOutputStream();
+                for (long sent = 0; sent < UPLOAD_BYTES; sent += chunk.length)
+                {
+                    out.write(chunk, 0, (int) Math.min(chunk.length, UPLOAD_BYTES - sent));
+                }
+                out.flush();
+                client.shutdownOutput();
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,129 @@
+package io.undertow.servlet.extension;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.wildfly.extension.undertow.BenchmarkSupport;
+
+/**
+ * Compares the throughput of requests that spend their time blocked - a stand-in for JDBC and remote calls - when
+ * dispatched to a fixed pool sized like the default XNIO worker task pool and to a {@link VirtualThreadExecutor}. The
+ * last run blocks inside a {@code synchronized} block, which pins the virtual threads to their carriers and shows up
+ * in the pinning count.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark -Dtest=VirtualThreadDispatchBenchmark} on Java 21 or later; the virtual thread
+ * runs are skipped on older JVMs. {@code undertow.benchmark.requests} sets the requests per run (default 5000),
+ * {@code undertow.benchmark.latencyMillis} how long each blocks (default 20) and {@code undertow.benchmark.workerThreads}
+ * the pool size (default 16 per CPU, like the worker).
+ */
+public class VirtualThreadDispatchBenchmark
+{
+    private static final int REQUESTS = BenchmarkSupport.intProperty("undertow.benchmark.requests", 5000);
+
+    private static final int LATENCY_MILLIS = BenchmarkSupport.intProperty("undertow.benchmark.latencyMillis", 20);
+
+    private static final int WORKER_THREADS = BenchmarkSupport.intProperty("undertow.benchmark.workerThreads",
+        Runtime.getRuntime().availableProcessors() * 16);
+
+    @Test
+    public void workerPool() throws Exception
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(WORKER_THREADS);
+        try
+        {
+            run("worker pool of " + WORKER_THREADS, pool, false);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void virtualThreads() throws Exception
+    {
+        VirtualThreadExecutor executor = VirtualThreadExecutor.create("benchmark");
+        if (executor == null)
+        {
+            System.out.println("Java " + System.getProperty("java.version") + " has no virtual threads, skipped");
+            return;
+        }
+        run("virtual threads", executor, false);
+        System.out.println("peak in flight " + executor.getPeakInFlight());
+    }
+
+    @Test
+    public void pinnedVirtualThreads() throws Exception
+    {
+        VirtualThreadExecutor executor = VirtualThreadExecutor.create("benchmark");
+        if (executor == null)
+        {
+            System.out.println("Java " + System.getProperty("java.version") + " has no virtual threads, skipped");
+            return;
+        }
+        VirtualThreadPinningMonitor.start(Duration.ofMillis(LATENCY_MILLIS / 2));
+        long pinned = executor.getPinnedCount();
+        run("virtual threads, blocking while pinned", executor, true);
+        // JFR delivers events about a second after they happen
+        Thread.sleep(2000);
+        System.out.println("pinned events " + (executor.getPinnedCount() - pinned));
+    }
+
+    private static void run(String name, final Executor executor, final boolean pinned) throws Exception
+    {
+        BenchmarkSupport.Result result = BenchmarkSupport.measure(name, 1, 3, new Callable<Object>()
+        {
+            @Override
+            public Object call() throws Exception
+            {
+                final CountDownLatch done = new CountDownLatch(REQUESTS);
+                for (int i = 0; i < REQUESTS; i++)
+                {
+                    executor.execute(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            try
+                            {
+                                if (pinned)
+                                {
+                                    synchronized (this)
+                                    {
+                                        Thread.sleep(LATENCY_MILLIS);
+                                    }
+                                }
+                                else
+                                {
+                                    Thread.sleep(LATENCY_MILLIS);
+                                }
+                            }
+                            catch (InterruptedException e)
+                            {
+                                Thread.currentThread().interrupt();
+                            }
+                            finally
+                            {
+                                done.countDown();
+                            }
+                        }
+                    });
+                }
+                if (!done.await(10, TimeUnit.MINUTES))
+                {
+                    throw new IllegalStateException("Requests did not finish");
+                }
+                return done;
+            }
+        });
+        System.out.println(String.format(Locale.ROOT, "%-48s %,.0f requests/s", name,
+            REQUESTS / (result.meanMillis() / 1000)));
+    }
+}
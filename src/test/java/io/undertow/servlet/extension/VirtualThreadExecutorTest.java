@@ -0,0 +1,136 @@
+package io.undertow.servlet.extension;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * The virtual thread tests only run on Java 21 or later, and are skipped on older JVMs.
+ */
+public class VirtualThreadExecutorTest
+{
+    private static boolean hasVirtualThreads()
+    {
+        try
+        {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return false;
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) throws ReflectiveOperationException
+    {
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    /**
+     * Java 24 no longer pins virtual threads that block inside {@code synchronized}, see JEP 491.
+     */
+    private static boolean pinsInSynchronized()
+    {
+        String version = System.getProperty("java.specification.version");
+        return version.startsWith("1.") || Integer.parseInt(version) < 24;
+    }
+
+    @Test
+    public void createsNoExecutorWithoutVirtualThreads()
+    {
+        assumeFalse(hasVirtualThreads());
+        assertNull(VirtualThreadExecutor.create("test"));
+    }
+
+    @Test
+    public void runsEachTaskOnAVirtualThread() throws Exception
+    {
+        assumeTrue(hasVirtualThreads());
+        final VirtualThreadExecutor executor = VirtualThreadExecutor.create("test");
+        final AtomicBoolean virtual = new AtomicBoolean();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++)
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        virtual.set(isVirtual(Thread.currentThread()));
+                        release.await();
+                    }
+                    catch (ReflectiveOperationException | InterruptedException e)
+                    {
+                        virtual.set(false);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        assertEquals(2, executor.getInFlight());
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(virtual.get());
+        assertEquals(2, executor.getDispatchedCount());
+        assertEquals(2, executor.getPeakInFlight());
+        assertEquals(0, executor.getFailedStartCount());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getInFlight() > 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getInFlight());
+    }
+
+    @Test
+    public void countsBlockingWhilePinned() throws Exception
+    {
+        assumeTrue(hasVirtualThreads() && pinsInSynchronized());
+        assumeTrue(VirtualThreadPinningMonitor.start(Duration.ofMillis(10)));
+        VirtualThreadExecutor executor = VirtualThreadExecutor.create("test");
+        long pinned = executor.getPinnedCount();
+        final Object lock = new Object();
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (lock)
+                {
+                    try
+                    {
+                        Thread.sleep(100);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        // JFR delivers events about a second after they happen
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getPinnedCount() == pinned && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(100);
+        }
+        assertTrue(executor.getPinnedCount() > pinned);
+        assertTrue(executor.getPinnedMillis() >= 100);
+    }
+}
@@ -0,0 +1,118 @@
+package org.wildfly.extension.undertow;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Minimal timing and allocation measurement for the *Benchmark classes in this module. These are plain JUnit classes
+ * that surefire skips by default; run them with {@code mvn test -Pbenchmark} (or {@code -Dtest=...Benchmark}) and size
+ * them with the system properties each benchmark documents.
+ * <p>
+ * Allocation is read from the HotSpot per-thread allocation counter, so it only covers work done on the calling
+ * thread and reports -1 on JVMs that do not provide it.
+ */
+public final class BenchmarkSupport
+{
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /*
+     * Keeps the JIT from discarding the work being measured.
+     */
+    private static volatile Object sink;
+
+    private BenchmarkSupport()
+    {
+    }
+
+    public static int intProperty(String name, int defaultValue)
+    {
+        return Integer.getInteger(name, defaultValue);
+    }
+
+    public static Result measure(String name, int warmups, int iterations, Callable<?> task) throws Exception
+    {
+        for (int i = 0; i < warmups; i++)
+        {
+            sink = task.call();
+        }
+
+        long[] nanos = new long[iterations];
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < iterations; i++)
+        {
+            long start = System.nanoTime();
+            sink = task.call();
+            nanos[i] = System.nanoTime() - start;
+        }
+        long allocatedAfter = allocatedBytes();
+
+        long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : (allocatedAfter - allocatedBefore) / iterations;
+        Result result = new Result(name, nanos, allocated);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, or -1 if the JVM does not track it
+     */
+    public static long allocatedBytes()
+    {
+        if (THREADS instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+            {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public static final class Result
+    {
+        private final String name;
+
+        private final long[] sortedNanos;
+
+        private final long allocatedPerOp;
+
+        Result(String name, long[] nanos, long allocatedPerOp)
+        {
+            this.name = name;
+            this.sortedNanos = nanos.clone();
+            Arrays.sort(this.sortedNanos);
+            this.allocatedPerOp = allocatedPerOp;
+        }
+
+        public double meanMillis()
+        {
+            long total = 0;
+            for (long n : sortedNanos)
+            {
+                total += n;
+            }
+            return total / (double)sortedNanos.length / 1e6;
+        }
+
+        public double percentileMillis(double percentile)
+        {
+            int index = (int)Math.ceil(percentile / 100.0 * sortedNanos.length) - 1;
+            return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1e6;
+        }
+
+        public long allocatedPerOp()
+        {
+            return allocatedPerOp;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.ROOT, "%-48s n=%-5d mean=%9.3f ms  p50=%9.3f ms  p99=%9.3f ms  alloc/op=%,d B",
+                name, sortedNanos.length, meanMillis(), percentileMillis(50), percentileMillis(99), allocatedPerOp);
+        }
+    }
+}
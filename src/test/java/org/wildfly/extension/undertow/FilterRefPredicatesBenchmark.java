@@ -0,0 +1,104 @@
+package org.wildfly.extension.undertow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import io.undertow.predicate.Predicate;
+import io.undertow.predicate.PredicateParser;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import org.junit.Test;
+import org.wildfly.extension.undertow.filters.FilterRef;
+import org.wildfly.extension.undertow.filters.FilterRefPredicates;
+
+/**
+ * Compares testing the filter-ref predicates of a location one by one, as Undertow parsed them, with testing them as
+ * {@link FilterRefPredicates} compiles them, on the predicates {@link SubsystemConfigGenerator} puts in the generated
+ * configuration.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark}. The size is controlled by:
+ * <ul>
+ * <li>{@code undertow.benchmark.filterRefs} filter-refs in the location's chain (default 8)
+ * <li>{@code undertow.benchmark.requests} requests per iteration (default 10000)
+ * <li>{@code undertow.benchmark.iterations} measured iterations (default 20, plus as many warm-ups)
+ * </ul>
+ * Each request is a new exchange that goes through every filter-ref of the chain, as the handlers of a chain whose
+ * filters all pass the request on would test it.
+ */
+public class FilterRefPredicatesBenchmark
+{
+    private static final int ITERATIONS = BenchmarkSupport.intProperty("undertow.benchmark.iterations", 20);
+
+    private static final int REQUESTS = BenchmarkSupport.intProperty("undertow.benchmark.requests", 10000);
+
+    private static final HttpString CLIENT = new HttpString("X-EWB-Client");
+
+    private static final String[] PATHS = {"/ewb/h1/l2/entity/42", "/ewb/services/2/search", "/ewb/static/app.js",
+        "/ewb/static/theme.css", "/ewb/reports/1234/export", "/ewb/h1/l3/entity/7"};
+
+    private static final HttpString[] METHODS = {Methods.GET, Methods.POST};
+
+    private static final String[] CLIENTS = {null, "integration3", "integration8"};
+
+    @Test
+    public void evaluate() throws Exception
+    {
+        int filterRefs = BenchmarkSupport.intProperty("undertow.benchmark.filterRefs", 8);
+        List<FilterRef> filters = new ArrayList<>(filterRefs);
+        for (int i = 0; i < filterRefs; i++)
+        {
+            String predicate = SubsystemConfigGenerator.predicate(1, 2, i);
+            filters.add(new FilterRef(predicate, PredicateParser.parse(predicate, getClass().getClassLoader()), 1));
+        }
+        final List<Predicate> interpreted = new ArrayList<>(filterRefs);
+        for (FilterRef filter : filters)
+        {
+            interpreted.add(filter.getPredicate());
+        }
+        final List<Predicate> compiled = FilterRefPredicates.compile(filters);
+
+        assertEquals(requests(interpreted), requests(compiled));
+
+        String chain = filterRefs + " filter-refs, " + REQUESTS + " requests";
+        BenchmarkSupport.Result before = BenchmarkSupport.measure("interpreted (" + chain + ")", ITERATIONS, ITERATIONS,
+            () -> requests(interpreted));
+        BenchmarkSupport.Result after = BenchmarkSupport.measure("compiled (" + chain + ")", ITERATIONS, ITERATIONS,
+            () -> requests(compiled));
+        System.out.printf("    compiled takes %.0f%% of the interpreted time%n", 100 * after.meanMillis()
+            / before.meanMillis());
+    }
+
+    /*
+     * Sends the requests through the chain and counts the filter-refs they matched
+     */
+    private static int requests(List<Predicate> chain)
+    {
+        int matched = 0;
+        for (int r = 0; r < REQUESTS; r++)
+        {
+            HttpServerExchange exchange = new HttpServerExchange(null);
+            String path = PATHS[r % PATHS.length];
+            exchange.setRequestURI(path);
+            exchange.setRelativePath(path);
+            exchange.setRequestMethod(METHODS[r % METHODS.length]);
+            String client = CLIENTS[r % CLIENTS.length];
+            if (client != null)
+            {
+                exchange.getRequestHeaders().put(CLIENT, client);
+            }
+            exchange.putAttachment(Predicate.PREDICATE_CONTEXT, new HashMap<String, Object>());
+            for (Predicate predicate : chain)
+            {
+                if (predicate.resolve(exchange))
+                {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,562 @@
+package org.wildfly.extension.undertow;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xnio.BufferAllocator;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.ChannelListener;
+import org.xnio.ChannelListeners;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Pool;
+import org.xnio.Sequence;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+import org.xnio.channels.AcceptingChannel;
+import org.xnio.ssl.JsseXnioSsl;
+import org.xnio.ssl.SslConnection;
+
+import io.undertow.UndertowOptions;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.ProxyPeerAddressHandler;
+import io.undertow.server.handlers.SSLHeaderHandler;
+import io.undertow.server.protocol.http.HttpOpenListener;
+import io.undertow.servlet.Servlets;
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.DeploymentManager;
+import io.undertow.servlet.extension.SslZeroReadFixServletExtension;
+
+/**
+ * Drives real HTTPS traffic through an https-listener started in-process, to show how a listener setting changes
+ * throughput, latency and CPU before it goes out in a release.
+ * <p>
+ * The listener is put together the way {@link HttpsListenerService#startListening} does it - a {@link JsseXnioSsl}
+ * connection server handing connections to Undertow's {@link HttpOpenListener} - with a self-signed key pair that
+ * {@code keytool} generates into a temp directory. Behind it is a servlet deployment with the
+ * {@link SslZeroReadFixServletExtension} installed, as in production. Certificate-forwarding and
+ * proxy-address-forwarding add the {@link SSLHeaderHandler} and {@link ProxyPeerAddressHandler} in front, as the
+ * listener attributes do, and their scenarios send the headers a front-end proxy would.
+ * <p>
+ * The load generator is a pool of blocking TLS clients in the same JVM. Each scenario reports requests per second,
+ * latency percentiles measured by the clients and the CPU the server spent per request: the process CPU time less that
+ * of the client threads. The new-connection scenario lets the clients resume TLS sessions, as browsers do.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark -Dtest=HttpsListenerBenchmark}. {@code undertow.benchmark.requests} sets the
+ * requests per scenario (default 20000), {@code undertow.benchmark.clients} the concurrent clients (default 16),
+ * {@code undertow.benchmark.uploads} the uploads of the large upload scenario (default 200) and
+ * {@code undertow.benchmark.uploadKilobytes} their size (default 10240).
+ */
+public class HttpsListenerBenchmark
+{
+    private static final int REQUESTS = BenchmarkSupport.intProperty("undertow.benchmark.requests", 20000);
+
+    private static final int CLIENTS = BenchmarkSupport.intProperty("undertow.benchmark.clients", 16);
+
+    private static final int UPLOADS = BenchmarkSupport.intProperty("undertow.benchmark.uploads", 200);
+
+    private static final long UPLOAD_BYTES = BenchmarkSupport.intProperty("undertow.benchmark.uploadKilobytes", 10240)
+        * 1024L;
+
+    private static final char[] PASSWORD = "benchmark".toCharArray();
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final byte[] UPLOAD_CHUNK = new byte[64 * 1024];
+
+    private static Path directory;
+
+    private static SSLContext serverContext;
+
+    private static SSLSocketFactory clientSockets;
+
+    private static String forwardedCertificate;
+
+    private static XnioWorker worker;
+
+    private static DeploymentManager deployment;
+
+    private static HttpHandler servlets;
+
+    private static ExecutorService clientThreads;
+
+    @BeforeClass
+    public static void start() throws Exception
+    {
+        directory = Files.createTempDirectory("https-benchmark");
+        KeyStore keyStore = selfSignedKeyStore(directory.resolve("benchmark.p12"));
+
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trustManagers.getTrustManagers(), null);
+        clientSockets = clientContext.getSocketFactory();
+
+        // on one line, as a front-end proxy forwards it in a header
+        X509Certificate certificate = (X509Certificate)keyStore.getCertificate("benchmark");
+        forwardedCertificate = "-----BEGIN CERTIFICATE----- "
+            + Base64.getEncoder().encodeToString(certificate.getEncoded()) + " -----END CERTIFICATE-----";
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        worker = Xnio.getInstance().createWorker(OptionMap.builder()
+            .set(Options.WORKER_IO_THREADS, processors)
+            .set(Options.WORKER_TASK_CORE_THREADS, processors * 16)
+            .set(Options.WORKER_TASK_MAX_THREADS, processors * 16)
+            .getMap());
+
+        DeploymentInfo info = Servlets.deployment()
+            .setClassLoader(HttpsListenerBenchmark.class.getClassLoader())
+            .setContextPath("/")
+            .setDeploymentName("benchmark.war")
+            .addServletExtension(new SslZeroReadFixServletExtension())
+            .addServlet(Servlets.servlet("benchmark", BenchmarkServlet.class).addMapping("/*"));
+        deployment = Servlets.defaultContainer().addDeployment(info);
+        deployment.deploy();
+        servlets = deployment.start();
+
+        clientThreads = Executors.newFixedThreadPool(CLIENTS);
+    }
+
+    @AfterClass
+    public static void stop() throws Exception
+    {
+        clientThreads.shutdownNow();
+        deployment.stop();
+        deployment.undeploy();
+        worker.shutdownNow();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+        {
+            for (Path file : files)
+            {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void keepAlive() throws Exception
+    {
+        run("keep-alive", servlets, true, get(""), REQUESTS);
+    }
+
+    @Test
+    public void newConnectionPerRequest() throws Exception
+    {
+        run("new connection per request", servlets, false, get(""), REQUESTS);
+    }
+
+    @Test
+    public void certificateForwarding() throws Exception
+    {
+        String headers = "SSL_CLIENT_CERT: " + forwardedCertificate + "\r\n"
+            + "SSL_CIPHER: TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256\r\n"
+            + "SSL_SESSION_ID: 0123456789abcdef0123456789abcdef\r\n";
+        run("certificate-forwarding", new SSLHeaderHandler(servlets), true, get(headers), REQUESTS);
+    }
+
+    @Test
+    public void proxyAddressForwarding() throws Exception
+    {
+        String headers = "X-Forwarded-For: 203.0.113.7, 198.51.100.2\r\nX-Forwarded-Proto: https\r\n";
+        run("proxy-address-forwarding", new ProxyPeerAddressHandler(servlets), true, get(headers), REQUESTS);
+    }
+
+    @Test
+    public void largeUploads() throws Exception
+    {
+        final byte[] head = ("POST /upload HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/octet-stream\r\n"
+            + "Content-Length: " + UPLOAD_BYTES + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        Request upload = new Request()
+        {
+            @Override
+            public void write(OutputStream out, boolean keepAlive) throws IOException
+            {
+                out.write(head);
+                for (long sent = 0; sent < UPLOAD_BYTES; sent += UPLOAD_CHUNK.length)
+                {
+                    out.write(UPLOAD_CHUNK, 0, (int)Math.min(UPLOAD_CHUNK.length, UPLOAD_BYTES - sent));
+                }
+                out.flush();
+            }
+        };
+        Run run = run(String.format(Locale.ROOT, "uploads of %,d KiB", UPLOAD_BYTES / 1024), servlets, true, upload,
+            UPLOADS);
+        System.out.println(String.format(Locale.ROOT, "    %.1f MiB/s", run.throughput() * UPLOAD_BYTES / 1024 / 1024));
+    }
+
+    private static Run run(String name, HttpHandler handler, boolean keepAlive, Request request, int requests)
+        throws Exception
+    {
+        AcceptingChannel<SslConnection> server = listen(handler);
+        try
+        {
+            InetSocketAddress address = server.getLocalAddress(InetSocketAddress.class);
+            System.out.println(name + ": " + new String(exchange(address, request, false).body, StandardCharsets.UTF_8));
+            drive(address, keepAlive, request, Math.max(CLIENTS, requests / 10));
+            Run run = drive(address, keepAlive, request, requests);
+            System.out.println(run.report(name));
+            return run;
+        }
+        finally
+        {
+            IoUtils.safeClose(server);
+        }
+    }
+
+    /*
+     * The connection server of an https-listener, see HttpsListenerService#startListening
+     */
+    private static AcceptingChannel<SslConnection> listen(HttpHandler handler) throws IOException
+    {
+        Pool<ByteBuffer> buffers = new ByteBufferSlicePool(BufferAllocator.DIRECT_BYTE_BUFFER_ALLOCATOR, 16 * 1024,
+            16 * 1024 * 256);
+        HttpOpenListener openListener = new HttpOpenListener(buffers,
+            OptionMap.create(UndertowOptions.BUFFER_PIPELINED_DATA, false));
+        openListener.setRootHandler(handler);
+        ChannelListener<AcceptingChannel<SslConnection>> acceptListener = ChannelListeners
+            .openListenerAdapter(openListener);
+
+        OptionMap options = OptionMap.builder()
+            .set(Options.USE_DIRECT_BUFFERS, true)
+            .set(Options.TCP_NODELAY, true)
+            .set(Options.SSL_ENABLED_PROTOCOLS, Sequence.of("TLSv1.2"))
+            .getMap();
+        AcceptingChannel<SslConnection> server = new JsseXnioSsl(worker.getXnio(), options, serverContext)
+            .createSslConnectionServer(worker, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                acceptListener, options);
+        server.resumeAccepts();
+        return server;
+    }
+
+    private static Run drive(final InetSocketAddress address, final boolean keepAlive, final Request request,
+        int requests) throws Exception
+    {
+        final int perClient = Math.max(1, requests / CLIENTS);
+        final long[] nanos = new long[perClient * CLIENTS];
+        final AtomicLong clientCpuNanos = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        List<Callable<Void>> clients = new ArrayList<>();
+        for (int c = 0; c < CLIENTS; c++)
+        {
+            final int offset = c * perClient;
+            clients.add(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    long cpuStart = THREADS.getCurrentThreadCpuTime();
+                    SSLSocket socket = null;
+                    try
+                    {
+                        for (int i = 0; i < perClient; i++)
+                        {
+                            long start = System.nanoTime();
+                            if (socket == null)
+                            {
+                                socket = connect(address);
+                            }
+                            Response response = exchange(socket, request, keepAlive);
+                            if (!keepAlive || response.close)
+                            {
+                                socket.close();
+                                socket = null;
+                            }
+                            nanos[offset + i] = System.nanoTime() - start;
+                            if (response.status != 200)
+                            {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        IoUtils.safeClose(socket);
+                        clientCpuNanos.addAndGet(THREADS.getCurrentThreadCpuTime() - cpuStart);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        long processCpuStart = processCpuNanos();
+        long start = System.nanoTime();
+        for (Future<Void> client : clientThreads.invokeAll(clients))
+        {
+            client.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        long serverCpu = processCpuStart < 0 ? -1 : processCpuNanos() - processCpuStart - clientCpuNanos.get();
+        return new Run(nanos, elapsed, serverCpu, errors.get());
+    }
+
+    private static SSLSocket connect(InetSocketAddress address) throws IOException
+    {
+        SSLSocket socket = (SSLSocket)clientSockets.createSocket(address.getAddress(), address.getPort());
+        socket.setTcpNoDelay(true);
+        socket.setEnabledProtocols(new String[] {"TLSv1.2"});
+        return socket;
+    }
+
+    private static Response exchange(InetSocketAddress address, Request request, boolean keepAlive) throws IOException
+    {
+        try (SSLSocket socket = connect(address))
+        {
+            return exchange(socket, request, keepAlive);
+        }
+    }
+
+    private static Response exchange(SSLSocket socket, Request request, boolean keepAlive) throws IOException
+    {
+        request.write(socket.getOutputStream(), keepAlive);
+        return Response.read(new BufferedInputStream(socket.getInputStream(), 1024));
+    }
+
+    private static Request get(final String headers)
+    {
+        final byte[] keepAlive = ("GET /hello HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+        final byte[] close = ("GET /hello HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n" + headers + "\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+        return new Request()
+        {
+            @Override
+            public void write(OutputStream out, boolean reuse) throws IOException
+            {
+                out.write(reuse ? keepAlive : close);
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * @return the CPU time of the whole JVM, or -1 if the platform does not report it
+     */
+    private static long processCpuNanos()
+    {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+        {
+            return ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static KeyStore selfSignedKeyStore(Path file) throws Exception
+    {
+        String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "benchmark", "-keyalg", "RSA",
+            "-keysize", "2048", "-validity", "2", "-dname", "CN=localhost", "-storetype", "PKCS12", "-keystore",
+            file.toString(), "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+            .redirectErrorStream(true)
+            .redirectOutput(directory.resolve("keytool.log").toFile())
+            .start();
+        if (process.waitFor() != 0)
+        {
+            throw new IOException("keytool could not generate a key pair, see " + directory.resolve("keytool.log"));
+        }
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(file))
+        {
+            keyStore.load(in, PASSWORD);
+        }
+        return keyStore;
+    }
+
+    private interface Request
+    {
+        void write(OutputStream out, boolean keepAlive) throws IOException;
+    }
+
+    private static final class Response
+    {
+        final int status;
+
+        final boolean close;
+
+        final byte[] body;
+
+        private Response(int status, boolean close, byte[] body)
+        {
+            this.status = status;
+            this.close = close;
+            this.body = body;
+        }
+
+        /*
+         * Just enough HTTP/1.1 for the benchmark servlet's responses, which always have a Content-Length
+         */
+        static Response read(InputStream in) throws IOException
+        {
+            String statusLine = line(in);
+            int status = Integer.parseInt(statusLine.substring(9, 12));
+            long length = 0;
+            boolean close = false;
+            for (String header = line(in); !header.isEmpty(); header = line(in))
+            {
+                String lower = header.toLowerCase(Locale.ROOT);
+                if (lower.startsWith("content-length:"))
+                {
+                    length = Long.parseLong(header.substring(15).trim());
+                }
+                else if (lower.startsWith("connection:") && lower.contains("close"))
+                {
+                    close = true;
+                }
+            }
+            byte[] body = new byte[(int)length];
+            int read = 0;
+            while (read < body.length)
+            {
+                int n = in.read(body, read, body.length - read);
+                if (n < 0)
+                {
+                    throw new IOException("Connection closed in the response body");
+                }
+                read += n;
+            }
+            return new Response(status, close, body);
+        }
+
+        private static String line(InputStream in) throws IOException
+        {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+            for (int b = in.read(); b != '\n'; b = in.read())
+            {
+                if (b < 0)
+                {
+                    throw new IOException("Connection closed in the response head");
+                }
+                if (b != '\r')
+                {
+                    line.write(b);
+                }
+            }
+            return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static final class Run
+    {
+        private final BenchmarkSupport.Result latencies;
+
+        private final long requests;
+
+        private final long elapsedNanos;
+
+        private final long serverCpuNanos;
+
+        private final long errors;
+
+        Run(long[] nanos, long elapsedNanos, long serverCpuNanos, long errors)
+        {
+            this.latencies = new BenchmarkSupport.Result("", nanos, -1);
+            this.requests = nanos.length;
+            this.elapsedNanos = elapsedNanos;
+            this.serverCpuNanos = serverCpuNanos;
+            this.errors = errors;
+        }
+
+        double throughput()
+        {
+            return requests * 1e9 / elapsedNanos;
+        }
+
+        String report(String name)
+        {
+            return String.format(Locale.ROOT,
+                "%-36s n=%-6d %,10.0f req/s  p50=%8.3f ms  p99=%8.3f ms  p99.9=%8.3f ms  server cpu/req=%,8.1f us  errors=%d",
+                name, requests, throughput(), latencies.percentileMillis(50), latencies.percentileMillis(99),
+                latencies.percentileMillis(99.9), serverCpuNanos < 0 ? -1 : serverCpuNanos / 1e3 / requests, errors);
+        }
+    }
+
+    /**
+     * Answers GETs with what the request looked like after the listener's handlers, and uploads with the number of
+     * bytes read.
+     */
+    public static final class BenchmarkServlet extends HttpServlet
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+        {
+            Object certificates = req.getAttribute("javax.servlet.request.X509Certificate");
+            String subject = "none";
+            if (certificates instanceof Certificate[] && ((Certificate[])certificates).length > 0)
+            {
+                subject = ((X509Certificate)((Certificate[])certificates)[0]).getSubjectX500Principal().getName();
+            }
+            String body = "remote=" + req.getRemoteAddr() + " scheme=" + req.getScheme() + " certificate=" + subject;
+            send(resp, body);
+        }
+
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+        {
+            byte[] buffer = new byte[8192];
+            long read = 0;
+            try (InputStream in = req.getInputStream())
+            {
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+                {
+                    read += n;
+                }
+            }
+            send(resp, "read=" + read);
+        }
+
+        private static void send(HttpServletResponse resp, String body) throws IOException
+        {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            resp.setContentType("text/plain");
+            resp.setContentLength(bytes.length);
+            resp.getOutputStream().write(bytes);
+        }
+    }
+}
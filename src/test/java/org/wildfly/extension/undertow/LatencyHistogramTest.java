@@ -0,0 +1,54 @@
+package org.wildfly.extension.undertow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest
+{
+    private static long millis(double millis)
+    {
+        return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void countsEachSampleInTheFirstBucketThatHoldsIt()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(millis(0.1));
+        histogram.record(millis(0.2));
+        histogram.record(millis(3));
+        histogram.record(millis(60000));
+
+        long[] counts = histogram.getBucketCounts();
+        assertEquals(LatencyHistogram.getBucketBoundsMillis().length + 1, counts.length);
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(1, counts[5]);
+        assertEquals(1, counts[counts.length - 1]);
+        assertEquals(5, histogram.getCount());
+        assertEquals(60000, histogram.getMaxMillis(), 0.001);
+        assertEquals((0.1 + 0.2 + 3 + 60000) / 5, histogram.getMeanMillis(), 0.001);
+    }
+
+    @Test
+    public void estimatesPercentilesFromTheBucketBounds()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMillis(99), 0);
+        for (int i = 0; i < 98; i++)
+        {
+            histogram.record(millis(0.8));
+        }
+        histogram.record(millis(40));
+        histogram.record(millis(12345));
+
+        assertEquals(1, histogram.getPercentileMillis(50), 0);
+        assertEquals(1, histogram.getPercentileMillis(98), 0);
+        assertEquals(50, histogram.getPercentileMillis(99), 0);
+        assertEquals(12345, histogram.getPercentileMillis(100), 0.001);
+    }
+}
@@ -0,0 +1,86 @@
+package org.wildfly.extension.undertow;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import org.jboss.as.controller.AttributeDefinition;
+import org.jboss.as.controller.PersistentResourceDefinition;
+import org.junit.Test;
+import org.wildfly.extension.undertow.filters.FilterDefinitions;
+import org.wildfly.extension.undertow.handlers.FileHandler;
+import org.wildfly.extension.undertow.handlers.ReverseProxyHandler;
+
+public class LocalDescriptionsTest
+{
+    private static final ResourceBundle BUNDLE = ResourceBundle.getBundle(
+        "org.wildfly.extension.undertow.LocalDescriptions", Locale.ENGLISH, UndertowExtension.class.getClassLoader());
+
+    private static void assertDescribed(String prefix, PersistentResourceDefinition definition)
+    {
+        assertNotNull(prefix, BUNDLE.getString(prefix));
+        assertNotNull(prefix + ".add", BUNDLE.getString(prefix + ".add"));
+        assertNotNull(prefix + ".remove", BUNDLE.getString(prefix + ".remove"));
+        for (AttributeDefinition attribute : definition.getAttributes())
+        {
+            String key = prefix + "." + attribute.getName();
+            assertTrue(key, BUNDLE.containsKey(key));
+        }
+    }
+
+    @Test
+    public void isThePatchBundleOverTheUpstreamOne()
+    {
+        assertTrue(BUNDLE instanceof LocalDescriptions);
+        assertTrue(BUNDLE.containsKey("undertow.filter.gzip"));
+        assertTrue(BUNDLE.containsKey("undertow.filter.metrics-endpoint"));
+    }
+
+    @Test
+    public void describesEveryFilter()
+    {
+        for (PersistentResourceDefinition filter : FilterDefinitions.INSTANCE.getChildren())
+        {
+            assertDescribed("undertow.filter." + filter.getPathElement().getKey(), filter);
+        }
+    }
+
+    @Test
+    public void describesThePatchedHandlersListenerAndSettings()
+    {
+        assertDescribed("undertow.handler.file", FileHandler.INSTANCE);
+        assertDescribed("undertow.handler.reverse-proxy", ReverseProxyHandler.INSTANCE);
+        for (AttributeDefinition attribute : HttpsListenerResourceDefinition.INSTANCE.getAttributes())
+        {
+            String key = "undertow.listener." + attribute.getName();
+            assertTrue(key, BUNDLE.containsKey(key));
+        }
+        for (AttributeDefinition attribute : BufferCacheDefinition.INSTANCE.getAttributes())
+        {
+            String key = "undertow.buffer-cache." + attribute.getName();
+            assertTrue(key, BUNDLE.containsKey(key));
+        }
+        for (AttributeDefinition attribute : AccessLogDefinition.INSTANCE.getAttributes())
+        {
+            String key = "undertow.access-log." + attribute.getName();
+            assertTrue(key, BUNDLE.containsKey(key));
+        }
+        for (AttributeDefinition attribute : PersistentSessionsDefinition.INSTANCE.getAttributes())
+        {
+            String key = "undertow.setting.persistent-sessions." + attribute.getName();
+            assertTrue(key, BUNDLE.containsKey(key));
+        }
+        for (AttributeDefinition attribute : WebsocketsDefinition.INSTANCE.getAttributes())
+        {
+            String key = "undertow.setting.websockets." + attribute.getName();
+            assertTrue(key, BUNDLE.containsKey(key));
+        }
+        for (AttributeDefinition attribute : ServletContainerDefinition.INSTANCE.getAttributes())
+        {
+            String key = "undertow.servlet-container." + attribute.getName();
+            assertTrue(key, BUNDLE.containsKey(key));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.wildfly.extension.undertow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PrometheusTextFormatTest
+{
+    @Test
+    public void writesCountersGaugesAndCumulativeBuckets()
+    {
+        ListenerMetrics metrics = new ListenerMetrics("default-server", "https", "https");
+        metrics.bytesReceived().add(100);
+        metrics.bytesSent().add(2500);
+        for (int i = 0; i < 3; i++)
+        {
+            metrics.requestStarted();
+        }
+        metrics.requestCompleted(200, TimeUnit.MICROSECONDS.toNanos(300));
+        metrics.requestCompleted(404, TimeUnit.MILLISECONDS.toNanos(20));
+
+        String text = PrometheusTextFormat.write(Arrays.asList(metrics));
+
+        assertTrue(text.contains("# TYPE undertow_listener_requests_total counter\n"));
+        assertTrue(text.contains("undertow_listener_requests_total{server=\"default-server\",listener=\"https\",protocol=\"https\"} 2\n"));
+        assertTrue(text.contains("undertow_listener_requests_in_flight{server=\"default-server\",listener=\"https\",protocol=\"https\"} 1\n"));
+        assertTrue(text.contains("undertow_listener_received_bytes_total{server=\"default-server\",listener=\"https\",protocol=\"https\"} 100\n"));
+        assertTrue(text.contains("undertow_listener_sent_bytes_total{server=\"default-server\",listener=\"https\",protocol=\"https\"} 2500\n"));
+        assertTrue(text.contains("undertow_listener_responses_total{server=\"default-server\",listener=\"https\",protocol=\"https\",status=\"2xx\"} 1\n"));
+        assertTrue(text.contains("undertow_listener_responses_total{server=\"default-server\",listener=\"https\",protocol=\"https\",status=\"4xx\"} 1\n"));
+        assertTrue(text.contains("undertow_listener_responses_total{server=\"default-server\",listener=\"https\",protocol=\"https\",status=\"5xx\"} 0\n"));
+
+        String bucket = "undertow_listener_request_duration_seconds_bucket{server=\"default-server\",listener=\"https\",protocol=\"https\",le=\"";
+        assertTrue(text.contains(bucket + "0.0001\"} 0\n"));
+        assertTrue(text.contains(bucket + "0.0005\"} 1\n"));
+        assertTrue(text.contains(bucket + "0.01\"} 1\n"));
+        assertTrue(text.contains(bucket + "0.025\"} 2\n"));
+        assertTrue(text.contains(bucket + "10\"} 2\n"));
+        assertTrue(text.contains(bucket + "+Inf\"} 2\n"));
+        assertTrue(text.contains("undertow_listener_request_duration_seconds_sum{server=\"default-server\",listener=\"https\",protocol=\"https\"} 0.0203\n"));
+        assertTrue(text.contains("undertow_listener_request_duration_seconds_count{server=\"default-server\",listener=\"https\",protocol=\"https\"} 2\n"));
+    }
+
+    @Test
+    public void escapesLabelValues()
+    {
+        ListenerMetrics metrics = new ListenerMetrics("default-server", "a\"b\\c", "https");
+
+        String text = PrometheusTextFormat.write(Arrays.asList(metrics));
+
+        assertTrue(text.contains("undertow_listener_requests_total{server=\"default-server\",listener=\"a\\\"b\\\\c\",protocol=\"https\"} 0\n"));
+    }
+
+    @Test
+    public void writesNumbersWithoutExponents()
+    {
+        assertEquals("0.0001", PrometheusTextFormat.seconds(0.1));
+        assertEquals("0.00025", PrometheusTextFormat.seconds(0.25));
+        assertEquals("10", PrometheusTextFormat.seconds(10000));
+        assertEquals("0", PrometheusTextFormat.seconds(0));
+    }
+}
@@ -0,0 +1,98 @@
+package org.wildfly.extension.undertow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ResidentEntriesTest
+{
+    private static final Comparator<Aged> OLDEST_FIRST = new Comparator<Aged>()
+    {
+        @Override
+        public int compare(Aged a, Aged b)
+        {
+            return Integer.compare(a.age, b.age);
+        }
+    };
+
+    private static final class Aged extends ResidentEntries.Entry
+    {
+        final int age;
+
+        Aged(int age)
+        {
+            this.age = age;
+        }
+    }
+
+    @Test
+    public void picksTheExactVictimAmongFewEntries()
+    {
+        ResidentEntries<Aged> resident = new ResidentEntries<>();
+        assertNull(resident.sample(OLDEST_FIRST));
+        Aged oldest = new Aged(1);
+        for (int age = ResidentEntries.SAMPLE_SIZE; age > 1; age--)
+        {
+            resident.add(new Aged(age));
+        }
+        resident.add(oldest);
+        for (int i = 0; i < 100; i++)
+        {
+            assertSame(oldest, resident.sample(OLDEST_FIRST));
+        }
+    }
+
+    @Test
+    public void keepsTrackOfEntriesRemovedFromTheMiddle()
+    {
+        ResidentEntries<Aged> resident = new ResidentEntries<>();
+        List<Aged> added = new ArrayList<>();
+        for (int age = 0; age < 1000; age++)
+        {
+            Aged entry = new Aged(age);
+            added.add(entry);
+            resident.add(entry);
+        }
+        for (int age = 0; age < 1000; age += 2)
+        {
+            resident.remove(added.get(age));
+            // removing twice is harmless
+            resident.remove(added.get(age));
+        }
+        assertEquals(500, resident.size());
+        for (int i = 0; i < 1000; i++)
+        {
+            assertTrue("only resident entries are sampled", resident.sample(OLDEST_FIRST).age % 2 == 1);
+        }
+        for (int age = 1; age < 1000; age += 2)
+        {
+            resident.remove(added.get(age));
+        }
+        assertEquals(0, resident.size());
+        assertNull(resident.sample(OLDEST_FIRST));
+    }
+
+    @Test
+    public void samplesTowardsTheOldEntriesOfALargeSet()
+    {
+        ResidentEntries<Aged> resident = new ResidentEntries<>();
+        for (int age = 0; age < 10000; age++)
+        {
+            resident.add(new Aged(age));
+        }
+        long total = 0;
+        for (int i = 0; i < 1000; i++)
+        {
+            total += resident.sample(OLDEST_FIRST).age;
+        }
+        // the lowest of 8 uniform picks averages a ninth of the range
+        assertTrue("average victim age " + total / 1000, total / 1000 < 2000);
+    }
+}
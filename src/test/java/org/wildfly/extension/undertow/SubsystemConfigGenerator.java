@@ -0,0 +1,277 @@
+package org.wildfly.extension.undertow;
+
+/**
+ * Generates undertow subsystem XML of a configurable size, shaped like the undertow section of standalone-ewb-ha.xml
+ * but with as many hosts, locations, filter-refs, listeners and reverse-proxy hosts as a test asks for.
+ * <p>
+ * Attributes are only given values other than their defaults, which the marshaller leaves out when it rewrites the
+ * subsystem. The 1.1 flavour only uses attributes that the 1.1 schema knows about so that the same generator can
+ * drive both {@link UndertowSubsystemParser_1_1} and {@link UndertowSubsystemParser_1_2}.
+ */
+public class SubsystemConfigGenerator
+{
+    public static final String NAMESPACE_1_1 = "urn:jboss:domain:undertow:1.1";
+
+    public static final String NAMESPACE_1_2 = "urn:jboss:domain:undertow:1.2";
+
+    private final String namespace;
+
+    private int hosts = 1;
+
+    private int locationsPerHost = 1;
+
+    private int filterRefsPerLocation = 1;
+
+    private int listeners = 1;
+
+    private int reverseProxyHosts = 1;
+
+    public SubsystemConfigGenerator(String namespace)
+    {
+        this.namespace = namespace;
+    }
+
+    public SubsystemConfigGenerator hosts(int hosts)
+    {
+        this.hosts = hosts;
+        return this;
+    }
+
+    public SubsystemConfigGenerator locationsPerHost(int locationsPerHost)
+    {
+        this.locationsPerHost = locationsPerHost;
+        return this;
+    }
+
+    public SubsystemConfigGenerator filterRefsPerLocation(int filterRefsPerLocation)
+    {
+        this.filterRefsPerLocation = filterRefsPerLocation;
+        return this;
+    }
+
+    public SubsystemConfigGenerator listeners(int listeners)
+    {
+        this.listeners = listeners;
+        return this;
+    }
+
+    public SubsystemConfigGenerator reverseProxyHosts(int reverseProxyHosts)
+    {
+        this.reverseProxyHosts = reverseProxyHosts;
+        return this;
+    }
+
+    public String getNamespace()
+    {
+        return namespace;
+    }
+
+    /**
+     * Names of the filters the generated config defines: the four filters EWB ships with, plus one response-header
+     * filter for every further filter-ref a location is asked to carry.
+     */
+    String[] filterNames()
+    {
+        String[] names = new String[Math.max(4, filterRefsPerLocation)];
+        names[0] = "server-header";
+        names[1] = "x-powered-by-header";
+        names[2] = "gzip-filter";
+        names[3] = "limit-connections";
+        for (int i = 4; i < names.length; i++)
+        {
+            names[i] = "header-" + i;
+        }
+        return names;
+    }
+
+    /**
+     * The predicate attached to filter-ref {@code index} of a location, cycling through the predicate shapes found in
+     * the EWB configuration (path, path-prefix, path-suffix, method and header tests).
+     */
+    static String predicate(int host, int location, int index)
+    {
+        switch (index % 5)
+        {
+        case 0:
+            return "path-prefix['/ewb/h" + host + "/l" + location + "']";
+        case 1:
+            return "path-suffix['.js'] or path-suffix['.css']";
+        case 2:
+            return "method[GET] and path-prefix['/ewb/services/" + location + "']";
+        case 3:
+            return "equals[%{i,X-EWB-Client}, 'integration" + index + "']";
+        default:
+            return "regex[pattern='/ewb/reports/[0-9]+/export', value=%U, full-match=true]";
+        }
+    }
+
+    public String generate()
+    {
+        boolean current = NAMESPACE_1_2.equals(namespace);
+        StringBuilder xml = new StringBuilder(1024 * (hosts * locationsPerHost + listeners + reverseProxyHosts + 16));
+
+        xml.append("<subsystem xmlns=\"").append(namespace).append("\">\n");
+        xml.append("    <buffer-cache name=\"default\" buffer-size=\"4096\" buffers-per-region=\"512\" max-regions=\"20\"");
+        if (current)
+        {
+            xml.append(" eviction-policy=\"tinylfu\"");
+        }
+        xml.append("/>\n");
+        xml.append("    <server name=\"default-server\" default-host=\"host-0\">\n");
+
+        for (int i = 0; i < listeners; i++)
+        {
+            xml.append("        <http-listener name=\"http-").append(i).append("\" socket-binding=\"http-").append(i)
+                    .append("\" proxy-address-forwarding=\"true\" max-post-size=\"104857600\"");
+            if (current)
+            {
+                xml.append(" read-timeout=\"300000\" metrics-enabled=\"true\"");
+            }
+            xml.append("/>\n");
+            xml.append("        <https-listener name=\"https-").append(i).append("\" socket-binding=\"https-").append(i)
+                    .append("\" security-realm=\"SSLRealm\" certificate-forwarding=\"true\" proxy-address-forwarding=\"true\"")
+                    .append(" enabled-protocols=\"TLSv1.2\" max-buffered-request-size=\"65536\" tcp-backlog=\"256\"");
+            if (current)
+            {
+                xml.append(" no-request-timeout=\"60000\" write-timeout=\"300000\" record-request-start-time=\"true\"")
+                        .append(" queue-deadline=\"30000\" metrics-enabled=\"true\"");
+            }
+            xml.append("/>\n");
+            xml.append("        <ajp-listener name=\"ajp-").append(i).append("\" socket-binding=\"ajp-").append(i)
+                    .append("\" scheme=\"https\"/>\n");
+        }
+
+        for (int h = 0; h < hosts; h++)
+        {
+            xml.append("        <host name=\"host-").append(h).append("\" default-web-module=\"ewb-web-").append(h)
+                    .append(".war\">\n");
+            for (int l = 0; l < locationsPerHost; l++)
+            {
+                xml.append("            <location name=\"/content-").append(l).append("\" handler=\"files-")
+                        .append(l).append("\">\n");
+                appendFilterRefs(xml, "                ", h, l, current);
+                xml.append("            </location>\n");
+            }
+            if (current)
+            {
+                xml.append("            <access-log pattern=\"combined\" prefix=\"access-h").append(h)
+                        .append(".\" rotate=\"true\" async=\"true\" buffer-records=\"16384\" overflow-policy=\"drop\"")
+                        .append(" compress-rotated=\"true\"/>\n");
+            }
+            else
+            {
+                xml.append("            <access-log pattern=\"%h %l %u %t &quot;%r&quot; %s %b\" prefix=\"access-h")
+                        .append(h).append(".\" rotate=\"true\"/>\n");
+            }
+            appendFilterRefs(xml, "            ", h, -1, current);
+            xml.append("        </host>\n");
+        }
+        xml.append("    </server>\n");
+
+        xml.append("    <servlet-container name=\"default\"");
+        if (current)
+        {
+            xml.append(" virtual-threads=\"true\" pinned-threshold=\"50\" upload-spooling=\"true\"")
+                    .append(" upload-spooling-threshold=\"1048576\" upload-spooling-directory=\"/var/tmp/uploads\"");
+        }
+        xml.append(">\n");
+        xml.append("        <jsp-config development=\"false\" x-powered-by=\"false\"/>\n");
+        xml.append("        <persistent-sessions path=\"sessions\" relative-to=\"jboss.server.data.dir\"");
+        if (current)
+        {
+            xml.append(" session-log=\"true\" flush-interval=\"5\" compaction-ratio=\"3.0\"");
+        }
+        xml.append("/>\n");
+        if (current)
+        {
+            xml.append("        <websockets dispatch-to-worker=\"true\" coalescing-window=\"500\"")
+                    .append(" coalescing-max-batch-size=\"8192\"/>\n");
+        }
+        xml.append("    </servlet-container>\n");
+
+        xml.append("    <handlers>\n");
+        for (int l = 0; l < Math.max(1, locationsPerHost); l++)
+        {
+            xml.append("        <file name=\"files-").append(l).append("\" path=\"${jboss.home.dir}/welcome-content/")
+                    .append(l).append("\" cache-buffers=\"1024\"");
+            if (current)
+            {
+                xml.append(" mapped-cache-size=\"268435456\" mapped-min-file-size=\"1048576\" buffer-cache=\"default\"");
+            }
+            xml.append("/>\n");
+        }
+        xml.append("        <reverse-proxy name=\"ewb-proxy\" problem-server-retry=\"60\" max-request-time=\"30000\"");
+        if (current)
+        {
+            xml.append(" load-balancing-policy=\"least-latency\" health-check-path=\"/health\"");
+        }
+        xml.append(">\n");
+        for (int p = 0; p < reverseProxyHosts; p++)
+        {
+            xml.append("            <host name=\"backend-").append(p).append("\" instance-id=\"node").append(p).append('"');
+            if (current)
+            {
+                xml.append(" outbound-socket-binding=\"backend-").append(p).append("\" path=\"/ewb\" scheme=\"https\"");
+            }
+            xml.append("/>\n");
+        }
+        xml.append("        </reverse-proxy>\n");
+        xml.append("    </handlers>\n");
+
+        String[] filters = filterNames();
+        xml.append("    <filters>\n");
+        xml.append("        <response-header name=\"").append(filters[0])
+                .append("\" header-name=\"Server\" header-value=\"EWB\"/>\n");
+        xml.append("        <response-header name=\"").append(filters[1])
+                .append("\" header-name=\"X-Powered-By\" header-value=\"IDBS\"/>\n");
+        xml.append("        <gzip name=\"").append(filters[2]).append("\"");
+        if (current)
+        {
+            xml.append(" cache-size=\"67108864\" max-cacheable-size=\"2097152\"");
+        }
+        xml.append("/>\n");
+        xml.append("        <connection-limit name=\"").append(filters[3])
+                .append("\" max-concurrent-requests=\"400\" queue-size=\"100\"/>\n");
+        if (current)
+        {
+            xml.append("        <adaptive-concurrency-limit name=\"adaptive-limit\" algorithm=\"aimd\" min-limit=\"20\"")
+                    .append(" max-limit=\"800\" latency-threshold=\"2000\"/>\n");
+            xml.append("        <response-cache name=\"reference-data\" cache-size=\"33554432\" default-max-age=\"60\"/>\n");
+            xml.append("        <rate-limit name=\"integration-clients\" key=\"header\" header-name=\"X-EWB-Client\"")
+                    .append(" requests-per-second=\"20\" burst=\"40\"/>\n");
+            xml.append("        <bulkhead name=\"report-exports\" max-threads=\"4\" queue-size=\"20\" queue-timeout=\"30000\"/>\n");
+            xml.append("        <request-decompression name=\"compressed-uploads\" max-decompressed-size=\"104857600\"/>\n");
+            xml.append("        <request-profiler name=\"slow-pages\" sample-rate=\"50\" buffer-size=\"8192\"/>\n");
+            xml.append("        <metrics-endpoint name=\"prometheus\" path=\"/ewb-metrics\"/>\n");
+        }
+        for (int f = 4; f < filters.length; f++)
+        {
+            xml.append("        <response-header name=\"").append(filters[f]).append("\" header-name=\"X-EWB-")
+                    .append(f).append("\" header-value=\"").append(f).append("\"/>\n");
+        }
+        xml.append("    </filters>\n");
+        xml.append("</subsystem>\n");
+        return xml.toString();
+    }
+
+    private void appendFilterRefs(StringBuilder xml, String indent, int host, int location, boolean current)
+    {
+        // filter-ref is keyed by filter name, so filterNames() always has enough filters for one reference each
+        String[] filters = filterNames();
+        for (int f = 0; f < filterRefsPerLocation; f++)
+        {
+            xml.append(indent).append("<filter-ref name=\"").append(filters[f]).append("\" predicate=\"")
+                    .append(escape(predicate(host, location, f))).append('"');
+            if (current)
+            {
+                xml.append(" priority=\"").append((f + 1) * 10).append('"');
+            }
+            xml.append("/>\n");
+        }
+    }
+
+    private static String escape(String value)
+    {
+        return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;");
+    }
+}
@@ -0,0 +1,128 @@
+package org.wildfly.extension.undertow;
+
+import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.ADDRESS;
+import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.OP;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.jboss.as.controller.PathAddress;
+import org.jboss.as.controller.PathElement;
+import org.jboss.as.controller.persistence.SubsystemMarshallingContext;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+import org.jboss.staxmapper.XMLElementWriter;
+import org.jboss.staxmapper.XMLExtendedStreamWriter;
+import org.jboss.staxmapper.XMLMapper;
+
+/**
+ * Drives the subsystem parsers in-process the same way the server does at boot (XML to add operations) and when the
+ * configuration is rewritten (subsystem model to XML), without needing a running server or a standalone-ewb-ha.xml on
+ * disk.
+ */
+public class SubsystemXmlHarness
+{
+    private static final String SUBSYSTEM = "subsystem";
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private final XMLMapper mapper = XMLMapper.Factory.create();
+
+    public SubsystemXmlHarness()
+    {
+        mapper.registerRootElement(new QName(SubsystemConfigGenerator.NAMESPACE_1_1, SUBSYSTEM),
+            UndertowSubsystemParser_1_1.INSTANCE);
+        mapper.registerRootElement(new QName(SubsystemConfigGenerator.NAMESPACE_1_2, SUBSYSTEM),
+            UndertowSubsystemParser_1_2.INSTANCE);
+    }
+
+    /**
+     * Parses subsystem XML of either namespace into the add operations the server would execute.
+     */
+    public List<ModelNode> parse(String xml) throws XMLStreamException
+    {
+        List<ModelNode> operations = new ArrayList<>();
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new StringReader(xml));
+        try
+        {
+            mapper.parseDocument(operations, reader);
+        }
+        finally
+        {
+            reader.close();
+        }
+        return operations;
+    }
+
+    /**
+     * Folds add operations into the subsystem model that {@link SubsystemMarshallingContext#getModelNode()} would hold
+     * once they had been executed (attributes as given, no defaults filled in).
+     */
+    public ModelNode toModel(List<ModelNode> operations)
+    {
+        ModelNode subsystem = new ModelNode();
+        subsystem.setEmptyObject();
+        for (ModelNode operation : operations)
+        {
+            PathAddress address = PathAddress.pathAddress(operation.get(ADDRESS));
+            ModelNode resource = subsystem;
+            // element 0 is subsystem=undertow itself
+            for (int i = 1; i < address.size(); i++)
+            {
+                PathElement element = address.getElement(i);
+                resource = resource.get(element.getKey(), element.getValue());
+            }
+            if (!resource.isDefined())
+            {
+                resource.setEmptyObject();
+            }
+            for (Property property : operation.asPropertyList())
+            {
+                if (!OP.equals(property.getName()) && !ADDRESS.equals(property.getName()))
+                {
+                    resource.get(property.getName()).set(property.getValue());
+                }
+            }
+        }
+        return subsystem;
+    }
+
+    /**
+     * Marshals a subsystem model through {@link UndertowSubsystemParser_1_2#writeContent}, exactly as a configuration
+     * rewrite would.
+     */
+    public String persist(ModelNode subsystemModel) throws XMLStreamException
+    {
+        StringWriter out = new StringWriter();
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out);
+        mapper.deparseDocument(new XMLElementWriter<ModelNode>()
+        {
+            @Override
+            public void writeContent(XMLExtendedStreamWriter streamWriter, ModelNode model) throws XMLStreamException
+            {
+                UndertowSubsystemParser_1_2.INSTANCE.writeContent(streamWriter,
+                    new SubsystemMarshallingContext(model, streamWriter));
+            }
+        }, subsystemModel, writer);
+        writer.close();
+        return out.toString();
+    }
+
+    /**
+     * Convenience for the common parse-then-fold sequence.
+     */
+    public ModelNode parseToModel(String xml) throws XMLStreamException
+    {
+        return toModel(parse(xml));
+    }
+}
@@ -0,0 +1,167 @@
+package org.wildfly.extension.undertow;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+import org.xnio.channels.AcceptingChannel;
+import org.xnio.streams.ChannelInputStream;
+import org.xnio.streams.ChannelOutputStream;
+
+/**
+ * Shows the effect of the https-listener tcp-no-delay and cork attributes on small request/response round trips over
+ * loopback. The server side is an XNIO accepting channel created with the option map under test, which is how
+ * {@link HttpsListenerService#startListening} hands the options to XNIO, and it answers each request with a small
+ * header write followed by a small body write - the pattern where Nagle's algorithm meets the client's delayed ACK.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark -Dtest=TcpOptionsLatencyBenchmark}; {@code undertow.benchmark.roundTrips}
+ * sets the number of measured round trips per setting (default 200).
+ */
+public class TcpOptionsLatencyBenchmark
+{
+    private static final int ROUND_TRIPS = BenchmarkSupport.intProperty("undertow.benchmark.roundTrips", 200);
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static XnioWorker worker;
+
+    private static ExecutorService serverThreads;
+
+    @BeforeClass
+    public static void startWorker() throws IOException
+    {
+        worker = Xnio.getInstance().createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        serverThreads = Executors.newCachedThreadPool();
+    }
+
+    @AfterClass
+    public static void stopWorker()
+    {
+        serverThreads.shutdownNow();
+        worker.shutdownNow();
+    }
+
+    @Test
+    public void xnioDefaults() throws Exception
+    {
+        roundTrips("XNIO defaults", OptionMap.EMPTY);
+    }
+
+    @Test
+    public void tcpNoDelay() throws Exception
+    {
+        roundTrips("tcp-no-delay=false", OptionMap.create(Options.TCP_NODELAY, false));
+        roundTrips("tcp-no-delay=true", OptionMap.create(Options.TCP_NODELAY, true));
+    }
+
+    @Test
+    public void cork() throws Exception
+    {
+        roundTrips("cork=true", OptionMap.create(Options.CORK, true));
+        roundTrips("cork=true, tcp-no-delay=true", OptionMap.create(Options.CORK, true, Options.TCP_NODELAY, true));
+    }
+
+    private void roundTrips(String name, OptionMap options) throws Exception
+    {
+        AcceptingChannel<StreamConnection> server = worker.createStreamConnectionServer(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new ChannelListener<AcceptingChannel<StreamConnection>>()
+            {
+                @Override
+                public void handleEvent(AcceptingChannel<StreamConnection> channel)
+                {
+                    try
+                    {
+                        final StreamConnection connection = channel.accept();
+                        if (connection != null)
+                        {
+                            serverThreads.execute(new Runnable()
+                            {
+                                @Override
+                                public void run()
+                                {
+                                    respond(connection);
+                                }
+                            });
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        IoUtils.safeClose(channel);
+                    }
+                }
+            }, options);
+        server.resumeAccepts();
+
+        if (options.contains(Options.CORK) && !server.supportsOption(Options.CORK))
+        {
+            System.out.println("    (cork is not supported by the " + worker.getXnio().getName()
+                + " provider and has no effect)");
+        }
+
+        try (Socket client = new Socket())
+        {
+            client.setTcpNoDelay(true);
+            client.connect(server.getLocalAddress(InetSocketAddress.class));
+            final OutputStream out = client.getOutputStream();
+            final DataInputStream in = new DataInputStream(client.getInputStream());
+            final byte[] request = new byte[MESSAGE_SIZE];
+            final byte[] response = new byte[MESSAGE_SIZE];
+
+            BenchmarkSupport.measure(name, Math.max(10, ROUND_TRIPS / 10), ROUND_TRIPS, () -> {
+                out.write(request);
+                out.flush();
+                in.readFully(response);
+                return response;
+            });
+        }
+        finally
+        {
+            IoUtils.safeClose(server);
+        }
+    }
+
+    /*
+     * Echoes each request back as two separate writes, the way a response's headers and a small body are written.
+     */
+    private static void respond(StreamConnection connection)
+    {
+        try (InputStream in = new ChannelInputStream(connection.getSourceChannel());
+                OutputStream out = new ChannelOutputStream(connection.getSinkChannel()))
+        {
+            DataInputStream requests = new DataInputStream(in);
+            byte[] message = new byte[MESSAGE_SIZE];
+            while (true)
+            {
+                requests.readFully(message);
+                out.write(message, 0, MESSAGE_SIZE / 2);
+                out.flush();
+                out.write(message, MESSAGE_SIZE / 2, MESSAGE_SIZE / 2);
+                out.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            // client went away
+        }
+        finally
+        {
+            IoUtils.safeClose(connection);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.wildfly.extension.undertow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class UndertowEventsTest
+{
+    private static final String LISTENER_STATE = "org.wildfly.undertow.ListenerState";
+
+    @Test
+    public void recordsListenerStartsAndStops() throws Exception
+    {
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 8443);
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording())
+        {
+            recording.enable(LISTENER_STATE);
+            recording.start();
+            UndertowEvents.listenerStarted("https", HttpsListenerService.PROTOCOL, address);
+            UndertowEvents.listenerStopped("https", HttpsListenerService.PROTOCOL, address);
+            recording.stop();
+            events = read(recording);
+        }
+
+        assertEquals(2, events.size());
+        assertEquals("https", events.get(0).getString("listener"));
+        assertEquals(address.toString(), events.get(0).getString("address"));
+        assertTrue(events.get(0).getBoolean("started"));
+        assertFalse(events.get(1).getBoolean("started"));
+    }
+
+    @Test
+    public void recordsNothingWhenTheEventIsDisabled() throws Exception
+    {
+        try (Recording recording = new Recording())
+        {
+            recording.disable(LISTENER_STATE);
+            recording.start();
+            UndertowEvents.listenerStarted("https", HttpsListenerService.PROTOCOL, new InetSocketAddress(8443));
+            recording.stop();
+            for (RecordedEvent event : read(recording))
+            {
+                assertFalse(event.getEventType().getName().equals(LISTENER_STATE));
+            }
+        }
+    }
+
+    private static List<RecordedEvent> read(Recording recording) throws Exception
+    {
+        Path file = Files.createTempFile("undertow-events", ".jfr");
+        try
+        {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.wildfly.extension.undertow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.Test;
+
+/**
+ * Measures how {@link UndertowSubsystemParser_1_1#readElement}, {@link UndertowSubsystemParser_1_2#readElement} and
+ * {@link UndertowSubsystemParser_1_2#writeContent} scale with the size of the undertow subsystem.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark}. The configuration size is controlled by:
+ * <ul>
+ * <li>{@code undertow.benchmark.hosts} (default 200)
+ * <li>{@code undertow.benchmark.locations} locations per host (default 5)
+ * <li>{@code undertow.benchmark.filterRefs} filter-refs per location (default 8)
+ * <li>{@code undertow.benchmark.listeners} http/https/ajp listener triples (default 100)
+ * <li>{@code undertow.benchmark.proxyHosts} reverse-proxy hosts (default 200)
+ * <li>{@code undertow.benchmark.iterations} measured iterations (default 20, plus as many warm-ups)
+ * </ul>
+ * Each run also re-parses the persisted output and checks the model survived the round trip.
+ */
+public class UndertowSubsystemParserBenchmark
+{
+    private static final int ITERATIONS = BenchmarkSupport.intProperty("undertow.benchmark.iterations", 20);
+
+    private final SubsystemXmlHarness harness = new SubsystemXmlHarness();
+
+    private static SubsystemConfigGenerator generator(String namespace)
+    {
+        return new SubsystemConfigGenerator(namespace)
+                .hosts(BenchmarkSupport.intProperty("undertow.benchmark.hosts", 200))
+                .locationsPerHost(BenchmarkSupport.intProperty("undertow.benchmark.locations", 5))
+                .filterRefsPerLocation(BenchmarkSupport.intProperty("undertow.benchmark.filterRefs", 8))
+                .listeners(BenchmarkSupport.intProperty("undertow.benchmark.listeners", 100))
+                .reverseProxyHosts(BenchmarkSupport.intProperty("undertow.benchmark.proxyHosts", 200));
+    }
+
+    @Test
+    public void parse1_1() throws Exception
+    {
+        benchmarkParse(SubsystemConfigGenerator.NAMESPACE_1_1);
+    }
+
+    @Test
+    public void parse1_2() throws Exception
+    {
+        benchmarkParse(SubsystemConfigGenerator.NAMESPACE_1_2);
+    }
+
+    @Test
+    public void persist() throws Exception
+    {
+        final String xml = generator(SubsystemConfigGenerator.NAMESPACE_1_2).generate();
+        final ModelNode model = harness.parseToModel(xml);
+        final String statistics = UndertowRootDefinition.STATISTICS_ENABLED.getName();
+
+        // flip an attribute every time so that each iteration marshals the whole description
+        BenchmarkSupport.measure("persist 1.2 (" + xml.length() / 1024 + " KiB, changed model)", ITERATIONS, ITERATIONS,
+            () -> {
+                model.get(statistics).set(!model.get(statistics).asBoolean(false));
+                return harness.persist(model);
+            });
+
+        BenchmarkSupport.measure("persist 1.2 (" + xml.length() / 1024 + " KiB, unchanged model)", ITERATIONS,
+            ITERATIONS, () -> harness.persist(model));
+
+        assertEquals(model, harness.parseToModel(harness.persist(model)));
+    }
+
+    private void benchmarkParse(String namespace) throws Exception
+    {
+        final String xml = generator(namespace).generate();
+
+        BenchmarkSupport.measure(
+            "parse " + namespace.substring(namespace.lastIndexOf(':') + 1) + " (" + xml.length() / 1024 + " KiB)",
+            ITERATIONS, ITERATIONS, () -> harness.parse(xml));
+
+        ModelNode model = harness.parseToModel(xml);
+        assertEquals(model, harness.parseToModel(harness.persist(model)));
+        System.out.println("    " + harness.parse(xml).size() + " add operations, descriptions built in "
+            + UndertowXmlDescriptions.getConstructionTime(Namespace.UNDERTOW_1_1, TimeUnit.MILLISECONDS) + " ms (1.1) / "
+            + UndertowXmlDescriptions.getConstructionTime(Namespace.UNDERTOW_1_2, TimeUnit.MILLISECONDS) + " ms (1.2)");
+    }
+}
@@ -0,0 +1,83 @@
+package org.wildfly.extension.undertow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.xmlunit.diff.ComparisonResult.DIFFERENT;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.Test;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.builder.Input;
+import org.xmlunit.diff.DefaultNodeMatcher;
+import org.xmlunit.diff.Diff;
+import org.xmlunit.diff.Difference;
+import org.xmlunit.diff.ElementSelectors;
+
+/**
+ * Checks that rewriting the undertow subsystem does not lose or alter anything, by parsing generated configurations
+ * and marshalling them back in-process. This is the check StandaloneHaRewrite_IT used to make against a running
+ * server's standalone-ewb-ha.xml, without the dependency on a Windows deployment directory and jboss-cli.bat.
+ */
+public class UndertowSubsystemParserRoundTripTest
+{
+    private final SubsystemXmlHarness harness = new SubsystemXmlHarness();
+
+    private static SubsystemConfigGenerator generator(String namespace)
+    {
+        return new SubsystemConfigGenerator(namespace).hosts(3).locationsPerHost(2).filterRefsPerLocation(6)
+                .listeners(2).reverseProxyHosts(3);
+    }
+
+    @Test
+    public void rewriteOf1_2ConfigIsSemanticallyIdentical() throws Exception
+    {
+        String original = generator(SubsystemConfigGenerator.NAMESPACE_1_2).generate();
+
+        ModelNode model = harness.parseToModel(original);
+        String rewritten = harness.persist(model);
+
+        Diff diff = DiffBuilder.compare(Input.fromString(original))
+                .withTest(Input.fromString(rewritten))
+                .withNodeMatcher(new DefaultNodeMatcher(ElementSelectors.byNameAndAttributes("name"),
+                    ElementSelectors.byName))
+                .ignoreWhitespace()
+                .ignoreComments()
+                .checkForSimilar()
+                .build();
+        StringBuilder differences = new StringBuilder("Rewriting the undertow subsystem changed its content:");
+        for (Difference difference : diff.getDifferences())
+        {
+            if (difference.getResult() == DIFFERENT)
+            {
+                differences.append('\n').append(difference);
+            }
+        }
+        assertFalse(differences.toString(), diff.hasDifferences());
+
+        assertEquals("Re-parsing the rewritten subsystem produced a different model", model,
+            harness.parseToModel(rewritten));
+    }
+
+    @Test
+    public void rewriteOf1_1ConfigKeepsItsModel() throws Exception
+    {
+        // a 1.1 config is always rewritten in the current (1.2) namespace, so compare models rather than XML
+        ModelNode model = harness.parseToModel(generator(SubsystemConfigGenerator.NAMESPACE_1_1).generate());
+
+        assertEquals(model, harness.parseToModel(harness.persist(model)));
+    }
+
+    @Test
+    public void unchangedModelIsRewrittenIdentically() throws Exception
+    {
+        ModelNode model = harness.parseToModel(generator(SubsystemConfigGenerator.NAMESPACE_1_2).generate());
+
+        String first = harness.persist(model);
+        assertEquals(first, harness.persist(model.clone()));
+
+        ModelNode changed = model.clone();
+        changed.get(UndertowRootDefinition.STATISTICS_ENABLED.getName()).set(true);
+        assertNotEquals(first, harness.persist(changed));
+    }
+}
@@ -0,0 +1,224 @@
+package org.wildfly.extension.undertow.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Drives the limiter with a load generator against a simulated backend: {@code clients} clients send requests back to
+ * back (retrying a millisecond after a rejection) to a backend that answers in {@code BASE_LATENCY_MS} while no more
+ * than {@code capacity} requests are in progress and proportionally slower beyond that. Time is simulated in
+ * millisecond steps so the test is deterministic and fast.
+ */
+public class AdaptiveConcurrencyLimiterTest
+{
+    private static final double BASE_LATENCY_MS = 10;
+
+    private static final int CLIENTS = 1000;
+
+    private static final class LoadGenerator
+    {
+        private final AdaptiveConcurrencyLimiter limiter;
+
+        private final PriorityQueue<double[]> inProgress = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+
+        private int idleClients = CLIENTS;
+
+        private int now;
+
+        private int capacity;
+
+        private long failAbove = Long.MAX_VALUE;
+
+        LoadGenerator(AdaptiveConcurrencyLimiter limiter, int capacity)
+        {
+            this.limiter = limiter;
+            this.capacity = capacity;
+        }
+
+        void run(int millis)
+        {
+            for (int end = now + millis; now < end; now++)
+            {
+                while (!inProgress.isEmpty() && inProgress.peek()[0] <= now)
+                {
+                    double[] request = inProgress.poll();
+                    limiter.release(TimeUnit.MICROSECONDS.toNanos((long) ((now - request[1]) * 1000)), request[2] > 0);
+                    idleClients++;
+                }
+                for (int i = idleClients; i > 0; i--)
+                {
+                    if (limiter.tryAcquire())
+                    {
+                        idleClients--;
+                        int inFlight = limiter.getInFlight();
+                        double latency = BASE_LATENCY_MS * Math.max(1, inFlight / (double) capacity);
+                        inProgress.add(new double[] {now + latency, now, inFlight > failAbove ? 1 : 0});
+                    }
+                }
+            }
+        }
+
+        /*
+         * Runs for another period and returns the lowest and highest limit seen in it
+         */
+        int[] range(int millis)
+        {
+            int[] range = {Integer.MAX_VALUE, 0};
+            for (int i = 0; i < millis; i += 100)
+            {
+                run(100);
+                range[0] = Math.min(range[0], limiter.getLimit());
+                range[1] = Math.max(range[1], limiter.getLimit());
+            }
+            return range;
+        }
+    }
+
+    private static AdaptiveConcurrencyLimiter limiter(String algorithm, int initialLimit)
+    {
+        return new AdaptiveConcurrencyLimiter(AdaptiveConcurrencyLimiter.Algorithm.forName(algorithm), initialLimit, 5,
+            1000, 20, TimeUnit.MILLISECONDS);
+    }
+
+    private static void assertWithin(String message, int[] range, int low, int high)
+    {
+        assertTrue(message + ": limit ranged " + range[0] + "-" + range[1] + ", expected " + low + "-" + high,
+            range[0] >= low && range[1] <= high);
+    }
+
+    @Test
+    public void gradientGrowsToTheBackendCapacity()
+    {
+        LoadGenerator load = new LoadGenerator(limiter("gradient", 10), 100);
+        load.run(20000);
+        // the gradient algorithm settles where the latency reaches its tolerance over the unqueued latency, dipping to
+        // half of that while it re-measures the unqueued latency
+        assertWithin("gradient from below", load.range(10000), 75, (int) (100 * AdaptiveConcurrencyLimiter.TOLERANCE) + 30);
+        assertTrue(load.limiter.getRejectedCount() > 0);
+    }
+
+    @Test
+    public void gradientRecoversFromStartingOverloaded()
+    {
+        LoadGenerator load = new LoadGenerator(limiter("gradient", 1000), 100);
+        load.run(50000);
+        assertWithin("gradient from above", load.range(10000), 75, (int) (100 * AdaptiveConcurrencyLimiter.TOLERANCE) + 30);
+    }
+
+    @Test
+    public void gradientFollowsACapacityDrop()
+    {
+        LoadGenerator load = new LoadGenerator(limiter("gradient", 10), 100);
+        load.run(20000);
+        load.capacity = 40;
+        load.run(20000);
+        assertWithin("gradient after the drop", load.range(10000), 30, (int) (40 * AdaptiveConcurrencyLimiter.TOLERANCE) + 20);
+    }
+
+    @Test
+    public void aimdKeepsTheLatencyAroundTheThreshold()
+    {
+        // 20ms against a 10ms backend with a capacity of 100 is reached at 200 requests in flight
+        LoadGenerator fromBelow = new LoadGenerator(limiter("aimd", 10), 100);
+        fromBelow.run(20000);
+        assertWithin("aimd from below", fromBelow.range(10000), 150, 250);
+
+        LoadGenerator fromAbove = new LoadGenerator(limiter("aimd", 1000), 100);
+        fromAbove.run(20000);
+        assertWithin("aimd from above", fromAbove.range(10000), 150, 250);
+    }
+
+    @Test
+    public void failuresBackOff()
+    {
+        LoadGenerator load = new LoadGenerator(limiter("aimd", 10), 1000);
+        load.failAbove = 60;
+        load.run(20000);
+        assertWithin("aimd with failures above 60 in flight", load.range(10000), 5, 90);
+    }
+
+    @Test
+    public void rejectsAtTheLimit()
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(AdaptiveConcurrencyLimiter.Algorithm.GRADIENT,
+            2, 1, 10, 20, TimeUnit.MILLISECONDS);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(!limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getRejectedCount());
+        limiter.release(1000, false);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void publishesTheLimitersOfAFilterTogether()
+    {
+        AdaptiveConcurrencyLimiter first = new AdaptiveConcurrencyLimiter(AdaptiveConcurrencyLimiter.Algorithm.AIMD,
+            2, 1, 10, 20, TimeUnit.MILLISECONDS);
+        AdaptiveConcurrencyLimiter second = new AdaptiveConcurrencyLimiter(AdaptiveConcurrencyLimiter.Algorithm.AIMD,
+            3, 1, 10, 30, TimeUnit.MILLISECONDS);
+        AdaptiveConcurrencyLimits limits = new AdaptiveConcurrencyLimits(AdaptiveConcurrencyLimiter.Algorithm.AIMD);
+        limits.add(first);
+        limits.add(second);
+        assertTrue(first.tryAcquire());
+        assertTrue(first.tryAcquire());
+        assertTrue(!first.tryAcquire());
+        assertTrue(second.tryAcquire());
+        second.release(1000, false);
+
+        assertEquals(2, limits.getLimiterCount());
+        assertEquals(5, limits.getLimit());
+        assertEquals(2, limits.getInFlight());
+        assertEquals(1, limits.getRejectedCount());
+        assertEquals(1, limits.getCompletedCount());
+        assertEquals(30.0, limits.getTargetLatencyMillis(), 0.0);
+    }
+
+    @Test
+    public void keepsCountWhenCompletionsRace() throws Exception
+    {
+        final AdaptiveConcurrencyLimiter limiter = limiter("gradient", 50);
+        final int threads = 8;
+        final int requests = 100000;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++)
+        {
+            final long rtt = TimeUnit.MILLISECONDS.toNanos(10 + t);
+            pool.execute(() -> {
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                for (int i = 0; i < requests; i++)
+                {
+                    if (limiter.tryAcquire())
+                    {
+                        limiter.release(rtt, false);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(threads * (long) requests, limiter.getCompletedCount() + limiter.getRejectedCount());
+        assertTrue("limit " + limiter.getLimit(), limiter.getLimit() >= 5 && limiter.getLimit() <= 1000);
+        assertTrue(limiter.getTargetLatencyMillis() >= 10);
+    }
+}
@@ -0,0 +1,86 @@
+package org.wildfly.extension.undertow.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BulkheadTest
+{
+    @Test
+    public void admitsOneRequestPerThreadAndQueueSlot()
+    {
+        Bulkhead bulkhead = new Bulkhead("exports", 2, 3, 0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 5; i++)
+        {
+            assertTrue(bulkhead.tryAcquire());
+        }
+        assertFalse(bulkhead.tryAcquire());
+        assertEquals(1, bulkhead.getRejectedCount());
+
+        bulkhead.release();
+        assertTrue(bulkhead.tryAcquire());
+        assertEquals(1, bulkhead.getCompletedCount());
+    }
+
+    @Test
+    public void turnsAwayRequestsThatWaitedPastTheQueueTimeout()
+    {
+        Bulkhead bulkhead = new Bulkhead("exports", 1, 1, 100, TimeUnit.MILLISECONDS);
+        assertTrue(bulkhead.started(TimeUnit.MILLISECONDS.toNanos(40)));
+        assertFalse(bulkhead.started(TimeUnit.MILLISECONDS.toNanos(160)));
+        assertEquals(1, bulkhead.getTimedOutCount());
+        assertEquals(100, bulkhead.getMeanWaitMillis(), 0.001);
+        assertEquals(160, bulkhead.getMaxWaitMillis(), 0.001);
+
+        Bulkhead unlimited = new Bulkhead("imports", 1, 1, 0, TimeUnit.MILLISECONDS);
+        assertTrue(unlimited.started(TimeUnit.MINUTES.toNanos(10)));
+    }
+
+    @Test
+    public void runsOnItsOwnThreads() throws Exception
+    {
+        Bulkhead bulkhead = new Bulkhead("bulkhead-test", 2, 10, 0, TimeUnit.MILLISECONDS);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(5);
+        final String[] threadName = new String[1];
+        for (int i = 0; i < 5; i++)
+        {
+            bulkhead.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        threadName[0] = Thread.currentThread().getName();
+                        blocked.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (bulkhead.getActiveCount() < 2 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(2, bulkhead.getActiveCount());
+        assertEquals(3, bulkhead.getQueueDepth());
+
+        blocked.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(threadName[0], threadName[0].startsWith("undertow-bulkhead-test-"));
+    }
+}
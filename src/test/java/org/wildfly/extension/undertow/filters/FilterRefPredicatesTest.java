@@ -0,0 +1,132 @@
+package org.wildfly.extension.undertow.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import io.undertow.predicate.Predicate;
+import io.undertow.predicate.PredicateParser;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import org.junit.Test;
+
+public class FilterRefPredicatesTest
+{
+    private static final HttpString CLIENT = new HttpString("X-EWB-Client");
+
+    private static final List<String> PREDICATES = Arrays.asList(
+        "path-prefix['/ewb/h1/l2']",
+        "path-suffix['.js'] or path-suffix['.css']",
+        "method[GET] and path-prefix['/ewb/services/2']",
+        "equals[%{i,X-EWB-Client}, 'integration3']",
+        "regex[pattern='/ewb/reports/[0-9]+/export', value=%U, full-match=true]",
+        "path-prefix['/ewb/h1/l2']",
+        "path-suffix[{'.js', '.css'}]",
+        "not method[value=GET] or path-prefix[path={'/ewb', '/ewb/h1/l2/'}]",
+        "path-prefix['/'] and not (path['/a/', 'b'] or path-suffix['.gif'])",
+        "path-prefix[ewb/h1, '/x']",
+        "equals['integration3', %{i,X-EWB-Client}] and method[GET, POST]",
+        "equals[%{i,X-EWB-Client}, %{i,X-Other}]",
+        "regex['/ewb/(h[0-9]+)/(l[0-9]+)'] or exists[%{i,X-Other}]",
+        "true and not false",
+        "path-prefix['and']");
+
+    private static final String[] PATHS = {"/ewb/h1/l2", "/ewb/h1/l2/app.js", "/ewb/h1/l23", "/ewb/services/2/a.css",
+        "/ewb/reports/12/export", "/ewb/reports/12/export/", "/a", "/b/", "", "/", "/x", "/and"};
+
+    private static List<FilterRef> filters(List<String> predicates)
+    {
+        List<FilterRef> filters = new ArrayList<>();
+        for (String predicate : predicates)
+        {
+            filters.add(new FilterRef(predicate, PredicateParser.parse(predicate, FilterRefPredicatesTest.class
+                .getClassLoader()), 1));
+        }
+        return filters;
+    }
+
+    private static HttpServerExchange exchange(String path, HttpString method, String client)
+    {
+        HttpServerExchange exchange = new HttpServerExchange(null);
+        exchange.setRequestURI(path);
+        exchange.setRelativePath(path);
+        exchange.setRequestMethod(method);
+        if (client != null)
+        {
+            exchange.getRequestHeaders().put(CLIENT, client);
+        }
+        // as PredicatesHandler attaches it, which path-prefix expects
+        exchange.putAttachment(Predicate.PREDICATE_CONTEXT, new HashMap<String, Object>());
+        return exchange;
+    }
+
+    @Test
+    public void matchesWhatTheInterpretedPredicatesMatch()
+    {
+        List<FilterRef> filters = filters(PREDICATES);
+        List<Predicate> compiled = FilterRefPredicates.compile(filters);
+        for (int i = 0; i < filters.size() - 1; i++)
+        {
+            assertNotSame(PREDICATES.get(i), filters.get(i).getPredicate(), compiled.get(i));
+        }
+        for (String path : PATHS)
+        {
+            for (HttpString method : new HttpString[] {Methods.GET, Methods.POST, Methods.PUT})
+            {
+                for (String client : new String[] {null, "integration3", "integration4"})
+                {
+                    // one exchange through the whole chain, so that later filter-refs reuse what earlier ones tested
+                    HttpServerExchange interpretedExchange = exchange(path, method, client);
+                    HttpServerExchange compiledExchange = exchange(path, method, client);
+                    for (int i = 0; i < filters.size(); i++)
+                    {
+                        String message = PREDICATES.get(i) + " on " + method + " '" + path + "' from " + client;
+                        assertEquals(message, filters.get(i).getPredicate().resolve(interpretedExchange),
+                            compiled.get(i).resolve(compiledExchange));
+                        assertEquals(message, interpretedExchange.getAttachment(Predicate.PREDICATE_CONTEXT),
+                            compiledExchange.getAttachment(Predicate.PREDICATE_CONTEXT));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void decidesAgainWhenAFilterRewritesWhatWasTested()
+    {
+        List<Predicate> compiled = FilterRefPredicates.compile(filters(Arrays.asList("path-prefix['/a']",
+            "path-suffix['.js']", "equals[%{i,X-EWB-Client}, 'integration3']")));
+        HttpServerExchange exchange = exchange("/a/app.js", Methods.GET, "integration3");
+        for (Predicate predicate : compiled)
+        {
+            assertTrue(predicate.resolve(exchange));
+        }
+        exchange.setRelativePath("/b/app.css");
+        exchange.getRequestHeaders().put(CLIENT, "integration4");
+        for (Predicate predicate : compiled)
+        {
+            assertFalse(predicate.resolve(exchange));
+        }
+    }
+
+    @Test
+    public void leavesWhatItCannotReadToUndertow()
+    {
+        List<FilterRef> filters = filters(Arrays.asList("path-prefix['and']", "path-prefix['/a']"));
+        filters.add(new FilterRef(null, null, 1));
+        List<Predicate> compiled = FilterRefPredicates.compile(filters);
+        // Undertow reads the quoted operator as a prefix
+        assertSame(filters.get(0).getPredicate(), compiled.get(0));
+        assertNotSame(filters.get(1).getPredicate(), compiled.get(1));
+        assertNull(compiled.get(2));
+    }
+}
@@ -0,0 +1,55 @@
+package org.wildfly.extension.undertow.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.jboss.as.controller.PathElement;
+import org.jboss.dmr.ModelNode;
+import org.junit.Test;
+
+public class FilterResourceNamesTest
+{
+    private static ModelNode model(int maxThreads)
+    {
+        ModelNode model = new ModelNode();
+        model.get("max-threads").set(maxThreads);
+        return model;
+    }
+
+    @Test
+    public void namesTheModelAFilterServiceBound()
+    {
+        ModelNode model = model(4);
+        FilterResourceNames.bind(model, PathElement.pathElement("bulkhead", "reports"));
+        try
+        {
+            assertEquals("reports", FilterResourceNames.nameOf(model, "bulkhead"));
+            // the binding is to the node the filter service holds, not to an equal one
+            assertFalse("reports".equals(FilterResourceNames.nameOf(model(4), "bulkhead")));
+        }
+        finally
+        {
+            FilterResourceNames.unbind(model);
+        }
+        assertFalse("reports".equals(FilterResourceNames.nameOf(model, "bulkhead")));
+    }
+
+    @Test
+    public void keepsTheBindingsOfResourcesOfTheSameName()
+    {
+        ModelNode bulkhead = model(4);
+        ModelNode rateLimit = new ModelNode();
+        FilterResourceNames.bind(bulkhead, PathElement.pathElement("bulkhead", "reports"));
+        FilterResourceNames.bind(rateLimit, PathElement.pathElement("rate-limit", "reports"));
+        try
+        {
+            FilterResourceNames.unbind(rateLimit);
+            assertEquals("reports", FilterResourceNames.nameOf(bulkhead, "bulkhead"));
+            assertFalse("reports".equals(FilterResourceNames.nameOf(rateLimit, "rate-limit")));
+        }
+        finally
+        {
+            FilterResourceNames.unbind(bulkhead);
+        }
+    }
+}
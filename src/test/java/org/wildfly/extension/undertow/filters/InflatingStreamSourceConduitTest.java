@@ -0,0 +1,224 @@
+package org.wildfly.extension.undertow.filters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+import org.xnio.conduits.AbstractStreamSourceConduit;
+import org.xnio.conduits.StreamSourceConduit;
+
+public class InflatingStreamSourceConduitTest
+{
+    private static final byte[] BODY = body();
+
+    private final RequestDecompressionHandler metrics = new RequestDecompressionHandler(null, 0);
+
+    private static byte[] body()
+    {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++)
+        {
+            json.append("{\"sample\":\"S-").append(i).append("\",\"value\":").append(i * 31 % 977).append("},");
+        }
+        return json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out))
+        {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] body, boolean nowrap) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap)))
+        {
+            deflate.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] inflate(byte[] compressed, InflatingStreamSourceConduit.Encoding encoding, long limit,
+            ByteBuffer buffer) throws IOException
+    {
+        InflatingStreamSourceConduit conduit = new InflatingStreamSourceConduit(new TrickleConduit(compressed),
+            encoding, limit, metrics);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int read;
+        int zeros = 0;
+        while ((read = conduit.read(buffer)) != -1)
+        {
+            if (read == 0 && ++zeros > compressed.length * 2)
+            {
+                fail("No progress");
+            }
+            buffer.flip();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.write(bytes);
+            buffer.clear();
+        }
+        assertEquals(compressed.length, conduit.getCompressedBytes());
+        return out.toByteArray();
+    }
+
+    @Test
+    public void inflatesGzipArrivingInSmallPieces() throws IOException
+    {
+        assertArrayEquals(BODY, inflate(gzip(BODY), InflatingStreamSourceConduit.Encoding.GZIP, 0,
+            ByteBuffer.allocate(1000)));
+        assertArrayEquals(BODY, inflate(gzip(BODY), InflatingStreamSourceConduit.Encoding.GZIP, 0,
+            ByteBuffer.allocateDirect(16384)));
+        assertEquals(2, metrics.getDecompressedCount());
+        assertEquals(2L * BODY.length, metrics.getDecompressedBytes());
+    }
+
+    @Test
+    public void readsConcatenatedGzipMembers() throws IOException
+    {
+        byte[] first = gzip("first part, ".getBytes(StandardCharsets.UTF_8));
+        byte[] second = gzip("second part".getBytes(StandardCharsets.UTF_8));
+        byte[] both = new byte[first.length + second.length];
+        System.arraycopy(first, 0, both, 0, first.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+
+        assertEquals("first part, second part", new String(inflate(both, InflatingStreamSourceConduit.Encoding.GZIP,
+            0, ByteBuffer.allocate(64)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void inflatesZlibAndRawDeflate() throws IOException
+    {
+        assertArrayEquals(BODY, inflate(deflate(BODY, false), InflatingStreamSourceConduit.Encoding.DEFLATE, 0,
+            ByteBuffer.allocate(4096)));
+        assertArrayEquals(BODY, inflate(deflate(BODY, true), InflatingStreamSourceConduit.Encoding.DEFLATE, 0,
+            ByteBuffer.allocate(4096)));
+    }
+
+    @Test
+    public void failsBodiesThatInflatePastTheLimit() throws IOException
+    {
+        try
+        {
+            inflate(gzip(new byte[10 * 1024 * 1024]), InflatingStreamSourceConduit.Encoding.GZIP, 1024 * 1024,
+                ByteBuffer.allocate(8192));
+            fail("Inflated past the limit");
+        }
+        catch (IOException expected)
+        {
+            assertEquals(1, metrics.getRejectedCount());
+        }
+        assertArrayEquals(BODY, inflate(gzip(BODY), InflatingStreamSourceConduit.Encoding.GZIP, BODY.length,
+            ByteBuffer.allocate(8192)));
+    }
+
+    @Test
+    public void failsCorruptAndTruncatedBodies() throws IOException
+    {
+        byte[] corrupt = gzip(BODY);
+        corrupt[corrupt.length - 6] ^= 1;
+        byte[] truncated = new byte[gzip(BODY).length - 4];
+        System.arraycopy(gzip(BODY), 0, truncated, 0, truncated.length);
+        for (byte[] body : new byte[][] {corrupt, truncated, BODY})
+        {
+            try
+            {
+                inflate(body, InflatingStreamSourceConduit.Encoding.GZIP, 0, ByteBuffer.allocate(8192));
+                fail("Inflated a bad body");
+            }
+            catch (IOException expected)
+            {
+                // refused
+            }
+        }
+        assertEquals(0, metrics.getDecompressedCount());
+    }
+
+    @Test
+    public void recognisesContentEncodings()
+    {
+        assertEquals(InflatingStreamSourceConduit.Encoding.GZIP, InflatingStreamSourceConduit.Encoding.forContentEncoding("gzip"));
+        assertEquals(InflatingStreamSourceConduit.Encoding.GZIP, InflatingStreamSourceConduit.Encoding.forContentEncoding(" X-GZIP"));
+        assertEquals(InflatingStreamSourceConduit.Encoding.DEFLATE, InflatingStreamSourceConduit.Encoding.forContentEncoding("Deflate"));
+        assertNull(InflatingStreamSourceConduit.Encoding.forContentEncoding("br"));
+        assertNull(InflatingStreamSourceConduit.Encoding.forContentEncoding("gzip, deflate"));
+    }
+
+    /*
+     * Hands out the body a few bytes at a time, with nothing available every other read, the way a slow client's
+     * body arrives
+     */
+    private static final class TrickleConduit extends AbstractStreamSourceConduit<StreamSourceConduit>
+    {
+        // XNIO insists on a next conduit; nothing is read from it, and the rest of its methods do nothing
+        private static final StreamSourceConduit END = (StreamSourceConduit) Proxy.newProxyInstance(
+            StreamSourceConduit.class.getClassLoader(), new Class<?>[] { StreamSourceConduit.class },
+            new InvocationHandler()
+            {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    if (method.getName().startsWith("read") || method.getName().startsWith("transfer"))
+                    {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                }
+            });
+
+        private final ByteBuffer body;
+
+        private int reads;
+
+        TrickleConduit(byte[] body)
+        {
+            super(END);
+            this.body = ByteBuffer.wrap(body);
+        }
+
+        @Override
+        public int read(ByteBuffer dst)
+        {
+            if (!body.hasRemaining())
+            {
+                return -1;
+            }
+            if (reads++ % 2 == 0)
+            {
+                return 0;
+            }
+            int n = Math.min(Math.min(dst.remaining(), 1 + reads % 613), body.remaining());
+            ByteBuffer slice = body.duplicate();
+            slice.limit(slice.position() + n);
+            dst.put(slice);
+            body.position(body.position() + n);
+            return n;
+        }
+    }
+
+    @Test
+    public void neverInflatesWithoutALimit()
+    {
+        assertEquals(4096, RequestDecompressionHandler.limit(4096, 1024));
+        assertEquals(1024, RequestDecompressionHandler.limit(0, 1024));
+        assertEquals(RequestDecompressionHandler.DEFAULT_MAX_DECOMPRESSED_SIZE, RequestDecompressionHandler.limit(0, -1));
+    }
+}
@@ -0,0 +1,133 @@
+package org.wildfly.extension.undertow.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.undertow.Undertow;
+import io.undertow.server.handlers.ProxyPeerAddressHandler;
+import io.undertow.server.handlers.ResponseCodeHandler;
+
+public class MetricsEndpointHandlerTest
+{
+    private static InetAddress remote;
+
+    private static int remotePort;
+
+    private static int loopbackPort;
+
+    private static Undertow server;
+
+    @BeforeClass
+    public static void start() throws IOException
+    {
+        remote = siteAddress();
+        assumeNotNull(remote);
+        remotePort = freePort(remote);
+        loopbackPort = freePort(InetAddress.getLoopbackAddress());
+        server = Undertow.builder()
+            .addHttpListener(remotePort, remote.getHostAddress())
+            .addHttpListener(loopbackPort, InetAddress.getLoopbackAddress().getHostAddress())
+            .setHandler(new ProxyPeerAddressHandler(
+                new MetricsEndpointHandler(ResponseCodeHandler.HANDLE_200, "/metrics", false)))
+            .build();
+        server.start();
+    }
+
+    @AfterClass
+    public static void stop()
+    {
+        if (server != null)
+        {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void answersClientsOnTheLoopbackAddress() throws IOException
+    {
+        assertEquals(200, status(InetAddress.getLoopbackAddress(), loopbackPort, null));
+    }
+
+    @Test
+    public void hidesFromRemoteClients() throws IOException
+    {
+        assertEquals(404, status(remote, remotePort, null));
+    }
+
+    @Test
+    public void ignoresAForwardedLoopbackAddress() throws IOException
+    {
+        assertEquals(404, status(remote, remotePort, "127.0.0.1"));
+    }
+
+    private static int status(InetAddress address, int port, String forwardedFor) throws IOException
+    {
+        try (Socket socket = new Socket())
+        {
+            socket.bind(new InetSocketAddress(address, 0));
+            socket.connect(new InetSocketAddress(address, port), 5000);
+            socket.setSoTimeout(5000);
+            StringBuilder request = new StringBuilder("GET /metrics HTTP/1.1\r\nHost: localhost\r\n");
+            if (forwardedFor != null)
+            {
+                request.append("X-Forwarded-For: ").append(forwardedFor).append("\r\n");
+            }
+            request.append("Connection: close\r\n\r\n");
+            OutputStream out = socket.getOutputStream();
+            out.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String statusLine = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.US_ASCII)).readLine();
+            return Integer.parseInt(statusLine.split(" ")[1]);
+        }
+    }
+
+    /**
+     * An IPv4 address of this host that is not a loopback address, to connect from as a remote client would, or null
+     * when the host has none.
+     */
+    private static InetAddress siteAddress() throws SocketException
+    {
+        for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces()))
+        {
+            if (!networkInterface.isUp() || networkInterface.isLoopback())
+            {
+                continue;
+            }
+            for (InetAddress address : Collections.list(networkInterface.getInetAddresses()))
+            {
+                if (address instanceof Inet4Address && !address.isLoopbackAddress() && !address.isLinkLocalAddress())
+                {
+                    return address;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int freePort(InetAddress address) throws IOException
+    {
+        try (ServerSocket socket = new ServerSocket(0, 1, address))
+        {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.wildfly.extension.undertow.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class OffHeapResponseStoreTest
+{
+    private static ByteBuffer body(int length, int fill)
+    {
+        ByteBuffer body = ByteBuffer.allocate(length);
+        while (body.hasRemaining())
+        {
+            body.put((byte) fill);
+        }
+        body.flip();
+        return body;
+    }
+
+    @Test
+    public void storesACopyOffHeap()
+    {
+        OffHeapResponseStore store = new OffHeapResponseStore(1024);
+        ByteBuffer original = body(100, 7);
+        assertTrue(store.put("a", original));
+        assertEquals("the caller's buffer is not consumed", 100, original.remaining());
+
+        ByteBuffer stored = store.get("a");
+        assertNotNull(stored);
+        assertTrue(stored.isDirect());
+        assertTrue(stored.isReadOnly());
+        assertEquals(100, stored.remaining());
+        assertEquals(7, stored.get(0));
+
+        stored.position(stored.limit());
+        assertEquals("each get is an independent view", 100, store.get("a").remaining());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed()
+    {
+        OffHeapResponseStore store = new OffHeapResponseStore(300);
+        store.put("a", body(100, 1));
+        store.put("b", body(100, 2));
+        store.put("c", body(100, 3));
+        store.get("a");
+
+        store.put("d", body(100, 4));
+
+        assertNull(store.get("b"));
+        assertNotNull(store.get("a"));
+        assertNotNull(store.get("c"));
+        assertNotNull(store.get("d"));
+        assertEquals(300, store.getSize());
+        assertEquals(1, store.getEvictionCount());
+    }
+
+    @Test
+    public void replacingAnEntryKeepsTheSizeExact()
+    {
+        OffHeapResponseStore store = new OffHeapResponseStore(300);
+        store.put("a", body(100, 1));
+        store.put("a", body(50, 2));
+        assertEquals(50, store.getSize());
+        assertEquals(1, store.getEntryCount());
+        assertEquals(2, store.get("a").get(0));
+    }
+
+    @Test
+    public void rejectsBodiesLargerThanTheStore()
+    {
+        OffHeapResponseStore store = new OffHeapResponseStore(100);
+        store.put("a", body(60, 1));
+        assertFalse(store.put("b", body(101, 2)));
+        assertNotNull("a rejected body does not evict anything", store.get("a"));
+    }
+
+    @Test
+    public void aHitAfterTheLatestPutIsMoreRecentThanThatPut()
+    {
+        OffHeapResponseStore store = new OffHeapResponseStore(300);
+        store.put("a", body(100, 1));
+        store.put("b", body(100, 2));
+        store.put("c", body(100, 3));
+        store.get("a");
+        store.get("b");
+
+        store.put("d", body(100, 4));
+
+        assertNull(store.get("c"));
+        assertNotNull(store.get("a"));
+        assertNotNull(store.get("b"));
+    }
+
+    @Test
+    public void keepsItsSizeWhenHitsAndPutsRace() throws Exception
+    {
+        final OffHeapResponseStore store = new OffHeapResponseStore(50 * 100);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++)
+        {
+            final int thread = t;
+            pool.execute(() -> {
+                for (int i = 0; i < 20000; i++)
+                {
+                    String key = Integer.toString((i * 31 + thread) % 200);
+                    if (store.get(key) == null)
+                    {
+                        store.put(key, body(100, thread));
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(store.getEntryCount() * 100L, store.getSize());
+        assertTrue(store.getSize() <= 50 * 100);
+        assertEquals(8 * 20000L, store.getHitCount() + store.getMissCount());
+    }
+}
@@ -0,0 +1,123 @@
+package org.wildfly.extension.undertow.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RateLimiterTest
+{
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void allowsABurstThenTheRate()
+    {
+        RateLimiter limiter = new RateLimiter(RateLimiter.Key.ADDRESS, 10, 5, 1000);
+        for (int i = 0; i < 5; i++)
+        {
+            assertEquals(0, limiter.acquire("10.0.0.1", 0));
+        }
+        long wait = limiter.acquire("10.0.0.1", 0);
+        assertEquals(SECOND / 10, wait, 10);
+
+        assertTrue(limiter.acquire("10.0.0.1", SECOND / 20) > 0);
+        assertEquals(0, limiter.acquire("10.0.0.1", SECOND / 10 + 1000));
+        assertTrue(limiter.acquire("10.0.0.1", SECOND / 10 + 1000) > 0);
+        assertEquals(0, limiter.acquire("10.0.0.1", 2 * SECOND / 10 + 2000));
+        assertEquals(7, limiter.getAllowedCount());
+        assertEquals(3, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void keepsClientsApart()
+    {
+        RateLimiter limiter = new RateLimiter(RateLimiter.Key.HEADER, 1, 1, 1000);
+        assertEquals(0, limiter.acquire("integration1", 0));
+        assertTrue(limiter.acquire("integration1", 0) > 0);
+        assertEquals(0, limiter.acquire("integration2", 0));
+    }
+
+    @Test
+    public void refillsToNoMoreThanTheBurst()
+    {
+        RateLimiter limiter = new RateLimiter(RateLimiter.Key.ADDRESS, 100, 3, 1000);
+        assertEquals(0, limiter.acquire("10.0.0.1", 0));
+        long later = 60 * SECOND;
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(0, limiter.acquire("10.0.0.1", later));
+        }
+        assertTrue(limiter.acquire("10.0.0.1", later) > 0);
+    }
+
+    @Test
+    public void boundsTheTable()
+    {
+        RateLimiter limiter = new RateLimiter(RateLimiter.Key.ADDRESS, 1, 10, 256);
+        for (int i = 0; i < 10000; i++)
+        {
+            limiter.acquire("client" + i, i);
+        }
+        assertTrue(limiter.getClientCount() + " clients", limiter.getClientCount() <= 256);
+        assertTrue(limiter.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void dropsRefilledBuckets()
+    {
+        RateLimiter limiter = new RateLimiter(RateLimiter.Key.ADDRESS, 10, 10, 100000);
+        for (int i = 0; i < 1000; i++)
+        {
+            limiter.acquire("client" + i, 0);
+        }
+        // every bucket has refilled by then, and the new clients drop them
+        for (int i = 0; i < 1000; i++)
+        {
+            limiter.acquire("later" + i, 2 * SECOND);
+        }
+        assertEquals(1000, limiter.getClientCount());
+        assertEquals(0, limiter.getEvictionCount());
+    }
+
+    @Test
+    public void countsEveryRequestOfManyConcurrentClients() throws Exception
+    {
+        final RateLimiter limiter = new RateLimiter(RateLimiter.Key.ADDRESS, 1, 2, 100000);
+        final int threads = 8;
+        final int clients = 20000;
+        final AtomicInteger allowed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++)
+        {
+            new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < clients; i++)
+                        {
+                            if (limiter.acquire("client" + i, 0) == 0)
+                            {
+                                allowed.incrementAndGet();
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+        assertEquals(2 * clients, allowed.get());
+        assertEquals(clients, limiter.getClientCount());
+        assertEquals((threads - 2) * clients, limiter.getRejectedCount());
+    }
+}
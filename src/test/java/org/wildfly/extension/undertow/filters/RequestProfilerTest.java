@@ -0,0 +1,77 @@
+package org.wildfly.extension.undertow.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RequestProfilerTest
+{
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void samplesOneInNRequests()
+    {
+        RequestProfiler profiler = new RequestProfiler(4, 16);
+        int sampled = 0;
+        for (int i = 0; i < 100; i++)
+        {
+            if (profiler.sample())
+            {
+                sampled++;
+            }
+        }
+        assertEquals(25, sampled);
+        assertEquals(100, profiler.getRequestCount());
+    }
+
+    @Test
+    public void breaksDownEachPathByPhase()
+    {
+        RequestProfiler profiler = new RequestProfiler(1, 16);
+        profiler.record("/ewb/search", 1000 * MS, 1002 * MS, 1010 * MS, 1110 * MS, 1120 * MS);
+        profiler.record("/ewb/search", 2000 * MS, 2004 * MS, 2006 * MS, 2306 * MS, 2310 * MS);
+        // not dispatched after the filter, without a request start time and without a response body
+        profiler.record("/ewb/ping", 0, 3000 * MS, 0, 0, 3001 * MS);
+
+        List<PathPhaseBreakdown> breakdown = profiler.breakdown(0);
+        assertEquals(2, breakdown.size());
+        PathPhaseBreakdown search = breakdown.get(0);
+        assertEquals("/ewb/search", search.getPath());
+        assertEquals(2, search.getCount());
+        assertEquals(3, search.getMeanReceivedMillis(), 0.001);
+        assertEquals(5, search.getMeanQueueMillis(), 0.001);
+        assertEquals(200, search.getMeanHandlerMillis(), 0.001);
+        assertEquals(7, search.getMeanResponseMillis(), 0.001);
+        assertEquals(215, search.getMeanTotalMillis(), 0.001);
+        assertEquals(310, search.getMaxTotalMillis(), 0.001);
+
+        PathPhaseBreakdown ping = breakdown.get(1);
+        assertEquals(0, ping.getMeanReceivedMillis(), 0);
+        assertEquals(0, ping.getMeanQueueMillis(), 0);
+        assertEquals(1, ping.getMeanHandlerMillis(), 0.001);
+        assertEquals(1, ping.getMeanTotalMillis(), 0.001);
+
+        assertEquals(1, profiler.breakdown(1).size());
+    }
+
+    @Test
+    public void keepsOnlyTheLatestSamples()
+    {
+        RequestProfiler profiler = new RequestProfiler(1, 5);
+        assertEquals(8, profiler.getBufferSize());
+        for (int i = 0; i < 20; i++)
+        {
+            profiler.record(i < 12 ? "/old" : "/new", 0, i * MS, 0, 0, (i + 1) * MS);
+        }
+        List<PathPhaseBreakdown> breakdown = profiler.breakdown(0);
+        assertEquals(1, breakdown.size());
+        assertEquals("/new", breakdown.get(0).getPath());
+        assertEquals(8, breakdown.get(0).getCount());
+        assertEquals(20, profiler.getSampledCount());
+        assertFalse(new RequestProfiler(1, 8).breakdown(0).iterator().hasNext());
+    }
+}
@@ -0,0 +1,124 @@
+package org.wildfly.extension.undertow.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+
+public class ResponseCacheHandlerTest
+{
+    private static final long NOW = 1500000000000L;
+
+    private static HeaderMap headers(String... namesAndValues)
+    {
+        HeaderMap headers = new HeaderMap();
+        for (int i = 0; i < namesAndValues.length; i += 2)
+        {
+            headers.add(new HttpString(namesAndValues[i]), namesAndValues[i + 1]);
+        }
+        return headers;
+    }
+
+    private static long freshness(HeaderMap headers)
+    {
+        return ResponseCacheHandler.freshnessMillis(headers, false, 0, NOW);
+    }
+
+    @Test
+    public void readsCacheControlDirectives()
+    {
+        String cacheControl = "public, max-age=60, s-maxage=\"120\", no-cache=\"Set-Cookie\"";
+        assertEquals("", ResponseCacheHandler.directive(cacheControl, "public"));
+        assertEquals("60", ResponseCacheHandler.directive(cacheControl, "MAX-AGE"));
+        assertEquals("120", ResponseCacheHandler.directive(cacheControl, "s-maxage"));
+        assertEquals("Set-Cookie", ResponseCacheHandler.directive(cacheControl, "no-cache"));
+        assertNull(ResponseCacheHandler.directive(cacheControl, "private"));
+        assertNull(ResponseCacheHandler.directive(null, "public"));
+    }
+
+    @Test
+    public void takesFreshnessFromSharedMaxAgeThenMaxAgeThenExpires()
+    {
+        assertEquals(120000, freshness(headers("Cache-Control", "max-age=60, s-maxage=120")));
+        assertEquals(60000, freshness(headers("Cache-Control", "max-age=60", "Expires", "Fri, 14 Jul 2017 02:45:00 GMT")));
+        assertEquals(300000, freshness(headers("Expires", "Fri, 14 Jul 2017 02:45:00 GMT")));
+        assertEquals(-1, freshness(headers("Expires", "0")));
+        assertEquals(-1, freshness(headers("ETag", "\"1\"")));
+        assertEquals(30000, ResponseCacheHandler.freshnessMillis(headers("ETag", "\"1\""), false, 30000, NOW));
+    }
+
+    @Test
+    public void refusesResponsesThatMustNotBeShared()
+    {
+        assertEquals(-1, freshness(headers("Cache-Control", "max-age=60, private")));
+        assertEquals(-1, freshness(headers("Cache-Control", "no-store")));
+        assertEquals(-1, freshness(headers("Cache-Control", "no-cache, max-age=60")));
+        assertEquals(-1, freshness(headers("Cache-Control", "max-age=60", "Set-Cookie", "JSESSIONID=1")));
+
+        assertEquals(-1, ResponseCacheHandler.freshnessMillis(headers("Cache-Control", "max-age=60"), true, 0, NOW));
+        assertEquals(60000, ResponseCacheHandler.freshnessMillis(headers("Cache-Control", "public, max-age=60"), true, 0, NOW));
+        assertEquals(60000, ResponseCacheHandler.freshnessMillis(headers("Cache-Control", "s-maxage=60"), true, 0, NOW));
+    }
+
+    @Test
+    public void keysVariantsByTheHeadersTheyVaryOn()
+    {
+        HeaderMap response = headers("Vary", "Accept-Encoding, accept-language", "Vary", "Accept-Encoding");
+        List<String> names = Arrays.asList(ResponseCacheHandler.varyNames(response.get(Headers.VARY)).toArray(new String[0]));
+        assertEquals(Arrays.asList("accept-encoding", "accept-language"), names);
+        assertNull(ResponseCacheHandler.varyNames(headers("Vary", "Accept, *").get(Headers.VARY)));
+
+        HeaderMap english = headers("Accept-Language", "en", "Accept-Encoding", "gzip");
+        HeaderMap french = headers("Accept-Encoding", "gzip", "Accept-Language", "fr");
+        assertEquals("host/p?\naccept-encoding:gzip\naccept-language:en",
+            ResponseCacheHandler.variantKey("host/p?", names, english));
+        assertEquals("host/p?\naccept-encoding:gzip\naccept-language:fr",
+            ResponseCacheHandler.variantKey("host/p?", names, french));
+    }
+
+    @Test
+    public void storesStatusHeadersAndBodyInOneEntry()
+    {
+        List<String[]> headers = Arrays.asList(new String[] {"Content-Type", "application/json"},
+            new String[] {"ETag", "\"v1\""});
+        ByteBuffer body = ByteBuffer.wrap("{\"units\":[\"mg\",\"ml\"]}".getBytes(StandardCharsets.UTF_8));
+        OffHeapResponseStore store = new OffHeapResponseStore(1024);
+        store.put("key", ResponseCacheHandler.CachedResponse.encode((byte) 0, NOW, NOW + 60000, 200, headers, body));
+
+        ResponseCacheHandler.CachedResponse cached = ResponseCacheHandler.CachedResponse.decode(store.get("key"));
+        assertEquals(NOW, cached.storedAt);
+        assertEquals(NOW + 60000, cached.expires);
+        assertEquals(200, cached.status);
+        assertEquals("\"v1\"", cached.header(Headers.ETAG));
+        assertEquals("application/json", cached.header(new HttpString("content-type")));
+        assertEquals(body, cached.body);
+    }
+
+    @Test
+    public void keysBySchemeAndPort()
+    {
+        String https = ResponseCacheHandler.cacheKey("https", "host:8443", "/p", "a=1");
+        assertEquals("https://host:8443/p?a=1", https);
+        assertFalse(https.equals(ResponseCacheHandler.cacheKey("http", "host:8443", "/p", "a=1")));
+        assertFalse(https.equals(ResponseCacheHandler.cacheKey("https", "host:9443", "/p", "a=1")));
+    }
+
+    @Test
+    public void treatsCookiesAsCredentials()
+    {
+        assertTrue(ResponseCacheHandler.hasCredentials(headers("Authorization", "Basic YTpi")));
+        assertTrue(ResponseCacheHandler.hasCredentials(headers("Cookie", "JSESSIONID=1")));
+        assertFalse(ResponseCacheHandler.hasCredentials(headers("Accept", "*/*")));
+    }
+}
@@ -0,0 +1,336 @@
+package org.wildfly.extension.undertow.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.server.handlers.proxy.ExclusivityChecker;
+import io.undertow.server.handlers.proxy.ProxyHandler;
+import io.undertow.util.HttpString;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Runs {@link LatencyAwareProxyClient} in a {@link ProxyHandler} in front of stand-in backends on loopback, whose
+ * latency and health check status the tests change while traffic is flowing.
+ */
+public class LatencyAwareProxyClientTest
+{
+    private static final HttpString BACKEND = new HttpString("X-Backend");
+
+    private static final ExclusivityChecker NO_EXCLUSIVITY = new ExclusivityChecker()
+    {
+        @Override
+        public boolean isExclusivityRequired(HttpServerExchange exchange)
+        {
+            return false;
+        }
+    };
+
+    private final List<Undertow> servers = new ArrayList<>();
+
+    private final List<LatencyAwareProxyClient> proxyClients = new ArrayList<>();
+
+    @After
+    public void stopServers()
+    {
+        for (LatencyAwareProxyClient client : proxyClients)
+        {
+            client.stop();
+        }
+        for (Undertow server : servers)
+        {
+            server.stop();
+        }
+    }
+
+    private static final class StandIn
+    {
+        final String name;
+
+        final AtomicInteger delayMillis = new AtomicInteger(5);
+
+        final AtomicInteger healthStatus = new AtomicInteger(200);
+
+        final AtomicInteger healthChecks = new AtomicInteger();
+
+        volatile String healthCheckPath;
+
+        URI uri;
+
+        StandIn(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    private static int freePort() throws IOException
+    {
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            return socket.getLocalPort();
+        }
+    }
+
+    private StandIn start(final StandIn backend) throws Exception
+    {
+        int port = freePort();
+        Undertow server = Undertow.builder().addHttpListener(port, "127.0.0.1").setHandler(new HttpHandler()
+        {
+            @Override
+            public void handleRequest(HttpServerExchange exchange) throws Exception
+            {
+                if (exchange.isInIoThread())
+                {
+                    exchange.dispatch(this);
+                    return;
+                }
+                if (exchange.getRequestPath().endsWith("/health"))
+                {
+                    backend.healthCheckPath = exchange.getRequestPath();
+                    backend.healthChecks.incrementAndGet();
+                    exchange.setResponseCode(backend.healthStatus.get());
+                    return;
+                }
+                Thread.sleep(backend.delayMillis.get());
+                exchange.getResponseHeaders().put(BACKEND, backend.name);
+                exchange.getResponseSender().send(backend.name);
+            }
+        }).build();
+        server.start();
+        servers.add(server);
+        backend.uri = new URI("http://127.0.0.1:" + port);
+        return backend;
+    }
+
+    private int startProxy(LatencyAwareProxyClient client, StandIn... backends) throws IOException
+    {
+        for (StandIn backend : backends)
+        {
+            client.addHost(backend.uri, backend.name);
+        }
+        client.start();
+        proxyClients.add(client);
+        int port = freePort();
+        Undertow proxy = Undertow.builder().addHttpListener(port, "127.0.0.1")
+                .setHandler(new ProxyHandler(client, 30000, ResponseCodeHandler.HANDLE_404)).build();
+        proxy.start();
+        servers.add(proxy);
+        return port;
+    }
+
+    /*
+     * Sends requests from concurrent clients and counts the responses by backend
+     */
+    private static Map<String, Integer> send(final int proxyPort, final int requests, int concurrency) throws Exception
+    {
+        final Map<String, Integer> counts = new ConcurrentHashMap<>();
+        final AtomicInteger remaining = new AtomicInteger(requests);
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        try
+        {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int c = 0; c < concurrency; c++)
+            {
+                results.add(clients.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        while (remaining.getAndDecrement() > 0)
+                        {
+                            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + proxyPort
+                                + "/").openConnection();
+                            assertEquals(200, connection.getResponseCode());
+                            try (InputStream in = connection.getInputStream())
+                            {
+                                while (in.read() >= 0)
+                                {
+                                    // drain
+                                }
+                            }
+                            String backend = connection.getHeaderField(BACKEND.toString());
+                            synchronized (counts)
+                            {
+                                Integer count = counts.get(backend);
+                                counts.put(backend, count == null ? 1 : count + 1);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results)
+            {
+                result.get();
+            }
+        }
+        finally
+        {
+            clients.shutdownNow();
+        }
+        return counts;
+    }
+
+    private static int count(Map<String, Integer> counts, StandIn backend)
+    {
+        Integer count = counts.get(backend.name);
+        return count == null ? 0 : count;
+    }
+
+    private static void awaitHealth(LatencyAwareProxyClient client, StandIn backend, boolean healthy) throws InterruptedException
+    {
+        for (int i = 0; i < 100; i++)
+        {
+            for (LatencyAwareProxyClient.Backend candidate : client.getBackends())
+            {
+                if (candidate.uri.equals(backend.uri) && candidate.healthy == healthy)
+                {
+                    return;
+                }
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError(backend.name + " did not become " + (healthy ? "healthy" : "unhealthy"));
+    }
+
+    @Test
+    public void trafficMovesAwayFromASlowBackend() throws Exception
+    {
+        StandIn a = start(new StandIn("a"));
+        StandIn b = start(new StandIn("b"));
+        StandIn slow = start(new StandIn("slow"));
+        int proxyPort = startProxy(new LatencyAwareProxyClient(NO_EXCLUSIVITY, LatencyAwareProxyClient.Policy.LEAST_LATENCY,
+            null, 5000), a, b, slow);
+
+        Map<String, Integer> before = send(proxyPort, 150, 6);
+        assertTrue("all backends take traffic while they are equally fast: " + before, count(before, slow) > 0);
+
+        slow.delayMillis.set(250);
+        Map<String, Integer> after = send(proxyPort, 300, 6);
+        assertTrue("the slow backend should only see the requests that discovered it was slow: " + after,
+            count(after, slow) <= 15);
+        assertEquals(300, count(after, a) + count(after, b) + count(after, slow));
+    }
+
+    @Test
+    public void roundRobinIgnoresLatency() throws Exception
+    {
+        StandIn a = start(new StandIn("a"));
+        StandIn slow = start(new StandIn("slow"));
+        slow.delayMillis.set(50);
+        int proxyPort = startProxy(new LatencyAwareProxyClient(NO_EXCLUSIVITY, LatencyAwareProxyClient.Policy.ROUND_ROBIN,
+            null, 5000), a, slow);
+
+        Map<String, Integer> counts = send(proxyPort, 40, 1);
+        assertEquals(20, count(counts, slow));
+    }
+
+    @Test
+    public void failingHealthChecksTakeABackendOutOfRotation() throws Exception
+    {
+        StandIn a = start(new StandIn("a"));
+        StandIn b = start(new StandIn("b"));
+        LatencyAwareProxyClient client = new LatencyAwareProxyClient(NO_EXCLUSIVITY,
+            LatencyAwareProxyClient.Policy.ROUND_ROBIN, "/health", 100);
+        int proxyPort = startProxy(client, a, b);
+
+        b.healthStatus.set(503);
+        awaitHealth(client, b, false);
+        assertEquals(0, count(send(proxyPort, 40, 2), b));
+
+        b.healthStatus.set(200);
+        awaitHealth(client, b, true);
+        assertEquals(20, count(send(proxyPort, 40, 1), b));
+    }
+
+    @Test
+    public void allBackendsUnhealthyStillServes() throws Exception
+    {
+        StandIn a = start(new StandIn("a"));
+        StandIn b = start(new StandIn("b"));
+        LatencyAwareProxyClient client = new LatencyAwareProxyClient(NO_EXCLUSIVITY,
+            LatencyAwareProxyClient.Policy.LEAST_LATENCY, "/health", 100);
+        int proxyPort = startProxy(client, a, b);
+
+        a.healthStatus.set(500);
+        b.healthStatus.set(500);
+        awaitHealth(client, a, false);
+        awaitHealth(client, b, false);
+
+        Map<String, Integer> counts = send(proxyPort, 20, 2);
+        assertEquals(20, count(counts, a) + count(counts, b));
+    }
+
+    private static void awaitHealthCheck(StandIn backend) throws InterruptedException
+    {
+        int checks = backend.healthChecks.get();
+        for (int i = 0; i < 100 && backend.healthChecks.get() == checks; i++)
+        {
+            Thread.sleep(50);
+        }
+        assertTrue(backend.name + " was not health checked", backend.healthChecks.get() > checks);
+    }
+
+    @Test
+    public void stoppingStopsTheHealthChecksUntilRestarted() throws Exception
+    {
+        StandIn a = start(new StandIn("a"));
+        LatencyAwareProxyClient client = new LatencyAwareProxyClient(NO_EXCLUSIVITY,
+            LatencyAwareProxyClient.Policy.LEAST_LATENCY, "/health", 100);
+        int proxyPort = startProxy(client, a);
+        awaitHealthCheck(a);
+
+        client.stop();
+        // lets a check that was under way when the client stopped finish
+        Thread.sleep(300);
+        int checks = a.healthChecks.get();
+        Thread.sleep(500);
+        assertEquals(checks, a.healthChecks.get());
+        assertEquals(10, count(send(proxyPort, 10, 1), a));
+
+        client.start();
+        awaitHealthCheck(a);
+        client.stop();
+    }
+
+    @Test
+    public void checksTheHealthBelowThePathOfTheHost() throws Exception
+    {
+        StandIn a = start(new StandIn("a"));
+        LatencyAwareProxyClient client = new LatencyAwareProxyClient(NO_EXCLUSIVITY,
+            LatencyAwareProxyClient.Policy.ROUND_ROBIN, "/health", 100);
+        client.addHost(a.uri.resolve("/ewb/"), a.name);
+        client.start();
+        try
+        {
+            awaitHealthCheck(a);
+            assertEquals("/ewb/health", a.healthCheckPath);
+        }
+        finally
+        {
+            client.stop();
+        }
+        assertEquals("/health", LatencyAwareProxyClient.healthCheckPath(null, "/health"));
+        assertEquals("/ewb/health", LatencyAwareProxyClient.healthCheckPath("/ewb", "health"));
+    }
+}
@@ -0,0 +1,100 @@
+package org.wildfly.extension.undertow.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedFileCacheTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file(String name, int length) throws IOException
+    {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            content[i] = (byte) i;
+        }
+        return Files.write(folder.getRoot().toPath().resolve(name), content);
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws IOException
+    {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+    @Test
+    public void reusesTheMappingWhileTheFileIsUnchanged() throws IOException
+    {
+        MappedFileCache cache = new MappedFileCache("test", 10000);
+        Path file = file("a", 1000);
+
+        ByteBuffer first = cache.get(file, attributes(file));
+        first.position(first.limit());
+        ByteBuffer second = cache.get(file, attributes(file));
+
+        assertEquals(1000, second.remaining());
+        assertEquals(5, second.get(5));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1000, cache.getBytesMapped());
+    }
+
+    @Test
+    public void remapsAChangedFile() throws IOException
+    {
+        MappedFileCache cache = new MappedFileCache("test", 10000);
+        Path file = file("a", 1000);
+        cache.get(file, attributes(file));
+
+        Files.write(file, new byte[2000]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(attributes(file).lastModifiedTime().toMillis() + 1000));
+
+        assertEquals(2000, cache.get(file, attributes(file)).remaining());
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(2000, cache.getBytesMapped());
+        assertEquals(1, cache.getMappedFileCount());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedMapping() throws IOException
+    {
+        MappedFileCache cache = new MappedFileCache("test", 2500);
+        Path a = file("a", 1000);
+        Path b = file("b", 1000);
+        Path c = file("c", 1000);
+        cache.get(a, attributes(a));
+        cache.get(b, attributes(b));
+        cache.get(a, attributes(a));
+
+        cache.get(c, attributes(c));
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2000, cache.getBytesMapped());
+        long misses = cache.getMissCount();
+        cache.get(a, attributes(a));
+        assertEquals("a was used more recently than b and is still mapped", misses, cache.getMissCount());
+    }
+
+    @Test
+    public void doesNotMapFilesLargerThanTheCache() throws IOException
+    {
+        MappedFileCache cache = new MappedFileCache("test", 500);
+        Path file = file("a", 1000);
+        assertNull(cache.get(file, attributes(file)));
+        assertEquals(0, cache.getBytesMapped());
+        assertNotNull(cache.get(file("b", 100), attributes(folder.getRoot().toPath().resolve("b"))));
+    }
+}
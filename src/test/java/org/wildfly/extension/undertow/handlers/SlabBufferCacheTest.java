@@ -0,0 +1,190 @@
+package org.wildfly.extension.undertow.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SlabBufferCacheTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file(String name, int length) throws IOException
+    {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            content[i] = (byte) (i + name.hashCode());
+        }
+        return Files.write(folder.getRoot().toPath().resolve(name), content);
+    }
+
+    private static long lastModified(Path file) throws IOException
+    {
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+
+    private static SlabBufferCache.Entry lookup(SlabBufferCache cache, Path file) throws IOException
+    {
+        long size = Files.size(file);
+        cache.recordAccess(file);
+        SlabBufferCache.Entry entry = cache.get(file, size, lastModified(file));
+        return entry != null ? entry : cache.load(file, size, lastModified(file));
+    }
+
+    /*
+     * Requests the file and returns true if it was served from the cache.
+     */
+    private static boolean request(SlabBufferCache cache, Path file) throws IOException
+    {
+        long hits = cache.getHitCount();
+        SlabBufferCache.Entry entry = lookup(cache, file);
+        if (entry != null)
+        {
+            entry.release();
+        }
+        return cache.getHitCount() > hits;
+    }
+
+    private static void assertContent(Path file, SlabBufferCache.Entry entry) throws IOException
+    {
+        byte[] expected = Files.readAllBytes(file);
+        int position = 0;
+        for (ByteBuffer buffer : entry.buffers())
+        {
+            while (buffer.hasRemaining())
+            {
+                assertEquals(expected[position++], buffer.get());
+            }
+        }
+        assertEquals(expected.length, position);
+    }
+
+    @Test
+    public void servesAFileFromItsSlots() throws IOException
+    {
+        SlabBufferCache cache = new SlabBufferCache("test", 1000, 10, SlabBufferCache.EvictionPolicy.LRU);
+        Path file = file("a", 2500);
+
+        SlabBufferCache.Entry first = lookup(cache, file);
+        assertEquals(3, first.buffers().length);
+        assertContent(file, first);
+        first.release();
+        SlabBufferCache.Entry second = lookup(cache, file);
+        assertContent(file, second);
+        second.release();
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3000, cache.getBytesResident());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void reloadsAChangedFile() throws IOException
+    {
+        SlabBufferCache cache = new SlabBufferCache("test", 1000, 10, SlabBufferCache.EvictionPolicy.LRU);
+        Path file = file("a", 2500);
+        lookup(cache, file).release();
+
+        Files.write(file, new byte[500]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified(file) + 1000));
+        SlabBufferCache.Entry entry = lookup(cache, file);
+
+        assertContent(file, entry);
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(1000, cache.getBytesResident());
+    }
+
+    @Test
+    public void keepsTheSlotsOfAnEvictedFileUntilItIsReleased() throws IOException
+    {
+        SlabBufferCache cache = new SlabBufferCache("test", 1000, 1, SlabBufferCache.EvictionPolicy.LRU);
+        Path a = file("a", 1000);
+        Path b = file("b", 1000);
+        SlabBufferCache.Entry sending = lookup(cache, a);
+
+        assertNull("no slot is free while a is being sent", lookup(cache, b));
+        assertEquals(1, cache.getEvictionCount());
+        assertContent(a, sending);
+
+        sending.release();
+        assertEquals(0, cache.getBytesResident());
+        SlabBufferCache.Entry entry = lookup(cache, b);
+        assertNotNull(entry);
+        assertContent(b, entry);
+    }
+
+    @Test
+    public void doesNotCacheFilesLargerThanTheCache() throws IOException
+    {
+        SlabBufferCache cache = new SlabBufferCache("test", 100, 10, SlabBufferCache.EvictionPolicy.LRU);
+        assertNull(lookup(cache, file("a", 1001)));
+        assertEquals(0, cache.getBytesResident());
+    }
+
+    @Test
+    public void aBufferCacheHasACacheUntilItIsRemoved()
+    {
+        SlabBufferCache.install("slabs", 1024, 20, SlabBufferCache.EvictionPolicy.LFU);
+        SlabBufferCache cache = SlabBufferCache.forBufferCache("slabs");
+        assertNotNull(cache);
+        assertEquals("slabs", cache.getName());
+        assertEquals(20 * 1024, cache.getCapacity());
+        assertEquals("lfu", cache.getEvictionPolicy());
+
+        SlabBufferCache.install("slabs", 1024, 10, SlabBufferCache.EvictionPolicy.LRU);
+        assertEquals(10 * 1024, SlabBufferCache.forBufferCache("slabs").getCapacity());
+
+        SlabBufferCache.uninstall("slabs");
+        assertNull(SlabBufferCache.forBufferCache("slabs"));
+    }
+
+    private int hitsAfterAScan(SlabBufferCache.EvictionPolicy policy) throws IOException
+    {
+        SlabBufferCache cache = new SlabBufferCache("test", 100, 10, policy);
+        Path[] popular = new Path[5];
+        for (int i = 0; i < popular.length; i++)
+        {
+            popular[i] = file("popular-" + i, 100);
+        }
+        for (int round = 0; round < 5; round++)
+        {
+            for (Path file : popular)
+            {
+                request(cache, file);
+            }
+        }
+        for (int i = 0; i < 100; i++)
+        {
+            request(cache, file("scanned-" + i, 100));
+        }
+        int hits = 0;
+        for (Path file : popular)
+        {
+            if (request(cache, file))
+            {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Test
+    public void tinyLfuKeepsPopularFilesThroughAScan() throws IOException
+    {
+        assertEquals(5, hitsAfterAScan(SlabBufferCache.EvictionPolicy.TINYLFU));
+        assertTrue("lru lets the scan flush the popular files", hitsAfterAScan(SlabBufferCache.EvictionPolicy.LRU) < 5);
+    }
+}